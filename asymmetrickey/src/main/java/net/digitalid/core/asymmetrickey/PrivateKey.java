@@ -16,11 +16,14 @@
 package net.digitalid.core.asymmetrickey;
 
 import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 
 import net.digitalid.utility.annotations.method.CallSuper;
 import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
@@ -103,13 +106,21 @@ public abstract class PrivateKey extends AsymmetricKey {
     @Derive("p.modInverse(q).multiply(p).mod(compositeGroup.getModulus())")
     protected abstract @Nonnull BigInteger getQIdentityCRT();
     
+    /**
+     * Stores the executor on which the exponentiation modulo p is computed while the exponentiation modulo q is computed on the calling thread.
+     * By default, both exponentiations are computed on the calling thread. The executor may not be the one that calls {@link #powD(BigInteger)}.
+     */
+    public static final @Nonnull Configuration<Executor> executor = Configuration.with(Runnable::run);
+    
     /**
      * Returns the integer c raised to the power of d by using the Chinese Remainder Theorem.
+     * The two exponentiations are independent of each other and are thus computed in parallel if an {@link #executor} has been configured.
      */
     @Pure
     public @Nonnull @InGroup("compositeGroup") Element powD(@Nonnull BigInteger c) {
-        final @Nonnull BigInteger mModP = c.modPow(getDModPMinus1(), getP());
+        final @Nonnull CompletableFuture<@Nonnull BigInteger> futureModP = CompletableFuture.supplyAsync(() -> c.modPow(getDModPMinus1(), getP()), executor.get());
         final @Nonnull BigInteger mModQ = c.modPow(getDModQMinus1(), getQ());
+        final @Nonnull BigInteger mModP = futureModP.join();
         final @Nonnull BigInteger value = mModP.multiply(getPIdentityCRT()).add(mModQ.multiply(getQIdentityCRT()));
         return getCompositeGroup().getElement(value);
     }
@@ -19,21 +19,37 @@ import javax.annotation.Nonnull;
 
 import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
-import net.digitalid.utility.collaboration.annotations.TODO;
-import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.tuples.Pair;
 import net.digitalid.utility.validation.annotations.generation.Default;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.audit.module.ActionModule;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.handler.Auditable;
+import net.digitalid.core.handler.method.Method;
+import net.digitalid.core.handler.method.MethodIndex;
 import net.digitalid.core.handler.method.query.InternalQuery;
+import net.digitalid.core.pack.Pack;
 import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
+import net.digitalid.core.restrictions.Restrictions;
 import net.digitalid.core.unit.annotations.OnHostRecipient;
 
 /**
- * Queries the audit of the given service for the given role.
+ * Queries the actions that were executed on the given entity after the given position.
+ * Clients that reconnect thus only retrieve what changed since their last synchronization.
  * 
  * @see AuditReply
  */
@@ -41,9 +57,23 @@ import net.digitalid.core.unit.annotations.OnHostRecipient;
 @GenerateBuilder
 @GenerateSubclass
 @GenerateConverter
-@TODO(task = "Make sure that this query gets registered as a handler. Maybe with an annotation?", date = "2016-11-09", author = Author.KASPAR_ETTER)
 public abstract class AuditQuery extends InternalQuery {
     
+    /* -------------------------------------------------- Page Size -------------------------------------------------- */
+    
+    /**
+     * Stores the maximum number of actions that are returned in a single reply.
+     */
+    public static final @Nonnull Configuration<Integer> pageSize = Configuration.with(100);
+    
+    /* -------------------------------------------------- Position -------------------------------------------------- */
+    
+    /**
+     * Returns the number of the last action that the client has already retrieved or zero to retrieve all actions.
+     */
+    @Pure
+    public abstract @NonNegative long getPosition();
+    
     /* -------------------------------------------------- Requirements -------------------------------------------------- */
     
     /**
@@ -57,10 +87,52 @@ public abstract class AuditQuery extends InternalQuery {
     /* -------------------------------------------------- Execution -------------------------------------------------- */
     
     @Override
+    @NonCommitting
+    @OnHostRecipient
+    @PureWithSideEffects
+    public @Nonnull AuditReply execute() throws DatabaseException {
+        return execute(ReadOnlyAgentPermissions.NONE, Restrictions.MIN);
+    }
+    
+    /**
+     * Returns whether the given packed action can be seen by an agent with the given permissions and restrictions.
+     * Actions that can no longer be recovered are not visible.
+     */
+    @Pure
+    @NonCommitting
+    private boolean isVisible(@Nonnull Pack pack, @Nonnull ReadOnlyAgentPermissions presentPermissions, @Nonnull Restrictions presentRestrictions) throws DatabaseException {
+        try {
+            final @Nonnull Method<?> method = MethodIndex.get(pack, getEntity());
+            if (!(method instanceof Auditable)) { return false; }
+            final @Nonnull Auditable auditable = (Auditable) method;
+            return presentPermissions.cover(auditable.getRequiredPermissionsToSeeMethod()) && presentRestrictions.cover(auditable.getRequiredRestrictionsToSeeMethod());
+        } catch (@Nonnull RequestException | RecoveryException exception) {
+            Log.warning("The action of type $ could not be recovered and is therefore left out of the audit.", exception, pack.getType());
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the actions after the position that the querying agent is allowed to see.
+     * The position of the reply advances over the actions that are left out so that they are not queried again.
+     */
+    @Override
+    @NonCommitting
     @OnHostRecipient
     @PureWithSideEffects
-    public @Nonnull AuditReply execute() {
-        return null; // TODO: AuditReply(getNonHostAccount(), service);
+    protected @Nonnull AuditReply execute(@Nonnull ReadOnlyAgentPermissions presentPermissions, @Nonnull Restrictions presentRestrictions) throws DatabaseException {
+        final int limit = pageSize.get();
+        final @Nonnull FreezableList<@Nonnull Pair<@Nonnull Long, @Nonnull Pack>> actions = ActionModule.load(getEntity(), getPosition(), limit + 1);
+        final boolean complete = actions.size() <= limit;
+        if (!complete) { actions.remove(limit); }
+        
+        final @Nonnull FreezableList<@Nonnull Pack> trail = FreezableArrayList.withInitialCapacity(actions.size());
+        long position = getPosition();
+        for (@Nonnull Pair<@Nonnull Long, @Nonnull Pack> action : actions) {
+            if (isVisible(action.get1(), presentPermissions, presentRestrictions)) { trail.add(action.get1()); }
+            position = action.get0();
+        }
+        return AuditReplyBuilder.withEntity(getEntity()).withTrail(trail).withPosition(position).withComplete(complete).build();
     }
     
 }
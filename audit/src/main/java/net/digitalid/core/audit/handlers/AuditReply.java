@@ -18,19 +18,21 @@ package net.digitalid.core.audit.handlers;
 import javax.annotation.Nonnull;
 
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.collaboration.annotations.TODO;
-import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.collections.list.FreezableList;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.elements.NonNullableElements;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
 import net.digitalid.core.entity.NonHostEntity;
 import net.digitalid.core.handler.method.Method;
 import net.digitalid.core.handler.reply.QueryReply;
+import net.digitalid.core.pack.Pack;
 
 /**
- * Replies the audit of the given entity.
+ * Replies the actions that were executed on the given entity after the queried position.
  * 
  * @see AuditQuery
  */
@@ -38,11 +40,31 @@ import net.digitalid.core.handler.reply.QueryReply;
 @GenerateBuilder
 @GenerateSubclass
 @GenerateConverter
-@TODO(task = "Make sure that this query gets registered as a handler. Maybe with an annotation?", date = "2016-11-09", author = Author.KASPAR_ETTER)
 public abstract class AuditReply extends QueryReply<NonHostEntity> {
     
     // TODO: So far, the response audit has been appended to the signature, which will probably no longer be the case.
     
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the packed actions in the order in which they were executed on the host.
+     * The actions can be recovered without a signature by the method index of the client.
+     */
+    @Pure
+    public abstract @Nonnull @NonNullableElements /* TODO: @Frozen */ FreezableList<Pack> getTrail();
+    
+    /**
+     * Returns the number of the last action in the trail, which is to be used as the position of the next query.
+     */
+    @Pure
+    public abstract @NonNegative long getPosition();
+    
+    /**
+     * Returns whether the trail contains all actions up to now or whether further actions have to be queried.
+     */
+    @Pure
+    public abstract boolean isComplete();
+    
     /* -------------------------------------------------- Matching -------------------------------------------------- */
     
     @Pure
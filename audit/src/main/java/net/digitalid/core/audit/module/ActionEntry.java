@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.audit.module;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.pack.Pack;
+
+/**
+ * This type models an entry in the log of the internal actions that were executed on a host.
+ * 
+ * @see ActionModule
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter
+abstract class ActionEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the sequence number of the action within its unit.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Positive long getNumber();
+    
+    /**
+     * Returns the key of the entity on which the action was executed.
+     */
+    @Pure
+    abstract long getEntity();
+    
+    /**
+     * Returns the time when the action was executed.
+     */
+    @Pure
+    abstract @Nonnull Time getTime();
+    
+    /**
+     * Returns the packed action.
+     */
+    @Pure
+    abstract @Nonnull Pack getAction();
+    
+}
@@ -15,24 +15,43 @@
  */
 package net.digitalid.core.authorization;
 
+import java.math.BigInteger;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.exceptions.ExternalException;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.time.Time;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
 import net.digitalid.core.asymmetrickey.PublicKey;
+import net.digitalid.core.conversion.XDF;
+import net.digitalid.core.credential.ClientCredential;
+import net.digitalid.core.credential.ClientCredentialBuilder;
+import net.digitalid.core.credential.utility.ExposedExponent;
+import net.digitalid.core.credential.utility.ExposedExponentBuilder;
+import net.digitalid.core.credential.utility.HashedOrSaltedAgentPermissions;
+import net.digitalid.core.credential.utility.SaltedAgentPermissions;
 import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.exceptions.request.RequestErrorCode;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
 import net.digitalid.core.group.Element;
 import net.digitalid.core.group.Exponent;
+import net.digitalid.core.group.ExponentBuilder;
 import net.digitalid.core.handler.CoreHandler;
 import net.digitalid.core.handler.method.Method;
 import net.digitalid.core.handler.reply.QueryReply;
+import net.digitalid.core.identification.annotations.RoleType;
+import net.digitalid.core.identification.identity.SemanticType;
 import net.digitalid.core.restrictions.Restrictions;
+import net.digitalid.core.restrictions.RestrictionsConverter;
 
 /**
  * Replies the parameters of a new credential.
@@ -118,31 +137,22 @@ abstract class CredentialReply extends QueryReply<NonHostEntity> implements Core
     
     /* -------------------------------------------------- Client Credential -------------------------------------------------- */
     
-    // TODO
+    /**
+     * Returns an internal credential with the given salted permissions, the given relation and the given client secret.
+     * 
+     * @throws RequestException if the host did not reply the restrictions for which the credential was issued.
+     */
+    @Pure
+    @NonCommitting
+    @Nonnull ClientCredential getInternalCredential(@Nonnull SaltedAgentPermissions permissions, @Nullable @RoleType SemanticType relation, @Nonnull Exponent u) throws ExternalException {
+        final @Nullable Restrictions restrictions = getRestrictions();
+        if (restrictions == null) { throw RequestExceptionBuilder.withCode(RequestErrorCode.CONTENT).withMessage("The restrictions may not be null for internal credentials.").build(); }
+        final @Nonnull Exponent v = ExponentBuilder.withValue(new BigInteger(1, XDF.hash(RestrictionsConverter.INSTANCE, restrictions))).build();
+        
+        final @Nonnull ExposedExponent exposedExponent = ExposedExponentBuilder.withIssuer(getEntity().getIdentity()).withIssuance(getIssuance()).withHashedOrSaltedPermissions(HashedOrSaltedAgentPermissions.with(permissions, true)).withRole(relation).withAttributeContent(null).build();
+        return ClientCredentialBuilder.withExposedExponent(exposedExponent).withC(getC()).withE(getE()).withU(u).withV(v).withI(getI()).withRestrictions(restrictions).build();
+    }
     
-//    /**
-//     * Returns an internal credential with the given parameters.
-//     * 
-//     * @param randomizedPermissions the client's randomized permissions.
-//     * @param role the role that is assumed or null in case no role is assumed.
-//     * @param b the blinding exponent of the issued credential.
-//     * @param u the client's secret of the issued credential.
-//     * 
-//     * @return an internal credential with the given parameters.
-//     * 
-//     * @require hasSignature() : "This handler has a signature.";
-//     */
-//    @NonCommitting
-//    @Nonnull ClientCredential getInternalCredential(@Nonnull RandomizedAgentPermissions randomizedPermissions, @Nullable SemanticType role, @Nonnull BigInteger b, @Nonnull Exponent u) throws ExternalException {
-//        Require.that(hasSignature()).orThrow("This handler has a signature.");
-//        
-//        if (restrictions == null) { throw InvalidParameterValueCombinationException.get("The restrictions may not be null for internal credentials."); }
-//        final @Nonnull Exponent v = Exponent.get(restrictions.toBlock().getHash());
-//        
-//        final @Nonnull InternalPerson issuer = getSignatureNotNull().getNonNullableSubject().getIdentity().castTo(InternalPerson.class);
-//        return new ClientCredential(publicKey, issuer, issuance, randomizedPermissions, role, restrictions, c, e, Exponent.get(b), u, i, v);
-//    }
-//    
 //    /**
 //     * Returns an external credential with the given parameters.
 //     * 
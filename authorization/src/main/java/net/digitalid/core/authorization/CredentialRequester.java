@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.authorization;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
+import net.digitalid.core.credential.ClientCredential;
+import net.digitalid.core.credential.utility.SaltedAgentPermissions;
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.group.Exponent;
+import net.digitalid.core.identification.annotations.RoleType;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
+
+/**
+ * The credential requester requests new identity- and role-based credentials on behalf of clients.
+ * 
+ * @see CredentialInternalQuery
+ */
+@Utility
+public abstract class CredentialRequester {
+    
+    /**
+     * Requests a new credential with the given permissions for the given entity and returns it with the given client secret.
+     * The returned credential is role-based if the given relation is not null and identity-based otherwise.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static @Nonnull ClientCredential request(@Nonnull NonHostEntity entity, @Nullable @RoleType SemanticType relation, @Nonnull @Frozen @NonEmpty ReadOnlyAgentPermissions permissions, @Nonnull Exponent secret) throws ExternalException {
+        final @Nonnull SaltedAgentPermissions saltedPermissions = SaltedAgentPermissions.with(permissions);
+        final @Nonnull CredentialInternalQuery query = CredentialInternalQueryBuilder.withPermissions(saltedPermissions).withProvidedSubject(entity.getIdentity().getAddress()).withRelation(relation).withProvidedEntity(entity).build();
+        final @Nonnull CredentialReply reply = query.send(CredentialReplyConverter.INSTANCE);
+        return reply.getInternalCredential(saltedPermissions, relation, secret);
+    }
+    
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
+import net.digitalid.core.certificate.Delegation;
+import net.digitalid.core.certificate.DelegationLoader;
+import net.digitalid.core.certificate.Delegations;
+import net.digitalid.core.certificate.DelegationsConverter;
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.signature.attribute.AttributeValue;
+
+/**
+ * This class implements a {@link DelegationLoader} that retrieves the delegation attributes through the {@link Cache cache}.
+ */
+@Immutable
+@GenerateSubclass
+public abstract class CacheDelegationLoader extends DelegationLoader {
+    
+    /* -------------------------------------------------- Retrieval -------------------------------------------------- */
+    
+    /**
+     * Returns the delegations that the given identity publishes in its attribute of the given type.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> getDelegations(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity identity, @Nonnull SemanticType type) throws ExternalException {
+        if (!type.isAttributeFor(identity.getCategory())) { return FreezableArrayList.<Delegation>withNoElements().freeze(); }
+        final @Nullable AttributeValue value = Cache.getAttributeValues(null, identity, TimeBuilder.build(), type)[0];
+        if (value == null) { return FreezableArrayList.<Delegation>withNoElements().freeze(); }
+        final @Nonnull Delegations delegations = value.getContent().unpack(DelegationsConverter.INSTANCE, entity);
+        return delegations.getDelegations();
+    }
+    
+    /* -------------------------------------------------- Loading -------------------------------------------------- */
+    
+    @Override
+    @NonCommitting
+    @PureWithSideEffects
+    public @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> getIncomingDelegations(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type) throws ExternalException {
+        final @Nonnull FreezableList<@Nonnull Delegation> result = FreezableArrayList.withNoElements();
+        for (@Nonnull Delegation delegation : getDelegations(entity, issuer, Delegations.INCOMING)) {
+            if (delegation.getDelegate().equals(issuer) && delegation.getType().equals(type) && getDelegations(entity, delegation.getDelegator(), Delegations.OUTGOING).contains(delegation)) { result.add(delegation); }
+        }
+        return result.freeze();
+    }
+    
+    /* -------------------------------------------------- Installation -------------------------------------------------- */
+    
+    /**
+     * Installs this delegation loader so that certificates are authorized with the delegation attributes.
+     */
+    @PureWithSideEffects
+    @Initialize(target = DelegationLoader.class)
+    public static void installCacheDelegationLoader() {
+        DelegationLoader.configuration.set(new CacheDelegationLoaderSubclass());
+    }
+    
+}
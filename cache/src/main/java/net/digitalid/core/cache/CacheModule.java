@@ -72,6 +72,8 @@ import net.digitalid.database.interfaces.encoder.SQLQueryEncoder;
 import net.digitalid.core.asymmetrickey.PrivateKeyRetriever;
 import net.digitalid.core.attribute.AttributePropertiesLoader;
 import net.digitalid.core.cache.errors.MissingTrustAnchorErrorBuilder;
+import net.digitalid.core.certificate.Certificate;
+import net.digitalid.core.certificate.Delegations;
 import net.digitalid.core.client.ClientSecretLoader;
 import net.digitalid.core.client.role.Role;
 import net.digitalid.core.client.role.RoleModule;
@@ -170,6 +172,7 @@ public abstract class CacheModule {
         final @Nonnull SQLUpdateStatement updateStatement = SQLUpdateStatementBuilder.withTable(qualifiedTable).withAssignments(ImmutableList.withElements(assignment)).withWhereClause(whereClause).build();
         final @Nonnull SQLActionEncoder actionEncoder = Database.instance.get().getEncoder(updateStatement, GeneralUnit.INSTANCE);
         actionEncoder.execute();
+        Certificate.invalidateDelegations(identity);
     }
     
     /* -------------------------------------------------- Cache Reading -------------------------------------------------- */
@@ -259,6 +262,7 @@ public abstract class CacheModule {
         
         final @Nonnull CacheEntry entry = CacheEntryBuilder.withRequester(requester != null ? requester.getKey() : 0).withRequestee(requestee).withAttributeType(type).withFound(value != null).withExpirationTime(expiration).withAttributeValue(value != null ? Pack.pack(AttributeValueConverter.INSTANCE, value) : null).build();
         SQL.insertOrReplace(CacheEntryConverter.INSTANCE, entry, GeneralUnit.INSTANCE);
+        if ((type.equals(Delegations.INCOMING) || type.equals(Delegations.OUTGOING)) && requestee instanceof InternalNonHostIdentity) { Certificate.invalidateDelegations((InternalNonHostIdentity) requestee); }
     }
     
 }
@@ -36,11 +36,14 @@ import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.database.annotations.transaction.NonCommitting;
 
 import net.digitalid.core.cache.exceptions.CertificateNotFoundExceptionBuilder;
+import net.digitalid.core.certificate.Certificate;
 import net.digitalid.core.client.role.Role;
 import net.digitalid.core.identification.annotations.AttributeType;
 import net.digitalid.core.identification.identity.InternalIdentity;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
 import net.digitalid.core.identification.identity.SemanticType;
 import net.digitalid.core.signature.attribute.AttributeValue;
+import net.digitalid.core.signature.attribute.CertifiedAttributeValue;
 
 /**
  * This type models query for the cache.
@@ -115,13 +118,21 @@ public abstract class CacheQuery<@Unspecifiable TYPE> extends RootClass {
      * Executes this cache query and returns the queried attribute content.
      * 
      * @throws AttributeNotFoundException if the attribute value is not available.
-     * @throws CertificateNotFoundException if the value should be certified but is not.
+     * @throws CertificateNotFoundException if the value should be certified but is not or if a role queries it and the issuer of the certificate is not authorized.
      */
     @Pure
     @NonCommitting
     public @Nonnull TYPE execute() throws ExternalException {
         final @Nonnull AttributeValue value = Cache.getAttributeValue(getRequester(), getRequestee(), getExpiration(), getDerivedType());
-        if (isCertified() && !value.isCertified()) { throw CertificateNotFoundExceptionBuilder.withIdentity(getRequestee()).withType(getDerivedType()).build(); }
+        if (isCertified()) {
+            if (!value.isCertified()) { throw CertificateNotFoundExceptionBuilder.withIdentity(getRequestee()).withType(getDerivedType()).build(); }
+            final @Nullable Role requester = getRequester();
+            if (requester != null) {
+                // A certified value is only worth as much as the authorization of its issuer, which is resolved through the delegations of the requester.
+                final @Nonnull InternalIdentity issuer = ((CertifiedAttributeValue) value).getSignature().getSigner().resolve();
+                if (!(issuer instanceof InternalNonHostIdentity) || !Certificate.isAuthorized(requester, (InternalNonHostIdentity) issuer, value.getContent())) { throw CertificateNotFoundExceptionBuilder.withIdentity(getRequestee()).withType(getDerivedType()).build(); }
+            }
+        }
         return value.getContent().unpack(getConverter(), null);
     }
     
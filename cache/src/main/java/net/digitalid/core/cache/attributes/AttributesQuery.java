@@ -105,6 +105,17 @@ public abstract class AttributesQuery extends ExternalQuery<Entity> implements C
         return ReadOnlyAgentPermissions.NONE;
     }
     
+    /* -------------------------------------------------- Caching -------------------------------------------------- */
+    
+    /**
+     * Returns whether only published attribute values are requested without credentials, in which case only public attribute values are returned.
+     */
+    @Pure
+    @Override
+    public boolean isRequesterIndependent() {
+        return isPublished() && !(getSignature() instanceof CredentialsSignature<?>);
+    }
+    
     /* -------------------------------------------------- Execution -------------------------------------------------- */
     
     @Override
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache.types;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.validation.annotations.math.relative.GreaterThanOrEqualTo;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributes;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.identification.identity.TypeLoader;
+
+/**
+ * This class implements a {@link TypeLoader} that serves the declarations from the {@link TypeCatalog type catalog}
+ * and delegates only the loading of uncataloged types to the given loader.
+ * Since the given loader has to load the types on which a semantic type depends before it can return its attributes,
+ * a whole type graph is retrieved with a single call to the given loader and then cataloged at once.
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+public abstract class CatalogTypeLoader implements TypeLoader {
+    
+    /* -------------------------------------------------- Loader -------------------------------------------------- */
+    
+    /**
+     * Returns the loader to which the loading of uncataloged types is delegated.
+     */
+    @Pure
+    public abstract @Nonnull TypeLoader getLoader();
+    
+    /* -------------------------------------------------- Loading -------------------------------------------------- */
+    
+    @Pure
+    @Override
+    @NonCommitting
+    public @GreaterThanOrEqualTo(-1) byte load(@Nonnull SyntacticType syntacticType) throws ExternalException {
+        final @Nullable Byte cachedNumberOfParameters = TypeCatalog.getNumberOfParameters(syntacticType);
+        if (cachedNumberOfParameters != null) { return cachedNumberOfParameters; }
+        
+        final byte numberOfParameters = getLoader().load(syntacticType);
+        TypeCatalog.store(syntacticType, numberOfParameters);
+        return numberOfParameters;
+    }
+    
+    @Pure
+    @Override
+    @NonCommitting
+    public @Nonnull SemanticTypeAttributes load(@Nonnull SemanticType semanticType) throws ExternalException {
+        final @Nullable SemanticTypeAttributes cachedAttributes = TypeCatalog.getAttributes(semanticType);
+        if (cachedAttributes != null) { return cachedAttributes; }
+        
+        final @Nonnull SemanticTypeAttributes attributes = getLoader().load(semanticType);
+        TypeCatalog.store(semanticType, attributes);
+        return attributes;
+    }
+    
+    /* -------------------------------------------------- Installation -------------------------------------------------- */
+    
+    /**
+     * Decorates the configured type loader with a catalog type loader once the type loader and the catalog have been initialized.
+     */
+    @PureWithSideEffects
+    @Initialize(target = TypeCatalog.class, dependencies = TypeLoader.class)
+    public static void installCatalogTypeLoader() {
+        if (!TypeLoader.configuration.isSet()) { Log.warning("The type catalog is not used because no type loader has been configured."); return; }
+        final @Nonnull TypeLoader loader = TypeLoader.configuration.get();
+        if (!(loader instanceof CatalogTypeLoader)) { TypeLoader.configuration.set(CatalogTypeLoaderBuilder.withLoader(loader).build()); }
+    }
+    
+}
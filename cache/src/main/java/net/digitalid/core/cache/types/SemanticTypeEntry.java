@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache.types;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributes;
+import net.digitalid.core.identification.identity.SyntacticType;
+
+/**
+ * This type models an entry in the catalog of semantic type declarations.
+ * The parameters of the semantic type are stored separately as {@link SemanticTypeParameterEntry parameter entries}.
+ * 
+ * @see TypeCatalog
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter(schema = "general")
+abstract class SemanticTypeEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the declared semantic type.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Nonnull SemanticType getType();
+    
+    /**
+     * Returns the categories of the semantic type as a bit mask of their values.
+     */
+    @Pure
+    abstract byte getCategories();
+    
+    /**
+     * Returns the caching period of the semantic type.
+     */
+    @Pure
+    abstract @Nonnull Time getCachingPeriod();
+    
+    /**
+     * Returns the syntactic base of the semantic type.
+     */
+    @Pure
+    abstract @Nonnull SyntacticType getSyntacticBase();
+    
+    /**
+     * Returns the semantic base of the semantic type.
+     */
+    @Pure
+    abstract @Nullable SemanticType getSemanticBase();
+    
+    /**
+     * Returns the version of the catalog in which the declaration was stored.
+     */
+    @Pure
+    abstract int getVersion();
+    
+    /**
+     * Returns the time when the declaration was stored, after which it expires according to the {@link TypeCatalog#timeToLive time to live} of the catalog.
+     */
+    @Pure
+    abstract @Nonnull Time getTime();
+    
+    /* -------------------------------------------------- Categories -------------------------------------------------- */
+    
+    /**
+     * Returns the bit mask of the given categories.
+     */
+    @Pure
+    static byte toMask(@Nonnull Iterable<@Nonnull Category> categories) {
+        int mask = 0;
+        for (@Nonnull Category category : categories) { mask |= 1 << category.getValue(); }
+        return (byte) mask;
+    }
+    
+    /* -------------------------------------------------- Import -------------------------------------------------- */
+    
+    /**
+     * Returns the entry for the given attributes of the given semantic type stored at the given time.
+     */
+    @Pure
+    static @Nonnull SemanticTypeEntry from(@Nonnull SemanticType type, @Nonnull SemanticTypeAttributes attributes, int version, @Nonnull Time time) {
+        return SemanticTypeEntryBuilder.withType(type).withCategories(toMask(attributes.getCategories())).withCachingPeriod(attributes.getCachingPeriod()).withSyntacticBase(attributes.getSyntacticBase()).withVersion(version).withTime(time).withSemanticBase(attributes.getSemanticBase()).build();
+    }
+    
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache.types;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.math.relative.GreaterThanOrEqualTo;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.identification.identity.SyntacticType;
+
+/**
+ * This type models an entry in the catalog of syntactic type declarations.
+ * 
+ * @see TypeCatalog
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter(schema = "general")
+abstract class SyntacticTypeEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the declared syntactic type.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Nonnull SyntacticType getType();
+    
+    /**
+     * Returns the number of generic parameters of the syntactic type.
+     */
+    @Pure
+    abstract @GreaterThanOrEqualTo(-1) byte getNumberOfParameters();
+    
+    /**
+     * Returns the version of the catalog in which the declaration was stored.
+     */
+    @Pure
+    abstract int getVersion();
+    
+    /**
+     * Returns the time when the declaration was stored, after which it expires according to the {@link TypeCatalog#timeToLive time to live} of the catalog.
+     */
+    @Pure
+    abstract @Nonnull Time getTime();
+    
+}
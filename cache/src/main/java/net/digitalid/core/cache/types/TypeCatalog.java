@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache.types;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.conversion.converters.Integer32Converter;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.Committing;
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereCondition;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.IdentifierResolver;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributes;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SemanticTypeConverter;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.unit.GeneralUnit;
+
+/**
+ * The type catalog persists the declarations of loaded types in the general schema so that they survive restarts.
+ * The whole catalog is read into memory on initialization, which means that known types are loaded without any database or network access.
+ * Declarations expire after the configured {@link #timeToLive time to live} so that changed declarations are eventually picked up.
+ * When a type is stored, all the types it depends on are stored along with it so that a type graph is never stored partially.
+ * 
+ * @see CatalogTypeLoader
+ */
+@Utility
+public abstract class TypeCatalog {
+    
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the version of the catalog. Declarations that were stored with another version are ignored and overwritten when the type is loaded again.
+     */
+    public static final @Nonnull Configuration<Integer> version = Configuration.with(1);
+    
+    /**
+     * Stores the period after which a cataloged declaration expires and is loaded again with the decorated type loader.
+     */
+    public static final @Nonnull Configuration<Time> timeToLive = Configuration.with(Time.MONTH);
+    
+    /**
+     * Returns whether a declaration that was stored at the given time has expired.
+     */
+    @Pure
+    private static boolean isExpired(@Nonnull Time time) {
+        return time.isLessThan(timeToLive.get().ago());
+    }
+    
+    /**
+     * Returns the where condition that selects the entries of the current version.
+     */
+    @Pure
+    private static @Nonnull WhereCondition<Integer> getWhereCondition() {
+        return WhereConditionBuilder.withConverter(Integer32Converter.INSTANCE).withObject(version.get()).withPrefix("version").build();
+    }
+    
+    /* -------------------------------------------------- Declarations -------------------------------------------------- */
+    
+    /**
+     * Maps the cataloged syntactic types to their entries.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull SyntacticType, @Nonnull SyntacticTypeEntry> syntacticTypes = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Maps the cataloged semantic types to their entries.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull SemanticType, @Nonnull SemanticTypeEntry> semanticTypes = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Maps the cataloged semantic types to their generic parameters.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull SemanticType, @Nonnull ImmutableList<@Nonnull SemanticType>> parameters = ConcurrentHashMapBuilder.build();
+    
+    /* -------------------------------------------------- Initialization -------------------------------------------------- */
+    
+    /**
+     * Creates the database tables and reads the unexpired declarations of the current version into memory.
+     */
+    @Committing
+    @PureWithSideEffects
+    @Initialize(target = TypeCatalog.class, dependencies = {IdentifierResolver.class, GeneralUnit.class})
+    public static void initializeCatalog() throws DatabaseException {
+        SQL.createTable(SyntacticTypeEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+        SQL.createTable(SemanticTypeEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+        SQL.createTable(SemanticTypeParameterEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+        
+        for (@Nonnull SyntacticTypeEntry entry : SQL.selectAll(SyntacticTypeEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, getWhereCondition())) {
+            if (!isExpired(entry.getTime())) { syntacticTypes.put(entry.getType(), entry); }
+        }
+        
+        final @Nonnull Map<@Nonnull SemanticType, @Nonnull List<@Nullable SemanticType>> lists = new HashMap<>();
+        for (@Nonnull SemanticTypeParameterEntry entry : SQL.selectAll(SemanticTypeParameterEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, getWhereCondition())) {
+            final @Nonnull List<@Nullable SemanticType> list = lists.computeIfAbsent(entry.getType(), type -> new ArrayList<>());
+            while (list.size() <= entry.getPosition()) { list.add(null); }
+            list.set(entry.getPosition(), entry.getParameter());
+        }
+        
+        for (@Nonnull SemanticTypeEntry entry : SQL.selectAll(SemanticTypeEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, getWhereCondition())) {
+            if (isExpired(entry.getTime())) { continue; }
+            final @Nullable List<@Nullable SemanticType> list = lists.get(entry.getType());
+            if (list != null && list.contains(null)) { Log.warning("Ignoring the cataloged declaration of $ because some of its parameters are missing.", entry.getType().getAddress()); continue; }
+            semanticTypes.put(entry.getType(), entry);
+            parameters.put(entry.getType(), list != null ? ImmutableList.withElementsOf(list) : SemanticTypeAttributes.NONE);
+        }
+        
+        Log.debugging("Read $ syntactic and $ semantic type declarations from the catalog.", syntacticTypes.size(), semanticTypes.size());
+    }
+    
+    /* -------------------------------------------------- Retrieval -------------------------------------------------- */
+    
+    /**
+     * Returns the cataloged number of generic parameters of the given syntactic type or null if the type is not cataloged or its declaration has expired.
+     */
+    @Pure
+    public static @Nullable Byte getNumberOfParameters(@Nonnull SyntacticType syntacticType) {
+        final @Nullable SyntacticTypeEntry entry = syntacticTypes.get(syntacticType);
+        return entry != null && !isExpired(entry.getTime()) ? entry.getNumberOfParameters() : null;
+    }
+    
+    /**
+     * Returns the cataloged attributes of the given semantic type or null if the type is not cataloged or its declaration has expired.
+     * The types on which the given type depends are loaded first, which is again served by the catalog.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static @Nullable SemanticTypeAttributes getAttributes(@Nonnull SemanticType semanticType) throws ExternalException {
+        final @Nullable SemanticTypeEntry entry = semanticTypes.get(semanticType);
+        if (entry == null || isExpired(entry.getTime())) { return null; }
+        
+        final @Nonnull ImmutableList<@Nonnull SemanticType> typeParameters = parameters.get(semanticType);
+        entry.getSyntacticBase().ensureLoaded();
+        for (@Nonnull SemanticType parameter : typeParameters) { parameter.ensureLoaded(); }
+        final @Nullable SemanticType semanticBase = entry.getSemanticBase();
+        if (semanticBase != null) { semanticBase.ensureLoaded(); }
+        
+        final @Nonnull List<@Nonnull Category> categories = new ArrayList<>();
+        for (@Nonnull Category category : Category.values()) {
+            if ((entry.getCategories() & 1 << category.getValue()) != 0) { categories.add(category); }
+        }
+        return SemanticTypeAttributesBuilder.withSyntacticBase(entry.getSyntacticBase()).withCategories(ImmutableList.withElementsOf(categories)).withCachingPeriod(entry.getCachingPeriod()).withParameters(typeParameters).withSemanticBase(semanticBase).build();
+    }
+    
+    /* -------------------------------------------------- Storage -------------------------------------------------- */
+    
+    /**
+     * Stores the given number of generic parameters of the given syntactic type unless an unexpired declaration is already cataloged.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void store(@Nonnull SyntacticType syntacticType, byte numberOfParameters) throws DatabaseException {
+        final @Nullable SyntacticTypeEntry cachedEntry = syntacticTypes.get(syntacticType);
+        if (cachedEntry != null && !isExpired(cachedEntry.getTime())) { return; }
+        final @Nonnull SyntacticTypeEntry entry = SyntacticTypeEntryBuilder.withType(syntacticType).withNumberOfParameters(numberOfParameters).withVersion(version.get()).withTime(TimeBuilder.build()).build();
+        SQL.insertOrReplace(SyntacticTypeEntryConverter.INSTANCE, entry, GeneralUnit.INSTANCE);
+        syntacticTypes.put(syntacticType, entry);
+    }
+    
+    /**
+     * Returns whether an unexpired declaration of the given semantic type is cataloged.
+     */
+    @Pure
+    private static boolean isCataloged(@Nonnull SemanticType semanticType) {
+        final @Nullable SemanticTypeEntry entry = semanticTypes.get(semanticType);
+        return entry != null && !isExpired(entry.getTime());
+    }
+    
+    /**
+     * Stores the given attributes of the given semantic type together with the declarations of all the types it depends on.
+     * All the types on which the given type depends have to be loaded already (as required by the attributes).
+     * Nothing is stored if an unexpired declaration of the given type is already cataloged.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void store(@Nonnull SemanticType semanticType, @Nonnull SemanticTypeAttributes attributes) throws DatabaseException {
+        if (isCataloged(semanticType)) { return; }
+        
+        final @Nonnull SyntacticType syntacticBase = attributes.getSyntacticBase();
+        store(syntacticBase, syntacticBase.getNumberOfParameters());
+        for (@Nonnull SemanticType parameter : attributes.getParameters()) { store(parameter); }
+        final @Nullable SemanticType semanticBase = attributes.getSemanticBase();
+        if (semanticBase != null) { store(semanticBase); }
+        
+        final @Nonnull SemanticTypeEntry entry = SemanticTypeEntry.from(semanticType, attributes, version.get(), TimeBuilder.build());
+        SQL.insertOrReplace(SemanticTypeEntryConverter.INSTANCE, entry, GeneralUnit.INSTANCE);
+        // The parameters of an earlier declaration are deleted first so that no parameters remain beyond the current number of parameters.
+        SQL.delete(SemanticTypeParameterEntryConverter.INSTANCE, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(SemanticTypeConverter.INSTANCE).withObject(semanticType).withPrefix("type").build());
+        int position = 0;
+        for (@Nonnull SemanticType parameter : attributes.getParameters()) {
+            SQL.insertOrReplace(SemanticTypeParameterEntryConverter.INSTANCE, SemanticTypeParameterEntryBuilder.withType(semanticType).withPosition(position++).withParameter(parameter).withVersion(version.get()).build(), GeneralUnit.INSTANCE);
+        }
+        parameters.put(semanticType, attributes.getParameters());
+        semanticTypes.put(semanticType, entry);
+    }
+    
+    /**
+     * Stores the declaration of the given loaded semantic type, which is used for the types on which another type depends.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void store(@Nonnull SemanticType semanticType) throws DatabaseException {
+        if (isCataloged(semanticType)) { return; }
+        store(semanticType, SemanticTypeAttributesBuilder.withSyntacticBase(semanticType.getSyntacticBase()).withCategories(semanticType.getCategories()).withCachingPeriod(semanticType.getCachingPeriod()).withParameters(semanticType.getParameters()).withSemanticBase(semanticType.getSemanticBase()).build());
+    }
+    
+}
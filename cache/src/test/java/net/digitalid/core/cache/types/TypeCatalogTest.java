@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.cache.types;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.annotations.type.Loaded;
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributes;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SemanticTypeConverter;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.GeneralUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link TypeCatalog type catalog}.
+ */
+public class TypeCatalogTest extends CoreTest {
+    
+    public static final @Nonnull @Loaded SemanticType FIRST = SemanticType.map("first.catalog.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.STRING).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build());
+    
+    public static final @Nonnull @Loaded SemanticType SECOND = SemanticType.map("second.catalog.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.INTEGER64).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build());
+    
+    @BeforeClass
+    public static void initializeCatalog() throws ExternalException {
+        TypeCatalog.initializeCatalog();
+    }
+    
+    private static @Nonnull SemanticTypeAttributes getTupleAttributes(@Nonnull SemanticType... parameters) {
+        return SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.TUPLE).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).withParameters(ImmutableList.withElements(parameters)).build();
+    }
+    
+    private static int getNumberOfStoredParameters(@Nonnull SemanticType type) throws ExternalException {
+        return SQL.selectAll(SemanticTypeParameterEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(SemanticTypeConverter.INSTANCE).withObject(type).withPrefix("type").build()).size();
+    }
+    
+    @Test
+    public void shouldServeStoredDeclarationsFromMemoryAndAfterReloading() throws ExternalException {
+        final @Nonnull SemanticType type = SemanticType.map("tuple.catalog.test@core.digitalid.net");
+        TypeCatalog.store(type, getTupleAttributes(FIRST, SECOND));
+        Database.commit();
+        
+        final @Nullable SemanticTypeAttributes attributes = TypeCatalog.getAttributes(type);
+        assertThat(attributes).isNotNull();
+        assertThat(attributes.getParameters()).containsExactly(FIRST, SECOND);
+        assertThat(TypeCatalog.getAttributes(FIRST)).isNotNull();
+        
+        TypeCatalog.initializeCatalog();
+        final @Nullable SemanticTypeAttributes reloadedAttributes = TypeCatalog.getAttributes(type);
+        assertThat(reloadedAttributes).isNotNull();
+        assertThat(reloadedAttributes.getParameters()).containsExactly(FIRST, SECOND);
+        assertThat(reloadedAttributes.getSyntacticBase()).isEqualTo(SyntacticType.TUPLE);
+    }
+    
+    @Test
+    public void shouldDeleteSurplusParametersWhenStoringFewerParameters() throws ExternalException {
+        final @Nonnull SemanticType type = SemanticType.map("shrinking.catalog.test@core.digitalid.net");
+        TypeCatalog.store(type, getTupleAttributes(FIRST, SECOND));
+        Database.commit();
+        assertThat(getNumberOfStoredParameters(type)).isEqualTo(2);
+        
+        final @Nonnull Time timeToLive = TypeCatalog.timeToLive.get();
+        // A negative time to live lets every declaration expire so that the type is stored again.
+        TypeCatalog.timeToLive.set(TimeBuilder.withValue(-Time.HOUR.getValue()).build());
+        try {
+            TypeCatalog.store(type, getTupleAttributes(SECOND));
+            Database.commit();
+        } finally {
+            TypeCatalog.timeToLive.set(timeToLive);
+        }
+        assertThat(getNumberOfStoredParameters(type)).isEqualTo(1);
+        
+        TypeCatalog.initializeCatalog();
+        final @Nullable SemanticTypeAttributes attributes = TypeCatalog.getAttributes(type);
+        assertThat(attributes).isNotNull();
+        assertThat(attributes.getParameters()).containsExactly(SECOND);
+    }
+    
+}
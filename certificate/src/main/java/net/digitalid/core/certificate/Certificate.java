@@ -15,9 +15,36 @@
  */
 package net.digitalid.core.certificate;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.parameter.Modified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.collections.set.FreezableHashSetBuilder;
+import net.digitalid.utility.collections.set.FreezableSet;
+import net.digitalid.utility.collections.set.ReadOnlySet;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.tuples.Pair;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
 import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.expression.PassiveExpression;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.pack.Pack;
 import net.digitalid.core.subject.CoreServiceCoreSubject;
 
 /**
@@ -26,74 +53,143 @@ import net.digitalid.core.subject.CoreServiceCoreSubject;
 @Immutable
 public abstract class Certificate extends CoreServiceCoreSubject<NonHostEntity, Long> {
     
+    /* -------------------------------------------------- Authorizations -------------------------------------------------- */
+    
+    /**
+     * The resolved authorization of an issuer for a type, which consists of the restrictions along every delegation chain from the issuer to the type.
+     */
+    @Immutable
+    static final class Authorization {
+        
+        /**
+         * Stores the time until which this authorization may be used.
+         */
+        private final @Nonnull Time expiration;
+        
+        /**
+         * Stores the restrictions of each delegation chain, where a chain without restrictions authorizes every content.
+         */
+        private final @Nonnull @Frozen ReadOnlyList<@Nonnull @Frozen ReadOnlyList<@Nonnull PassiveExpression>> chains;
+        
+        /**
+         * Stores the identities on the delegation chains, whose changed delegations invalidate this authorization.
+         */
+        private final @Nonnull @Frozen ReadOnlySet<@Nonnull InternalNonHostIdentity> identities;
+        
+        private Authorization(@Nonnull Time expiration, @Nonnull @Frozen ReadOnlyList<@Nonnull @Frozen ReadOnlyList<@Nonnull PassiveExpression>> chains, @Nonnull @Frozen ReadOnlySet<@Nonnull InternalNonHostIdentity> identities) {
+            this.expiration = expiration;
+            this.chains = chains;
+            this.identities = identities;
+        }
+        
+        /**
+         * Returns whether the given content matches all the restrictions of at least one delegation chain.
+         */
+        @Pure
+        private boolean matches(@Nonnull Pack content) {
+            outer: for (@Nonnull ReadOnlyList<@Nonnull PassiveExpression> chain : chains) {
+                for (@Nonnull PassiveExpression restriction : chain) {
+                    if (!restriction.matches(content)) { continue outer; }
+                }
+                return true;
+            }
+            return false;
+        }
+        
+    }
+    
+    /**
+     * Caches the authorizations of issuers for types so that the delegation chains are not walked for every certificate.
+     * Restrictions match attribute contents independently of the entity for which they were recovered, which is why the entity is not part of the key.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull Pair<@Nonnull InternalNonHostIdentity, @Nonnull SemanticType>, @Nonnull Authorization> authorizations = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Stores the generation of the cached authorizations, which is incremented whenever authorizations are invalidated.
+     */
+    private static final @Nonnull AtomicLong generation = new AtomicLong();
+    
+    /**
+     * Collects the restrictions of the delegation chains from the given issuer to the given type, where the given restrictions lead to the given issuer.
+     * Issuers that already lie on the current chain are skipped so that cycles are not followed.
+     */
+    @Pure
+    @NonCommitting
+    private static void collectChains(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type, @Modified @Nonnull FreezableList<@Nonnull PassiveExpression> restrictions, @Modified @Nonnull FreezableSet<@Nonnull InternalNonHostIdentity> path, @Modified @Nonnull FreezableList<@Nonnull @Frozen ReadOnlyList<@Nonnull PassiveExpression>> chains, @Modified @Nonnull FreezableSet<@Nonnull InternalNonHostIdentity> identities) throws ExternalException {
+        identities.add(issuer);
+        if (issuer.equals(type)) {
+            chains.add(FreezableArrayList.withElementsOf(restrictions).freeze());
+            return;
+        }
+        
+        if (!path.add(issuer)) { return; }
+        for (@Nonnull Delegation delegation : DelegationLoader.load(entity, issuer, type)) {
+            restrictions.add(delegation.getRestriction());
+            collectChains(entity, delegation.getDelegator(), type, restrictions, path, chains, identities);
+            restrictions.remove(restrictions.size() - 1);
+        }
+        path.remove(issuer);
+    }
+    
+    /**
+     * Returns the authorization of the given issuer for the given type.
+     * The delegations are loaded with the {@link DelegationLoader} for the given entity and the resolved authorization is cached for the caching period of the delegation attributes.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nonnull Authorization getAuthorization(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type) throws ExternalException {
+        final @Nonnull Pair<@Nonnull InternalNonHostIdentity, @Nonnull SemanticType> key = Pair.of(issuer, type);
+        final @Nullable Authorization cached = authorizations.get(key);
+        if (cached != null && !cached.expiration.isInPast()) { return cached; }
+        
+        final long currentGeneration = generation.get();
+        final @Nonnull FreezableList<@Nonnull @Frozen ReadOnlyList<@Nonnull PassiveExpression>> chains = FreezableArrayList.withNoElements();
+        final @Nonnull FreezableSet<@Nonnull InternalNonHostIdentity> identities = FreezableHashSetBuilder.build();
+        collectChains(entity, issuer, type, FreezableArrayList.withNoElements(), FreezableHashSetBuilder.build(), chains, identities);
+        final @Nonnull Authorization authorization = new Authorization(TimeBuilder.build().add(Delegations.INCOMING.getCachingPeriod()), chains.freeze(), identities.freeze());
+        // Authorizations that were resolved while authorizations were invalidated are used but not cached.
+        if (generation.get() == currentGeneration) {
+            authorizations.put(key, authorization);
+            if (generation.get() != currentGeneration) { authorizations.remove(key, authorization); }
+        }
+        return authorization;
+    }
+    
+    /**
+     * Invalidates the cached authorizations in which the given identity is the issuer or lies on a delegation chain.
+     * This method has to be called whenever the incoming or outgoing delegations of the given identity change.
+     */
+    @Impure
+    public static void invalidateDelegations(@Nonnull InternalNonHostIdentity identity) {
+        generation.incrementAndGet();
+        authorizations.entrySet().removeIf(entry -> entry.getValue().identities.contains(identity));
+    }
+    
+    /**
+     * Invalidates the cached authorizations of all issuers.
+     */
+    @Impure
+    public static void invalidateAllDelegations() {
+        generation.incrementAndGet();
+        authorizations.clear();
+    }
+    
+    /* -------------------------------------------------- Authorization -------------------------------------------------- */
+    
+    /**
+     * Returns whether the given issuer is authorized to certify the given content.
+     * The issuer is authorized if it is the type of the content or if it has been delegated
+     * the certification of the content by an identity that is authorized itself.
+     * The delegations are loaded for the given entity if the authorization of the issuer is not cached.
+     */
+    @Pure
+    @NonCommitting
+    public static boolean isAuthorized(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull Pack content) throws ExternalException {
+        return getAuthorization(entity, issuer, content.getType()).matches(content);
+    }
+    
     // TODO:
     
-//    /**
-//     * Stores the semantic type {@code delegation@core.digitalid.net}.
-//     */
-//    public static final @Nonnull SemanticType DELEGATION = SemanticType.map("delegation@core.digitalid.net").load(TupleWrapper.XDF_TYPE, NonHostIdentity.IDENTIFIER, PassiveExpression.TYPE);
-//    
-//    /**
-//     * Stores the semantic type {@code list.delegation@core.digitalid.net}.
-//     */
-//    public static final @Nonnull SemanticType DELEGATIONS = SemanticType.map("list.delegation@core.digitalid.net").load(ListWrapper.XDF_TYPE, DELEGATION);
-//    
-//    /**
-//     * Stores the semantic type {@code outgoing.list.delegation@core.digitalid.net}.
-//     */
-//    public static final @Nonnull SemanticType OUTGOING_DELEGATIONS = SemanticType.map("outgoing.list.delegation@core.digitalid.net").load(new Category[] {Category.SEMANTIC_TYPE, Category.NATURAL_PERSON, Category.ARTIFICIAL_PERSON}, Time.TROPICAL_YEAR, DELEGATIONS);
-//    
-//    /**
-//     * Stores the semantic type {@code incoming.list.delegation@core.digitalid.net}.
-//     */
-//    public static final @Nonnull SemanticType INCOMING_DELEGATIONS = SemanticType.map("incoming.list.delegation@core.digitalid.net").load(new Category[] {Category.NATURAL_PERSON, Category.ARTIFICIAL_PERSON}, Time.TROPICAL_YEAR, DELEGATIONS);
-//    
-//    /**
-//     * Returns whether the given issuer is authorized to certify the given content.
-//     * 
-//     * @param issuer the issuer of interest.
-//     * @param content the content of interest.
-//     * 
-//     * @return whether the given issuer is authorized to certify the given content.
-//     */
-//    @Pure
-//    @NonCommitting
-//    public static boolean isAuthorized(@Nonnull InternalNonHostIdentity issuer, @Nonnull Block content) throws ExternalException {
-////        long vid = Mapper.getVid(identifier);
-////        long type = Mapper.getVid(new SelfcontainedWrapper(value).getIdentifier());
-////        
-////        if (vid == type) { return true; }
-////        
-////        // Load the certification delegations of the VID and recurse for each delegation that matches the type and the value.
-////        long time = System.currentTimeMillis() + getCachingPeriod(Vid.INCOMING_DELEGATIONS) - getCachingPeriod(type);
-////        Block attribute = getAttribute(vid, Vid.INCOMING_DELEGATIONS, time);
-////        if (attribute == null) { return false; }
-////        
-////        List<Block> incoming_delegations = ListWrapper.decodeNullableElements(SelfcontainedWrapper.decodeNonNullable(new SignatureWrapper(attribute, false).getElement()));
-////        for (final @Nonnull Block incoming_delegation : incoming_delegations) {
-////            Block[] elements = TupleWrapper.decode(incoming_delegation).getElementsNotNull(3);
-////            if (Mapper.getVid(StringWrapper.decodeNonNullable(elements[0])) == type) {
-////                String restriction = StringWrapper.decodeNonNullable(elements[2]);
-////                Expression expression = Expression.parse(restriction);
-////                if (expression.matches(value)) {
-////                    // Check that the delegating VID references the current VID with the same type and expression.
-////                    identifier = StringWrapper.decodeNonNullable(elements[1]);
-////                    attribute = getAttribute(Mapper.getVid(identifier), Vid.OUTGOING_DELEGATIONS, time);
-////                    if (attribute == null) { continue; }
-////                    List<Block> outgoing_delegations = ListWrapper.decodeNullableElements(SelfcontainedWrapper.decodeNonNullable(new SignatureWrapper(attribute, false).getElement()));
-////                    for (final @Nonnull Block outgoing_delegation : outgoing_delegations) {
-////                        elements = TupleWrapper.decode(outgoing_delegation).getElementsNotNull(3);
-////                        if (Mapper.getVid(StringWrapper.decodeNonNullable(elements[0])) == type && Mapper.getVid(StringWrapper.decodeNonNullable(elements[1])) == vid && StringWrapper.decodeNonNullable(elements[2]).equalsIgnoreCase(restriction)) {
-////                            if (isAuthorized(identifier, value)) { return true; }
-////                        }
-////                    }
-////                }
-////            }
-////        }
-//        
-//        return false;
-//    }
-//    
 //    public Certificate(@Nonnull NonHostEntity entity) {
 //        super(entity);
 //    }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.certificate;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.validation.annotations.generation.Provided;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.core.annotations.type.Loaded;
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.expression.PassiveExpression;
+import net.digitalid.core.identification.annotations.AttributeType;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+
+/**
+ * A delegation authorizes a delegate to certify the attributes of a type that match a restriction on behalf of the delegator.
+ * The delegation is only valid if the delegate lists it as incoming and the delegator lists it as outgoing delegation.
+ * 
+ * @see DelegationLoader
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateConverter
+public abstract class Delegation extends RootClass {
+    
+    /* -------------------------------------------------- Type -------------------------------------------------- */
+    
+    /**
+     * Stores the semantic type of a delegation.
+     */
+    public static final @Nonnull @Loaded SemanticType TYPE = SemanticType.map(DelegationConverter.INSTANCE).load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.BOOLEAN).build());
+    
+    /* -------------------------------------------------- Entity -------------------------------------------------- */
+    
+    /**
+     * Returns the entity for which the restriction of this delegation is recovered.
+     */
+    @Pure
+    @Provided
+    public abstract @Nonnull NonHostEntity getEntity();
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the identity that delegated the certification.
+     */
+    @Pure
+    public abstract @Nonnull InternalNonHostIdentity getDelegator();
+    
+    /**
+     * Returns the identity to which the certification is delegated.
+     */
+    @Pure
+    public abstract @Nonnull InternalNonHostIdentity getDelegate();
+    
+    /**
+     * Returns the type of the attributes whose certification is delegated.
+     */
+    @Pure
+    public abstract @Nonnull @AttributeType SemanticType getType();
+    
+    /**
+     * Returns the restriction that the certified attributes have to match.
+     */
+    @Pure
+    public abstract @Nonnull PassiveExpression getRestriction();
+    
+}
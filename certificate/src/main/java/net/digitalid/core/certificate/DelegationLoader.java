@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.certificate;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+
+/**
+ * The delegation loader loads the certification delegations of an issuer.
+ * The default loader knows no delegations and is replaced by the cache with a loader that retrieves the {@link Delegations delegation attributes}.
+ * 
+ * @see Certificate#isAuthorized(NonHostEntity, InternalNonHostIdentity, net.digitalid.core.pack.Pack)
+ */
+@Immutable
+@GenerateSubclass
+public abstract class DelegationLoader {
+    
+    /* -------------------------------------------------- Interface -------------------------------------------------- */
+    
+    /**
+     * Returns the delegations with which the given issuer may certify attributes of the given type.
+     * Only delegations that the issuer lists as incoming and their delegators list as outgoing are returned.
+     * The restrictions of the delegations are recovered for the given entity.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> getIncomingDelegations(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type) throws ExternalException {
+        return FreezableArrayList.<Delegation>withNoElements().freeze();
+    }
+    
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the configured delegation loader.
+     */
+    public static final @Nonnull Configuration<DelegationLoader> configuration = Configuration.<DelegationLoader>with(new DelegationLoaderSubclass());
+    
+    /* -------------------------------------------------- Static Access -------------------------------------------------- */
+    
+    /**
+     * Loads the delegations with which the given issuer may certify attributes of the given type for the given entity.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> load(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type) throws ExternalException {
+        return configuration.get().getIncomingDelegations(entity, issuer, type);
+    }
+    
+}
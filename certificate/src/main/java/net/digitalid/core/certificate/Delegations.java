@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.certificate;
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.generation.Provided;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.core.annotations.type.Loaded;
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.identification.annotations.AttributeType;
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+
+/**
+ * This class models the list of incoming or outgoing delegations that an identity publishes as attribute.
+ * 
+ * @see DelegationLoader
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateConverter
+public abstract class Delegations extends RootClass {
+    
+    /* -------------------------------------------------- Types -------------------------------------------------- */
+    
+    /**
+     * Stores the semantic type {@code outgoing.list.delegation@core.digitalid.net}.
+     */
+    public static final @Nonnull @Loaded @AttributeType SemanticType OUTGOING = SemanticType.map("outgoing.list.delegation@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.LIST).withParameters(ImmutableList.withElements(Delegation.TYPE)).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.TROPICAL_YEAR).build());
+    
+    /**
+     * Stores the semantic type {@code incoming.list.delegation@core.digitalid.net}.
+     */
+    public static final @Nonnull @Loaded @AttributeType SemanticType INCOMING = SemanticType.map("incoming.list.delegation@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.LIST).withParameters(ImmutableList.withElements(Delegation.TYPE)).withCategories(Category.INTERNAL_PERSONS).withCachingPeriod(Time.TROPICAL_YEAR).build());
+    
+    /* -------------------------------------------------- Entity -------------------------------------------------- */
+    
+    /**
+     * Returns the entity for which the restrictions of the delegations are recovered.
+     */
+    @Pure
+    @Provided
+    public abstract @Nonnull NonHostEntity getEntity();
+    
+    /* -------------------------------------------------- Delegations -------------------------------------------------- */
+    
+    /**
+     * Returns the delegations of this list.
+     */
+    @Pure
+    public abstract @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> getDelegations();
+    
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.certificate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.conversion.converters.StringConverter;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.exceptions.UncheckedExceptionBuilder;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.expression.PassiveExpressionBuilder;
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.CoreUnit;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+abstract class TestUnit extends CoreUnit {}
+
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+interface TestNonHostEntity extends NonHostEntity {
+    
+    @Pure
+    @Override
+    @PrimaryKey
+    public long getKey();
+    
+    @Pure
+    @Override
+    public @Nonnull InternalNonHostIdentity getIdentity();
+    
+}
+
+/**
+ * Unit testing of the {@link Certificate#isAuthorized(NonHostEntity, InternalNonHostIdentity, Pack) authorization} of issuers through delegations.
+ */
+public class CertificateTest extends CoreTest {
+    
+    private static final @Nonnull TestUnit UNIT;
+    
+    static {
+        try {
+            UNIT = TestUnitBuilder.withName("default").withHost(false).withClient(true).build();
+        } catch (@Nonnull ExternalException exception) {
+            throw UncheckedExceptionBuilder.withCause(exception).build();
+        }
+    }
+    
+    private static final @Nonnull SemanticType TYPE = SemanticType.map("name.delegation.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.STRING).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build());
+    
+    private static final @Nonnull InternalNonHostIdentity ALICE = SemanticType.map("alice.delegation.test@core.digitalid.net");
+    
+    private static final @Nonnull InternalNonHostIdentity BOB = SemanticType.map("bob.delegation.test@core.digitalid.net");
+    
+    private static final @Nonnull InternalNonHostIdentity CAROL = SemanticType.map("carol.delegation.test@core.digitalid.net");
+    
+    private static final @Nonnull NonHostEntity FIRST_ENTITY = TestNonHostEntityBuilder.withUnit(UNIT).withKey(1).withIdentity(ALICE).build();
+    
+    private static final @Nonnull NonHostEntity SECOND_ENTITY = TestNonHostEntityBuilder.withUnit(UNIT).withKey(2).withIdentity(BOB).build();
+    
+    /**
+     * Counts how often the delegations of an issuer were loaded.
+     */
+    private static final @Nonnull AtomicInteger loads = new AtomicInteger();
+    
+    /**
+     * This delegation loader knows the delegations from the type to Alice, from Alice to Bob (restricted to names with the prefix "x") and from Bob back to Alice.
+     */
+    @Immutable
+    private static class TestDelegationLoader extends DelegationLoader {
+        
+        private static @Nonnull Delegation delegation(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity delegator, @Nonnull InternalNonHostIdentity delegate, @Nonnull String restriction) {
+            return DelegationBuilder.withEntity(entity).withDelegator(delegator).withDelegate(delegate).withType(TYPE).withRestriction(PassiveExpressionBuilder.withEntity(entity).withString(restriction).build()).build();
+        }
+        
+        @Override
+        public @Nonnull @Frozen ReadOnlyList<@Nonnull Delegation> getIncomingDelegations(@Nonnull NonHostEntity entity, @Nonnull InternalNonHostIdentity issuer, @Nonnull SemanticType type) {
+            loads.incrementAndGet();
+            final @Nonnull FreezableList<@Nonnull Delegation> delegations = FreezableArrayList.withNoElements();
+            if (type.equals(TYPE)) {
+                if (issuer.equals(ALICE)) {
+                    delegations.add(delegation(entity, TYPE, ALICE, "everybody"));
+                    delegations.add(delegation(entity, BOB, ALICE, "everybody"));
+                } else if (issuer.equals(BOB)) {
+                    delegations.add(delegation(entity, ALICE, BOB, TYPE.getAddress().getString() + " / \"x\""));
+                }
+            }
+            return delegations.freeze();
+        }
+        
+    }
+    
+    private static @Nonnull DelegationLoader previousLoader;
+    
+    @BeforeClass
+    public static void installDelegationLoader() {
+        previousLoader = DelegationLoader.configuration.get();
+        DelegationLoader.configuration.set(new TestDelegationLoader());
+    }
+    
+    @AfterClass
+    public static void restoreDelegationLoader() {
+        DelegationLoader.configuration.set(previousLoader);
+        Certificate.invalidateAllDelegations();
+    }
+    
+    @Before
+    public void invalidateDelegations() {
+        Certificate.invalidateAllDelegations();
+        loads.set(0);
+    }
+    
+    private static @Nonnull Pack name(@Nonnull String name) {
+        return Pack.pack(StringConverter.INSTANCE, name, TYPE);
+    }
+    
+    @Test
+    public void shouldAuthorizeAlongTheDelegationChains() throws ExternalException {
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, TYPE, name("abc"))).isTrue();
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, ALICE, name("abc"))).isTrue();
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("xyz"))).isTrue();
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("abc"))).isFalse();
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, CAROL, name("xyz"))).isFalse();
+    }
+    
+    @Test
+    public void shouldResolveTheChainsOncePerIssuerAndType() throws ExternalException {
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("xyz"))).isTrue();
+        final int loadsOfFirstCheck = loads.get();
+        assertThat(loadsOfFirstCheck).isPositive();
+        
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("abc"))).isFalse();
+        assertThat(Certificate.isAuthorized(SECOND_ENTITY, BOB, name("xylophone"))).isTrue();
+        assertThat(loads.get()).isEqualTo(loadsOfFirstCheck);
+    }
+    
+    @Test
+    public void shouldResolveTheChainsAgainAfterAnInvalidation() throws ExternalException {
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("xyz"))).isTrue();
+        final int loadsOfFirstCheck = loads.get();
+        
+        Certificate.invalidateDelegations(CAROL);
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("xyz"))).isTrue();
+        assertThat(loads.get()).isEqualTo(loadsOfFirstCheck);
+        
+        Certificate.invalidateDelegations(ALICE);
+        assertThat(Certificate.isAuthorized(FIRST_ENTITY, BOB, name("xyz"))).isTrue();
+        assertThat(loads.get()).isEqualTo(2 * loadsOfFirstCheck);
+    }
+    
+}
@@ -28,6 +28,8 @@ import net.digitalid.utility.collections.collection.ReadOnlyCollection;
 import net.digitalid.utility.collections.map.FreezableLinkedHashMapBuilder;
 import net.digitalid.utility.collections.map.FreezableMap;
 import net.digitalid.utility.collections.set.ReadOnlySet;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
 import net.digitalid.utility.conversion.exceptions.ConversionException;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
@@ -59,6 +61,8 @@ import net.digitalid.database.interfaces.Database;
 import net.digitalid.core.asymmetrickey.PublicKey;
 import net.digitalid.core.asymmetrickey.PublicKeyRetriever;
 import net.digitalid.core.client.role.NativeRole;
+import net.digitalid.core.client.role.NonNativeRole;
+import net.digitalid.core.client.role.RoleModule;
 import net.digitalid.core.commitment.Commitment;
 import net.digitalid.core.commitment.CommitmentBuilder;
 import net.digitalid.core.group.Element;
@@ -68,6 +72,7 @@ import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
 import net.digitalid.core.identification.identity.HostIdentity;
 import net.digitalid.core.parameters.Parameters;
 import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
+import net.digitalid.core.synchronizer.Synchronizer;
 import net.digitalid.core.unit.CoreUnit;
 
 /**
@@ -160,6 +165,7 @@ public abstract class Client extends CoreUnit {
         
         clients.put(getIdentifier(), this);
         protectedSecret.set(ClientSecretLoader.load(getIdentifier()));
+        Synchronizer.resume(this);
     }
     
     /* -------------------------------------------------- CoreUnit -------------------------------------------------- */
@@ -178,6 +184,15 @@ public abstract class Client extends CoreUnit {
     
     /* -------------------------------------------------- Commitment -------------------------------------------------- */
     
+    /**
+     * Returns a new commitment to the given secret at the given host with the given public key and time.
+     */
+    @Pure
+    protected @Nonnull Commitment getCommitment(@Nonnull HostIdentity host, @Nonnull PublicKey publicKey, @Nonnull Time time, @Nonnull Exponent secret) {
+        final @Nonnull Element value = publicKey.getAu().pow(secret);
+        return CommitmentBuilder.withHost(host).withTime(time).withValue(value.getValue()).withPublicKey(publicKey).build();
+    }
+    
     /**
      * Returns a new commitment for the given subject with the given secret.
      */
@@ -186,18 +201,43 @@ public abstract class Client extends CoreUnit {
     protected @Nonnull Commitment getCommitment(@Nonnull InternalNonHostIdentifier subject, @Nonnull Exponent secret) throws ExternalException {
         final @Nonnull HostIdentity host = subject.getHostIdentifier().resolve();
         final @Nonnull Time time = TimeBuilder.build();
-        final @Nonnull PublicKey publicKey = PublicKeyRetriever.retrieve(host, time);
-        final @Nonnull Element value = publicKey.getAu().pow(secret);
-        return CommitmentBuilder.withHost(host).withTime(time).withValue(value.getValue()).withPublicKey(publicKey).build();
+        return getCommitment(host, PublicKeyRetriever.retrieve(host, time), time, secret);
     }
     
     /**
-     * Returns a new commitment for the given subject.
+     * A cached commitment together with the secret to which it commits.
+     */
+    @Immutable
+    private static final class CachedCommitment {
+        
+        private final @Nonnull Exponent secret;
+        
+        private final @Nonnull Commitment commitment;
+        
+        private CachedCommitment(@Nonnull Exponent secret, @Nonnull Commitment commitment) {
+            this.secret = secret;
+            this.commitment = commitment;
+        }
+        
+    }
+    
+    /**
+     * Caches the commitment to the secret of this client for each host.
+     * A cached commitment is only used as long as neither the secret of this client nor the public key of the host has changed.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull HostIdentity, @Nonnull CachedCommitment> commitments = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns a commitment for the given subject, which is computed only once for each secret and public key of the subject's host.
      */
     @Pure
     @NonCommitting
     public @Nonnull Commitment getCommitment(@Nonnull InternalNonHostIdentifier subject) throws ExternalException {
-        return getCommitment(subject, protectedSecret.get());
+        final @Nonnull HostIdentity host = subject.getHostIdentifier().resolve();
+        final @Nonnull Time time = TimeBuilder.build();
+        final @Nonnull PublicKey publicKey = PublicKeyRetriever.retrieve(host, time);
+        final @Nonnull Exponent secret = protectedSecret.get();
+        return commitments.compute(host, (key, cachedCommitment) -> cachedCommitment != null && cachedCommitment.secret == secret && cachedCommitment.commitment.getPublicKey().equals(publicKey) ? cachedCommitment : new CachedCommitment(secret, getCommitment(host, publicKey, time, secret))).commitment;
     }
     
     /**
@@ -225,6 +265,13 @@ public abstract class Client extends CoreUnit {
         
         ClientSecretLoader.store(getIdentifier(), newSecret);
         protectedSecret.set(newSecret);
+        commitments.clear();
+        
+        for (@Nonnull NativeRole role : roles) {
+            CredentialsIndex.remove(role);
+            for (@Nonnull NonNativeRole nonNativeRole : RoleModule.getNonNativeRoles(role)) { CredentialsIndex.remove(nonNativeRole); }
+        }
+        Database.commit();
     }
     
     /* -------------------------------------------------- Roles -------------------------------------------------- */
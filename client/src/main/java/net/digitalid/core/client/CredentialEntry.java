@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.client;
+
+import java.math.BigInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.core.client.role.Role;
+import net.digitalid.core.credential.ClientCredential;
+import net.digitalid.core.credential.ClientCredentialBuilder;
+import net.digitalid.core.credential.utility.ExposedExponent;
+import net.digitalid.core.group.Exponent;
+import net.digitalid.core.restrictions.Restrictions;
+
+/**
+ * This type models an entry in the credentials table.
+ * The secret of the client is not stored but provided again when the credential is recovered.
+ * 
+ * @see CredentialsIndex
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter(schema = "general")
+abstract class CredentialEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the key of the role for which the credential was issued.
+     */
+    @Pure
+    abstract long getRole();
+    
+    /**
+     * Returns the exposed exponent of the credential.
+     */
+    @Pure
+    abstract @Nonnull ExposedExponent getExposedExponent();
+    
+    /**
+     * Returns the value of the certifying base of the credential.
+     */
+    @Pure
+    abstract @Nonnull BigInteger getC();
+    
+    /**
+     * Returns the certifying exponent of the credential.
+     */
+    @Pure
+    abstract @Nonnull Exponent getE();
+    
+    /**
+     * Returns the blinding exponent of the credential.
+     */
+    @Pure
+    abstract @Nonnull Exponent getB();
+    
+    /**
+     * Returns the hash of the restrictions of the credential.
+     */
+    @Pure
+    abstract @Nonnull Exponent getV();
+    
+    /**
+     * Returns the serial number of the credential.
+     */
+    @Pure
+    abstract @Nonnull Exponent getI();
+    
+    /**
+     * Returns the restrictions of the credential.
+     */
+    @Pure
+    abstract @Nullable Restrictions getRestrictions();
+    
+    /* -------------------------------------------------- Import -------------------------------------------------- */
+    
+    /**
+     * Returns the entry for the given credential of the given role.
+     */
+    @Pure
+    static @Nonnull CredentialEntry from(@Nonnull Role role, @Nonnull ClientCredential credential) {
+        return CredentialEntryBuilder.withRole(role.getKey()).withExposedExponent(credential.getExposedExponent()).withC(credential.getC().getValue()).withE(credential.getE()).withB(credential.getB()).withV(credential.getV()).withI(credential.getI()).withRestrictions(credential.getRestrictions()).build();
+    }
+    
+    /* -------------------------------------------------- Export -------------------------------------------------- */
+    
+    /**
+     * Returns the credential of this entry with the given client secret.
+     */
+    @Pure
+    @Nonnull ClientCredential toCredential(@Nonnull Exponent secret) {
+        final @Nonnull ExposedExponent exposedExponent = getExposedExponent();
+        return ClientCredentialBuilder.withExposedExponent(exposedExponent).withC(exposedExponent.getPublicKey().getCompositeGroup().getElement(getC())).withE(getE()).withU(secret).withV(getV()).withI(getI()).withRestrictions(getRestrictions()).withB(getB()).build();
+    }
+    
+}
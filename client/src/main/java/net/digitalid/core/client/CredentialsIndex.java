@@ -13,125 +13,328 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// TODO
-
 package net.digitalid.core.client;
-//
-//import java.math.BigInteger;
-//import java.security.SecureRandom;
-//
-//import javax.annotation.Nonnull;
-//import javax.annotation.Nullable;
-//
-//import net.digitalid.utility.freezable.annotations.Frozen;
-//import net.digitalid.utility.exceptions.ExternalException;
-//import net.digitalid.utility.validation.annotations.size.NonEmpty;
-//
-//import net.digitalid.database.annotations.transaction.NonCommitting;
-//
-//import net.digitalid.core.credential.ClientCredential;
-//import net.digitalid.core.credential.annotations.Active;
-//import net.digitalid.core.credential.utility.SaltedAgentPermissions;
-//import net.digitalid.core.entity.annotations.OfInternalPerson;
-//
-///**
-// * Description.
-// */
-public class CredentialsIndex {
-//    
-//    /* -------------------------------------------------- Credentials Index -------------------------------------------------- */
-//    
-//    // TODO: The following code was moved from the ClientCredentials class.
-//    
-//    /**
-//     * Caches the role-based client credentials given their role and permissions.
-//     */
-//    private static final @Nonnull ConcurrentMap<NonNativeRole, ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential>> roleBasedCredentials = new ConcurrentHashMap<>();
-//    
-//    /**
-//     * Returns a role-based credential for the given role and permissions.
-//     * 
-//     * @param role the role for which the credential is to be returned.
-//     * @param permissions the permissions which are to be contained.
-//     * 
-//     * @return a role-based credential for the given role and permissions.
-//     */
-//    @NonCommitting
-//    public static @Nonnull @Active ClientCredential getRoleBased(@Nonnull @OfInternalPerson NonNativeRole role, @Nonnull @Frozen @NonEmpty ReadOnlyAgentPermissions permissions) throws ExternalException {
-//        @Nullable ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential> map = roleBasedCredentials.get(role);
-//        if (map == null) { map = roleBasedCredentials.putIfAbsentElseReturnPresent(role, new ConcurrentHashMap<ReadOnlyAgentPermissions, ClientCredential>()); }
-//        @Nullable ClientCredential credential = map.get(permissions);
-//        
-//        if (credential == null || !credential.isActive()) {
-//            final @Nonnull SaltedAgentPermissions randomizedPermissions = new SaltedAgentPermissions(permissions);
-//            final @Nonnull BigInteger value = new BigInteger(Parameters.BLINDING_EXPONENT, new SecureRandom());
-//            final @Nonnull CredentialReply reply = new CredentialInternalQuery(role, randomizedPermissions, value).sendNotNull();
-//            credential = map.putIfAbsentElseReturnPresent(permissions, reply.getInternalCredential(randomizedPermissions, role.getRelation(), value, role.getClient().getSecret()));
-//        }
-//        
-//        return credential;
-//    }
-//    
-//    
-//    /**
-//     * Caches the identity-based client credentials given their role and permissions.
-//     */
-//    private static final @Nonnull ConcurrentMap<Role, ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential>> identityBasedCredentials = new ConcurrentHashMap<>();
-//    
-//    /**
-//     * Returns an identity-based credential for the given role and permissions.
-//     * 
-//     * @param role the role for which the credential is to be returned.
-//     * @param permissions the permissions which are to be contained.
-//     * 
-//     * @return an identity-based credential for the given role and permissions.
-//     */
-//    @NonCommitting
-//    public static @Nonnull @Active ClientCredential getIdentityBased(@Nonnull @OfInternalPerson Role role, @Nonnull @Frozen @NonEmpty ReadOnlyAgentPermissions permissions) throws ExternalException {
-//        @Nullable ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential> map = identityBasedCredentials.get(role);
-//        if (map == null) { map = identityBasedCredentials.putIfAbsentElseReturnPresent(role, new ConcurrentHashMap<ReadOnlyAgentPermissions, ClientCredential>()); }
-//        @Nullable ClientCredential credential = map.get(permissions);
-//        
-//        if (credential == null || !credential.isActive()) {
-//            final @Nonnull SaltedAgentPermissions randomizedPermissions = new SaltedAgentPermissions(permissions);
-//            final @Nonnull CredentialReply reply = new CredentialInternalQuery(role, randomizedPermissions).sendNotNull();
-//            credential = map.putIfAbsentElseReturnPresent(permissions, reply.getInternalCredential(randomizedPermissions, null, BigInteger.ZERO, role.getClient().getSecret()));
-//        }
-//        
-//        return credential;
-//    }
-//    
-//    
-//    /**
-//     * Caches the attribute-based client credentials given their role, value and permissions.
-//     */
-//    private static final @Nonnull ConcurrentMap<Role, ConcurrentMap<ReadOnlyPair<CertifiedAttributeValue, ReadOnlyAgentPermissions>, ClientCredential>> attributeBasedCredentials = new ConcurrentHashMap<>();
-//    
-//    /**
-//     * Returns an attribute-based credential for the given role, value and permissions.
-//     * 
-//     * @param role the role for which the credential is to be returned.
-//     * @param value the certified attribute value which is to be shortened.
-//     * @param permissions the permissions which are to be contained.
-//     * 
-//     * @return an attribute-based credential for the given role, value and permissions.
-//     */
-//    @NonCommitting
-//    public static @Nonnull @Active ClientCredential getAttributeBased(@Nonnull @OfInternalPerson Role role, @Nonnull CertifiedAttributeValue value, @Nonnull @Frozen @NonEmpty ReadOnlyAgentPermissions permissions) throws ExternalException {
-//        // TODO: Shortening with CredentialExternalQuery.
-//        throw new UnsupportedOperationException("Credentials for attribute-based access control are not yet supported!");
-//    }
-//    
-//    
-//    /**
-//     * Removes the credentials of the given role.
-//     * 
-//     * @param role the role whose credentials are to be removed.
-//     */
-//    public static void remove(@Nonnull Role role) {
-//        roleBasedCredentials.remove(role);
-//        identityBasedCredentials.remove(role);
-//        attributeBasedCredentials.remove(role);
-//    }
-//    
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.functional.failable.FailableBinaryFunction;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.threading.NamedThreadFactory;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
+import net.digitalid.utility.validation.annotations.type.Mutable;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.Committing;
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereCondition;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.client.role.Role;
+import net.digitalid.core.credential.ClientCredential;
+import net.digitalid.core.credential.annotations.Active;
+import net.digitalid.core.identification.identity.IdentifierResolver;
+import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
+import net.digitalid.core.unit.GeneralUnit;
+import net.digitalid.core.unit.TransactionEnd;
+
+/**
+ * The credentials index caches the identity- and role-based {@link ClientCredential client credentials} of {@link Role roles}.
+ * Credentials are kept per role and permissions, persisted in the general schema and reissued in the background
+ * before they cease to be {@link ClientCredential#isActive() active}. Since each use of a credential requires a
+ * fresh randomization, a few randomized copies are computed ahead of time so that signing never has to wait.
+ */
+@Utility
+public abstract class CredentialsIndex {
+    
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the function that requests a new credential for the given role and permissions from the host of the role.
+     * The issued credential is role-based if the given role is non-native and identity-based otherwise.
+     */
+    public static final @Nonnull Configuration<FailableBinaryFunction<@Nonnull Role, @Nonnull @Frozen ReadOnlyAgentPermissions, @Nonnull ClientCredential, ExternalException>> issuer = Configuration.withUnknownProvider();
+    
+    /**
+     * Stores the number of randomized credentials that are computed ahead of time for each role and permissions.
+     */
+    public static final @Nonnull Configuration<Integer> randomizations = Configuration.with(3);
+    
+    /* -------------------------------------------------- Creation -------------------------------------------------- */
+    
+    /**
+     * Creates the database table.
+     */
+    @Committing
+    @PureWithSideEffects
+    @Initialize(target = CredentialsIndex.class, dependencies = {IdentifierResolver.class, GeneralUnit.class})
+    public static void createTable() throws DatabaseException {
+        SQL.createTable(CredentialEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+    }
+    
+    /* -------------------------------------------------- Slots -------------------------------------------------- */
+    
+    /**
+     * A slot holds the current credential for a role and permissions together with its precomputed randomizations.
+     */
+    @Mutable
+    private static class Slot {
+        
+        /**
+         * Stores the credential as issued by the host or null if none has been issued yet.
+         */
+        private volatile @Nullable ClientCredential credential;
+        
+        /**
+         * Stores randomized copies of the current credential, which are used at most once.
+         */
+        private final @Nonnull ConcurrentLinkedQueue<@Nonnull ClientCredential> randomizedCredentials = new ConcurrentLinkedQueue<>();
+        
+        /**
+         * Stores the time when this slot was last used in order to stop refreshing unused credentials.
+         */
+        private volatile @Nonnull Time lastUse = TimeBuilder.build();
+        
+    }
+    
+    /**
+     * Maps the roles to the slots of their permissions.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull Role, @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot>> slots = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns the slots of the given role and loads its persisted credentials if the role is accessed for the first time.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> getSlots(@Nonnull Role role) throws DatabaseException {
+        @Nullable ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = slots.get(role);
+        if (map == null) {
+            final @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> newMap = ConcurrentHashMapBuilder.build();
+            for (@Nonnull CredentialEntry entry : SQL.selectAll(CredentialEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, getWhereCondition(role))) {
+                final @Nonnull ClientCredential credential = entry.toCredential(role.getUnit().secret.get());
+                if (credential.isActive() && credential.getPermissions() != null) {
+                    final @Nonnull Slot slot = new Slot();
+                    slot.credential = credential;
+                    newMap.put(credential.getPermissions(), slot);
+                }
+            }
+            map = slots.putIfAbsentElseReturnPresent(role, newMap);
+        }
+        return map;
+    }
+    
+    /* -------------------------------------------------- Retrieval -------------------------------------------------- */
+    
+    /**
+     * Returns a randomized and active credential for the given role and permissions.
+     * A new credential is only requested from the host if no active credential is cached,
+     * and a randomization is only computed here if all precomputed randomizations have been used up.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static @Nonnull @Active ClientCredential get(@Nonnull Role role, @Nonnull @Frozen @NonEmpty ReadOnlyAgentPermissions permissions) throws ExternalException {
+        final @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = getSlots(role);
+        final @Nullable Slot presentSlot = map.get(permissions);
+        final @Nonnull Slot slot = presentSlot != null ? presentSlot : map.putIfAbsentElseReturnPresent(permissions, new Slot());
+        slot.lastUse = TimeBuilder.build();
+        
+        @Nullable ClientCredential credential = slot.credential;
+        if (credential == null || !credential.isActive()) { credential = issue(role, map, permissions, slot, credential); }
+        
+        @Nullable ClientCredential randomizedCredential = slot.randomizedCredentials.poll();
+        while (randomizedCredential != null && !randomizedCredential.isSimilarTo(credential)) { randomizedCredential = slot.randomizedCredentials.poll(); }
+        final @Nullable ScheduledExecutorService executor = getExecutor();
+        if (executor != null) { executor.execute(() -> randomize(slot)); }
+        return randomizedCredential != null ? randomizedCredential : credential.getRandomizedCredential();
+    }
+    
+    /* -------------------------------------------------- Issuance -------------------------------------------------- */
+    
+    /**
+     * Requests a new credential for the given role and permissions and stores it in the given slot of the given slots of the role if the slot still contains the given replaced credential.
+     * The request is sent without holding a lock, and only the replacement of the credential and the persistence of the credentials of the role are synchronized.
+     * If a concurrent caller replaced the credential in the meantime, its credential is returned and the credential requested here is discarded.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static @Nonnull ClientCredential issue(@Nonnull Role role, @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map, @Nonnull @Frozen ReadOnlyAgentPermissions permissions, @Nonnull Slot slot, @Nullable ClientCredential replacedCredential) throws ExternalException {
+        final @Nonnull ClientCredential credential = issuer.get().evaluate(role, permissions);
+        synchronized (map) {
+            final @Nullable ClientCredential presentCredential = slot.credential;
+            if (presentCredential != replacedCredential && presentCredential != null && presentCredential.isActive()) { return presentCredential; }
+            slot.credential = credential;
+            slot.randomizedCredentials.clear();
+            store(role);
+        }
+        return credential;
+    }
+    
+    /**
+     * Returns the number of randomized copies that are currently available for the given role and permissions.
+     */
+    @Pure
+    static int getNumberOfRandomizations(@Nonnull Role role, @Nonnull @Frozen ReadOnlyAgentPermissions permissions) {
+        final @Nullable ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = slots.get(role);
+        final @Nullable Slot slot = map != null ? map.get(permissions) : null;
+        return slot != null ? slot.randomizedCredentials.size() : 0;
+    }
+    
+    /**
+     * Tops up the randomized copies of the credential in the given slot.
+     */
+    @PureWithSideEffects
+    private static void randomize(@Nonnull Slot slot) {
+        final @Nullable ClientCredential credential = slot.credential;
+        while (credential != null && credential == slot.credential && slot.randomizedCredentials.size() < randomizations.get()) {
+            slot.randomizedCredentials.add(credential.getRandomizedCredential());
+        }
+    }
+    
+    /* -------------------------------------------------- Refreshing -------------------------------------------------- */
+    
+    /**
+     * Stores the executor that runs the background refreshing and randomization of the cached credentials or null if it has not been started yet.
+     */
+    private static @Nullable ScheduledExecutorService executor;
+    
+    /**
+     * Stores whether the credentials index has been shut down, after which no executor is started anymore.
+     */
+    private static boolean shutDown = false;
+    
+    /**
+     * Returns the executor that runs the background refreshing and randomization or null if the credentials index has been shut down.
+     * The executor is started when a credential is requested for the first time. Its thread is a daemon thread, which does not keep
+     * the virtual machine alive, and the executor is shut down by a shutdown hook if it is not {@link #shutDown() shut down} before.
+     */
+    @Impure
+    private static synchronized @Nullable ScheduledExecutorService getExecutor() {
+        if (executor == null && !shutDown) {
+            final @Nonnull ThreadFactory threadFactory = NamedThreadFactory.with("Credentials");
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final @Nonnull Thread thread = threadFactory.newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(CredentialsIndex::refresh, 1L, 1L, TimeUnit.MINUTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(CredentialsIndex::shutDown, "CredentialsShutdown"));
+        }
+        return executor;
+    }
+    
+    /**
+     * Reissues the credentials whose half-hour issuance window has passed if they were used within the last hour.
+     * The replaced credentials remain active for another half hour, which leaves enough time to retry failed requests.
+     */
+    @Committing
+    @PureWithSideEffects
+    static void refresh() {
+        final @Nonnull Time cutoff = Time.HALF_HOUR.ago();
+        final @Nonnull Time lastUse = Time.HOUR.ago();
+        for (@Nonnull Map.Entry<@Nonnull Role, @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot>> roleEntry : slots.entrySet()) {
+            final @Nonnull ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = roleEntry.getValue();
+            for (@Nonnull Map.Entry<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> slotEntry : map.entrySet()) {
+                final @Nonnull Slot slot = slotEntry.getValue();
+                final @Nullable ClientCredential credential = slot.credential;
+                if (credential != null && credential.getExposedExponent().getIssuance().isLessThan(cutoff) && slot.lastUse.isGreaterThan(lastUse)) {
+                    try {
+                        issue(roleEntry.getKey(), map, slotEntry.getKey(), slot, credential);
+                        Database.commit();
+                    } catch (@Nonnull ExternalException | RuntimeException exception) {
+                        Log.warning("Could not refresh a credential.", exception);
+                        TransactionEnd.rollback();
+                    }
+                }
+                randomize(slot);
+            }
+        }
+    }
+    
+    /**
+     * Shuts down the background refreshing and randomization of the cached credentials.
+     */
+    @Impure
+    public static void shutDown() {
+        final @Nullable ScheduledExecutorService startedExecutor;
+        synchronized (CredentialsIndex.class) {
+            shutDown = true;
+            startedExecutor = executor;
+        }
+        if (startedExecutor != null && !startedExecutor.isShutdown()) {
+            try {
+                Log.verbose("Shutting down the credentials index.");
+                startedExecutor.shutdown();
+                startedExecutor.awaitTermination(1L, TimeUnit.MINUTES);
+            } catch (@Nonnull InterruptedException exception) {
+                Log.warning("Could not shut down the credentials index.", exception);
+            }
+        }
+    }
+    
+    /* -------------------------------------------------- Persistence -------------------------------------------------- */
+    
+    /**
+     * Returns the where condition that selects the entries of the given role.
+     */
+    @Pure
+    private static @Nonnull WhereCondition<Long> getWhereCondition(@Nonnull Role role) {
+        return WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(role.getKey()).withPrefix("role").build();
+    }
+    
+    /**
+     * Replaces the persisted credentials of the given role with the currently cached ones.
+     * The caller has to hold the lock on the slots of the role so that concurrent replacements do not lose each other's rows.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void store(@Nonnull Role role) throws DatabaseException {
+        SQL.delete(CredentialEntryConverter.INSTANCE, GeneralUnit.INSTANCE, getWhereCondition(role));
+        final @Nullable ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = slots.get(role);
+        if (map != null) {
+            for (@Nonnull Slot slot : map.values()) {
+                final @Nullable ClientCredential credential = slot.credential;
+                if (credential != null && credential.isActive()) { SQL.insertOrAbort(CredentialEntryConverter.INSTANCE, CredentialEntry.from(role, credential), GeneralUnit.INSTANCE); }
+            }
+        }
+    }
+    
+    /* -------------------------------------------------- Removal -------------------------------------------------- */
+    
+    /**
+     * Removes the credentials of the given role, for example because the role was removed or the client secret rotated.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void remove(@Nonnull Role role) throws DatabaseException {
+        final @Nullable ConcurrentMap<@Nonnull ReadOnlyAgentPermissions, @Nonnull Slot> map = slots.remove(role);
+        if (map != null) {
+            synchronized (map) { SQL.delete(CredentialEntryConverter.INSTANCE, GeneralUnit.INSTANCE, getWhereCondition(role)); }
+        } else {
+            SQL.delete(CredentialEntryConverter.INSTANCE, GeneralUnit.INSTANCE, getWhereCondition(role));
+        }
+    }
+    
 }
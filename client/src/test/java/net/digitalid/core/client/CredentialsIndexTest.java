@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.client;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.functional.failable.FailableBinaryFunction;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.asymmetrickey.PrivateKey;
+import net.digitalid.core.asymmetrickey.PrivateKeyRetriever;
+import net.digitalid.core.asymmetrickey.PublicKey;
+import net.digitalid.core.asymmetrickey.PublicKeyRetriever;
+import net.digitalid.core.client.role.Role;
+import net.digitalid.core.client.role.RoleArgumentsBuilder;
+import net.digitalid.core.client.role.RoleModule;
+import net.digitalid.core.commitment.SecretCommitmentBuilder;
+import net.digitalid.core.conversion.XDF;
+import net.digitalid.core.credential.ClientCredential;
+import net.digitalid.core.credential.ClientCredentialBuilder;
+import net.digitalid.core.credential.utility.ExposedExponent;
+import net.digitalid.core.credential.utility.ExposedExponentBuilder;
+import net.digitalid.core.credential.utility.HashedOrSaltedAgentPermissions;
+import net.digitalid.core.group.Element;
+import net.digitalid.core.group.Exponent;
+import net.digitalid.core.group.ExponentBuilder;
+import net.digitalid.core.group.GroupWithKnownOrder;
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.identification.identity.HostIdentity;
+import net.digitalid.core.identification.identity.InternalPerson;
+import net.digitalid.core.parameters.Parameters;
+import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
+import net.digitalid.core.restrictions.Restrictions;
+import net.digitalid.core.restrictions.RestrictionsConverter;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.GeneralUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CredentialsIndexTest extends CoreTest {
+    
+    private static final @Nonnull AtomicInteger issuances = new AtomicInteger();
+    
+    private static volatile @Nullable Time issuance = null;
+    
+    private static @Nonnull ClientCredential createCredential(@Nonnull Role role, @Nonnull ReadOnlyAgentPermissions permissions) throws ExternalException {
+        final @Nonnull Time time = TimeBuilder.build();
+        final @Nonnull HostIdentity hostIdentity = HostIdentifier.with("digitalid.net").resolve();
+        final @Nonnull PublicKey publicKey = PublicKeyRetriever.retrieve(hostIdentity, time);
+        final @Nonnull PrivateKey privateKey = PrivateKeyRetriever.retrieve(hostIdentity.getAddress(), time);
+        final @Nonnull GroupWithKnownOrder group = privateKey.getCompositeGroup();
+        
+        final @Nonnull ExposedExponent exposedExponent = ExposedExponentBuilder.withIssuer(role.getIssuer().castTo(InternalPerson.class)).withIssuance(issuance != null ? issuance : time.roundDown(Time.HALF_HOUR)).withHashedOrSaltedPermissions(HashedOrSaltedAgentPermissions.with(permissions, true)).withRole(null).withAttributeContent(null).build();
+        final @Nonnull Exponent secret = ExponentBuilder.withValue(BigInteger.TEN).build();
+        final @Nonnull Element f = group.getElement(SecretCommitmentBuilder.withHost(hostIdentity).withTime(time).withPublicKey(publicKey).withSecret(secret).build().getValue());
+        final @Nonnull Exponent i = ExponentBuilder.withValue(BigInteger.ZERO).build();
+        final @Nonnull Exponent v = ExponentBuilder.withValue(new BigInteger(1, XDF.hash(RestrictionsConverter.INSTANCE, Restrictions.MIN))).build();
+        final @Nonnull Exponent e = ExponentBuilder.withValue(BigInteger.probablePrime(Parameters.CREDENTIAL_EXPONENT.get(), new SecureRandom())).build();
+        final @Nonnull Element c = f.multiply(publicKey.getAi().pow(i)).multiply(publicKey.getAv().pow(v)).multiply(publicKey.getAo().pow(exposedExponent.getHash()).inverse()).pow(e.inverse(group)).inverse();
+        
+        issuances.incrementAndGet();
+        return ClientCredentialBuilder.withExposedExponent(exposedExponent).withC(c).withE(e).withU(secret).withV(v).withI(i).withRestrictions(Restrictions.MIN).build();
+    }
+    
+    private static @Nullable FailableBinaryFunction<@Nonnull Role, @Nonnull @Frozen ReadOnlyAgentPermissions, @Nonnull ClientCredential, ExternalException> previousIssuer = null;
+    
+    @BeforeClass
+    public static void setUpIssuer() {
+        if (CredentialsIndex.issuer.isSet()) { previousIssuer = CredentialsIndex.issuer.get(); }
+        CredentialsIndex.issuer.set(CredentialsIndexTest::createCredential);
+    }
+    
+    @AfterClass
+    public static void restoreIssuer() {
+        if (previousIssuer != null) { CredentialsIndex.issuer.set(previousIssuer); }
+    }
+    
+    private static @Nonnull Role createRole(long agentKey) throws ExternalException {
+        final @Nonnull Client client = ClientBuilder.withIdentifier("net.digitalid.test").withDisplayName("Test Client").withPreferredPermissions(ReadOnlyAgentPermissions.GENERAL_WRITE).build();
+        return RoleModule.map(RoleArgumentsBuilder.withClient(client).withIssuer(InternalNonHostIdentifier.with("bob@digitalid.net").resolve()).withAgentKey(agentKey).build());
+    }
+    
+    private static int countEntries(@Nonnull Role role) throws DatabaseException {
+        return SQL.selectAll(CredentialEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(role.getKey()).withPrefix("role").build()).size();
+    }
+    
+    @Test
+    public void shouldIssueOnlyOncePerPermissions() throws ExternalException {
+        final @Nonnull Role role = createRole(1);
+        final int before = issuances.get();
+        final @Nonnull ClientCredential first = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        final @Nonnull ClientCredential second = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        assertThat(issuances.get() - before).isEqualTo(1);
+        assertThat(second.isSimilarTo(first)).isTrue();
+        
+        CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_WRITE);
+        assertThat(issuances.get() - before).isEqualTo(2);
+    }
+    
+    @Test
+    public void shouldPersistOneEntryPerPermissions() throws ExternalException {
+        final @Nonnull Role role = createRole(2);
+        CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_WRITE);
+        assertThat(countEntries(role)).isEqualTo(2);
+    }
+    
+    @Test
+    public void shouldRemoveEntriesOfRole() throws ExternalException {
+        final @Nonnull Role role = createRole(3);
+        CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        CredentialsIndex.remove(role);
+        assertThat(countEntries(role)).isEqualTo(0);
+        
+        final int before = issuances.get();
+        CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        assertThat(issuances.get() - before).isEqualTo(1);
+    }
+    
+    @Test
+    public void shouldRefreshCredentialsOfPastIssuanceWindows() throws ExternalException {
+        final @Nonnull Role role = createRole(4);
+        final @Nonnull ClientCredential first;
+        issuance = Time.HALF_HOUR.ago().roundDown(Time.HALF_HOUR);
+        try {
+            first = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        } finally {
+            issuance = null;
+        }
+        
+        final int before = issuances.get();
+        CredentialsIndex.refresh();
+        assertThat(issuances.get() - before).isEqualTo(1);
+        
+        final @Nonnull ClientCredential second = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        assertThat(second.isSimilarTo(first)).isFalse();
+        assertThat(second.getExposedExponent().getIssuance().isGreaterThan(first.getExposedExponent().getIssuance())).isTrue();
+        assertThat(countEntries(role)).isEqualTo(1);
+        
+        CredentialsIndex.refresh();
+        assertThat(issuances.get() - before).isEqualTo(1);
+    }
+    
+    @Test
+    public void shouldPrecomputeRandomizations() throws ExternalException, InterruptedException {
+        final @Nonnull Role role = createRole(5);
+        final @Nonnull ClientCredential first = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        CredentialsIndex.refresh();
+        assertThat(CredentialsIndex.getNumberOfRandomizations(role, ReadOnlyAgentPermissions.GENERAL_READ)).isEqualTo(CredentialsIndex.randomizations.get());
+        
+        final @Nonnull ClientCredential second = CredentialsIndex.get(role, ReadOnlyAgentPermissions.GENERAL_READ);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.isSimilarTo(first)).isTrue();
+        
+        for (int i = 0; i < 100 && CredentialsIndex.getNumberOfRandomizations(role, ReadOnlyAgentPermissions.GENERAL_READ) < CredentialsIndex.randomizations.get(); i++) { Thread.sleep(50); }
+        assertThat(CredentialsIndex.getNumberOfRandomizations(role, ReadOnlyAgentPermissions.GENERAL_READ)).isEqualTo(CredentialsIndex.randomizations.get());
+    }
+    
+}
@@ -15,6 +15,7 @@
  */
 package net.digitalid.core.conversion.decoders;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -57,7 +58,7 @@ public abstract class FileDecoder extends XDFDecoder<FileException> {
     @Pure
     public static @Nonnull FileDecoder of(@Nonnull File file) throws FileException {
         try {
-            return new FileDecoderSubclass(new FileInputStream(file));
+            return new FileDecoderSubclass(new BufferedInputStream(new FileInputStream(file)));
         } catch (@Nonnull FileNotFoundException exception) {
             throw FileExceptionBuilder.withCause(exception).build();
         }
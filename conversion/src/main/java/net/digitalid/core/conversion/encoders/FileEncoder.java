@@ -15,6 +15,7 @@
  */
 package net.digitalid.core.conversion.encoders;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -57,7 +58,7 @@ public abstract class FileEncoder extends XDFEncoder<FileException> {
     @Pure
     public static @Nonnull FileEncoder of(@Nonnull File file) throws FileException {
         try {
-            return new FileEncoderSubclass(new FileOutputStream(file));
+            return new FileEncoderSubclass(new BufferedOutputStream(new FileOutputStream(file)));
         } catch (@Nonnull FileNotFoundException exception) {
             throw FileExceptionBuilder.withCause(exception).build();
         }
@@ -26,6 +26,7 @@ import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.validation.annotations.generation.Default;
 import net.digitalid.utility.validation.annotations.generation.NonRepresentative;
 import net.digitalid.utility.validation.annotations.generation.Normalize;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
 /**
@@ -47,6 +48,14 @@ public abstract class RequestException extends ExternalException {
     @Pure
     public abstract @Nonnull RequestErrorCode getCode();
     
+    /* -------------------------------------------------- Retry After -------------------------------------------------- */
+    
+    /**
+     * Returns the number of milliseconds after which the request may be retried or zero if retrying the request is not expected to succeed.
+     */
+    @Pure
+    public abstract @Default("0") @NonNegative long getRetryAfter();
+    
     /* -------------------------------------------------- Message -------------------------------------------------- */
     
     @Pure
@@ -33,6 +33,7 @@ import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.exceptions.DatabaseException;
 
 import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 
 /**
  * This class models active expressions.
@@ -62,7 +63,16 @@ public abstract class ActiveExpression extends AbstractExpression {
     @Pure
     @NonCommitting
     public @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() throws DatabaseException, RecoveryException {
-        return getExpression().getContacts();
+        return getExpression().getContactBitmap().toContacts(getEntity());
+    }
+    
+    /**
+     * Returns the bitmap of the contacts denoted by this active expression.
+     */
+    @Pure
+    @NonCommitting
+    public @Nonnull ContactBitmap getContactBitmap() throws DatabaseException, RecoveryException {
+        return getExpression().getContactBitmap();
     }
     
 }
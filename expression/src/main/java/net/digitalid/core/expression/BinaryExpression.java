@@ -19,12 +19,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.annotations.ownership.Capturable;
-import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.exceptions.CaseExceptionBuilder;
-import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
@@ -32,7 +29,7 @@ import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.exceptions.DatabaseException;
 
 import net.digitalid.core.expression.operators.BinaryOperator;
-import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
 
@@ -93,18 +90,17 @@ abstract class BinaryExpression extends Expression {
     @Pure
     @Override
     @NonCommitting
-    @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() throws DatabaseException, RecoveryException {
+    @Nonnull ContactBitmap getContactBitmap() throws DatabaseException, RecoveryException {
         Require.that(isActive()).orThrow("This expression has to be active but was $.", this);
         
-        final @Nonnull FreezableSet<Contact> leftContacts = getLeftChild().getContacts();
-        final @Nonnull FreezableSet<Contact> rightContacts = getRightChild().getContacts();
+        final @Nonnull ContactBitmap leftContacts = getLeftChild().getContactBitmap();
+        final @Nonnull ContactBitmap rightContacts = getRightChild().getContactBitmap();
         switch (getOperator()) {
-            case ADDITION: leftContacts.addAll(rightContacts); break;
-            case SUBTRACTION: leftContacts.removeAll(rightContacts); break;
-            case MULTIPLICATION: leftContacts.retainAll(rightContacts); break;
+            case ADDITION: return leftContacts.union(rightContacts);
+            case SUBTRACTION: return leftContacts.difference(rightContacts);
+            case MULTIPLICATION: return leftContacts.intersection(rightContacts);
             default: throw CaseExceptionBuilder.withVariable("operator").withValue(getOperator()).build();
         }
-        return leftContacts;
     }
     
     @Pure
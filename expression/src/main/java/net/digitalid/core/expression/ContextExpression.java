@@ -19,14 +19,11 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.annotations.ownership.Capturable;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
 import net.digitalid.utility.collaboration.enumerations.Priority;
-import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
-import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
@@ -35,6 +32,7 @@ import net.digitalid.database.exceptions.DatabaseException;
 
 import net.digitalid.core.expression.operators.BinaryOperator;
 import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.node.context.Context;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
@@ -79,10 +77,10 @@ abstract class ContextExpression extends Expression {
     @Pure
     @Override
     @NonCommitting
-    @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() throws DatabaseException, RecoveryException {
+    @Nonnull ContactBitmap getContactBitmap() throws DatabaseException, RecoveryException {
         Require.that(isActive()).orThrow("This expression has to be active but was $.", this);
         
-        return getContext().getAllContacts();
+        return getContext().getContactBitmap();
     }
     
     @Pure
@@ -19,16 +19,12 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.annotations.ownership.Capturable;
-import net.digitalid.utility.collections.set.FreezableLinkedHashSetBuilder;
-import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.contracts.Require;
-import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
 import net.digitalid.core.expression.operators.BinaryOperator;
-import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
 
@@ -63,10 +59,10 @@ abstract class EmptyExpression extends Expression {
     
     @Pure
     @Override
-    @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() {
+    @Nonnull ContactBitmap getContactBitmap() {
         Require.that(isActive()).orThrow("This expression has to be active but was $.", this);
         
-        return FreezableLinkedHashSetBuilder.build();
+        return ContactBitmap.EMPTY;
     }
     
     @Pure
@@ -19,10 +19,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.annotations.ownership.Capturable;
-import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
-import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.rootclass.RootClass;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
@@ -30,7 +27,7 @@ import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.exceptions.DatabaseException;
 
 import net.digitalid.core.expression.operators.BinaryOperator;
-import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
 
@@ -70,13 +67,13 @@ abstract class Expression extends RootClass {
     /* -------------------------------------------------- Aggregations -------------------------------------------------- */
     
     /**
-     * Returns the contacts denoted by this expression.
+     * Returns the bitmap of the contacts denoted by this expression.
      * 
      * @require isActive() : "This expression is active.";
      */
     @Pure
     @NonCommitting
-    abstract @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() throws DatabaseException, RecoveryException;
+    abstract @Nonnull ContactBitmap getContactBitmap() throws DatabaseException, RecoveryException;
     
     /**
      * Returns whether this expression matches the given attribute content.
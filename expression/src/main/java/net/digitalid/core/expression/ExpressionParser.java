@@ -15,14 +15,25 @@
  */
 package net.digitalid.core.expression;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.ownership.NonCaptured;
+import net.digitalid.utility.annotations.parameter.Modified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
 import net.digitalid.utility.exceptions.ExternalException;
-import net.digitalid.utility.functional.iterables.FiniteIterable;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+import net.digitalid.utility.validation.annotations.type.Mutable;
 import net.digitalid.utility.validation.annotations.type.Utility;
 
 import net.digitalid.database.annotations.transaction.NonCommitting;
@@ -31,6 +42,7 @@ import net.digitalid.core.entity.NonHostEntity;
 import net.digitalid.core.expression.operators.BinaryOperator;
 import net.digitalid.core.expression.operators.RestrictionOperator;
 import net.digitalid.core.identification.identifier.Identifier;
+import net.digitalid.core.identification.identity.IdentifierResolver;
 import net.digitalid.core.identification.identity.Identity;
 import net.digitalid.core.identification.identity.Person;
 import net.digitalid.core.identification.identity.SemanticType;
@@ -74,100 +86,484 @@ abstract class ExpressionParser {
         return identifier.contains("-") ? "\"" + identifier + "\"" : identifier;
     }
     
-    /* -------------------------------------------------- Index -------------------------------------------------- */
+    /**
+     * Returns whether the given string is a non-empty sequence of decimal digits.
+     */
+    @Pure
+    static boolean isNumber(@Nonnull String string) {
+        final int length = string.length();
+        if (length == 0) { return false; }
+        for (int i = 0; i < length; i++) {
+            final char c = string.charAt(i);
+            if (c < '0' || c > '9') { return false; }
+        }
+        return true;
+    }
+    
+    /* -------------------------------------------------- Operators -------------------------------------------------- */
+    
+    /**
+     * Stores the binary operators so that the array is not cloned for every character.
+     */
+    private static final @Nonnull BinaryOperator[] BINARY_OPERATORS = BinaryOperator.values();
     
     /**
-     * Returns the last index of one of the given characters in the given string considering quotation marks and parentheses.
+     * Stores the restriction operators so that the array is not cloned for every character.
+     */
+    private static final @Nonnull RestrictionOperator[] RESTRICTION_OPERATORS = RestrictionOperator.values();
+    
+    /**
+     * Stores the highest order of the binary operators.
+     */
+    private static final int MAXIMAL_ORDER = 1;
+    
+    /**
+     * Returns the binary operator with the given symbol and order or null if there is no such operator.
      */
     @Pure
-    private static int lastIndexOf(@Nonnull String string, @Nonnull FiniteIterable<@Nonnull BinaryOperator> characters) throws RecoveryException {
-        int parenthesesCounter = 0;
+    private static @Nullable BinaryOperator getBinaryOperator(char symbol, int order) {
+        for (@Nonnull BinaryOperator operator : BINARY_OPERATORS) {
+            if (operator.getSymbol() == symbol && operator.getOrder() == order) { return operator; }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns whether the given character terminates an atom, which is the case for the symbols of the binary operators and for parentheses.
+     */
+    @Pure
+    private static boolean isDelimiter(char c) {
+        if (c == '(' || c == ')') { return true; }
+        for (@Nonnull BinaryOperator operator : BINARY_OPERATORS) {
+            if (operator.getSymbol() == c) { return true; }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the longest restriction operator whose symbol starts at the given index of the given atom or null if there is none.
+     */
+    @Pure
+    private static @Nullable RestrictionOperator getRestrictionOperator(@Nonnull String atom, int index) {
+        @Nullable RestrictionOperator result = null;
+        for (@Nonnull RestrictionOperator operator : RESTRICTION_OPERATORS) {
+            if (atom.startsWith(operator.getSymbol(), index) && (result == null || operator.getSymbol().length() > result.getSymbol().length())) { result = operator; }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the index of the first restriction operator outside of quotation marks in the given atom or -1 if there is none.
+     */
+    @Pure
+    private static int indexOfRestrictionOperator(@Nonnull String atom) {
         boolean quotation = false;
+        final int length = atom.length();
+        for (int i = 0; i < length; i++) {
+            final char c = atom.charAt(i);
+            if (c == '\"') { quotation = !quotation; }
+            else if (!quotation && getRestrictionOperator(atom, i) != null) { return i; }
+        }
+        return -1;
+    }
+    
+    /* -------------------------------------------------- Templates -------------------------------------------------- */
+    
+    /**
+     * A template is the parsed form of an expression string, in which the identifiers and contexts are not yet resolved for an entity.
+     * Since templates contain no entities and no identities, they can be cached without being invalidated when contacts or identities change.
+     */
+    @Immutable
+    abstract static class Template {
         
-        final int length = string.length();
-        for (int i = length - 1; i >= 0; i--) {
-            final char c = string.charAt(i);
-            
-            // Check if the char is in a quotation.
-            if (quotation) {
-                if (c == '\"') { quotation = false; }
-                continue;
-            } else if (c == '\"') {
-                quotation = true;
-                continue;
-            }
-            
-            // Check for parentheses.
-            if (c == ')') {
-                parenthesesCounter++;
-                continue;
-            } else if (c == '(') {
-                if (parenthesesCounter == 0) { throw RecoveryExceptionBuilder.withMessage("There is an opening parenthesis too much: " + string).build(); }
-                parenthesesCounter--;
-                continue;
+        /**
+         * Returns the expression of this template for the given entity.
+         */
+        @Pure
+        @NonCommitting
+        abstract @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) throws ExternalException;
+        
+        /**
+         * Adds the identifiers that are referenced by this template to the given list.
+         */
+        @Pure
+        void collectIdentifiers(@NonCaptured @Modified @Nonnull FreezableList<@Nonnull Identifier> identifiers) {}
+        
+        /**
+         * Returns this template with parentheses around every binary expression.
+         */
+        @Pure
+        @Override
+        public abstract @Nonnull String toString();
+        
+    }
+    
+    /**
+     * Stores the template of the empty expression.
+     */
+    private static final @Nonnull Template EMPTY = new Template() {
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) {
+            return new EmptyExpressionSubclass();
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return "";
+        }
+        
+    };
+    
+    /**
+     * Stores the template of the expression that matches everybody.
+     */
+    private static final @Nonnull Template EVERYBODY = new Template() {
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) {
+            return new EverybodyExpressionSubclass();
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return "everybody";
+        }
+        
+    };
+    
+    /**
+     * A binary template combines two templates with a binary operator.
+     */
+    @Immutable
+    private static final class BinaryTemplate extends Template {
+        
+        private final @Nonnull Template leftChild;
+        
+        private final @Nonnull Template rightChild;
+        
+        private final @Nonnull BinaryOperator operator;
+        
+        private BinaryTemplate(@Nonnull Template leftChild, @Nonnull Template rightChild, @Nonnull BinaryOperator operator) {
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+            this.operator = operator;
+        }
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) throws ExternalException {
+            return new BinaryExpressionSubclass(leftChild.instantiate(entity), rightChild.instantiate(entity), operator);
+        }
+        
+        @Pure
+        @Override
+        void collectIdentifiers(@NonCaptured @Modified @Nonnull FreezableList<@Nonnull Identifier> identifiers) {
+            leftChild.collectIdentifiers(identifiers);
+            rightChild.collectIdentifiers(identifiers);
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return "(" + leftChild + operator.getSymbol() + rightChild + ")";
+        }
+        
+    }
+    
+    /**
+     * A context template references a context of the entity by its number.
+     */
+    @Immutable
+    private static final class ContextTemplate extends Template {
+        
+        private final long number;
+        
+        private ContextTemplate(long number) {
+            this.number = number;
+        }
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) throws ExternalException {
+            return new ContextExpressionSubclass(Context.of(entity, number));
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return String.valueOf(number);
+        }
+        
+    }
+    
+    /**
+     * An identity template references either a person, which becomes a contact of the entity, or a semantic type.
+     */
+    @Immutable
+    private static final class IdentityTemplate extends Template {
+        
+        private final @Nonnull String identifier;
+        
+        private IdentityTemplate(@Nonnull String identifier) {
+            this.identifier = identifier;
+        }
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) throws ExternalException {
+            final @Nonnull Identity identity = Identifier.with(identifier).resolve();
+            if (identity instanceof Person) { return new ContactExpressionSubclass(Contact.of(entity, (Person) identity)); }
+            if (identity instanceof SemanticType) {
+                final @Nonnull SemanticType type = (SemanticType) identity;
+                type.ensureLoaded();
+                return new RestrictionExpressionSubclass(type/* TODO: .checkIsAttributeType() */, null, null);
             }
-            
-            if (parenthesesCounter == 0 && characters.map(BinaryOperator::getSymbol).contains(c)) { return i; } // TODO: Do something smarter than mapping and auto-boxing.
+            throw RecoveryExceptionBuilder.withMessage("The identity has to be either a person or a semantic type: " + identifier).build();
         }
         
-        if (parenthesesCounter > 0) { throw RecoveryExceptionBuilder.withMessage("There is an opening parenthesis missing: " + string).build(); }
-        if (quotation) { throw RecoveryExceptionBuilder.withMessage("The quotation marks do not match: " + string).build(); }
+        @Pure
+        @Override
+        void collectIdentifiers(@NonCaptured @Modified @Nonnull FreezableList<@Nonnull Identifier> identifiers) {
+            identifiers.add(Identifier.with(identifier));
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return "\"" + identifier + "\"";
+        }
         
-        return -1;
     }
     
-    /* -------------------------------------------------- Parsing -------------------------------------------------- */
+    /**
+     * A restriction template restricts the attribute of a semantic type with an operator and a literal.
+     */
+    @Immutable
+    private static final class RestrictionTemplate extends Template {
+        
+        private final @Nonnull String identifier;
+        
+        private final @Nonnull RestrictionOperator operator;
+        
+        private final @Nonnull String literal;
+        
+        private RestrictionTemplate(@Nonnull String identifier, @Nonnull RestrictionOperator operator, @Nonnull String literal) {
+            this.identifier = identifier;
+            this.operator = operator;
+            this.literal = literal;
+        }
+        
+        @Pure
+        @Override
+        @NonCommitting
+        @Nonnull Expression instantiate(@Nonnull NonHostEntity entity) throws ExternalException {
+            return restrict(identifier, operator, literal);
+        }
+        
+        @Pure
+        @Override
+        void collectIdentifiers(@NonCaptured @Modified @Nonnull FreezableList<@Nonnull Identifier> identifiers) {
+            identifiers.add(Identifier.with(identifier));
+        }
+        
+        @Pure
+        @Override
+        public @Nonnull String toString() {
+            return "\"" + identifier + "\"" + operator.getSymbol() + literal;
+        }
+        
+    }
     
     /**
-     * Parses the given string for the given entity.
+     * Returns the restriction of the type with the given identifier, which is rejected if the given literal cannot be compared with the syntactic base of the type.
      */
     @Pure
     @NonCommitting
-    @SuppressWarnings("AssignmentToMethodParameter")
-    static @Nonnull Expression parse(@Nonnull NonHostEntity entity, @Nonnull String string) throws ExternalException {
-        string = string.trim();
+    static @Nonnull RestrictionExpression restrict(@Nonnull String identifier, @Nonnull RestrictionOperator operator, @Nonnull String literal) throws ExternalException {
+        final @Nonnull SemanticType type = Identifier.with(identifier).resolve().castTo(SemanticType.class); // TODO: .checkIsAttributeType();
+        type.ensureLoaded();
+        if (RestrictionExpression.toComparison(type, literal) == RestrictionExpression.Comparison.NONE) { throw RecoveryExceptionBuilder.withMessage("The literal " + literal + " cannot be compared with the attribute type " + identifier + ".").build(); }
+        return new RestrictionExpressionSubclass(type, operator, literal);
+    }
+    
+    /* -------------------------------------------------- Parser -------------------------------------------------- */
+    
+    /**
+     * A parser reads an expression in a single pass from left to right.
+     */
+    @Mutable
+    private static final class Parser {
+        
+        private final @Nonnull String string;
         
-        if (string.isEmpty()) { return new EmptyExpressionSubclass(); }
+        private int position = 0;
         
-        int index = lastIndexOf(string, BinaryOperator.getOperators(0));
-        if (index == -1) { index = lastIndexOf(string, BinaryOperator.getOperators(1)); }
-        if (index != -1) {
-            final @Nonnull Expression leftChild = parse(entity, string.substring(0, index));
-            final @Nonnull Expression rightChild = parse(entity, string.substring(index + 1, string.length()));
-            final @Nonnull BinaryOperator operator = BinaryOperator.of(string.charAt(index));
-            return new BinaryExpressionSubclass(leftChild, rightChild, operator);
+        private Parser(@Nonnull String string) {
+            this.string = string;
         }
         
-        if (string.charAt(0) == '(' && string.charAt(string.length() - 1) == ')') { return parse(entity, string.substring(1, string.length() - 1)); }
+        /**
+         * Skips the whitespace at the current position.
+         */
+        @Impure
+        private void skipWhitespace() {
+            while (position < string.length() && Character.isWhitespace(string.charAt(position))) { position++; }
+        }
+        
+        /**
+         * Parses the whole string.
+         */
+        @Impure
+        @Nonnull Template parse() throws RecoveryException {
+            skipWhitespace();
+            if (position == string.length()) { return EMPTY; }
+            
+            final @Nonnull Template template = parseBinary(0);
+            skipWhitespace();
+            if (position < string.length()) { throw RecoveryExceptionBuilder.withMessage("There is a closing parenthesis too much at index " + position + ": " + string).build(); }
+            return template;
+        }
         
-        // The string is now either a context, a contact or a restriction.
+        /**
+         * Parses a sequence of operands that are combined with binary operators of the given order from left to right.
+         */
+        @Impure
+        private @Nonnull Template parseBinary(int order) throws RecoveryException {
+            if (order > MAXIMAL_ORDER) { return parseOperand(); }
+            
+            @Nonnull Template template = parseBinary(order + 1);
+            while (true) {
+                skipWhitespace();
+                if (position == string.length()) { return template; }
+                final @Nullable BinaryOperator operator = getBinaryOperator(string.charAt(position), order);
+                if (operator == null) { return template; }
+                position++;
+                template = new BinaryTemplate(template, parseBinary(order + 1), operator);
+            }
+        }
+        
+        /**
+         * Parses an expression in parentheses or an atom.
+         */
+        @Impure
+        private @Nonnull Template parseOperand() throws RecoveryException {
+            skipWhitespace();
+            if (position == string.length()) { throw RecoveryExceptionBuilder.withMessage("There is an operand missing at the end: " + string).build(); }
+            
+            final char c = string.charAt(position);
+            if (c == '(') {
+                position++;
+                final @Nonnull Template template = parseBinary(0);
+                skipWhitespace();
+                if (position == string.length() || string.charAt(position) != ')') { throw RecoveryExceptionBuilder.withMessage("There is a closing parenthesis missing: " + string).build(); }
+                position++;
+                return template;
+            }
+            if (isDelimiter(c)) { throw RecoveryExceptionBuilder.withMessage("There is an operand missing at index " + position + ": " + string).build(); }
+            
+            final int start = position;
+            boolean quotation = false;
+            while (position < string.length()) {
+                final char d = string.charAt(position);
+                if (d == '\"') { quotation = !quotation; }
+                else if (!quotation && isDelimiter(d)) { break; }
+                position++;
+            }
+            if (quotation) { throw RecoveryExceptionBuilder.withMessage("The quotation marks do not match: " + string).build(); }
+            return parseAtom(string.substring(start, position).trim());
+        }
         
-        for (final @Nonnull RestrictionOperator operator : RestrictionOperator.values()) {
-            index = string.indexOf(operator.getSymbol());
-            if (index != -1) {
-                @Nonnull String identifier = string.substring(0, index).trim();
+        /**
+         * Parses the given atom, which is either a restriction, a context or a contact.
+         */
+        @Pure
+        private @Nonnull Template parseAtom(@Nonnull String atom) throws RecoveryException {
+            final int index = indexOfRestrictionOperator(atom);
+            final @Nullable RestrictionOperator operator = index != -1 ? getRestrictionOperator(atom, index) : null;
+            if (operator != null) {
+                @Nonnull String identifier = atom.substring(0, index).trim();
                 if (isQuoted(identifier)) { identifier = removeQuotes(identifier); }
                 if (!Identifier.isValid(identifier)) { throw RecoveryExceptionBuilder.withMessage("The identifier is invalid: " + identifier).build(); }
-                final @Nonnull SemanticType type = Identifier.with(identifier).resolve().castTo(SemanticType.class); // TODO: .checkIsAttributeType();
-                final @Nonnull String substring = string.substring(index + operator.getSymbol().length(), string.length()).trim();
-                if (isQuoted(substring) || substring.matches("\\d+")) { return new RestrictionExpressionSubclass(type, operator, substring); }
+                final @Nonnull String substring = atom.substring(index + operator.getSymbol().length()).trim();
+                if (isQuoted(substring) || isNumber(substring)) { return new RestrictionTemplate(identifier, operator, substring); }
                 else { throw RecoveryExceptionBuilder.withMessage("The substring is not a valid restriction: " + substring).build(); }
             }
+            
+            if (atom.equals("everybody")) { return EVERYBODY; }
+            
+            if (isNumber(atom)) { return new ContextTemplate(Long.parseLong(atom)); }
+            
+            final @Nonnull String identifier = isQuoted(atom) ? removeQuotes(atom) : atom;
+            if (Identifier.isValid(identifier)) { return new IdentityTemplate(identifier); }
+            
+            throw RecoveryExceptionBuilder.withMessage("The following string could not be parsed as an expression: " + atom).build();
         }
         
-        if (string.equals("everybody")) { return new EverybodyExpressionSubclass(); }
+    }
+    
+    /* -------------------------------------------------- Cache -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal number of templates that are cached.
+     * The configuration is read whenever a template is added to the cache.
+     */
+    static final @Nonnull Configuration<Integer> cacheSize = Configuration.with(10_000);
+    
+    /**
+     * Caches the templates by their string and evicts the least recently used template when the cache is full.
+     */
+    private static final @Nonnull Map<@Nonnull String, @Nonnull Template> cache = new LinkedHashMap<String, Template>(16, 0.75f, true) {
         
-        if (string.matches("\\d+")) { return new ContextExpressionSubclass(Context.of(entity, Long.parseLong(string))); }
+        @Pure
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<String, Template> eldest) {
+            return size() > cacheSize.get();
+        }
         
-        final @Nonnull String identifier = isQuoted(string) ? removeQuotes(string) : string;
-        if (Identifier.isValid(string)) {
-            final @Nonnull Identity identity = Identifier.with(identifier).resolve();
-            if (identity instanceof Person) { return new ContactExpressionSubclass(Contact.of(entity, (Person) identity)); }
-            if (identity instanceof SemanticType) { return new RestrictionExpressionSubclass(((SemanticType) identity)/* TODO: .checkIsAttributeType() */, null, null); }
-            throw RecoveryExceptionBuilder.withMessage("The identity has to be either a person or a semantic type: " + identifier).build();
+    };
+    
+    /* -------------------------------------------------- Parsing -------------------------------------------------- */
+    
+    /**
+     * Parses the given string into a template, which is cached by the string.
+     */
+    @Pure
+    static @Nonnull Template parse(@Nonnull String string) throws RecoveryException {
+        synchronized (cache) {
+            final @Nullable Template cachedTemplate = cache.get(string);
+            if (cachedTemplate != null) { return cachedTemplate; }
         }
         
-        throw RecoveryExceptionBuilder.withMessage("The following string could not be parsed as an expression: " + string).build();
+        final @Nonnull Template template = new Parser(string).parse();
+        synchronized (cache) {
+            cache.put(string, template);
+        }
+        return template;
+    }
+    
+    /**
+     * Parses the given string for the given entity.
+     * Only the syntax is cached, the identifiers and contexts are resolved for the given entity on every call.
+     * If the expression references several identifiers, they are resolved in bulk before the expression is instantiated.
+     */
+    @Pure
+    @NonCommitting
+    static @Nonnull Expression parse(@Nonnull NonHostEntity entity, @Nonnull String string) throws ExternalException {
+        final @Nonnull Template template = parse(string);
+        final @Nonnull FreezableList<@Nonnull Identifier> identifiers = FreezableArrayList.withNoElements();
+        template.collectIdentifiers(identifiers);
+        if (identifiers.size() > 1) { IdentifierResolver.configuration.get().resolveAll(identifiers.freeze()); }
+        return template.instantiate(entity);
     }
     
 }
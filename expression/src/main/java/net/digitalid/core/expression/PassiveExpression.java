@@ -28,6 +28,7 @@ import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.exceptions.DatabaseException;
 
+import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
 
 /**
@@ -49,6 +50,14 @@ public abstract class PassiveExpression extends AbstractExpression {
         return getExpression().isPublic();
     }
     
+    /**
+     * Returns whether this passive expression matches the given attribute content.
+     */
+    @Pure
+    public boolean matches(@Nonnull Pack attributeContent) {
+        return getExpression().matches(attributeContent);
+    }
+    
     /**
      * Returns whether this passive expression matches the given signature.
      */
@@ -15,31 +15,38 @@
  */
 package net.digitalid.core.expression;
 
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.CallSuper;
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.annotations.ownership.Capturable;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
 import net.digitalid.utility.collaboration.enumerations.Priority;
-import net.digitalid.utility.collections.set.FreezableLinkedHashSetBuilder;
-import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.contracts.Validate;
+import net.digitalid.utility.conversion.converters.IntegerConverter;
 import net.digitalid.utility.conversion.converters.StringConverter;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.exceptions.ExternalException;
-import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.generation.Derive;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.value.Valid;
 
+import net.digitalid.core.annotations.type.Loaded;
 import net.digitalid.core.expression.operators.BinaryOperator;
 import net.digitalid.core.expression.operators.RestrictionOperator;
 import net.digitalid.core.identification.annotations.AttributeType;
 import net.digitalid.core.identification.identity.SemanticType;
-import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.signature.credentials.CredentialsSignature;
 
@@ -59,16 +66,16 @@ abstract class RestrictionExpression extends Expression {
      */
     @Pure
     boolean isValid(@Nonnull String string) {
-        return ExpressionParser.isQuoted(string) || string.matches("\\d+");
+        return ExpressionParser.isQuoted(string) || ExpressionParser.isNumber(string);
     }
     
     /* -------------------------------------------------- Fields -------------------------------------------------- */
     
     /**
-     * Returns the attribute type for the restriction.
+     * Returns the attribute type for the restriction, which has to be loaded so that its syntactic base is known.
      */
     @Pure
-    abstract @Nonnull @AttributeType SemanticType getType();
+    abstract @Nonnull @Loaded @AttributeType SemanticType getType();
     
     /**
      * Returns the operator for the restriction.
@@ -82,6 +89,147 @@ abstract class RestrictionExpression extends Expression {
     @Pure
     abstract @Nullable @Valid String getString();
     
+    /* -------------------------------------------------- Comparison -------------------------------------------------- */
+    
+    /**
+     * This enumeration models how the attribute content is compared with the string of a restriction.
+     */
+    static enum Comparison {
+        
+        /**
+         * The restriction has no operator and matches every attribute content of its type.
+         */
+        ANY,
+        
+        /**
+         * The attribute content is a string and is compared with the unquoted string in lower case.
+         */
+        TEXT,
+        
+        /**
+         * The attribute content is an integer of fixed length (or a timestamp) and is compared with the converted string.
+         */
+        INTEGER,
+        
+        /**
+         * The attribute content is an integer of arbitrary length and is compared with the converted string.
+         */
+        LARGE_INTEGER,
+        
+        /**
+         * The attribute content is a decimal and is compared with the converted string.
+         */
+        DECIMAL,
+        
+        /**
+         * The string cannot be compared with the attribute content so that no attribute content matches.
+         * The parser rejects such restrictions, which can thus only be recovered from an earlier encoding.
+         */
+        NONE;
+        
+    }
+    
+    /**
+     * Returns the given string as an integer or null if it can be interpreted neither as a number nor as a point in time.
+     * Points in time are quoted ISO instants or dates and are converted to milliseconds since the epoch like {@code Time}.
+     */
+    @Pure
+    static @Nullable Long toInteger(@Nonnull String string) {
+        final @Nonnull String literal = ExpressionParser.isQuoted(string) ? ExpressionParser.removeQuotes(string) : string;
+        try {
+            return Long.parseLong(literal);
+        } catch (@Nonnull NumberFormatException exception) {}
+        if (!ExpressionParser.isQuoted(string)) { return null; }
+        try {
+            return Instant.parse(literal).toEpochMilli();
+        } catch (@Nonnull DateTimeParseException exception) {}
+        try {
+            return LocalDate.parse(literal).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (@Nonnull DateTimeParseException exception) {}
+        return null;
+    }
+    
+    /**
+     * Returns the given string as a decimal or null if it cannot be interpreted as a number.
+     */
+    @Pure
+    static @Nullable Double toDecimal(@Nonnull String string) {
+        try {
+            return Double.parseDouble(ExpressionParser.isQuoted(string) ? ExpressionParser.removeQuotes(string) : string);
+        } catch (@Nonnull NumberFormatException exception) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the comparison for the given type and string, which is chosen according to the syntactic base of the type.
+     * The syntactic base is only looked up here so that matching attribute contents does not depend on it.
+     */
+    @Pure
+    static @Nonnull Comparison toComparison(@Nonnull @Loaded SemanticType type, @Nullable String string) {
+        if (string == null) { return Comparison.ANY; }
+        final @Nonnull SyntacticType base = type.getSyntacticBase();
+        if (base.equals(SyntacticType.STRING01) || base.equals(SyntacticType.STRING64) || base.equals(SyntacticType.STRING)) { return ExpressionParser.isQuoted(string) ? Comparison.TEXT : Comparison.NONE; }
+        if (base.equals(SyntacticType.INTEGER08) || base.equals(SyntacticType.INTEGER16) || base.equals(SyntacticType.INTEGER32) || base.equals(SyntacticType.INTEGER64)) { return toInteger(string) != null ? Comparison.INTEGER : Comparison.NONE; }
+        if (base.equals(SyntacticType.INTEGER)) { return toInteger(string) != null ? Comparison.LARGE_INTEGER : Comparison.NONE; }
+        if (base.equals(SyntacticType.DECIMAL32) || base.equals(SyntacticType.DECIMAL64)) { return toDecimal(string) != null ? Comparison.DECIMAL : Comparison.NONE; }
+        return Comparison.NONE;
+    }
+    
+    /**
+     * Returns how the attribute content is compared with the string of this restriction.
+     */
+    @Pure
+    @Derive("toComparison(type, string)")
+    abstract @Nonnull Comparison getComparison();
+    
+    /**
+     * Returns the given string without quotes in lower case or null if the given string is null or not quoted.
+     */
+    @Pure
+    static @Nullable String toText(@Nullable String string) {
+        return string != null && ExpressionParser.isQuoted(string) ? ExpressionParser.removeQuotes(string).toLowerCase() : null;
+    }
+    
+    /**
+     * Returns the text with which the attribute content is compared if the comparison is {@link Comparison#TEXT}.
+     */
+    @Pure
+    @Derive("toText(string)")
+    abstract @Nullable String getText();
+    
+    /**
+     * Returns the given string as an integer or zero if the given string is null or cannot be converted.
+     */
+    @Pure
+    static long toIntegerOrZero(@Nullable String string) {
+        final @Nullable Long integer = string != null ? toInteger(string) : null;
+        return integer != null ? integer : 0;
+    }
+    
+    /**
+     * Returns the integer with which the attribute content is compared if the comparison is {@link Comparison#INTEGER} or {@link Comparison#LARGE_INTEGER}.
+     */
+    @Pure
+    @Derive("toIntegerOrZero(string)")
+    abstract long getInteger();
+    
+    /**
+     * Returns the given string as a decimal or zero if the given string is null or cannot be converted.
+     */
+    @Pure
+    static double toDecimalOrZero(@Nullable String string) {
+        final @Nullable Double decimal = string != null ? toDecimal(string) : null;
+        return decimal != null ? decimal : 0;
+    }
+    
+    /**
+     * Returns the decimal with which the attribute content is compared if the comparison is {@link Comparison#DECIMAL}.
+     */
+    @Pure
+    @Derive("toDecimalOrZero(string)")
+    abstract double getDecimal();
+    
     /* -------------------------------------------------- Validation -------------------------------------------------- */
     
     @Pure
@@ -116,10 +264,10 @@ abstract class RestrictionExpression extends Expression {
     
     @Pure
     @Override
-    @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts() {
+    @Nonnull ContactBitmap getContactBitmap() {
         Require.that(isActive()).orThrow("This expression has to be active but was $.", this);
         
-        return FreezableLinkedHashSetBuilder.build();
+        return ContactBitmap.EMPTY;
     }
     
     @Pure
@@ -130,55 +278,78 @@ abstract class RestrictionExpression extends Expression {
         if (!attributeContent.getType().equals(getType())) { return false; }
         
         final @Nullable RestrictionOperator operator = getOperator();
-        final @Nullable String string = getString();
-        
-        if (operator == null || string == null) { return true; }
+        if (operator == null) { return true; }
         
-        if (ExpressionParser.isQuoted(string)) {
-            final @Nonnull String substring = ExpressionParser.removeQuotes(string).toLowerCase();
-            final @Nonnull String attribute;
-            try {
-                final @Nullable String content = attributeContent.unpack(StringConverter.INSTANCE, null);
-                attribute = content != null ? content.toLowerCase() : "";
+        switch (getComparison()) {
+            case ANY: return true;
+            case TEXT: return matches(operator, attributeContent);
+            case INTEGER: try {
+                return matches(operator, Long.compare(attributeContent.unpackInteger(), getInteger()));
+            } catch (@Nonnull RecoveryException exception) {
+                return false;
+            }
+            case LARGE_INTEGER: try {
+                final @Nullable BigInteger attribute = attributeContent.unpack(IntegerConverter.INSTANCE, null);
+                if (attribute == null) { return false; }
+                // An integer that does not fit into a long is either smaller or greater than every long.
+                return matches(operator, attribute.bitLength() < 64 ? Long.compare(attribute.longValue(), getInteger()) : attribute.signum());
             } catch (@Nonnull ExternalException exception) {
-                throw new RuntimeException(exception); // TODO
+                return false;
             }
-            switch (operator) {
-                case EQUAL: return attribute.equals(substring);
-                case UNEQUAL: return !attribute.equals(substring);
-                case LESS: return attribute.compareTo(substring) < 0;
-                case GREATER: return attribute.compareTo(substring) > 0;
-                case LESS_OR_EQUAL: return attribute.compareTo(substring) <= 0;
-                case GREATER_OR_EQUAL: return attribute.compareTo(substring) >= 0;
-                case PREFIX: return attribute.startsWith(substring);
-                case NOT_PREFIX: return !attribute.startsWith(substring);
-                case INFIX: return attribute.contains(substring);
-                case NOT_INFIX: return !attribute.contains(substring);
-                case POSTFIX: return attribute.endsWith(substring);
-                case NOT_POSTFIX: return !attribute.endsWith(substring);
+            case DECIMAL: try {
+                return matches(operator, Double.compare(attributeContent.unpackDecimal(), getDecimal()));
+            } catch (@Nonnull RecoveryException exception) {
+                return false;
             }
-        } else {
-            // TODO: Use a NumberConverter to retrieve the value from the attribute content:
-//            final int length = attributeContent.getLength();
-//            if (length > 8) { return false; }
-            long attribute = 0;
-//            for (int i = 0; i < length; i++) {
-//                attribute = (attribute << 8) | (attributeContent.getByte(i) & 0xFF);
-//            }
-            try {
-                final long number = Long.parseLong(string);
-                switch (operator) {
-                    case EQUAL: return attribute == number;
-                    case UNEQUAL: return attribute != number;
-                    case LESS: return attribute < number;
-                    case GREATER: return attribute > number;
-                    case LESS_OR_EQUAL: return attribute <= number;
-                    case GREATER_OR_EQUAL: return attribute >= number;
-                }
-            } catch (@Nonnull NumberFormatException exception) {}
+            default: return false;
+        }
+    }
+    
+    /**
+     * Returns whether the given comparison result satisfies the given operator, which is never the case for the string operators.
+     */
+    @Pure
+    private static boolean matches(@Nonnull RestrictionOperator operator, int comparison) {
+        switch (operator) {
+            case EQUAL: return comparison == 0;
+            case UNEQUAL: return comparison != 0;
+            case LESS: return comparison < 0;
+            case GREATER: return comparison > 0;
+            case LESS_OR_EQUAL: return comparison <= 0;
+            case GREATER_OR_EQUAL: return comparison >= 0;
+            default: return false;
+        }
+    }
+    
+    /**
+     * Returns whether the given string attribute content satisfies the given operator with the text of this restriction.
+     */
+    @Pure
+    private boolean matches(@Nonnull RestrictionOperator operator, @Nonnull Pack attributeContent) {
+        final @Nullable String text = getText();
+        if (text == null) { return false; }
+        final @Nonnull String attribute;
+        try {
+            final @Nullable String content = attributeContent.unpack(StringConverter.INSTANCE, null);
+            attribute = content != null ? content.toLowerCase() : "";
+        } catch (@Nonnull ExternalException exception) {
+            return false;
+        }
+        switch (operator) {
+            case EQUAL: return attribute.equals(text);
+            case UNEQUAL: return !attribute.equals(text);
+            case LESS: return attribute.compareTo(text) < 0;
+            case GREATER: return attribute.compareTo(text) > 0;
+            case LESS_OR_EQUAL: return attribute.compareTo(text) <= 0;
+            case GREATER_OR_EQUAL: return attribute.compareTo(text) >= 0;
+            case PREFIX: return attribute.startsWith(text);
+            case NOT_PREFIX: return !attribute.startsWith(text);
+            case INFIX: return attribute.contains(text);
+            case NOT_INFIX: return !attribute.contains(text);
+            case POSTFIX: return attribute.endsWith(text);
+            case NOT_POSTFIX: return !attribute.endsWith(text);
+            default: return false;
         }
-        
-        return false;
     }
     
     @Pure
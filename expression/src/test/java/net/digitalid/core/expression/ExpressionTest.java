@@ -13,41 +13,204 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// TODO
+package net.digitalid.core.expression;
 
-//package net.digitalid.core.expression;
-//
-//import java.sql.SQLException;
-//
-//import net.digitalid.database.annotations.transaction.Committing;
-//
-//import org.junit.Test;
-//
-//public final class ExpressionTest {
-//    
-//    /**
-//     * Test the parsing of several expressions.
-//     */
-//    @Test
-//    @Committing
-//    public void testParsing() throws InvalidEncodingException, InternalException, SQLException, Exception {
-////        String[] strings = new String[] {"", " ( everybody)", "person@test.digitalid.net + person@test.digitalid.net - person@test.digitalid.net", "person@test.digitalid.net + (person@test.digitalid.net - person@test.digitalid.net)", "person@test.digitalid.net + name@core.digitalid.net * person@test.digitalid.net"};
-////        for (final @Nonnull String string : strings) {
-//////            System.out.println(string);
-////            Expression expression = Expression.parse(string);
-//////            System.out.println(expression);
-//////            System.out.println();
-////        }
-////        
-////        Block attribute = SelfcontainedWrapper.encodeNonNullable("name@core.digitalid.net", StringWrapper.encodeNonNullable("Person")).getBlock();
-////        strings = new String[] {"", "name@core.digitalid.net", "(name@core.digitalid.net=\"person\" ) ", "name@core.digitalid.net \\ \"on\"", "name@core.digitalid.net ≠ \" ) \""};
-////        for (final @Nonnull String string : strings) {
-//////            System.out.println(string);
-////            Expression expression = Expression.parse(string);
-//////            System.out.println(expression);
-//////            System.out.println();
-////            assertTrue(expression.matches(attribute));
-////        }
-//    }
-//    
-//}
\ No newline at end of file
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
+
+import net.digitalid.core.expression.operators.BinaryOperator;
+import net.digitalid.core.expression.operators.RestrictionOperator;
+import net.digitalid.core.identification.identifier.Identifier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link ExpressionParser expression parser}.
+ */
+public class ExpressionTest {
+    
+    /* -------------------------------------------------- Previous Parser -------------------------------------------------- */
+    
+    /**
+     * Returns the last index of a binary operator with the given order in the given string considering quotation marks and parentheses.
+     * This method and the next one reproduce the parser that searched backwards for the last operator on every level of the recursion.
+     */
+    @Pure
+    private static int lastIndexOf(@Nonnull String string, int order) throws RecoveryException {
+        int parenthesesCounter = 0;
+        boolean quotation = false;
+        
+        for (int i = string.length() - 1; i >= 0; i--) {
+            final char c = string.charAt(i);
+            if (quotation) {
+                if (c == '\"') { quotation = false; }
+                continue;
+            } else if (c == '\"') {
+                quotation = true;
+                continue;
+            }
+            if (c == ')') {
+                parenthesesCounter++;
+                continue;
+            } else if (c == '(') {
+                if (parenthesesCounter == 0) { throw RecoveryExceptionBuilder.withMessage("There is an opening parenthesis too much: " + string).build(); }
+                parenthesesCounter--;
+                continue;
+            }
+            if (parenthesesCounter == 0) {
+                for (@Nonnull BinaryOperator operator : BinaryOperator.values()) {
+                    if (operator.getSymbol() == c && operator.getOrder() == order) { return i; }
+                }
+            }
+        }
+        
+        if (parenthesesCounter > 0) { throw RecoveryExceptionBuilder.withMessage("There is an opening parenthesis missing: " + string).build(); }
+        if (quotation) { throw RecoveryExceptionBuilder.withMessage("The quotation marks do not match: " + string).build(); }
+        return -1;
+    }
+    
+    /**
+     * Parses the given string with the previous parser and returns the result in the format of the templates.
+     */
+    @Pure
+    private static @Nonnull String parseWithPreviousParser(@Nonnull String untrimmedString) throws RecoveryException {
+        final @Nonnull String string = untrimmedString.trim();
+        if (string.isEmpty()) { return ""; }
+        
+        int index = lastIndexOf(string, 0);
+        if (index == -1) { index = lastIndexOf(string, 1); }
+        if (index != -1) { return "(" + parseWithPreviousParser(string.substring(0, index)) + string.charAt(index) + parseWithPreviousParser(string.substring(index + 1)) + ")"; }
+        
+        if (string.charAt(0) == '(' && string.charAt(string.length() - 1) == ')') { return parseWithPreviousParser(string.substring(1, string.length() - 1)); }
+        
+        for (@Nonnull RestrictionOperator operator : RestrictionOperator.values()) {
+            index = string.indexOf(operator.getSymbol());
+            if (index != -1) {
+                @Nonnull String identifier = string.substring(0, index).trim();
+                if (ExpressionParser.isQuoted(identifier)) { identifier = ExpressionParser.removeQuotes(identifier); }
+                if (!Identifier.isValid(identifier)) { throw RecoveryExceptionBuilder.withMessage("The identifier is invalid: " + identifier).build(); }
+                final @Nonnull String substring = string.substring(index + operator.getSymbol().length()).trim();
+                if (ExpressionParser.isQuoted(substring) || substring.matches("\\d+")) { return "\"" + identifier + "\"" + operator.getSymbol() + substring; }
+                else { throw RecoveryExceptionBuilder.withMessage("The substring is not a valid restriction: " + substring).build(); }
+            }
+        }
+        
+        if (string.equals("everybody")) { return "everybody"; }
+        
+        if (string.matches("\\d+")) { return String.valueOf(Long.parseLong(string)); }
+        
+        if (Identifier.isValid(string)) { return "\"" + string + "\""; }
+        
+        throw RecoveryExceptionBuilder.withMessage("The following string could not be parsed as an expression: " + string).build();
+    }
+    
+    /* -------------------------------------------------- Valid Expressions -------------------------------------------------- */
+    
+    private static final @Nonnull String[] VALID_EXPRESSIONS = {
+        "",
+        "   ",
+        "everybody",
+        " ( everybody)",
+        "((everybody))",
+        "123",
+        "007",
+        "person@test.digitalid.net",
+        "person@test.digitalid.net + person@test.digitalid.net - person@test.digitalid.net",
+        "person@test.digitalid.net + (person@test.digitalid.net - person@test.digitalid.net)",
+        "person@test.digitalid.net + name@core.digitalid.net * person@test.digitalid.net",
+        "person@test.digitalid.net * name@core.digitalid.net + 5 * 6 - 7",
+        "1 * 2 * 3 * 4",
+        "1 - 2 - 3 + 4",
+        "(1 + 2) * (3 - 4)",
+        "name@core.digitalid.net",
+        "name@core.digitalid.net=\"person\"",
+        "(name@core.digitalid.net=\"person\" ) ",
+        "name@core.digitalid.net \\ \"on\"",
+        "name@core.digitalid.net ≠ \" ) \"",
+        "name@core.digitalid.net ≠ \"a + b\" * everybody",
+        "\"name@core.digitalid.net\" / \"pre\"",
+        "birthday@core.digitalid.net ≥ 20000101 + birthday@core.digitalid.net < 19991231",
+        "email@core.digitalid.net | \"digitalid\" - 12",
+    };
+    
+    @Test
+    public void shouldParseLikeThePreviousParser() throws RecoveryException {
+        for (@Nonnull String string : VALID_EXPRESSIONS) {
+            Assert.assertEquals("Parsing " + string, parseWithPreviousParser(string), ExpressionParser.parse(string).toString());
+        }
+    }
+    
+    @Test
+    public void shouldReturnCachedTemplates() throws RecoveryException {
+        for (@Nonnull String string : VALID_EXPRESSIONS) {
+            Assert.assertSame("Parsing " + string, ExpressionParser.parse(string), ExpressionParser.parse(string));
+        }
+    }
+    
+    @Test
+    public void shouldParseCorrectlyWithSmallCache() throws RecoveryException {
+        final int cacheSize = ExpressionParser.cacheSize.get();
+        ExpressionParser.cacheSize.set(2);
+        try {
+            for (int i = 0; i < 3; i++) {
+                for (@Nonnull String string : VALID_EXPRESSIONS) {
+                    Assert.assertEquals("Parsing " + string, parseWithPreviousParser(string), ExpressionParser.parse(string).toString());
+                }
+            }
+        } finally {
+            ExpressionParser.cacheSize.set(cacheSize);
+        }
+    }
+    
+    /* -------------------------------------------------- Invalid Expressions -------------------------------------------------- */
+    
+    private static final @Nonnull String[] INVALID_EXPRESSIONS = {
+        "(everybody",
+        "everybody)",
+        "(1 + 2",
+        "1 + 2)",
+        "\"person@test.digitalid.net",
+        "name@core.digitalid.net = person",
+        "invalid = \"value\"",
+        "not an identifier",
+    };
+    
+    @Test
+    public void shouldRejectWhatThePreviousParserRejected() {
+        for (@Nonnull String string : INVALID_EXPRESSIONS) {
+            try {
+                parseWithPreviousParser(string);
+                Assert.fail("The previous parser should reject " + string);
+            } catch (@Nonnull RecoveryException exception) {}
+            try {
+                ExpressionParser.parse(string);
+                Assert.fail("The parser should reject " + string);
+            } catch (@Nonnull RecoveryException exception) {}
+        }
+    }
+    
+    private static final @Nonnull String[] MISSING_OPERANDS = {
+        "()",
+        "( )",
+        "1 + ",
+        "+ 1",
+        "1 + * 2",
+        "1 + ()",
+        "(1 -) * 2",
+    };
+    
+    @Test
+    public void shouldRejectMissingOperands() {
+        for (@Nonnull String string : MISSING_OPERANDS) {
+            try {
+                ExpressionParser.parse(string);
+                Assert.fail("The parser should reject " + string);
+            } catch (@Nonnull RecoveryException exception) {}
+        }
+    }
+    
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.expression;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.conversion.converters.StringConverter;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.time.Time;
+
+import net.digitalid.core.annotations.type.Loaded;
+import net.digitalid.core.expression.RestrictionExpression.Comparison;
+import net.digitalid.core.expression.operators.RestrictionOperator;
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.testing.CoreTest;
+
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link RestrictionExpression restriction expression}.
+ */
+public class RestrictionExpressionTest extends CoreTest {
+    
+    public static final @Nonnull @Loaded SemanticType NAME = SemanticType.map("name.restriction.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.STRING).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build());
+    
+    public static final @Nonnull @Loaded SemanticType NUMBER = SemanticType.map("number.restriction.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.INTEGER64).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build());
+    
+    @Test
+    public void shouldCompareTextOnlyWithQuotedLiterals() {
+        assertThat(RestrictionExpression.toComparison(NAME, "\"123\"")).isEqualTo(Comparison.TEXT);
+        assertThat(RestrictionExpression.toComparison(NAME, "123")).isEqualTo(Comparison.NONE);
+        assertThat(RestrictionExpression.toComparison(NAME, null)).isEqualTo(Comparison.ANY);
+    }
+    
+    @Test
+    public void shouldCompareIntegersWithNumbersAndTimes() {
+        assertThat(RestrictionExpression.toComparison(NUMBER, "123")).isEqualTo(Comparison.INTEGER);
+        assertThat(RestrictionExpression.toComparison(NUMBER, "\"123\"")).isEqualTo(Comparison.INTEGER);
+        assertThat(RestrictionExpression.toComparison(NUMBER, "\"2000-01-01\"")).isEqualTo(Comparison.INTEGER);
+        assertThat(RestrictionExpression.toComparison(NUMBER, "\"abc\"")).isEqualTo(Comparison.NONE);
+    }
+    
+    @Test
+    public void shouldMatchTextsAndIntegers() {
+        final @Nonnull Pack name = Pack.pack(StringConverter.INSTANCE, "Person 123", NAME);
+        assertThat(new RestrictionExpressionSubclass(NAME, RestrictionOperator.PREFIX, "\"person\"").matches(name)).isTrue();
+        assertThat(new RestrictionExpressionSubclass(NAME, RestrictionOperator.INFIX, "\"123\"").matches(name)).isTrue();
+        
+        final @Nonnull Pack number = Pack.pack(Integer64Converter.INSTANCE, 123L, NUMBER);
+        assertThat(new RestrictionExpressionSubclass(NUMBER, RestrictionOperator.EQUAL, "123").matches(number)).isTrue();
+        assertThat(new RestrictionExpressionSubclass(NUMBER, RestrictionOperator.LESS, "100").matches(number)).isFalse();
+        assertThat(new RestrictionExpressionSubclass(NUMBER, RestrictionOperator.GREATER_OR_EQUAL, "\"100\"").matches(number)).isTrue();
+    }
+    
+    @Test
+    public void shouldRejectUnquotedNumbersForStringAttributes() throws ExternalException {
+        assertThatThrownBy(() -> ExpressionParser.restrict(NAME.getAddress().getString(), RestrictionOperator.EQUAL, "123")).isInstanceOf(RecoveryException.class);
+        assertThat(ExpressionParser.restrict(NAME.getAddress().getString(), RestrictionOperator.EQUAL, "\"123\"").getComparison()).isEqualTo(Comparison.TEXT);
+        assertThat(ExpressionParser.restrict(NUMBER.getAddress().getString(), RestrictionOperator.EQUAL, "123").getComparison()).isEqualTo(Comparison.INTEGER);
+    }
+    
+}
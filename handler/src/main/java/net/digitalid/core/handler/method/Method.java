@@ -122,6 +122,17 @@ public interface Method<@Unspecifiable ENTITY extends Entity> extends Handler<EN
     @Pure
     public boolean isLodged();
     
+    /* -------------------------------------------------- Caching -------------------------------------------------- */
+    
+    /**
+     * Returns whether the reply to this method depends only on its content, subject and recipient but not on its requester.
+     * The signed replies to such methods can be cached and reused by the host until the state of the subject changes.
+     */
+    @Pure
+    public default boolean isRequesterIndependent() {
+        return false;
+    }
+    
    
     /* -------------------------------------------------- Required Authorization -------------------------------------------------- */
     
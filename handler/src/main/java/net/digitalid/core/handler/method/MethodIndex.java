@@ -92,7 +92,23 @@ public abstract class MethodIndex {
      */
     @Pure
     public static @Nonnull Method<?> get(@Nonnull Signature<Compression<Pack>> signature, @Nonnull Entity entity) throws RequestException, RecoveryException {
-        final @Nonnull Pack pack = signature.getObject().getObject();
+        return get(signature.getObject().getObject(), signature, entity);
+    }
+    
+    /**
+     * Returns the method that handles the given pack for the given entity without a signature.
+     * This is used to recover the methods that were stored by the sender before they could be sent.
+     */
+    @Pure
+    public static @Nonnull Method<?> get(@Nonnull Pack pack, @Nonnull Entity entity) throws RequestException, RecoveryException {
+        return get(pack, null, entity);
+    }
+    
+    /**
+     * Returns the method that handles the given pack with the given signature for the given entity.
+     */
+    @Pure
+    private static @Nonnull Method<?> get(@Nonnull Pack pack, @Nullable Signature<Compression<Pack>> signature, @Nonnull Entity entity) throws RequestException, RecoveryException {
         final @Nullable Converter<? extends Method<?>, @Nonnull Pair<@Nullable Signature<Compression<Pack>>, @Nonnull Entity>> converter = converters.get(pack.getType());
         if (converter == null) { throw RequestExceptionBuilder.withCode(RequestErrorCode.METHOD).withMessage(Strings.format("No method could be found for the type $.", pack.getType())).build(); }
         return pack.unpack(converter, Pair.of(signature, entity));
@@ -18,17 +18,21 @@ package net.digitalid.core.handler.method.action;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.collections.list.FreezableLinkedList;
 import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.storage.Storage;
+import net.digitalid.utility.validation.annotations.type.Functional;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
 import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
 
 import net.digitalid.core.entity.NonHostEntity;
 import net.digitalid.core.exceptions.request.RequestException;
@@ -68,6 +72,38 @@ public abstract class Action extends MethodImplementation<NonHostEntity> impleme
     @MethodHasBeenReceived
     public abstract @Nullable @Matching ActionReply executeOnHost() throws RequestException, DatabaseException, RecoveryException;
     
+    /* -------------------------------------------------- Observation -------------------------------------------------- */
+    
+    /**
+     * An observer is notified about the entities whose state was changed by an action.
+     */
+    @Functional
+    public static interface Observer {
+        
+        /**
+         * Notifies this observer that the state of the given entity was changed by an action in a transaction that has been committed.
+         */
+        @Impure
+        public void notify(@Nonnull NonHostEntity entity);
+        
+    }
+    
+    /**
+     * Stores the observer that is notified about the entities whose state was changed by an action, which the server uses to invalidate its cached replies.
+     */
+    public static final @Nonnull Configuration<Observer> observer = Configuration.with(entity -> {});
+    
+    /**
+     * Notifies the observer about the entity of this action once the current transaction has been committed.
+     * This method has to be called by every component that executes an action on a host.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public void notifyObserver() {
+        final @Nullable NonHostEntity entity = getEntity();
+        if (entity != null) { Database.instance.get().runAfterCommit(() -> observer.get().notify(entity)); }
+    }
+    
     /* -------------------------------------------------- Storage -------------------------------------------------- */
     
     /**
@@ -24,7 +24,9 @@ import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.functional.failable.FailableUnaryFunction;
 import net.digitalid.utility.validation.annotations.size.EmptyOrSingle;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
@@ -118,6 +120,24 @@ public abstract class ExternalAction extends Action {
     @PureWithSideEffects
     public abstract void executeOnFailure() throws DatabaseException;
     
+    /* -------------------------------------------------- Pushing -------------------------------------------------- */
+    
+    /**
+     * The configuration object that holds the function which queues an external action in the current transaction and returns the number of the push.
+     * See {@code net.digitalid.core.pusher.Pusher}.
+     */
+    public static final @Nonnull Configuration<FailableUnaryFunction<@Nonnull ExternalAction, @Nonnull Long, @Nonnull DatabaseException>> pusher = Configuration.withUnknownProvider();
+    
+    /**
+     * Passes this external action to the pusher, which pushes it once the current transaction has been committed.
+     * In contrast to sending this action directly, the reply is not awaited and the pushing is retried if the recipient cannot be reached.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public void push() throws DatabaseException {
+        pusher.get().evaluate(this);
+    }
+    
     /* -------------------------------------------------- Audit on Failure -------------------------------------------------- */
     
     /**
@@ -137,6 +137,20 @@ public abstract class InternalAction extends Action implements InternalMethod {
         return null;
     }
     
+    /* -------------------------------------------------- Coalescing -------------------------------------------------- */
+    
+    /**
+     * Returns a single action with the same effect as the given action followed by this action or null if they cannot be coalesced.
+     * The synchronizer uses this method to merge this action with a preceding action that has not been sent yet.
+     * 
+     * @require previous.getEntity().equals(getEntity()) : "The entity of the given and this action is the same.";
+     */
+    @Pure
+    @OnClientRecipient
+    public @Nullable InternalAction coalesceWith(@Nonnull InternalAction previous) {
+        return null;
+    }
+    
     /* -------------------------------------------------- Reversion -------------------------------------------------- */
     
     /**
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.handler.method.action;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.generics.Unspecifiable;
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.annotations.type.ThreadSafe;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.functional.interfaces.Predicate;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.threading.NamedThreadFactory;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Functional;
+
+import net.digitalid.database.annotations.transaction.Committing;
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.unit.TransactionEnd;
+
+/**
+ * Recipient queues store the items that are pending for each recipient in the order in which they have to be sent.
+ * The items are sent by a bounded pool of threads, which runs at most one sender per recipient so that the items of a recipient
+ * are sent in order and a recipient that is slow or cannot be reached occupies at most one thread without delaying the other recipients.
+ * Each item is sent in its own transaction, and the sending to a recipient that cannot be reached is retried with exponential backoff.
+ */
+@ThreadSafe
+public class RecipientQueues<@Unspecifiable ITEM> {
+    
+    /* -------------------------------------------------- Sender -------------------------------------------------- */
+    
+    /**
+     * A sender sends the items that are taken from the queues.
+     */
+    @Functional
+    public static interface Sender<@Unspecifiable ITEM> {
+        
+        /**
+         * Sends the given item to the given recipient in the current transaction, which is committed afterwards.
+         * 
+         * @throws ExternalException if the item could not be sent, in which case the transaction is rolled back and the item is retried later.
+         */
+        @NonCommitting
+        @PureWithSideEffects
+        public void send(@Nonnull HostIdentifier recipient, @Nonnull ITEM item) throws ExternalException;
+        
+    }
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    private final @Nonnull String name;
+    
+    private final @Nonnull Configuration<Long> maximalBackoff;
+    
+    private final @Nonnull Sender<ITEM> sender;
+    
+    /**
+     * Stores the executor that runs the senders, whose delayed senders are cancelled when it is shut down.
+     */
+    private final @Nonnull ScheduledThreadPoolExecutor executor;
+    
+    /**
+     * Maps the recipients to the items that are pending for them.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Deque<@Nonnull ITEM>> queues = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Stores the recipients for which a sender is scheduled or running.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Boolean> scheduled = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Stores the current interval for exponential backoff in milliseconds of the recipients that could not be reached.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Long> backoffs = ConcurrentHashMapBuilder.build();
+    
+    /* -------------------------------------------------- Constructor -------------------------------------------------- */
+    
+    /**
+     * Creates new recipient queues whose items are sent by the given sender on the given number of threads with the given name.
+     * The sending to a recipient that cannot be reached is retried after at most the maximal backoff in milliseconds.
+     */
+    public RecipientQueues(@Nonnull String name, @Positive int threads, @Nonnull Configuration<Long> maximalBackoff, @Nonnull Sender<ITEM> sender) {
+        this.name = name;
+        this.maximalBackoff = maximalBackoff;
+        this.sender = sender;
+        this.executor = new ScheduledThreadPoolExecutor(threads, NamedThreadFactory.with(name));
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+    
+    /* -------------------------------------------------- Queues -------------------------------------------------- */
+    
+    /**
+     * Returns the queue of the items that are pending for the given recipient.
+     * The queue also serves as the lock for modifying it, which has to be held whenever the queue is accessed.
+     */
+    @Pure
+    public @Nonnull Deque<@Nonnull ITEM> getQueue(@Nonnull HostIdentifier recipient) {
+        @Nullable Deque<@Nonnull ITEM> queue = queues.get(recipient);
+        if (queue == null) { queue = queues.putIfAbsentElseReturnPresent(recipient, new ArrayDeque<>()); }
+        return queue;
+    }
+    
+    /**
+     * Appends the given item to the queue of the given recipient and schedules its sending.
+     */
+    @Impure
+    public void add(@Nonnull HostIdentifier recipient, @Nonnull ITEM item) {
+        final @Nonnull Deque<@Nonnull ITEM> queue = getQueue(recipient);
+        synchronized (queue) { queue.addLast(item); }
+        schedule(recipient, 0);
+    }
+    
+    /**
+     * Removes the items that satisfy the given predicate from all queues.
+     * An item that is already being sent is not affected.
+     */
+    @Impure
+    public void removeIf(@Nonnull Predicate<? super ITEM> predicate) {
+        for (@Nonnull Deque<@Nonnull ITEM> queue : queues.values()) {
+            synchronized (queue) { queue.removeIf(predicate::evaluate); }
+        }
+    }
+    
+    /* -------------------------------------------------- Sending -------------------------------------------------- */
+    
+    /**
+     * Schedules a sender for the given recipient after the given delay in milliseconds unless a sender is already scheduled or running.
+     */
+    @Impure
+    public void schedule(@Nonnull HostIdentifier recipient, @NonNegative long delay) {
+        if (scheduled.putIfAbsent(recipient, Boolean.TRUE) == null) {
+            try {
+                executor.schedule(() -> send(recipient), delay, TimeUnit.MILLISECONDS);
+            } catch (@Nonnull RejectedExecutionException exception) {
+                scheduled.remove(recipient);
+                Log.debugging("The pending items of the $ for $ are sent after the next start because the $ has been shut down.", name, recipient, name);
+            }
+        }
+    }
+    
+    /**
+     * Sends the items that are pending for the given recipient until the queue is empty, an item could not be sent or the senders are shut down.
+     * An item whose sending failed with an external or a runtime exception is put back at the front of the queue after the transaction has been rolled back.
+     */
+    @Committing
+    @PureWithSideEffects
+    private void send(@Nonnull HostIdentifier recipient) {
+        final @Nonnull Deque<@Nonnull ITEM> queue = getQueue(recipient);
+        long delay = 0;
+        try {
+            while (!executor.isShutdown()) {
+                final @Nullable ITEM item;
+                synchronized (queue) { item = queue.pollFirst(); }
+                if (item == null) { break; }
+                
+                try {
+                    sender.send(recipient, item);
+                    Database.commit();
+                    backoffs.remove(recipient);
+                } catch (@Nonnull ExternalException | RuntimeException exception) {
+                    TransactionEnd.rollback();
+                    synchronized (queue) { queue.addFirst(item); }
+                    delay = backoffs.merge(recipient, 125l, (current, initial) -> Math.min(current * 2, maximalBackoff.get()));
+                    Log.warning("The $ could not send the pending items to $ and retries in $ ms.", exception, name, recipient, delay);
+                    break;
+                }
+            }
+        } finally {
+            scheduled.remove(recipient);
+            synchronized (queue) { if (!queue.isEmpty()) { schedule(recipient, delay); } }
+        }
+    }
+    
+    /**
+     * Shuts down the senders after the running senders have sent their current item.
+     * The senders that are scheduled with a delay are cancelled, and the pending items remain in their queues.
+     */
+    @Impure
+    public void shutDown() {
+        try {
+            Log.verbose("Shutting down the $.", name);
+            executor.shutdown();
+            executor.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (@Nonnull InterruptedException exception) {
+            Log.warning("Could not shut down the $.", exception, name);
+        }
+    }
+    
+}
@@ -74,6 +74,20 @@ public abstract class InternalQuery extends Query<NonHostEntity> implements Inte
     @TODO(task = "Also pass the present agent as an argument so that it does not have to be recreated again?", date = "2016-11-09", author = Author.KASPAR_ETTER)
     protected abstract @Nonnull @Matching QueryReply<NonHostEntity> execute() throws DatabaseException;
     
+    /**
+     * Executes this internal query on the host with the given permissions and restrictions of the querying agent.
+     * Queries whose reply depends on the authorization of the querying agent have to override this method.
+     * 
+     * @return the reply to this internal query.
+     */
+    @NonCommitting
+    @OnHostRecipient
+    @PureWithSideEffects
+    @MethodHasBeenReceived
+    protected @Nonnull @Matching QueryReply<NonHostEntity> execute(@Nonnull ReadOnlyAgentPermissions presentPermissions, @Nonnull Restrictions presentRestrictions) throws DatabaseException {
+        return execute();
+    }
+    
     @Override
     @NonCommitting
     @OnHostRecipient
@@ -104,7 +118,7 @@ public abstract class InternalQuery extends Query<NonHostEntity> implements Inte
         final @Nonnull Restrictions requiredRestrictions = getRequiredRestrictionsToExecuteMethod();
         if (!requiredRestrictions.equals(Restrictions.MIN)) { presentRestrictions.checkCover(requiredRestrictions); }
         
-        return execute();
+        return execute(presentPermissions, presentRestrictions);
     }
     
 }
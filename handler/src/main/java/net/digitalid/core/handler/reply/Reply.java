@@ -40,7 +40,7 @@ import net.digitalid.core.signature.host.HostSignature;
 
 /**
  * This class models replies to {@link Method methods} and stores them in the {@link Database database}.
- * All replies have to extend this class and {@link ReplyIndex#add(net.digitalid.core.identification.identity.SemanticType, net.digitalid.core.handler.reply.ReplyIndex.Factory) register} themselves as handlers.
+ * All replies have to extend this class and {@link ReplyIndex#add(net.digitalid.utility.conversion.interfaces.Converter, net.digitalid.core.identification.identity.SemanticType) register} their converter if they are stored.
  * 
  * @see ActionReply
  * @see QueryReply
@@ -21,110 +21,224 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.generics.Unspecifiable;
 import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
-import net.digitalid.utility.collaboration.annotations.TODO;
-import net.digitalid.utility.collaboration.enumerations.Author;
-import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
+import net.digitalid.utility.conversion.interfaces.Converter;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.string.Strings;
+import net.digitalid.utility.threading.Threading;
+import net.digitalid.utility.threading.annotations.MainThread;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.tuples.Pair;
+import net.digitalid.utility.validation.annotations.math.Positive;
 import net.digitalid.utility.validation.annotations.type.Utility;
 
+import net.digitalid.database.annotations.transaction.Committing;
 import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.dialect.expression.bool.SQLBooleanExpression;
+import net.digitalid.database.dialect.expression.number.SQLLongLiteralBuilder;
+import net.digitalid.database.dialect.identifier.column.SQLColumnNameBuilder;
+import net.digitalid.database.dialect.identifier.schema.SQLSchemaNameBuilder;
+import net.digitalid.database.dialect.identifier.table.SQLExplicitlyQualifiedTableBuilder;
+import net.digitalid.database.dialect.identifier.table.SQLQualifiedTable;
+import net.digitalid.database.dialect.identifier.table.SQLTableNameBuilder;
+import net.digitalid.database.dialect.statement.delete.SQLDeleteStatement;
+import net.digitalid.database.dialect.statement.delete.SQLDeleteStatementBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
 
-import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.compression.Compression;
+import net.digitalid.core.compression.CompressionConverterBuilder;
+import net.digitalid.core.entity.Entity;
+import net.digitalid.core.identification.identity.IdentifierResolver;
 import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.pack.PackConverter;
 import net.digitalid.core.signature.host.HostSignature;
+import net.digitalid.core.signature.host.HostSignatureConverter;
+import net.digitalid.core.signature.host.HostSignatureConverterBuilder;
+import net.digitalid.core.unit.GeneralUnit;
+import net.digitalid.core.unit.NumberSequence;
 
 /**
- * Description.
+ * All replies that are stored have to register their converter at this index.
+ * The index stores the host signatures of replies in an append-only table of the general schema,
+ * where they are referenced by an increasing number from a {@link NumberSequence number sequence} and retained for a configurable period.
+ * Stored replies are only decoded when they are loaded again.
  */
 @Utility
-@TODO(task = "Implement this class similarly to MethodIndex.", date = "2016-11-08", author = Author.KASPAR_ETTER)
 public abstract class ReplyIndex {
     
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
     /**
-     * Each reply needs to {@link #add(net.digitalid.core.identification.identity.SemanticType, net.digitalid.core.handler.reply.ReplyIndex.Factory) register} a factory that inherits from this class.
+     * Stores the period for which stored replies are retained.
      */
-    protected static abstract class Factory {
-        
-        /**
-         * Creates a reply that handles contents of the indicated type.
-         * 
-         * @param entity the entity to which the returned reply belongs
-         * @param signature the signature of the returned reply.
-         * @param number the number that references the reply.
-         * 
-         * @return a new reply that decodes the given block.
-         * 
-         * @require block.getType().isBasedOn(getType()) : "The block is based on the indicated type.";
-         * 
-         * @ensure return.hasSignature() : "The returned reply has a signature.";
-         */
-        @Pure
-        @NonCommitting
-        protected abstract Reply create(@Nullable NonHostEntity entity, @Nonnull HostSignature<?> signature, long number) throws ExternalException;
+    public static final @Nonnull Configuration<Time> retention = Configuration.with(Time.TROPICAL_YEAR);
+    
+    /* -------------------------------------------------- Converters -------------------------------------------------- */
+    
+    /**
+     * Maps reply types to the converter that recovers the reply for that type.
+     */
+    private static final @Nonnull Map<@Nonnull SemanticType, @Nonnull Converter<? extends Reply<?>, @Nonnull Pair<@Nullable Entity, @Nonnull HostSignature<Compression<Pack>>>>> converters = new ConcurrentHashMap<>();
+    
+    /**
+     * Adds the given converter to recover the replies of the given type.
+     */
+    @Impure
+    @MainThread
+    @SuppressWarnings("unchecked")
+    public static <@Unspecifiable ENTITY extends Entity> void add(@Nonnull Converter<? extends Reply<ENTITY>, @Nonnull Pair<@Nullable ENTITY, @Nonnull HostSignature<Compression<Pack>>>> converter, @Nonnull SemanticType type) {
+        Require.that(Threading.isMainThread()).orThrow("The method 'add' may only be called on the main thread.");
         
+        Log.debugging("Registered a reply converter for the type $.", type);
+        converters.put(type, (Converter<? extends Reply<?>, @Nonnull Pair<@Nullable Entity, @Nonnull HostSignature<Compression<Pack>>>>) (Converter<?, ?>) converter);
+    }
+    
+    /**
+     * Adds the given converter to recover the replies of its type.
+     */
+    @Impure
+    @MainThread
+    public static <@Unspecifiable ENTITY extends Entity> void add(@Nonnull Converter<? extends Reply<ENTITY>, @Nonnull Pair<@Nullable ENTITY, @Nonnull HostSignature<Compression<Pack>>>> converter) {
+        add(converter, SemanticType.map(converter));
     }
     
+    /* -------------------------------------------------- Table -------------------------------------------------- */
     
     /**
-     * Maps reply types to the factory that creates handlers for that type.
+     * Stores the converter of the stored host signatures.
      */
-    private static final @Nonnull Map<SemanticType, Factory> converters = new ConcurrentHashMap<>();
+    private static final @Nonnull HostSignatureConverter<Compression<Pack>> signatureConverter = HostSignatureConverterBuilder.withObjectConverter(CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).build();
+    
+    private static final @Nonnull SQLQualifiedTable qualifiedTable = SQLExplicitlyQualifiedTableBuilder.withTable(SQLTableNameBuilder.withString(ReplyEntryConverter.INSTANCE.getTypeName()).build()).withSchema(SQLSchemaNameBuilder.withString(GeneralUnit.INSTANCE.getName()).build()).build();
     
     /**
-     * Adds the given factory that creates handlers for the given type.
-     * 
-     * @param type the type to handle.
-     * @param factory the factory to add.
+     * Stores the sequence that assigns the numbers of the stored replies or null if the table has not yet been created.
+     * As the sequence is kept in memory, replies may only be stored by a single process per database.
      */
-    @Impure
-    protected static void add(@Nonnull SemanticType type, @Nonnull Factory factory) {
-        converters.put(type, factory);
+    private static volatile @Nullable NumberSequence sequence = null;
+    
+    /**
+     * Creates the database table, removes the replies whose retention period has passed and continues the numbering after the remaining replies.
+     */
+    @Committing
+    @PureWithSideEffects
+    @Initialize(target = ReplyIndex.class, dependencies = {IdentifierResolver.class, GeneralUnit.class})
+    public static void createTable() throws DatabaseException {
+        SQL.createTable(ReplyEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+        purge();
+        sequence = NumberSequence.continuing(ReplyEntryConverter.INSTANCE, GeneralUnit.INSTANCE, "number");
+        Database.commit();
     }
     
     /**
-     * Returns a reply that handles the given block.
-     * 
-     * @param entity the entity to which the returned reply belongs.
-     * @param signature the signature of the returned reply.
-     * @param number the number that references the reply.
-     * 
-     * @return a reply that decodes the given block.
-     * 
-     * @throws RequestException if no handler is found for the given content type.
-     * 
-     * @ensure return.hasSignature() : "The returned reply has a signature.";
+     * Returns the number up to which all stored replies have been committed or rolled back.
      */
     @Pure
+    public static long getVisibleNumber() {
+        final @Nullable NumberSequence sequence = ReplyIndex.sequence;
+        Require.that(sequence != null).orThrow("The reply index has been initialized.");
+        
+        return sequence.getVisibleNumber();
+    }
+    
+    /* -------------------------------------------------- Retention -------------------------------------------------- */
+    
+    /**
+     * Stores the time of the last purge.
+     */
+    private static volatile @Nonnull Time lastPurge = TimeBuilder.build();
+    
+    /**
+     * Removes the replies whose retention period has passed.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void purge() throws DatabaseException {
+        lastPurge = TimeBuilder.build();
+        final @Nonnull SQLBooleanExpression whereClause = SQLColumnNameBuilder.withString("time_value").build().less(SQLLongLiteralBuilder.withValue(retention.get().ago().getValue()).build());
+        final @Nonnull SQLDeleteStatement deleteStatement = SQLDeleteStatementBuilder.withTable(qualifiedTable).withWhereClause(whereClause).build();
+        Database.instance.get().getEncoder(deleteStatement, GeneralUnit.INSTANCE).execute();
+    }
+    
+    /* -------------------------------------------------- Storage -------------------------------------------------- */
+    
+    /**
+     * Stores the given host signature of a reply and returns the number that references it.
+     * The number remains pending until the current transaction has ended and is released right away if the reply could not be inserted.
+     * The replies whose retention period has passed are removed at most once per hour.
+     */
     @NonCommitting
-    private static @Nonnull Reply get(@Nullable NonHostEntity entity, @Nonnull HostSignature<?> signature, long number) throws ExternalException {
-        final @Nullable ReplyIndex.Factory factory = converters.get(null);
-        if (factory == null) { throw new RuntimeException(); /* TODO: InvalidReplyTypeException.get(block.getType()); */ }
-        else { return factory.create(entity, signature, number); }
+    @PureWithSideEffects
+    public static @Positive long store(@Nonnull HostSignature<Compression<Pack>> signature) throws DatabaseException {
+        final @Nullable NumberSequence sequence = ReplyIndex.sequence;
+        Require.that(sequence != null).orThrow("The reply index has been initialized.");
+        
+        if (lastPurge.isLessThan(Time.HOUR.ago())) { purge(); }
+        
+        final @Nonnull Pack pack = Pack.pack(signatureConverter, signature, signature.getObject().getObject().getType());
+        final long number = sequence.next();
+        boolean inserted = false;
+        try {
+            SQL.insertOrAbort(ReplyEntryConverter.INSTANCE, ReplyEntryBuilder.withNumber(number).withTime(TimeBuilder.build()).withSignature(pack).build(), GeneralUnit.INSTANCE);
+            inserted = true;
+        } finally {
+            if (!inserted) { sequence.release(number); }
+        }
+        return number;
     }
     
+    /* -------------------------------------------------- Retrieval -------------------------------------------------- */
+    
+    /**
+     * Returns the reply that is recovered from the given host signature for the given entity.
+     */
     @Pure
-    @TODO(task = "Implement this method (here or somewhere/somehow else.", date = "2016-11-09", author = Author.KASPAR_ETTER)
-    private static long store(@Nonnull HostSignature<?> signature) {
-        return 0;
+    private static @Nonnull Reply<?> recover(@Nullable Entity entity, @Nonnull HostSignature<Compression<Pack>> signature) throws RecoveryException {
+        final @Nonnull Pack pack = signature.getObject().getObject();
+        final @Nullable Converter<? extends Reply<?>, @Nonnull Pair<@Nullable Entity, @Nonnull HostSignature<Compression<Pack>>>> converter = converters.get(pack.getType());
+        if (converter == null) { throw RecoveryExceptionBuilder.withMessage(Strings.format("No reply could be found for the type $.", pack.getType())).build(); }
+        return pack.unpack(converter, Pair.of(entity, signature));
     }
     
     /**
-     * Returns a reply that handles the given block.
-     * 
-     * @param entity the entity to which the returned reply belongs.
-     * @param signature the signature of the returned reply.
-     * 
-     * @return a reply that decodes the given block.
-     * 
-     * @throws RequestException if no handler is found for the given content type.
-     * 
-     * @ensure return.hasSignature() : "The returned reply has a signature.";
+     * Returns the reply with the given number for the given entity or null if no such reply is stored (anymore).
+     * Please note that the signature of the reply is only read from the database and not verified.
      */
     @Pure
     @NonCommitting
-    public static @Nonnull Reply get(@Nullable NonHostEntity entity, @Nonnull HostSignature<?> signature) throws ExternalException {
-        return get(entity, signature, store(signature));
+    public static @Nullable Reply<?> load(@Nullable Entity entity, @Positive long number) throws DatabaseException, RecoveryException {
+        final @Nullable ReplyEntry entry = SQL.selectFirst(ReplyEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(number).withPrefix("number").build());
+        if (entry == null) { return null; }
+        return recover(entity, entry.getSignature().unpack(signatureConverter, null));
+    }
+    
+    /**
+     * Stores the host signature of the given reply and returns the number with which the reply can be {@link #load(Entity, long) loaded} again.
+     * 
+     * @require reply.getSignature() != null : "The reply has been received.";
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static @Positive long store(@Nonnull Reply<?> reply) throws DatabaseException {
+        final @Nullable HostSignature<Compression<Pack>> signature = reply.getSignature();
+        Require.that(signature != null).orThrow("The reply $ has been received.", reply);
+        Require.that(converters.containsKey(signature.getObject().getObject().getType())).orThrow("The converter of the reply $ has been registered.", reply);
+        
+        return store(signature);
     }
     
 }
@@ -22,11 +22,13 @@ import net.digitalid.utility.annotations.method.CallSuper;
 import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
-import net.digitalid.utility.collections.collection.ReadOnlyCollection;
-import net.digitalid.utility.collections.map.FreezableLinkedHashMapBuilder;
-import net.digitalid.utility.collections.map.FreezableMap;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
 import net.digitalid.utility.conversion.exceptions.ConversionException;
 import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
+import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.initialization.annotations.Initialize;
@@ -40,6 +42,9 @@ import net.digitalid.utility.validation.annotations.size.MaxSize;
 import net.digitalid.utility.validation.annotations.string.CodeIdentifier;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.exceptions.DatabaseException;
+
 import net.digitalid.core.asymmetrickey.KeyPair;
 import net.digitalid.core.asymmetrickey.PrivateKeyRetriever;
 import net.digitalid.core.attribute.Attribute;
@@ -64,6 +69,7 @@ import net.digitalid.core.keychain.PublicKeyChain;
 import net.digitalid.core.pack.Pack;
 import net.digitalid.core.pack.PackConverter;
 import net.digitalid.core.property.value.WritableSynchronizedValueProperty;
+import net.digitalid.core.pusher.Pusher;
 import net.digitalid.core.service.Service;
 import net.digitalid.core.signature.Signature;
 import net.digitalid.core.signature.SignatureBuilder;
@@ -162,8 +168,9 @@ public abstract class Host extends CoreUnit {
     
     /**
      * Maps the identifiers of the hosts that are running on this server to their instances.
+     * The map is concurrent so that hosts can be added and removed at runtime without blocking the workers that look them up.
      */
-    private static final @Nonnull FreezableMap<@Nonnull HostIdentifier, @Nonnull Host> hosts = FreezableLinkedHashMapBuilder.build();
+    private static final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Host> hosts = ConcurrentHashMapBuilder.build();
     
     /**
      * Returns whether the host with the given identifier is running on this server.
@@ -174,11 +181,11 @@ public abstract class Host extends CoreUnit {
     }
     
     /**
-     * Returns all the hosts that are running on this server.
+     * Returns a snapshot of all the hosts that are running on this server.
      */
     @Pure
-    public static @Nonnull ReadOnlyCollection<@Nonnull Host> getAll() {
-        return hosts.values();
+    public static @Nonnull @Frozen ReadOnlyList<@Nonnull Host> getAll() {
+        return FreezableArrayList.withElementsOf(hosts.values()).freeze();
     }
     
     /**
@@ -193,6 +200,47 @@ public abstract class Host extends CoreUnit {
         return host;
     }
     
+    /**
+     * Stores the identifiers of the hosts that are not registered when they are initialized but only once they are {@link #register(Host) registered} explicitly.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Boolean> deferredHosts = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Defers the registration of the host with the given identifier so that no requests are handled by it until it is {@link #register(Host) registered}.
+     * This is used to import the data of a host before it becomes visible.
+     */
+    @Impure
+    public static void deferRegistration(@Nonnull HostIdentifier identifier) {
+        deferredHosts.put(identifier, Boolean.TRUE);
+    }
+    
+    /**
+     * Registers the given host on this server so that requests to it are handled and resumes the pushing of its pending actions.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void register(@Nonnull Host host) throws DatabaseException {
+        deferredHosts.remove(host.getIdentifier());
+        hosts.put(host.getIdentifier(), host);
+        Pusher.resume(host);
+    }
+    
+    /**
+     * Removes the host with the given identifier from this server so that subsequent requests to it are rejected
+     * and stops the pushing of its pending actions. Requests that have already looked up the host are still handled.
+     * A deferred registration of the host with the given identifier is cancelled.
+     * 
+     * @return whether a host with the given identifier was running on this server.
+     */
+    @Impure
+    public static boolean remove(@Nonnull HostIdentifier identifier) {
+        deferredHosts.remove(identifier);
+        final @Nullable Host host = hosts.remove(identifier);
+        if (host == null) { return false; }
+        Pusher.suspend(host);
+        return true;
+    }
+    
     /* -------------------------------------------------- Initializers -------------------------------------------------- */
     
     /**
@@ -225,7 +273,7 @@ public abstract class Host extends CoreUnit {
         protectedPrivateKeyChain.set(PrivateKeyChainLoader.load(getIdentifier()));
         protectedPublicKeyChain.set(PublicKeyChainLoader.load(getIdentifier()));
         
-        hosts.put(getIdentifier(), this);
+        if (!deferredHosts.containsKey(getIdentifier())) { register(this); }
         
         final @Nonnull Attribute attribute = Attribute.of(getAccount(), PublicKeyChain.TYPE);
         if (attribute.value().get() == null) {
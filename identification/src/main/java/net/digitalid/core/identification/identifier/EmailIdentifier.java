@@ -42,6 +42,13 @@ import net.digitalid.core.identification.identity.Person;
 @GenerateConverter
 public abstract class EmailIdentifier extends ExternalIdentifier {
     
+    /* -------------------------------------------------- Interning -------------------------------------------------- */
+    
+    /**
+     * Stores the interner of the email identifiers.
+     */
+    private static final @Nonnull IdentifierInterner<@Nonnull EmailIdentifier> INTERNER = new IdentifierInterner<>(EmailIdentifierSubclass::new);
+    
     /* -------------------------------------------------- Validity -------------------------------------------------- */
     
     /**
@@ -54,7 +61,7 @@ public abstract class EmailIdentifier extends ExternalIdentifier {
      */
     @Pure
     public static boolean isValid(@Nonnull String string) {
-        return ExternalIdentifier.isConforming(string) && PATTERN.matcher(string).matches();
+        return ExternalIdentifier.isConforming(string) && IdentifierGrammar.isEmailIdentifier(string);
     }
     
     /* -------------------------------------------------- Recover -------------------------------------------------- */
@@ -65,7 +72,7 @@ public abstract class EmailIdentifier extends ExternalIdentifier {
     @Pure
     @Recover
     public static @Nonnull EmailIdentifier with(@Nonnull @Valid String string) {
-        return new EmailIdentifierSubclass(string);
+        return INTERNER.intern(string);
     }
     
     /* -------------------------------------------------- Resolve -------------------------------------------------- */
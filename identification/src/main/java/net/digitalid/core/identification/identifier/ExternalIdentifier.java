@@ -55,14 +55,9 @@ public abstract class ExternalIdentifier extends RootClass implements NonHostIde
      */
     @Pure
     public static boolean isValid(@Nonnull String string) {
-        final int index = string.indexOf(':');
-        if (index < 1) { return false; }
-        final @Nonnull String scheme = string.substring(0, index);
-        switch (scheme) {
-            case "email": return EmailIdentifier.isValid(string);
-            case "mobile": return MobileIdentifier.isValid(string);
-            default: return false;
-        }
+        if (string.startsWith("email:")) { return EmailIdentifier.isValid(string); }
+        if (string.startsWith("mobile:")) { return MobileIdentifier.isValid(string); }
+        return false;
     }
     
     /* -------------------------------------------------- Recover -------------------------------------------------- */
@@ -44,6 +44,13 @@ import net.digitalid.core.identification.identity.IdentifierResolver;
 @GenerateConverter
 public abstract class HostIdentifier extends InternalIdentifier {
     
+    /* -------------------------------------------------- Interning -------------------------------------------------- */
+    
+    /**
+     * Stores the interner of the host identifiers, of which there are only a few that recur in every request.
+     */
+    private static final @Nonnull IdentifierInterner<@Nonnull HostIdentifier> INTERNER = new IdentifierInterner<>(HostIdentifierSubclass::new);
+    
     /* -------------------------------------------------- Digital ID Core Identifier -------------------------------------------------- */
     
     /**
@@ -68,7 +75,7 @@ public abstract class HostIdentifier extends InternalIdentifier {
      */
     @Pure
     public static @Nonnull HostIdentifier with(@Nonnull @Valid String string) {
-        return new HostIdentifierSubclass(string);
+        return INTERNER.intern(string);
     }
     
     /* -------------------------------------------------- Resolve -------------------------------------------------- */
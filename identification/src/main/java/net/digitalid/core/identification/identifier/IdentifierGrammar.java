@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.identification.identifier;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+/**
+ * This utility class checks the grammars of the identifiers in a single pass without allocating any objects.
+ * The accepted languages are the same as the ones of the patterns in {@link InternalIdentifier}, {@link EmailIdentifier} and {@link MobileIdentifier}.
+ */
+@Utility
+abstract class IdentifierGrammar {
+    
+    /* -------------------------------------------------- Characters -------------------------------------------------- */
+    
+    /**
+     * Returns whether the given character is a lowercase letter.
+     */
+    @Pure
+    private static boolean isLetter(char character) {
+        return character >= 'a' && character <= 'z';
+    }
+    
+    /**
+     * Returns whether the given character is a digit.
+     */
+    @Pure
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+    
+    /* -------------------------------------------------- Parts -------------------------------------------------- */
+    
+    /**
+     * Returns whether the given range of the given string matches {@code [a-z0-9]+(?:[._-][a-z0-9]+)*}.
+     */
+    @Pure
+    static boolean isLocalPart(@Nonnull String string, int from, int to) {
+        if (from >= to) { return false; }
+        boolean afterSeparator = true;
+        for (int i = from; i < to; i++) {
+            final char character = string.charAt(i);
+            if (isLetter(character) || isDigit(character)) { afterSeparator = false; }
+            else if ((character == '.' || character == '_' || character == '-') && !afterSeparator) { afterSeparator = true; }
+            else { return false; }
+        }
+        return !afterSeparator;
+    }
+    
+    /**
+     * Returns whether the given range of the given string matches {@code [a-z0-9]+(?:[.-][a-z0-9]+)*\.[a-z][a-z]+}.
+     */
+    @Pure
+    static boolean isDomain(@Nonnull String string, int from, int to) {
+        boolean afterSeparator = true;
+        boolean dotSeen = false;
+        boolean onlyLetters = true;
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            final char character = string.charAt(i);
+            if (isLetter(character) || isDigit(character)) {
+                if (afterSeparator) { onlyLetters = true; length = 0; }
+                onlyLetters &= isLetter(character);
+                length++;
+                afterSeparator = false;
+            } else if ((character == '.' || character == '-') && !afterSeparator) {
+                dotSeen = character == '.';
+                afterSeparator = true;
+            } else { return false; }
+        }
+        return !afterSeparator && dotSeen && onlyLetters && length >= 2;
+    }
+    
+    /* -------------------------------------------------- Identifiers -------------------------------------------------- */
+    
+    /**
+     * Returns whether the given string matches the {@link InternalIdentifier#PATTERN pattern} of internal identifiers.
+     */
+    @Pure
+    static boolean isInternalIdentifier(@Nonnull String string) {
+        final int index = string.indexOf('@');
+        if (index < 0) { return isDomain(string, 0, string.length()); }
+        return (index == 0 || isLocalPart(string, 0, index)) && isDomain(string, index + 1, string.length());
+    }
+    
+    /**
+     * Returns whether the given string matches the {@link EmailIdentifier#PATTERN pattern} of email identifiers.
+     */
+    @Pure
+    static boolean isEmailIdentifier(@Nonnull String string) {
+        if (!string.startsWith("email:")) { return false; }
+        final int index = string.indexOf('@', 6);
+        return index >= 0 && isLocalPart(string, 6, index) && isDomain(string, index + 1, string.length());
+    }
+    
+    /**
+     * Returns whether the given string matches the {@link MobileIdentifier#PATTERN pattern} of mobile identifiers.
+     */
+    @Pure
+    static boolean isMobileIdentifier(@Nonnull String string) {
+        if (!string.startsWith("mobile:")) { return false; }
+        final int length = string.length() - 7;
+        if (length < 8 || length > 15) { return false; }
+        for (int i = 7; i < string.length(); i++) {
+            if (!isDigit(string.charAt(i))) { return false; }
+        }
+        return true;
+    }
+    
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.identification.identifier;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.generics.Unspecifiable;
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.functional.interfaces.UnaryFunction;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+import net.digitalid.utility.validation.annotations.type.Mutable;
+
+/**
+ * An identifier interner returns the same instance for equal identifiers as long as this instance is referenced elsewhere.
+ * The interned identifiers are only weakly referenced so that unused identifiers can still be garbage collected.
+ */
+@Mutable
+final class IdentifierInterner<@Unspecifiable IDENTIFIER extends Identifier> {
+    
+    /* -------------------------------------------------- Reference -------------------------------------------------- */
+    
+    /**
+     * An identifier reference is a weak reference to an interned identifier that remembers its key.
+     */
+    @Immutable
+    private static final class IdentifierReference<@Unspecifiable IDENTIFIER extends Identifier> extends WeakReference<IDENTIFIER> {
+        
+        private final @Nonnull String string;
+        
+        /**
+         * Returns the string under which the referenced identifier is interned.
+         */
+        @Pure
+        @Nonnull String getString() {
+            return string;
+        }
+        
+        IdentifierReference(@Nonnull IDENTIFIER identifier, @Nonnull ReferenceQueue<? super IDENTIFIER> queue) {
+            super(identifier, queue);
+            
+            this.string = identifier.getString();
+        }
+        
+    }
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Maps the strings of the interned identifiers onto weak references to these identifiers.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull String, @Nonnull IdentifierReference<IDENTIFIER>> identifiers = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Stores the queue to which the references of garbage collected identifiers are enqueued.
+     */
+    private final @Nonnull ReferenceQueue<IDENTIFIER> queue = new ReferenceQueue<>();
+    
+    /**
+     * Stores the function that creates a new identifier with a given string.
+     */
+    private final @Nonnull UnaryFunction<@Nonnull String, @Nonnull IDENTIFIER> constructor;
+    
+    /* -------------------------------------------------- Constructor -------------------------------------------------- */
+    
+    IdentifierInterner(@Nonnull UnaryFunction<@Nonnull String, @Nonnull IDENTIFIER> constructor) {
+        this.constructor = constructor;
+    }
+    
+    /* -------------------------------------------------- Purging -------------------------------------------------- */
+    
+    /**
+     * Removes the entries whose identifiers have been garbage collected.
+     */
+    @Impure
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        @Nullable Reference<? extends IDENTIFIER> reference;
+        while ((reference = queue.poll()) != null) {
+            final @Nonnull IdentifierReference<IDENTIFIER> identifierReference = (IdentifierReference<IDENTIFIER>) reference;
+            identifiers.remove(identifierReference.getString(), identifierReference);
+        }
+    }
+    
+    /* -------------------------------------------------- Interning -------------------------------------------------- */
+    
+    /**
+     * Returns the canonical identifier with the given string, which is only constructed (and thus validated) if it is not yet interned.
+     * Concurrent callers do not block each other and agree on the same instance, which is the one whose reference is stored first.
+     */
+    @Impure
+    @Nonnull IDENTIFIER intern(@Nonnull String string) {
+        final @Nullable IdentifierReference<IDENTIFIER> present = identifiers.get(string);
+        final @Nullable IDENTIFIER interned = present != null ? present.get() : null;
+        if (interned != null) { return interned; }
+        
+        purge();
+        final @Nonnull IDENTIFIER identifier = constructor.evaluate(string);
+        final @Nonnull IdentifierReference<IDENTIFIER> reference = new IdentifierReference<>(identifier, queue);
+        @Nonnull IdentifierReference<IDENTIFIER> stored = identifiers.putIfAbsentElseReturnPresent(string, reference);
+        while (stored != reference) {
+            final @Nullable IDENTIFIER existing = stored.get();
+            if (existing != null) { return existing; }
+            if (identifiers.replace(string, stored, reference)) { break; }
+            stored = identifiers.putIfAbsentElseReturnPresent(string, reference);
+        }
+        return identifier;
+    }
+    
+}
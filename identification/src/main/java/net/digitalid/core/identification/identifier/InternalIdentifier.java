@@ -56,7 +56,7 @@ public abstract class InternalIdentifier extends RootClass implements Identifier
      */
     @Pure
     public static boolean isConforming(@Nonnull String string) {
-        return Identifier.isConforming(string) && PATTERN.matcher(string).matches();
+        return Identifier.isConforming(string) && IdentifierGrammar.isInternalIdentifier(string);
     }
     
     /**
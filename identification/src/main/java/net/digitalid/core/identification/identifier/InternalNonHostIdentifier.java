@@ -43,6 +43,13 @@ import net.digitalid.core.identification.identity.Type;
 @GenerateConverter
 public abstract class InternalNonHostIdentifier extends InternalIdentifier implements NonHostIdentifier {
     
+    /* -------------------------------------------------- Interning -------------------------------------------------- */
+    
+    /**
+     * Stores the interner of the non-host identifiers, which name the subjects and signers of requests.
+     */
+    private static final @Nonnull IdentifierInterner<@Nonnull InternalNonHostIdentifier> INTERNER = new IdentifierInterner<>(InternalNonHostIdentifierSubclass::new);
+    
     /* -------------------------------------------------- Validity -------------------------------------------------- */
     
     /**
@@ -61,7 +68,7 @@ public abstract class InternalNonHostIdentifier extends InternalIdentifier imple
     @Pure
     @Recover
     public static @Nonnull InternalNonHostIdentifier with(@Nonnull @Valid String string) {
-        return new InternalNonHostIdentifierSubclass(string);
+        return INTERNER.intern(string);
     }
     
     /**
@@ -42,6 +42,13 @@ import net.digitalid.core.identification.identity.Person;
 @GenerateConverter
 public abstract class MobileIdentifier extends ExternalIdentifier {
     
+    /* -------------------------------------------------- Interning -------------------------------------------------- */
+    
+    /**
+     * Stores the interner of the mobile identifiers.
+     */
+    private static final @Nonnull IdentifierInterner<@Nonnull MobileIdentifier> INTERNER = new IdentifierInterner<>(MobileIdentifierSubclass::new);
+    
     /* -------------------------------------------------- Validity -------------------------------------------------- */
     
     /**
@@ -54,7 +61,7 @@ public abstract class MobileIdentifier extends ExternalIdentifier {
      */
     @Pure
     public static boolean isValid(@Nonnull String string) {
-        return ExternalIdentifier.isConforming(string) && PATTERN.matcher(string).matches();
+        return ExternalIdentifier.isConforming(string) && IdentifierGrammar.isMobileIdentifier(string);
     }
     
     /* -------------------------------------------------- Recover -------------------------------------------------- */
@@ -65,7 +72,7 @@ public abstract class MobileIdentifier extends ExternalIdentifier {
     @Pure
     @Recover
     public static @Nonnull MobileIdentifier with(@Nonnull @Valid String string) {
-        return new MobileIdentifierSubclass(string);
+        return INTERNER.intern(string);
     }
     
     /* -------------------------------------------------- Resolve -------------------------------------------------- */
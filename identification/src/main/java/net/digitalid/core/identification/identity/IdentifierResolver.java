@@ -22,10 +22,14 @@ import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.annotations.ownership.NonCaptured;
 import net.digitalid.utility.annotations.parameter.Modified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
 import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.exceptions.CaseExceptionBuilder;
 import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.validation.annotations.elements.NonNullableElements;
 import net.digitalid.utility.validation.annotations.method.Ensures;
 import net.digitalid.utility.validation.annotations.type.Stateless;
 
@@ -83,6 +87,18 @@ public abstract class IdentifierResolver {
     @NonCommitting
     public abstract @Nonnull Identity resolve(@Nonnull Identifier identifier) throws ExternalException;
     
+    /**
+     * Resolves the given identifiers into identities in the same order.
+     * Implementations should override this method to resolve the identifiers of the same host with a single request.
+     */
+    @Pure
+    @NonCommitting
+    public @Nonnull @NonNullableElements ReadOnlyList<@Nonnull Identity> resolveAll(@Nonnull @NonNullableElements ReadOnlyList<? extends @Nonnull Identifier> identifiers) throws ExternalException {
+        final @Nonnull FreezableList<@Nonnull Identity> identities = FreezableArrayList.withInitialCapacity(identifiers.size());
+        for (final @Nonnull Identifier identifier : identifiers) { identities.add(resolve(identifier)); }
+        return identities.freeze();
+    }
+    
     /* -------------------------------------------------- Configuration -------------------------------------------------- */
     
     /**
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.identification.identifier;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link IdentifierGrammar identifier grammar}.
+ */
+public class IdentifierGrammarTest {
+    
+    /* -------------------------------------------------- Assertions -------------------------------------------------- */
+    
+    /**
+     * Asserts that the grammar and the pattern both evaluate to the expected result for each of the given strings.
+     */
+    @Pure
+    private static void assertMatches(boolean expected, @Nonnull Pattern pattern, @Nonnull String... strings) {
+        for (@Nonnull String string : strings) {
+            Assert.assertEquals("Pattern on '" + string + "'", expected, pattern.matcher(string).matches());
+            final boolean actual;
+            if (pattern == InternalIdentifier.PATTERN) { actual = IdentifierGrammar.isInternalIdentifier(string); }
+            else if (pattern == EmailIdentifier.PATTERN) { actual = IdentifierGrammar.isEmailIdentifier(string); }
+            else { actual = IdentifierGrammar.isMobileIdentifier(string); }
+            Assert.assertEquals("Grammar on '" + string + "'", expected, actual);
+        }
+    }
+    
+    /* -------------------------------------------------- Internal Identifiers -------------------------------------------------- */
+    
+    @Test
+    public void shouldAcceptValidInternalIdentifiers() {
+        assertMatches(true, InternalIdentifier.PATTERN, "digitalid.net", "core.digitalid.net", "sub-domain.example.com", "x1.y2.ch", "person@digitalid.net", "@digitalid.net", "a.b_c-d@sub-domain.example.com", "0@0.ab");
+    }
+    
+    @Test
+    public void shouldRejectInvalidInternalIdentifiers() {
+        assertMatches(false, InternalIdentifier.PATTERN, "", "net", ".net", "digitalid.", "digitalid.n", "digitalid.n3t", "digitalid..net", "-digitalid.net", "digitalid-.net", "digital_id.net", "Digitalid.net", "a..b@x.com", "-a@x.com", "a-@x.com", "a@@x.com", "a@x.c", "a@x.c0m", "A@x.com", "@", "a@", "a@b@c.com", "email:a@x.com");
+    }
+    
+    /* -------------------------------------------------- Email Identifiers -------------------------------------------------- */
+    
+    @Test
+    public void shouldAcceptValidEmailIdentifiers() {
+        assertMatches(true, EmailIdentifier.PATTERN, "email:john.doe@example.com", "email:a_b-c@sub-domain.example.org", "email:0@0.ab");
+    }
+    
+    @Test
+    public void shouldRejectInvalidEmailIdentifiers() {
+        assertMatches(false, EmailIdentifier.PATTERN, "", "email:", "email:@x.com", "email:x.com", "email:a@x", "email:a@x.c", "email:a..b@x.com", "email:.a@x.com", "email:a@x_y.com", "email:A@x.com", "mail:a@x.com", "john.doe@example.com", "email:a@b@x.com");
+    }
+    
+    /* -------------------------------------------------- Mobile Identifiers -------------------------------------------------- */
+    
+    @Test
+    public void shouldAcceptValidMobileIdentifiers() {
+        assertMatches(true, MobileIdentifier.PATTERN, "mobile:12345678", "mobile:0041791234567", "mobile:123456789012345");
+    }
+    
+    @Test
+    public void shouldRejectInvalidMobileIdentifiers() {
+        assertMatches(false, MobileIdentifier.PATTERN, "", "mobile:", "mobile:1234567", "mobile:1234567890123456", "mobile:12a45678", "mobile:+41791234567", "Mobile:12345678", "12345678");
+    }
+    
+    /* -------------------------------------------------- Random Strings -------------------------------------------------- */
+    
+    /**
+     * Returns a random string of at most the given length over an alphabet that covers every branch of the grammar.
+     */
+    @Impure
+    private static @Nonnull String randomString(@Nonnull Random random, @Nonnull String prefix, int maximalLength) {
+        final @Nonnull String alphabet = "ab0.-_@:A";
+        final int length = random.nextInt(maximalLength + 1);
+        final @Nonnull StringBuilder string = new StringBuilder(prefix);
+        for (int i = 0; i < length; i++) { string.append(alphabet.charAt(random.nextInt(alphabet.length()))); }
+        return string.toString();
+    }
+    
+    @Test
+    public void shouldAgreeWithPatternsOnRandomStrings() {
+        final @Nonnull Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            final @Nonnull String internal = randomString(random, "", 12);
+            Assert.assertEquals("Internal identifier '" + internal + "'", InternalIdentifier.PATTERN.matcher(internal).matches(), IdentifierGrammar.isInternalIdentifier(internal));
+            final @Nonnull String email = randomString(random, "email:", 12);
+            Assert.assertEquals("Email identifier '" + email + "'", EmailIdentifier.PATTERN.matcher(email).matches(), IdentifierGrammar.isEmailIdentifier(email));
+            final @Nonnull StringBuilder mobile = new StringBuilder("mobile:");
+            final int length = random.nextInt(18);
+            for (int j = 0; j < length; j++) { mobile.append(random.nextInt(20) == 0 ? 'a' : (char) ('0' + random.nextInt(10))); }
+            Assert.assertEquals("Mobile identifier '" + mobile + "'", MobileIdentifier.PATTERN.matcher(mobile).matches(), IdentifierGrammar.isMobileIdentifier(mobile.toString()));
+        }
+    }
+    
+}
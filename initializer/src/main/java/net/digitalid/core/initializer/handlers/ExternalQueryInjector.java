@@ -22,8 +22,6 @@ import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.collections.list.FreezableArrayList;
 import net.digitalid.utility.collections.list.FreezableList;
-import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
-import net.digitalid.utility.concurrency.map.ConcurrentMap;
 import net.digitalid.utility.exceptions.ExternalException;
 import net.digitalid.utility.initialization.annotations.Initialize;
 import net.digitalid.utility.time.Time;
@@ -31,9 +29,11 @@ import net.digitalid.utility.time.TimeBuilder;
 import net.digitalid.utility.validation.annotations.size.NonEmpty;
 
 import net.digitalid.core.attribute.Attribute;
+import net.digitalid.core.authorization.CredentialRequester;
+import net.digitalid.core.client.CredentialsIndex;
+import net.digitalid.core.client.role.NonNativeRole;
 import net.digitalid.core.client.role.Role;
 import net.digitalid.core.credential.ClientCredential;
-import net.digitalid.core.credential.utility.HashedOrSaltedAgentPermissions;
 import net.digitalid.core.handler.method.query.ExternalQuery;
 import net.digitalid.core.identification.identity.SemanticType;
 import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
@@ -46,8 +46,6 @@ import net.digitalid.core.typeset.authentications.FreezableAuthentications;
  */
 public class ExternalQueryInjector {
     
-    private static final @Nonnull ConcurrentMap<Role, ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential>> identityBasedCredentials = ConcurrentHashMapBuilder.build();
-    
     @Pure
     private static @Nonnull ClientCredential getAttributeBased(@Nonnull Role role, @Nonnull CertifiedAttributeValue certifiedAttributeValue, @Nonnull @NonEmpty ReadOnlyAgentPermissions permissions) {
         // TODO: implement attribute based client credential
@@ -55,18 +53,8 @@ public class ExternalQueryInjector {
     }
     
     @Pure
-    private static @Nonnull ClientCredential getIdentityBased(@Nonnull Role role, @Nonnull @NonEmpty ReadOnlyAgentPermissions permissions) {
-        @Nullable ConcurrentMap<ReadOnlyAgentPermissions, ClientCredential> map = identityBasedCredentials.get(role);
-        if (map == null) map = identityBasedCredentials.putIfAbsentElseReturnPresent(role, ConcurrentHashMapBuilder.build());
-        @Nullable ClientCredential credential = map.get(permissions);
-        
-        if (credential == null || !credential.isActive()) {
-            final @Nonnull HashedOrSaltedAgentPermissions randomizedPermissions = HashedOrSaltedAgentPermissions.with(permissions, true);
-            // TODO: uncomment and fix
-//            final @Nonnull CredentialReply reply = new CredentialInternalQuery(role, randomizedPermissions).sendNotNull();
-//            credential = map.putIfAbsentElseReturnPresent(permissions, reply.getInternalCredential(randomizedPermissions, null, BigInteger.ZERO, role.getUnit().secret.get()));
-        }
-        return credential;
+    private static @Nonnull ClientCredential getIdentityBased(@Nonnull Role role, @Nonnull @NonEmpty ReadOnlyAgentPermissions permissions) throws ExternalException {
+        return CredentialsIndex.get(role, permissions);
     }
     
     @Pure
@@ -113,6 +101,15 @@ public class ExternalQueryInjector {
         return certificates;
     }
     
+    /**
+     * Injects the request of new credentials into the configuration of the credentials index.
+     */
+    @PureWithSideEffects
+    @Initialize(target = CredentialsIndex.class)
+    public static void injectCredentialIssuer() {
+        CredentialsIndex.issuer.set((role, permissions) -> CredentialRequester.request(role, role instanceof NonNativeRole ? ((NonNativeRole) role).getRelation() : null, permissions, role.getUnit().secret.get()));
+    }
+    
     /**
      * Injects the methods to retrieve credentials and certificates into the configuration of the external query class.
      */
@@ -25,9 +25,9 @@ import net.digitalid.utility.collections.list.FreezableLinkedList;
 import net.digitalid.utility.collections.list.FreezableList;
 import net.digitalid.utility.collections.list.ReadOnlyList;
 import net.digitalid.utility.contracts.Require;
-import net.digitalid.utility.exceptions.CaseExceptionBuilder;
 import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.generation.Derive;
 import net.digitalid.utility.validation.annotations.order.StrictlyDescending;
 import net.digitalid.utility.validation.annotations.size.NonEmpty;
 import net.digitalid.utility.validation.annotations.type.Immutable;
@@ -71,21 +71,72 @@ public abstract class KeyChain<@Unspecifiable KEY extends AsymmetricKey, @Unspec
         return getItems().getLast().getTime();
     }
     
+    /* -------------------------------------------------- Index -------------------------------------------------- */
+    
+    /**
+     * Returns the times of the given items in the same (strictly descending) order as the items.
+     */
+    @Pure
+    protected static @Nonnull long[] extractTimes(@Nonnull ReadOnlyList<? extends @Nonnull KeyChainItem<?>> items) {
+        final @Nonnull long[] times = new long[items.size()];
+        int index = 0;
+        for (@Nonnull KeyChainItem<?> item : items) { times[index++] = item.getTime().getValue(); }
+        return times;
+    }
+    
+    /**
+     * Returns the keys of the given items in the same order as the items.
+     */
+    @Pure
+    protected static @Nonnull Object[] extractKeys(@Nonnull ReadOnlyList<? extends @Nonnull KeyChainItem<?>> items) {
+        final @Nonnull Object[] keys = new Object[items.size()];
+        int index = 0;
+        for (@Nonnull KeyChainItem<?> item : items) { keys[index++] = item.getKey(); }
+        return keys;
+    }
+    
+    /**
+     * Returns the times of the items, which are derived once when the key chain is constructed.
+     */
+    @Pure
+    @Derive("KeyChain.extractTimes(items)")
+    protected abstract @Nonnull long[] getTimes();
+    
+    /**
+     * Returns the keys of the items in the same order as the times, which are derived once when the key chain is constructed.
+     */
+    @Pure
+    @Derive("KeyChain.extractKeys(items)")
+    protected abstract @Nonnull Object[] getKeys();
+    
     /* -------------------------------------------------- Retrieval -------------------------------------------------- */
     
     /**
      * Returns the key in use at the given time.
+     * The newest key is returned in constant time, older keys are found with a binary search over the item times.
      * 
      * @require time.isGreaterThanOrEqualTo(getOldestTime()) : "There is no key for the given time in this key chain.";
      */
     @Pure
+    @SuppressWarnings("unchecked")
     public @Nonnull KEY getKey(@Nonnull Time time) {
-        Require.that(time.isGreaterThanOrEqualTo(getOldestTime())).orThrow("There is no key for the time $ in the key chain $.", time, this);
+        final @Nonnull long[] times = getTimes();
+        final @Nonnull Object[] keys = getKeys();
         
-        for (@Nonnull ITEM item : getItems()) {
-            if (time.isGreaterThanOrEqualTo(item.getTime())) { return item.getKey(); }
+        final long value = time.getValue();
+        if (value >= times[0]) { return (KEY) keys[0]; }
+        
+        Require.that(value >= times[times.length - 1]).orThrow("There is no key for the time $ in the key chain $.", time, this);
+        
+        // Find the first (i.e. newest) item whose time is less than or equal to the given time.
+        int low = 1;
+        int high = times.length - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (times[middle] <= value) { high = middle; }
+            else { low = middle + 1; }
         }
-        throw CaseExceptionBuilder.withVariable("time").withValue(time).build();
+        return (KEY) keys[low];
     }
     
     /* -------------------------------------------------- Modification -------------------------------------------------- */
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.keychain;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.collections.list.FreezableLinkedList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.contracts.exceptions.PreconditionViolationException;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+
+import net.digitalid.core.asymmetrickey.KeyPair;
+import net.digitalid.core.asymmetrickey.PublicKey;
+import net.digitalid.core.testing.CoreTest;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link PublicKeyChain public key chain}.
+ */
+public class PublicKeyChainTest extends CoreTest {
+    
+    private static @Nonnull Time newestTime;
+    
+    private static @Nonnull Time middleTime;
+    
+    private static @Nonnull Time oldestTime;
+    
+    private static @Nonnull PublicKey newestKey;
+    
+    private static @Nonnull PublicKey middleKey;
+    
+    private static @Nonnull PublicKey oldestKey;
+    
+    private static @Nonnull PublicKeyChain keyChain;
+    
+    @BeforeClass
+    public static void createKeyChain() {
+        newestTime = Time.HALF_HOUR.ago();
+        middleTime = Time.MONTH.ago();
+        oldestTime = Time.TROPICAL_YEAR.ago();
+        
+        newestKey = keyPair.get().getPublicKey();
+        middleKey = KeyPair.withRandomValues().getPublicKey();
+        oldestKey = KeyPair.withRandomValues().getPublicKey();
+        
+        final @Nonnull FreezableList<@Nonnull PublicKeyChainItem> items = FreezableLinkedList.withNoElements();
+        items.add(PublicKeyChainItemBuilder.withTime(newestTime).withKey(newestKey).build());
+        items.add(PublicKeyChainItemBuilder.withTime(middleTime).withKey(middleKey).build());
+        items.add(PublicKeyChainItemBuilder.withTime(oldestTime).withKey(oldestKey).build());
+        keyChain = new PublicKeyChainSubclass(items.freeze());
+    }
+    
+    private static @Nonnull Time shift(@Nonnull Time time, long milliseconds) {
+        return TimeBuilder.withValue(time.getValue() + milliseconds).build();
+    }
+    
+    @Test
+    public void shouldReturnTheNewestKeyFromItsTimeOn() {
+        assertThat(keyChain.getKey(newestTime)).isSameAs(newestKey);
+        assertThat(keyChain.getKey(shift(newestTime, 1))).isSameAs(newestKey);
+        assertThat(keyChain.getKey(Time.TROPICAL_YEAR.ahead())).isSameAs(newestKey);
+    }
+    
+    @Test
+    public void shouldReturnTheKeyOfTheNewestItemThatIsNotAfterTheTime() {
+        assertThat(keyChain.getKey(shift(newestTime, -1))).isSameAs(middleKey);
+        assertThat(keyChain.getKey(middleTime)).isSameAs(middleKey);
+        assertThat(keyChain.getKey(shift(middleTime, -1))).isSameAs(oldestKey);
+        assertThat(keyChain.getKey(oldestTime)).isSameAs(oldestKey);
+    }
+    
+    @Test
+    public void shouldReturnTheOnlyKeyOfASingleItem() {
+        final @Nonnull PublicKeyChain single = PublicKeyChain.with(middleTime, middleKey);
+        assertThat(single.getKey(middleTime)).isSameAs(middleKey);
+        assertThat(single.getKey(newestTime)).isSameAs(middleKey);
+    }
+    
+    @Test
+    public void shouldRejectTimesBeforeTheOldestItem() {
+        assertThatThrownBy(() -> keyChain.getKey(shift(oldestTime, -1))).isInstanceOf(PreconditionViolationException.class);
+        assertThatThrownBy(() -> PublicKeyChain.with(middleTime, middleKey).getKey(oldestTime)).isInstanceOf(PreconditionViolationException.class);
+    }
+    
+}
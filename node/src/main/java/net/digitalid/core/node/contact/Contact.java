@@ -122,6 +122,16 @@ public abstract class Contact extends Node implements ExtendedNode {
         return contact;
     }
     
+    /**
+     * Returns the potentially cached contact of the given entity with the given key without inserting it into the database.
+     * This method may only be used for contacts that are known to exist, like the contacts of a {@link ContactBitmap}.
+     */
+    @Pure
+    @NonCommitting
+    public static @Nonnull Contact get(@Nonnull NonHostEntity entity, @Uneven long key) throws DatabaseException {
+        return ContactSubclass.MODULE.getSubjectIndex().get(entity, key);
+    }
+    
     /**
      * Returns the potentially cached contact of the given entity for the given person that might not yet exist in the database.
      */
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.contact;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.ownership.Capturable;
+import net.digitalid.utility.annotations.ownership.NonCaptured;
+import net.digitalid.utility.annotations.parameter.Unmodified;
+import net.digitalid.utility.annotations.type.ThreadSafe;
+import net.digitalid.utility.collections.set.FreezableLinkedHashSetBuilder;
+import net.digitalid.utility.collections.set.FreezableSet;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.freezable.annotations.NonFrozen;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.entity.NonHostEntity;
+
+/**
+ * A contact bitmap is a compressed {@link IndexBitmap index bitmap} of contacts of the same entity, which allows set operations to be computed word by word.
+ * Since the keys of contacts can be sparse, each contact is represented by a dense index that is assigned from an index table of its entity.
+ * Each bitmap references the index table from which its indices were assigned so that it remains valid after the table has been retired.
+ */
+@Immutable
+public final class ContactBitmap {
+    
+    /* -------------------------------------------------- Index Table -------------------------------------------------- */
+    
+    /**
+     * An index table assigns the contacts of an entity consecutive indices in the order in which they are first added to a bitmap.
+     * Indices are never reassigned within a table. Instead, the table of an entity is replaced by a new one once it is retired,
+     * after which the indices of the contacts that are no longer used are reclaimed as soon as the bitmaps of the old table are no longer referenced.
+     */
+    @ThreadSafe
+    private static final class IndexTable {
+        
+        private final @Nonnull NonHostEntity entity;
+        
+        private final @Nonnull Map<@Nonnull Long, @Nonnull Integer> indices = new HashMap<>();
+        
+        private @Nonnull long[] keys = new long[16];
+        
+        private int size = 0;
+        
+        private IndexTable(@Nonnull NonHostEntity entity) {
+            this.entity = entity;
+        }
+        
+        /**
+         * Returns the index of the contact with the given key, which is assigned if the contact has no index yet.
+         */
+        @Impure
+        synchronized int getIndex(long key) {
+            final @Nullable Integer index = indices.get(key);
+            if (index != null) { return index; }
+            
+            if (size == keys.length) { keys = Arrays.copyOf(keys, 2 * size); }
+            keys[size] = key;
+            indices.put(key, size);
+            return size++;
+        }
+        
+        /**
+         * Returns the index of the contact with the given key or -1 if the contact has no index.
+         */
+        @Pure
+        synchronized int findIndex(long key) {
+            final @Nullable Integer index = indices.get(key);
+            return index != null ? index : -1;
+        }
+        
+        /**
+         * Returns the keys of the contacts with an index, where the key of each contact is stored at its index.
+         * Since the array is replaced when it grows, it contains the keys of all the indices that were assigned before this call.
+         */
+        @Pure
+        synchronized @Nonnull long[] getKeys() {
+            return keys;
+        }
+        
+    }
+    
+    /**
+     * Stores the maximal number of entities whose index tables are kept.
+     * The configuration is read whenever an index table is added.
+     */
+    public static final @Nonnull Configuration<Integer> indexTableCacheSize = Configuration.with(1_000);
+    
+    /**
+     * Stores the current index tables of the entities whose contacts have been added to bitmaps.
+     * The least recently used table is retired when the map is full.
+     */
+    private static final @Nonnull Map<@Nonnull NonHostEntity, @Nonnull IndexTable> indexTables = new LinkedHashMap<NonHostEntity, IndexTable>(16, 0.75f, true) {
+        
+        @Pure
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<NonHostEntity, IndexTable> eldest) {
+            return size() > indexTableCacheSize.get();
+        }
+        
+    };
+    
+    /**
+     * Returns the current index table of the given entity.
+     */
+    @Impure
+    private static @Nonnull IndexTable getIndexTable(@Nonnull NonHostEntity entity) {
+        synchronized (indexTables) {
+            @Nullable IndexTable indexTable = indexTables.get(entity);
+            if (indexTable == null) {
+                indexTable = new IndexTable(entity);
+                indexTables.put(entity, indexTable);
+            }
+            return indexTable;
+        }
+    }
+    
+    /**
+     * Retires the index table of the given entity so that the bitmaps that are created afterwards no longer need the indices of removed contacts.
+     * This method should be called when the bitmaps of the entity are invalidated because its contacts have changed.
+     */
+    @Impure
+    public static void retireIndexTable(@Nonnull NonHostEntity entity) {
+        synchronized (indexTables) {
+            indexTables.remove(entity);
+        }
+    }
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Stores the empty contact bitmap.
+     */
+    public static final @Nonnull ContactBitmap EMPTY = new ContactBitmap(null, IndexBitmap.EMPTY);
+    
+    /**
+     * Stores the index table from which the indices of this bitmap were assigned or null if this bitmap is empty.
+     */
+    private final @Nullable IndexTable indexTable;
+    
+    /**
+     * Stores the indices of the contacts of this bitmap.
+     */
+    private final @Nonnull IndexBitmap indices;
+    
+    /* -------------------------------------------------- Constructors -------------------------------------------------- */
+    
+    private ContactBitmap(@Nullable IndexTable indexTable, @Nonnull IndexBitmap indices) {
+        this.indexTable = indexTable;
+        this.indices = indices;
+    }
+    
+    /**
+     * Returns a contact bitmap with the given indices of the given index table.
+     */
+    @Pure
+    private static @Nonnull ContactBitmap with(@Nonnull IndexTable indexTable, @Nonnull IndexBitmap indices) {
+        return indices.isEmpty() ? EMPTY : new ContactBitmap(indexTable, indices);
+    }
+    
+    /**
+     * Returns a contact bitmap with the given contact.
+     */
+    @Pure
+    public static @Nonnull ContactBitmap with(@Nonnull Contact contact) {
+        final @Nonnull IndexTable indexTable = getIndexTable(contact.getEntity());
+        return new ContactBitmap(indexTable, IndexBitmap.with(indexTable.getIndex(contact.getKey())));
+    }
+    
+    /**
+     * Returns a contact bitmap with the given contacts, which have to belong to the same entity.
+     */
+    @Pure
+    public static @Nonnull ContactBitmap with(@NonCaptured @Unmodified @Nonnull Iterable<? extends @Nonnull Contact> contacts) {
+        @Nullable IndexTable indexTable = null;
+        @Nonnull int[] indices = new int[16];
+        int count = 0;
+        for (@Nonnull Contact contact : contacts) {
+            if (indexTable == null) { indexTable = getIndexTable(contact.getEntity()); }
+            Require.that(contact.getEntity().equals(indexTable.entity)).orThrow("All contacts of a bitmap have to belong to the same entity but $ does not belong to $.", contact, indexTable.entity);
+            if (count == indices.length) { indices = Arrays.copyOf(indices, 2 * count); }
+            indices[count++] = indexTable.getIndex(contact.getKey());
+        }
+        if (indexTable == null) { return EMPTY; }
+        return with(indexTable, IndexBitmap.with(indices, count));
+    }
+    
+    /* -------------------------------------------------- Operations -------------------------------------------------- */
+    
+    /**
+     * Returns the indices of this bitmap in the given index table, which belongs to the same entity.
+     * The indices are only translated if this bitmap was created from an index table that has been retired in the meantime.
+     */
+    @Pure
+    private @Nonnull IndexBitmap getIndices(@Nonnull IndexTable indexTable) {
+        if (this.indexTable == null || this.indexTable == indexTable) { return indices; }
+        
+        final @Nonnull long[] contactKeys = this.indexTable.getKeys();
+        final @Nonnull int[] translatedIndices = indices.toIndices();
+        for (int i = 0; i < translatedIndices.length; i++) { translatedIndices[i] = indexTable.getIndex(contactKeys[translatedIndices[i]]); }
+        return IndexBitmap.with(translatedIndices, translatedIndices.length);
+    }
+    
+    /**
+     * Returns the index table in which this bitmap and the given bitmap can be combined.
+     */
+    @Pure
+    private @Nonnull IndexTable getCommonIndexTable(@Nonnull ContactBitmap bitmap) {
+        Require.that(indexTable != null && bitmap.indexTable != null && indexTable.entity.equals(bitmap.indexTable.entity)).orThrow("Only the bitmaps of the same entity can be combined but $ and $ were given.", getEntity(), bitmap.getEntity());
+        
+        return indexTable == bitmap.indexTable ? indexTable : getIndexTable(indexTable.entity);
+    }
+    
+    /**
+     * Returns the union of this bitmap and the given bitmap.
+     */
+    @Pure
+    public @Nonnull ContactBitmap union(@Nonnull ContactBitmap bitmap) {
+        if (bitmap.isEmpty()) { return this; }
+        if (isEmpty()) { return bitmap; }
+        final @Nonnull IndexTable indexTable = getCommonIndexTable(bitmap);
+        return with(indexTable, getIndices(indexTable).union(bitmap.getIndices(indexTable)));
+    }
+    
+    /**
+     * Returns the contacts of this bitmap that are not in the given bitmap.
+     */
+    @Pure
+    public @Nonnull ContactBitmap difference(@Nonnull ContactBitmap bitmap) {
+        if (bitmap.isEmpty() || isEmpty()) { return this; }
+        final @Nonnull IndexTable indexTable = getCommonIndexTable(bitmap);
+        return with(indexTable, getIndices(indexTable).difference(bitmap.getIndices(indexTable)));
+    }
+    
+    /**
+     * Returns the intersection of this bitmap and the given bitmap.
+     */
+    @Pure
+    public @Nonnull ContactBitmap intersection(@Nonnull ContactBitmap bitmap) {
+        if (bitmap.isEmpty() || isEmpty()) { return EMPTY; }
+        final @Nonnull IndexTable indexTable = getCommonIndexTable(bitmap);
+        return with(indexTable, getIndices(indexTable).intersection(bitmap.getIndices(indexTable)));
+    }
+    
+    /* -------------------------------------------------- Queries -------------------------------------------------- */
+    
+    /**
+     * Returns the entity to which the contacts of this bitmap belong or null if this bitmap is empty.
+     */
+    @Pure
+    public @Nullable NonHostEntity getEntity() {
+        return indexTable != null ? indexTable.entity : null;
+    }
+    
+    /**
+     * Returns the number of contacts in this bitmap.
+     */
+    @Pure
+    public @NonNegative int size() {
+        return indices.size();
+    }
+    
+    /**
+     * Returns whether this bitmap contains no contacts.
+     */
+    @Pure
+    public boolean isEmpty() {
+        return indices.isEmpty();
+    }
+    
+    /**
+     * Returns whether this bitmap contains the given contact.
+     */
+    @Pure
+    public boolean contains(@Nonnull Contact contact) {
+        if (indexTable == null || !indexTable.entity.equals(contact.getEntity())) { return false; }
+        return indices.contains(indexTable.findIndex(contact.getKey()));
+    }
+    
+    /* -------------------------------------------------- Contacts -------------------------------------------------- */
+    
+    /**
+     * Returns the contacts of this bitmap, which have to belong to the given entity.
+     * The contacts are looked up in the subject index without being inserted into the database.
+     */
+    @Pure
+    public @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> toContacts(@Nonnull NonHostEntity entity) throws DatabaseException {
+        Require.that(indexTable == null || indexTable.entity.equals(entity)).orThrow("The contacts of this bitmap belong to $ and not to $.", getEntity(), entity);
+        
+        final @Nonnull FreezableSet<@Nonnull Contact> contacts = FreezableLinkedHashSetBuilder.build();
+        if (indexTable == null) { return contacts; }
+        
+        final @Nonnull long[] contactKeys = indexTable.getKeys();
+        for (int index : indices.toIndices()) { contacts.add(Contact.get(entity, contactKeys[index])); }
+        return contacts;
+    }
+    
+}
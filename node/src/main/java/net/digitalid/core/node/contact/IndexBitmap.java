@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.contact;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.ownership.Capturable;
+import net.digitalid.utility.annotations.ownership.NonCaptured;
+import net.digitalid.utility.annotations.parameter.Modified;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+/**
+ * An index bitmap is a compressed set of non-negative indices, which allows set operations to be computed word by word.
+ * The indices are partitioned by their upper 16 bits into containers, which store their lower 16 bits either as a sorted array
+ * (if a container contains at most {@value #MAXIMAL_ARRAY_SIZE} indices) or as a bitmap of 2<sup>16</sup> bits otherwise.
+ * Containers are never modified after their creation and can therefore be shared between bitmaps.
+ * 
+ * @see ContactBitmap
+ */
+@Immutable
+final class IndexBitmap {
+    
+    /* -------------------------------------------------- Constants -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal number of indices in a container that are stored as a sorted array.
+     */
+    static final int MAXIMAL_ARRAY_SIZE = 4_096;
+    
+    /**
+     * Stores the number of words of a container that is stored as a bitmap.
+     */
+    private static final int WORDS = 1_024;
+    
+    /**
+     * Stores the empty index bitmap.
+     */
+    static final @Nonnull IndexBitmap EMPTY = new IndexBitmap(new char[0], new Object[0]);
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Stores the upper 16 bits of the indices in each container in ascending order.
+     */
+    private final @Nonnull char[] keys;
+    
+    /**
+     * Stores the containers with the lower 16 bits of the indices, which are either a {@code char[]} or a {@code long[]}.
+     */
+    private final @Nonnull Object[] containers;
+    
+    /**
+     * Stores the number of indices in this bitmap.
+     */
+    private final @NonNegative int size;
+    
+    /* -------------------------------------------------- Constructors -------------------------------------------------- */
+    
+    private IndexBitmap(@Nonnull char[] keys, @Nonnull Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        
+        int size = 0;
+        for (@Nonnull Object container : containers) { size += getSize(container); }
+        this.size = size;
+    }
+    
+    /**
+     * Returns an index bitmap with the given index.
+     */
+    @Pure
+    static @Nonnull IndexBitmap with(@NonNegative int index) {
+        Require.that(index >= 0).orThrow("The index $ may not be negative.", index);
+        
+        return new IndexBitmap(new char[] { (char) (index >>> 16) }, new Object[] { new char[] { (char) index } });
+    }
+    
+    /**
+     * Returns an index bitmap with the given number of indices at the beginning of the given array, which is sorted by this method.
+     * The indices may contain duplicates.
+     */
+    @Pure
+    static @Nonnull IndexBitmap with(@NonCaptured @Modified @Nonnull int[] indices, @NonNegative int count) {
+        if (count == 0) { return EMPTY; }
+        Arrays.sort(indices, 0, count);
+        Require.that(indices[0] >= 0).orThrow("The index $ may not be negative.", indices[0]);
+        
+        final @Nonnull char[] keys = new char[count];
+        final @Nonnull Object[] containers = new Object[count];
+        final @Nonnull char[] values = new char[count];
+        int number = 0;
+        int start = 0;
+        while (start < count) {
+            final char key = (char) (indices[start] >>> 16);
+            int length = 0;
+            int end = start;
+            for (; end < count && (char) (indices[end] >>> 16) == key; end++) {
+                final char value = (char) indices[end];
+                if (length == 0 || values[length - 1] != value) { values[length++] = value; }
+            }
+            keys[number] = key;
+            containers[number] = length <= MAXIMAL_ARRAY_SIZE ? Arrays.copyOf(values, length) : toWords(values, length);
+            number++;
+            start = end;
+        }
+        return new IndexBitmap(Arrays.copyOf(keys, number), Arrays.copyOf(containers, number));
+    }
+    
+    /* -------------------------------------------------- Containers -------------------------------------------------- */
+    
+    /**
+     * Returns the number of indices in the given container.
+     */
+    @Pure
+    private static int getSize(@Nonnull Object container) {
+        if (container instanceof char[]) { return ((char[]) container).length; }
+        int size = 0;
+        for (long word : (long[]) container) { size += Long.bitCount(word); }
+        return size;
+    }
+    
+    /**
+     * Returns whether the given container contains the given value.
+     */
+    @Pure
+    private static boolean contains(@Nonnull Object container, char value) {
+        if (container instanceof char[]) { return Arrays.binarySearch((char[]) container, value) >= 0; }
+        return (((long[]) container)[value >>> 6] & (1L << value)) != 0;
+    }
+    
+    /**
+     * Returns the given number of sorted values as a bitmap.
+     */
+    @Pure
+    private static @Nonnull long[] toWords(@Nonnull char[] values, int length) {
+        final @Nonnull long[] words = new long[WORDS];
+        for (int i = 0; i < length; i++) { words[values[i] >>> 6] |= 1L << values[i]; }
+        return words;
+    }
+    
+    /**
+     * Returns the given bitmap as a container or null if it is empty.
+     */
+    @Pure
+    private static @Nullable Object toContainer(@Nonnull long[] words) {
+        final int size = getSize(words);
+        if (size == 0) { return null; }
+        if (size > MAXIMAL_ARRAY_SIZE) { return words; }
+        
+        final @Nonnull char[] values = new char[size];
+        int length = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                values[length++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * This enumeration lists the operations with which contact bitmaps can be combined.
+     */
+    private static enum Operation {
+        UNION, DIFFERENCE, INTERSECTION;
+    }
+    
+    /**
+     * Returns the combination of the given sorted arrays with the given operation or null if the result is empty.
+     */
+    @Pure
+    private static @Nullable Object combine(@Nonnull char[] left, @Nonnull char[] right, @Nonnull Operation operation) {
+        final @Nonnull char[] values = new char[operation == Operation.UNION ? left.length + right.length : left.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                if (operation != Operation.INTERSECTION) { values[length++] = left[i]; }
+                i++;
+            } else if (left[i] > right[j]) {
+                if (operation == Operation.UNION) { values[length++] = right[j]; }
+                j++;
+            } else {
+                if (operation != Operation.DIFFERENCE) { values[length++] = left[i]; }
+                i++;
+                j++;
+            }
+        }
+        if (operation != Operation.INTERSECTION) { while (i < left.length) { values[length++] = left[i++]; } }
+        if (operation == Operation.UNION) { while (j < right.length) { values[length++] = right[j++]; } }
+        
+        if (length == 0) { return null; }
+        if (length > MAXIMAL_ARRAY_SIZE) { return toWords(values, length); }
+        return length == values.length ? values : Arrays.copyOf(values, length);
+    }
+    
+    /**
+     * Returns the combination of the given containers with the given operation or null if the result is empty.
+     */
+    @Pure
+    private static @Nullable Object combine(@Nonnull Object left, @Nonnull Object right, @Nonnull Operation operation) {
+        if (left instanceof char[] && right instanceof char[]) { return combine((char[]) left, (char[]) right, operation); }
+        
+        if (left instanceof char[] && operation != Operation.UNION) {
+            final @Nonnull char[] array = (char[]) left;
+            final @Nonnull char[] values = new char[array.length];
+            int length = 0;
+            for (char value : array) {
+                if (contains(right, value) == (operation == Operation.INTERSECTION)) { values[length++] = value; }
+            }
+            return length == 0 ? null : Arrays.copyOf(values, length);
+        }
+        
+        final @Nonnull long[] leftWords = left instanceof long[] ? (long[]) left : toWords((char[]) left, ((char[]) left).length);
+        final @Nonnull long[] rightWords = right instanceof long[] ? (long[]) right : toWords((char[]) right, ((char[]) right).length);
+        final @Nonnull long[] words = new long[WORDS];
+        switch (operation) {
+            case UNION: for (int i = 0; i < WORDS; i++) { words[i] = leftWords[i] | rightWords[i]; } break;
+            case DIFFERENCE: for (int i = 0; i < WORDS; i++) { words[i] = leftWords[i] & ~rightWords[i]; } break;
+            case INTERSECTION: for (int i = 0; i < WORDS; i++) { words[i] = leftWords[i] & rightWords[i]; } break;
+        }
+        return toContainer(words);
+    }
+    
+    /* -------------------------------------------------- Operations -------------------------------------------------- */
+    
+    /**
+     * Returns the combination of this bitmap with the given bitmap, where containers that are not affected are shared.
+     */
+    @Pure
+    private @Nonnull IndexBitmap combine(@Nonnull IndexBitmap bitmap, @Nonnull Operation operation) {
+        final @Nonnull char[] keys = new char[this.keys.length + bitmap.keys.length];
+        final @Nonnull Object[] containers = new Object[keys.length];
+        int number = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length || j < bitmap.keys.length) {
+            final int left = i < this.keys.length ? this.keys[i] : Integer.MAX_VALUE;
+            final int right = j < bitmap.keys.length ? bitmap.keys[j] : Integer.MAX_VALUE;
+            final @Nullable Object container;
+            if (left < right) {
+                container = operation != Operation.INTERSECTION ? this.containers[i] : null;
+                i++;
+            } else if (left > right) {
+                container = operation == Operation.UNION ? bitmap.containers[j] : null;
+                j++;
+            } else {
+                container = combine(this.containers[i], bitmap.containers[j], operation);
+                i++;
+                j++;
+            }
+            if (container != null) {
+                keys[number] = (char) Math.min(left, right);
+                containers[number] = container;
+                number++;
+            }
+        }
+        return number == 0 ? EMPTY : new IndexBitmap(Arrays.copyOf(keys, number), Arrays.copyOf(containers, number));
+    }
+    
+    /**
+     * Returns the union of this bitmap and the given bitmap.
+     */
+    @Pure
+    @Nonnull IndexBitmap union(@Nonnull IndexBitmap bitmap) {
+        if (bitmap.isEmpty()) { return this; }
+        if (isEmpty()) { return bitmap; }
+        return combine(bitmap, Operation.UNION);
+    }
+    
+    /**
+     * Returns the indices of this bitmap that are not in the given bitmap.
+     */
+    @Pure
+    @Nonnull IndexBitmap difference(@Nonnull IndexBitmap bitmap) {
+        if (bitmap.isEmpty() || isEmpty()) { return this; }
+        return combine(bitmap, Operation.DIFFERENCE);
+    }
+    
+    /**
+     * Returns the intersection of this bitmap and the given bitmap.
+     */
+    @Pure
+    @Nonnull IndexBitmap intersection(@Nonnull IndexBitmap bitmap) {
+        if (bitmap.isEmpty() || isEmpty()) { return EMPTY; }
+        return combine(bitmap, Operation.INTERSECTION);
+    }
+    
+    /* -------------------------------------------------- Queries -------------------------------------------------- */
+    
+    /**
+     * Returns the number of indices in this bitmap.
+     */
+    @Pure
+    @NonNegative int size() {
+        return size;
+    }
+    
+    /**
+     * Returns whether this bitmap contains no indices.
+     */
+    @Pure
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns whether this bitmap contains the given index.
+     */
+    @Pure
+    boolean contains(int index) {
+        if (index < 0) { return false; }
+        final int position = Arrays.binarySearch(keys, (char) (index >>> 16));
+        return position >= 0 && contains(containers[position], (char) index);
+    }
+    
+    /**
+     * Returns whether the container with the given upper 16 bits is stored as a bitmap instead of a sorted array.
+     */
+    @Pure
+    boolean isStoredAsBitmap(char key) {
+        final int position = Arrays.binarySearch(keys, key);
+        return position >= 0 && containers[position] instanceof long[];
+    }
+    
+    /**
+     * Returns the indices of this bitmap in ascending order.
+     */
+    @Pure
+    @Capturable @Nonnull int[] toIndices() {
+        final @Nonnull int[] indices = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            final int high = keys[i] << 16;
+            final @Nonnull Object container = containers[i];
+            if (container instanceof char[]) {
+                for (char value : (char[]) container) { indices[count++] = high | value; }
+            } else {
+                final @Nonnull long[] words = (long[]) container;
+                for (int j = 0; j < WORDS; j++) {
+                    long word = words[j];
+                    while (word != 0) {
+                        indices[count++] = high | (j * 64 + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return indices;
+    }
+    
+}
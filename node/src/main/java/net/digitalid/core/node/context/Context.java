@@ -15,16 +15,27 @@
  */
 package net.digitalid.core.node.context;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.annotations.ownership.Capturable;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
 import net.digitalid.utility.collections.set.FreezableLinkedHashSetBuilder;
 import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.collections.set.ReadOnlySet;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.contracts.Require;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.exceptions.UncheckedExceptionBuilder;
 import net.digitalid.utility.freezable.annotations.NonFrozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
@@ -43,6 +54,7 @@ import net.digitalid.database.property.value.WritablePersistentValueProperty;
 import net.digitalid.core.entity.NonHostEntity;
 import net.digitalid.core.node.ExtendedNode;
 import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.node.contact.ContactBitmap;
 import net.digitalid.core.property.RequiredAuthorization;
 import net.digitalid.core.property.RequiredAuthorizationBuilder;
 import net.digitalid.core.restrictions.Node;
@@ -118,17 +130,36 @@ public abstract class Context extends Node implements ExtendedNode {
      */
     @Pure
     @NonCommitting
-    @TODO(task = "Either retrieve all subcontexts by traversing the direct subcontexts or querying the database.", date = "2017-08-20", author = Author.KASPAR_ETTER)
     public @Capturable @Nonnull @NonFrozen FreezableSet<Context> getAllSubcontexts() throws DatabaseException {
-        throw new UnsupportedOperationException();
+        final @Nonnull FreezableSet<Context> subcontexts = FreezableLinkedHashSetBuilder.build();
+        subcontexts.add(this);
+        for (long key : ContextHierarchy.of(getEntity()).getDescendants(getKey())) { subcontexts.add(Context.of(getEntity(), key)); }
+        return subcontexts;
     }
     
     @Pure
     @Override
     @NonCommitting
-    @TODO(task = "Probably replace with a simple database query.", date = "2017-08-20", author = Author.KASPAR_ETTER)
     public boolean isSupernodeOf(@Nonnull Node node) throws DatabaseException {
-        return getAllSubcontexts().contains(node);
+        if (node instanceof Contact) {
+            try {
+                return node.getEntity().equals(getEntity()) && contains((Contact) node);
+            } catch (@Nonnull RecoveryException exception) {
+                throw UncheckedExceptionBuilder.withCause(exception).build();
+            }
+        }
+        return node instanceof Context && node.getEntity().equals(getEntity()) && ContextHierarchy.of(getEntity()).isAncestorOf(getKey(), ((Context) node).getKey());
+    }
+    
+    /**
+     * Moves this context with all its subcontexts into the given supercontext or into the root context if the supercontext is null.
+     * 
+     * @require !isRoot() : "The root context cannot be moved.";
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public void moveTo(@Nullable Context supercontext) throws DatabaseException {
+        ContextHierarchy.move(this, supercontext);
     }
     
     /* -------------------------------------------------- Contacts -------------------------------------------------- */
@@ -152,10 +183,89 @@ public abstract class Context extends Node implements ExtendedNode {
      */
     @Pure
     @NonCommitting
-    @TODO(task = "Make a real aggregation.", date = "2017-08-20", author = Author.KASPAR_ETTER)
     public @Capturable @Nonnull @NonFrozen FreezableSet<Contact> getAllContacts() throws DatabaseException, RecoveryException {
-        return FreezableLinkedHashSetBuilder.build();
-//        return contacts().get().clone();
+        final @Nonnull Set<@Nonnull Long> contexts = new HashSet<>(ContextHierarchy.of(getEntity()).getDescendants(getKey()));
+        contexts.add(getKey());
+        return ContextMembership.getContacts(getEntity(), contexts);
+    }
+    
+    /**
+     * Adds the given contact directly to this context.
+     * 
+     * @require contact.getEntity().equals(getEntity()) : "The contact belongs to the entity of this context.";
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public void addContact(@Nonnull Contact contact) throws DatabaseException {
+        Require.that(contact.getEntity().equals(getEntity())).orThrow("The contact $ has to belong to the entity of the context $.", contact, this);
+        
+        ContextHierarchy.register(this);
+        ContextMembership.add(this, contact);
+        ContextHierarchy.markModified(getEntity());
+    }
+    
+    /**
+     * Removes the given contact directly from this context.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public void removeContact(@Nonnull Contact contact) throws DatabaseException {
+        ContextMembership.remove(this, contact);
+        ContextHierarchy.markModified(getEntity());
+    }
+    
+    /**
+     * Stores the maximal number of contact bitmaps that are cached.
+     * The configuration is read whenever a bitmap is added to the cache.
+     */
+    public static final @Nonnull Configuration<Integer> contactBitmapCacheSize = Configuration.with(1_000);
+    
+    /**
+     * Caches the bitmaps with all the contacts of contexts so that expressions can be evaluated without retrieving the contacts again.
+     * The least recently used bitmap is evicted when the cache is full.
+     */
+    private static final @Nonnull Map<@Nonnull Context, @Nonnull ContactBitmap> contactBitmaps = new LinkedHashMap<Context, ContactBitmap>(16, 0.75f, true) {
+        
+        @Pure
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<Context, ContactBitmap> eldest) {
+            return size() > contactBitmapCacheSize.get();
+        }
+        
+    };
+    
+    /**
+     * Returns the bitmap with all the contacts of this context (including the contacts from subcontexts).
+     */
+    @Pure
+    @NonCommitting
+    public @Nonnull ContactBitmap getContactBitmap() throws DatabaseException, RecoveryException {
+        if (ContextHierarchy.isModified(getEntity())) { return ContactBitmap.with(getAllContacts()); }
+        
+        synchronized (contactBitmaps) {
+            final @Nullable ContactBitmap cached = contactBitmaps.get(this);
+            if (cached != null) { return cached; }
+        }
+        
+        final long version = ContextHierarchy.getVersion(getEntity());
+        final @Nonnull ContactBitmap bitmap = ContactBitmap.with(getAllContacts());
+        synchronized (contactBitmaps) {
+            contactBitmaps.put(this, bitmap);
+            if (ContextHierarchy.getVersion(getEntity()) != version) { contactBitmaps.remove(this, bitmap); }
+        }
+        return bitmap;
+    }
+    
+    /**
+     * Invalidates the cached contact bitmaps of all contexts of the given entity and retires the index table of its contacts.
+     * This method is called after a transaction that modified the contexts of the given entity has been committed.
+     */
+    @Impure
+    static void invalidateContactBitmaps(@Nonnull NonHostEntity entity) {
+        synchronized (contactBitmaps) {
+            contactBitmaps.keySet().removeIf(context -> context.getEntity().equals(entity));
+        }
+        ContactBitmap.retireIndexTable(entity);
     }
     
     /**
@@ -164,7 +274,7 @@ public abstract class Context extends Node implements ExtendedNode {
     @Pure
     @NonCommitting
     public boolean contains(@Nonnull Contact contact) throws DatabaseException, RecoveryException {
-        return getAllContacts().contains(contact);
+        return getContactBitmap().contains(contact);
     }
     
     /* -------------------------------------------------- Supercontexts -------------------------------------------------- */
@@ -172,9 +282,11 @@ public abstract class Context extends Node implements ExtendedNode {
     @Pure
     @Override
     @NonCommitting
-    @TODO(task = "Implement.", date = "2017-08-20", author = Author.KASPAR_ETTER)
     public @Nonnull @NonFrozen @NonNullableElements ReadOnlySet<Context> getSupercontexts() throws DatabaseException, RecoveryException {
-        return FreezableLinkedHashSetBuilder.build();
+        final @Nonnull FreezableSet<Context> supercontexts = FreezableLinkedHashSetBuilder.build();
+        final @Nullable Long parent = ContextHierarchy.of(getEntity()).getParent(getKey());
+        if (parent != null) { supercontexts.add(Context.of(getEntity(), parent)); }
+        return supercontexts;
     }
     
     /* -------------------------------------------------- Recovery -------------------------------------------------- */
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.context;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.math.modulo.Even;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+/**
+ * This type models an entry of the closure table of the context hierarchy, which relates a context to each of its (indirect) subcontexts.
+ * Since the entity is the first column of the primary key, the whole hierarchy of an entity is retrieved with a single indexed query.
+ * 
+ * @see ContextHierarchy
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter
+abstract class ContextClosureEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the key of the entity to which the contexts belong.
+     */
+    @Pure
+    @PrimaryKey
+    abstract long getEntity();
+    
+    /**
+     * Returns the key of the supercontext.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Even long getAncestor();
+    
+    /**
+     * Returns the key of the subcontext.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Even long getDescendant();
+    
+    /**
+     * Returns the number of levels between the supercontext and the subcontext, which is one for direct subcontexts.
+     */
+    @Pure
+    abstract @Positive int getDepth();
+    
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.validation.annotations.math.modulo.Even;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.unit.CoreUnit;
+import net.digitalid.core.unit.TransactionEnd;
+
+/**
+ * The context hierarchy of an entity is persisted as a closure table, which contains an entry for every context and each of its (indirect) supercontexts.
+ * The hierarchy of an entity is read with a single indexed query and cached so that ancestry checks and the enumeration of subcontexts need no database access.
+ * Every context of an entity is a (direct or indirect) subcontext of its root context, which is why a context is registered below the root context when it is first given a contact (or moved).
+ * <p>
+ * The cache only ever contains committed hierarchies: A thread that modified the contexts of an entity in its current transaction bypasses the cache for this entity,
+ * and hierarchies that were loaded while another transaction committed a modification are not retained.
+ * 
+ * @see ContextClosureEntry
+ */
+@Immutable
+final class ContextHierarchy {
+    
+    /* -------------------------------------------------- Table -------------------------------------------------- */
+    
+    /**
+     * Stores the units in which the closure table has already been created.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull CoreUnit, @Nonnull Boolean> units = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Creates the closure table in the given unit if this has not already been done.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void createTable(@Nonnull CoreUnit unit) throws DatabaseException {
+        if (units.containsKey(unit)) { return; }
+        SQL.createTable(ContextClosureEntryConverter.INSTANCE, unit);
+        units.put(unit, Boolean.TRUE);
+    }
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Maps the key of each context to the keys of its (indirect) supercontexts and their depth.
+     */
+    private final @Nonnull Map<@Nonnull Long, @Nonnull Map<@Nonnull Long, @Nonnull Integer>> ancestors = new HashMap<>();
+    
+    /**
+     * Maps the key of each context to the keys of its (indirect) subcontexts.
+     */
+    private final @Nonnull Map<@Nonnull Long, @Nonnull Set<@Nonnull Long>> descendants = new HashMap<>();
+    
+    /* -------------------------------------------------- Constructor -------------------------------------------------- */
+    
+    private ContextHierarchy(@Nonnull Iterable<? extends @Nonnull ContextClosureEntry> entries) {
+        for (@Nonnull ContextClosureEntry entry : entries) {
+            ancestors.computeIfAbsent(entry.getDescendant(), key -> new HashMap<>()).put(entry.getAncestor(), entry.getDepth());
+            descendants.computeIfAbsent(entry.getAncestor(), key -> new HashSet<>()).add(entry.getDescendant());
+        }
+    }
+    
+    /* -------------------------------------------------- Queries -------------------------------------------------- */
+    
+    /**
+     * Returns whether the given ancestor is the given descendant or one of its (indirect) supercontexts.
+     * The root context is an ancestor of every context of the entity.
+     */
+    @Pure
+    boolean isAncestorOf(@Even long ancestor, @Even long descendant) {
+        if (ancestor == descendant || ancestor == Context.ROOT) { return true; }
+        final @Nullable Map<@Nonnull Long, @Nonnull Integer> map = ancestors.get(descendant);
+        return map != null && map.containsKey(ancestor);
+    }
+    
+    /**
+     * Returns the keys of the (indirect) supercontexts of the given context mapped to their depth.
+     * The root context is included for every other context even if its entry is missing.
+     */
+    @Pure
+    @Nonnull Map<@Nonnull Long, @Nonnull Integer> getAncestors(@Even long descendant) {
+        final @Nullable Map<@Nonnull Long, @Nonnull Integer> map = ancestors.get(descendant);
+        if (descendant == Context.ROOT) { return Collections.emptyMap(); }
+        if (map == null) { return Collections.singletonMap(Context.ROOT, 1); }
+        if (map.containsKey(Context.ROOT)) { return Collections.unmodifiableMap(map); }
+        final @Nonnull Map<@Nonnull Long, @Nonnull Integer> result = new HashMap<>(map);
+        result.put(Context.ROOT, Collections.max(map.values()) + 1);
+        return Collections.unmodifiableMap(result);
+    }
+    
+    /**
+     * Returns the keys of the (indirect) subcontexts of the given context (excluding the given context).
+     * The subcontexts of the root context are all the contexts of the entity that have an entry.
+     */
+    @Pure
+    @Nonnull Set<@Nonnull Long> getDescendants(@Even long ancestor) {
+        if (ancestor == Context.ROOT) { return Collections.unmodifiableSet(ancestors.keySet()); }
+        final @Nullable Set<@Nonnull Long> set = descendants.get(ancestor);
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+    
+    /**
+     * Returns the key of the direct supercontext of the given context or null if the given context is the root context.
+     */
+    @Pure
+    @Nullable Long getParent(@Even long descendant) {
+        for (@Nonnull Map.Entry<@Nonnull Long, @Nonnull Integer> entry : getAncestors(descendant).entrySet()) {
+            if (entry.getValue() == 1) { return entry.getKey(); }
+        }
+        return descendant == Context.ROOT ? null : Context.ROOT;
+    }
+    
+    /* -------------------------------------------------- Modifications -------------------------------------------------- */
+    
+    /**
+     * Stores the entities whose contexts have been modified by the current thread in its current transaction.
+     * An entity is removed again once the transaction has ended, no matter whether it was committed or {@link TransactionEnd#rollback() rolled back}.
+     */
+    private static final @Nonnull ThreadLocal<@Nonnull Set<@Nonnull NonHostEntity>> modifiedEntities = ThreadLocal.withInitial(HashSet::new);
+    
+    /**
+     * Stores the number of committed transactions that modified the contexts of each entity.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull NonHostEntity, @Nonnull Long> versions = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns the number of committed transactions that modified the contexts of the given entity.
+     * A value that was loaded may only be cached if the version did not change while it was loaded.
+     */
+    @Pure
+    static long getVersion(@Nonnull NonHostEntity entity) {
+        final @Nullable Long version = versions.get(entity);
+        return version != null ? version : 0L;
+    }
+    
+    /**
+     * Returns whether the contexts of the given entity have been modified in the current transaction of this thread.
+     * In this case, the caches must neither be read nor written as they contain only committed values.
+     */
+    @Pure
+    static boolean isModified(@Nonnull NonHostEntity entity) {
+        return modifiedEntities.get().contains(entity);
+    }
+    
+    /**
+     * Marks the hierarchy or the contacts of the contexts of the given entity as modified in the current transaction.
+     * After the transaction has been committed, the version of the entity is increased and the cached hierarchy and contact bitmaps are evicted.
+     */
+    @Impure
+    @NonCommitting
+    static void markModified(@Nonnull NonHostEntity entity) {
+        final @Nonnull Set<@Nonnull NonHostEntity> entities = modifiedEntities.get();
+        entities.add(entity);
+        Database.instance.get().runAfterCommit(() -> {
+            versions.merge(entity, 1L, Long::sum);
+            hierarchies.remove(entity);
+            Context.invalidateContactBitmaps(entity);
+        });
+        TransactionEnd.runAfterEnd(() -> entities.remove(entity));
+    }
+    
+    /* -------------------------------------------------- Cache -------------------------------------------------- */
+    
+    /**
+     * Caches the committed hierarchies of the entities whose contexts have been accessed.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull NonHostEntity, @Nonnull ContextHierarchy> hierarchies = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Loads the context hierarchy of the given entity from the database.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nonnull ContextHierarchy load(@Nonnull NonHostEntity entity) throws DatabaseException {
+        final @Nonnull CoreUnit unit = entity.getUnit();
+        createTable(unit);
+        return new ContextHierarchy(SQL.selectAll(ContextClosureEntryConverter.INSTANCE, null, unit, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(entity.getKey()).withPrefix("entity").build()));
+    }
+    
+    /**
+     * Returns the potentially cached context hierarchy of the given entity.
+     */
+    @Pure
+    @NonCommitting
+    static @Nonnull ContextHierarchy of(@Nonnull NonHostEntity entity) throws DatabaseException {
+        if (isModified(entity)) { return load(entity); }
+        
+        final @Nullable ContextHierarchy cached = hierarchies.get(entity);
+        if (cached != null) { return cached; }
+        
+        final long version = getVersion(entity);
+        final @Nonnull ContextHierarchy hierarchy = load(entity);
+        final @Nonnull ContextHierarchy result = hierarchies.putIfAbsentElseReturnPresent(entity, hierarchy);
+        if (getVersion(entity) != version) { hierarchies.remove(entity, hierarchy); }
+        return result;
+    }
+    
+    /* -------------------------------------------------- Modification -------------------------------------------------- */
+    
+    /**
+     * Returns the closure entry with the given values.
+     */
+    @Pure
+    private static @Nonnull ContextClosureEntry getEntry(@Nonnull NonHostEntity entity, @Even long ancestor, @Even long descendant, int depth) {
+        return ContextClosureEntryBuilder.withEntity(entity.getKey()).withAncestor(ancestor).withDescendant(descendant).withDepth(depth).build();
+    }
+    
+    /**
+     * Registers the given context below the root context of its entity if it has no entry yet.
+     * This method is called when a context is written to for the first time and not when it is recovered.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    static void register(@Nonnull Context context) throws DatabaseException {
+        if (context.isRoot()) { return; }
+        
+        final @Nonnull NonHostEntity entity = context.getEntity();
+        if (of(entity).ancestors.containsKey(context.getKey())) { return; }
+        
+        SQL.insertOrReplace(ContextClosureEntryConverter.INSTANCE, getEntry(entity, Context.ROOT, context.getKey(), 1), entity.getUnit());
+        markModified(entity);
+        Log.debugging("Registered the context $ below the root context.", context);
+    }
+    
+    /**
+     * Moves the given context with all its subcontexts into the given supercontext or into the root context if the supercontext is null.
+     * Only the entries that relate the moved subtree to its previous and new supercontexts are deleted and inserted in the current transaction.
+     * 
+     * @require !context.isRoot() : "The root context cannot be moved.";
+     * @require supercontext == null || supercontext.getEntity().equals(context.getEntity()) : "The supercontext belongs to the same entity.";
+     * @require supercontext == null || !isAncestorOf(context.getKey(), supercontext.getKey()) : "The context is not moved into itself or one of its subcontexts.";
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    static void move(@Nonnull Context context, @Nullable Context supercontext) throws DatabaseException {
+        Require.that(!context.isRoot()).orThrow("The root context cannot be moved.");
+        Require.that(supercontext == null || supercontext.getEntity().equals(context.getEntity())).orThrow("The supercontext $ has to belong to the same entity as the context $.", supercontext, context);
+        
+        final @Nonnull NonHostEntity entity = context.getEntity();
+        final @Nonnull CoreUnit unit = entity.getUnit();
+        final @Nonnull ContextHierarchy hierarchy = of(entity);
+        final long key = context.getKey();
+        
+        Require.that(supercontext == null || !hierarchy.isAncestorOf(key, supercontext.getKey())).orThrow("The context $ cannot be moved into itself or one of its subcontexts $.", context, supercontext);
+        
+        final @Nonnull Set<@Nonnull Long> subtree = new HashSet<>(hierarchy.getDescendants(key));
+        subtree.add(key);
+        
+        for (long descendant : subtree) {
+            for (@Nonnull Map.Entry<@Nonnull Long, @Nonnull Integer> ancestor : hierarchy.getAncestors(descendant).entrySet()) {
+                if (!subtree.contains(ancestor.getKey())) {
+                    SQL.delete(ContextClosureEntryConverter.INSTANCE, unit, WhereConditionBuilder.withConverter(ContextClosureEntryConverter.INSTANCE).withObject(getEntry(entity, ancestor.getKey(), descendant, ancestor.getValue())).build());
+                }
+            }
+        }
+        
+        final long superkey = supercontext != null ? supercontext.getKey() : Context.ROOT;
+        final @Nonnull Map<@Nonnull Long, @Nonnull Integer> supercontexts = new HashMap<>(hierarchy.getAncestors(superkey));
+        supercontexts.put(superkey, 0);
+        for (long descendant : subtree) {
+            final int offset = descendant == key ? 1 : hierarchy.getAncestors(descendant).get(key) + 1;
+            for (@Nonnull Map.Entry<@Nonnull Long, @Nonnull Integer> ancestor : supercontexts.entrySet()) {
+                SQL.insertOrAbort(ContextClosureEntryConverter.INSTANCE, getEntry(entity, ancestor.getKey(), descendant, ancestor.getValue() + offset), unit);
+            }
+        }
+        
+        markModified(entity);
+        Log.debugging("Moved the context $ with $ subcontexts into $.", context, subtree.size() - 1, supercontext);
+    }
+    
+}
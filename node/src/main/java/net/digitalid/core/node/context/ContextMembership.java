@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.context;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.annotations.ownership.Capturable;
+import net.digitalid.utility.collections.set.FreezableLinkedHashSetBuilder;
+import net.digitalid.utility.collections.set.FreezableSet;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.freezable.annotations.NonFrozen;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.node.contact.Contact;
+import net.digitalid.core.unit.CoreUnit;
+
+/**
+ * The memberships of the contacts in the contexts of an entity are persisted in a table with an entry for every context and each of its direct contacts.
+ * 
+ * @see ContextMembershipEntry
+ */
+@Utility
+abstract class ContextMembership {
+    
+    /* -------------------------------------------------- Table -------------------------------------------------- */
+    
+    /**
+     * Stores the units in which the membership table has already been created.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull CoreUnit, @Nonnull Boolean> units = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Creates the membership table in the given unit if this has not already been done.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void createTable(@Nonnull CoreUnit unit) throws DatabaseException {
+        if (units.containsKey(unit)) { return; }
+        SQL.createTable(ContextMembershipEntryConverter.INSTANCE, unit);
+        units.put(unit, Boolean.TRUE);
+    }
+    
+    /* -------------------------------------------------- Queries -------------------------------------------------- */
+    
+    /**
+     * Returns the direct contacts of the contexts with the given keys of the given entity.
+     */
+    @Pure
+    @NonCommitting
+    static @Capturable @Nonnull @NonFrozen FreezableSet<@Nonnull Contact> getContacts(@Nonnull NonHostEntity entity, @Nonnull Set<@Nonnull Long> contexts) throws DatabaseException {
+        final @Nonnull CoreUnit unit = entity.getUnit();
+        createTable(unit);
+        final @Nonnull FreezableSet<@Nonnull Contact> contacts = FreezableLinkedHashSetBuilder.build();
+        for (@Nonnull ContextMembershipEntry entry : SQL.selectAll(ContextMembershipEntryConverter.INSTANCE, null, unit, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(entity.getKey()).withPrefix("entity").build())) {
+            if (contexts.contains(entry.getContext())) { contacts.add(Contact.get(entity, entry.getContact())); }
+        }
+        return contacts;
+    }
+    
+    /* -------------------------------------------------- Modification -------------------------------------------------- */
+    
+    /**
+     * Returns the membership entry of the given contact in the given context.
+     */
+    @Pure
+    private static @Nonnull ContextMembershipEntry getEntry(@Nonnull Context context, @Nonnull Contact contact) {
+        return ContextMembershipEntryBuilder.withEntity(context.getEntity().getKey()).withContext(context.getKey()).withContact(contact.getKey()).build();
+    }
+    
+    /**
+     * Adds the given contact to the given context in the current transaction.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    static void add(@Nonnull Context context, @Nonnull Contact contact) throws DatabaseException {
+        final @Nonnull CoreUnit unit = context.getEntity().getUnit();
+        createTable(unit);
+        SQL.insertOrReplace(ContextMembershipEntryConverter.INSTANCE, getEntry(context, contact), unit);
+    }
+    
+    /**
+     * Removes the given contact from the given context in the current transaction.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    static void remove(@Nonnull Context context, @Nonnull Contact contact) throws DatabaseException {
+        final @Nonnull CoreUnit unit = context.getEntity().getUnit();
+        createTable(unit);
+        SQL.delete(ContextMembershipEntryConverter.INSTANCE, unit, WhereConditionBuilder.withConverter(ContextMembershipEntryConverter.INSTANCE).withObject(getEntry(context, contact)).build());
+    }
+    
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.context;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.validation.annotations.math.modulo.Even;
+import net.digitalid.utility.validation.annotations.math.modulo.Uneven;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+/**
+ * This type models an entry of the membership table, which relates a context to each of its direct contacts.
+ * Since the entity is the first column of the primary key, the memberships of an entity are retrieved with a single indexed query.
+ * 
+ * @see ContextMembership
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter
+abstract class ContextMembershipEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the key of the entity to which the context and the contact belong.
+     */
+    @Pure
+    @PrimaryKey
+    abstract long getEntity();
+    
+    /**
+     * Returns the key of the context.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Even long getContext();
+    
+    /**
+     * Returns the key of the contact.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Uneven long getContact();
+    
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.node.contact;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link IndexBitmap index bitmap} against a {@link TreeSet tree set}.
+ */
+public class IndexBitmapTest {
+    
+    /* -------------------------------------------------- Helpers -------------------------------------------------- */
+    
+    private static @Nonnull IndexBitmap of(@Nonnull TreeSet<@Nonnull Integer> set) {
+        final @Nonnull int[] indices = new int[set.size()];
+        int count = 0;
+        for (int index : set) { indices[count++] = index; }
+        return IndexBitmap.with(indices, count);
+    }
+    
+    private static @Nonnull TreeSet<@Nonnull Integer> range(int from, int to) {
+        final @Nonnull TreeSet<@Nonnull Integer> set = new TreeSet<>();
+        for (int i = from; i < to; i++) { set.add(i); }
+        return set;
+    }
+    
+    private static void assertSame(@Nonnull TreeSet<@Nonnull Integer> expected, @Nonnull IndexBitmap bitmap) {
+        Assert.assertEquals(expected.size(), bitmap.size());
+        Assert.assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        final @Nonnull int[] indices = bitmap.toIndices();
+        Assert.assertEquals(expected.size(), indices.length);
+        int i = 0;
+        for (int index : expected) {
+            Assert.assertEquals(index, indices[i++]);
+            Assert.assertTrue(bitmap.contains(index));
+            Assert.assertEquals(expected.contains(index + 1), bitmap.contains(index + 1));
+        }
+        Assert.assertFalse(bitmap.contains(-1));
+    }
+    
+    /* -------------------------------------------------- Construction -------------------------------------------------- */
+    
+    @Test
+    public void shouldBeEmpty() {
+        assertSame(new TreeSet<>(), IndexBitmap.EMPTY);
+        assertSame(new TreeSet<>(), IndexBitmap.with(new int[0], 0));
+        Assert.assertFalse(IndexBitmap.EMPTY.contains(0));
+    }
+    
+    @Test
+    public void shouldIgnoreDuplicatesAndOrder() {
+        final @Nonnull TreeSet<@Nonnull Integer> expected = new TreeSet<>();
+        expected.add(3);
+        expected.add(70_000);
+        expected.add(5);
+        assertSame(expected, IndexBitmap.with(new int[] { 70_000, 5, 3, 5, 70_000, 3 }, 6));
+    }
+    
+    @Test
+    public void shouldStoreLargeContainersAsBitmaps() {
+        Assert.assertFalse(of(range(0, IndexBitmap.MAXIMAL_ARRAY_SIZE)).isStoredAsBitmap((char) 0));
+        Assert.assertTrue(of(range(0, IndexBitmap.MAXIMAL_ARRAY_SIZE + 1)).isStoredAsBitmap((char) 0));
+    }
+    
+    /* -------------------------------------------------- Conversions -------------------------------------------------- */
+    
+    @Test
+    public void shouldConvertArrayToBitmapWhenAdding() {
+        final @Nonnull TreeSet<@Nonnull Integer> expected = range(0, IndexBitmap.MAXIMAL_ARRAY_SIZE);
+        final @Nonnull IndexBitmap array = of(expected);
+        final @Nonnull IndexBitmap bitmap = array.union(IndexBitmap.with(IndexBitmap.MAXIMAL_ARRAY_SIZE));
+        expected.add(IndexBitmap.MAXIMAL_ARRAY_SIZE);
+        assertSame(expected, bitmap);
+        Assert.assertTrue(bitmap.isStoredAsBitmap((char) 0));
+    }
+    
+    @Test
+    public void shouldConvertBitmapToArrayWhenRemoving() {
+        final @Nonnull TreeSet<@Nonnull Integer> expected = range(0, IndexBitmap.MAXIMAL_ARRAY_SIZE + 1);
+        final @Nonnull IndexBitmap bitmap = of(expected);
+        final @Nonnull IndexBitmap array = bitmap.difference(IndexBitmap.with(17));
+        expected.remove(17);
+        assertSame(expected, array);
+        Assert.assertFalse(array.isStoredAsBitmap((char) 0));
+    }
+    
+    @Test
+    public void shouldConvertBitmapsToArrayWhenIntersecting() {
+        final @Nonnull IndexBitmap left = of(range(0, 10_000));
+        final @Nonnull IndexBitmap right = of(range(9_000, 20_000));
+        final @Nonnull IndexBitmap intersection = left.intersection(right);
+        assertSame(range(9_000, 10_000), intersection);
+        Assert.assertFalse(intersection.isStoredAsBitmap((char) 0));
+    }
+    
+    @Test
+    public void shouldCombineArrayWithBitmap() {
+        final @Nonnull TreeSet<@Nonnull Integer> sparse = new TreeSet<>();
+        for (int i = 0; i < 30_000; i += 7) { sparse.add(i); }
+        final @Nonnull TreeSet<@Nonnull Integer> dense = range(5_000, 15_000);
+        
+        final @Nonnull TreeSet<@Nonnull Integer> union = new TreeSet<>(sparse);
+        union.addAll(dense);
+        assertSame(union, of(sparse).union(of(dense)));
+        
+        final @Nonnull TreeSet<@Nonnull Integer> difference = new TreeSet<>(sparse);
+        difference.removeAll(dense);
+        assertSame(difference, of(sparse).difference(of(dense)));
+        
+        final @Nonnull TreeSet<@Nonnull Integer> intersection = new TreeSet<>(sparse);
+        intersection.retainAll(dense);
+        assertSame(intersection, of(sparse).intersection(of(dense)));
+    }
+    
+    @Test
+    public void shouldDropEmptyContainers() {
+        final @Nonnull IndexBitmap bitmap = of(range(65_530, 65_540));
+        assertSame(range(65_536, 65_540), bitmap.difference(of(range(0, 65_536))));
+        assertSame(new TreeSet<>(), bitmap.difference(bitmap));
+    }
+    
+    /* -------------------------------------------------- Random Operations -------------------------------------------------- */
+    
+    private static @Nonnull TreeSet<@Nonnull Integer> randomSet(@Nonnull Random random) {
+        final @Nonnull TreeSet<@Nonnull Integer> set = new TreeSet<>();
+        final int containers = random.nextInt(4);
+        for (int c = 0; c < containers; c++) {
+            final int high = random.nextInt(4) << 16;
+            final int count = random.nextBoolean() ? random.nextInt(100) : IndexBitmap.MAXIMAL_ARRAY_SIZE - 50 + random.nextInt(5_000);
+            for (int i = 0; i < count; i++) { set.add(high | random.nextInt(random.nextBoolean() ? 65_536 : 8_192)); }
+        }
+        return set;
+    }
+    
+    @Test
+    public void shouldAgreeWithTreeSetOnRandomOperations() {
+        final @Nonnull Random random = new Random(0);
+        @Nonnull TreeSet<@Nonnull Integer> expected = new TreeSet<>();
+        @Nonnull IndexBitmap bitmap = IndexBitmap.EMPTY;
+        for (int round = 0; round < 500; round++) {
+            final int operation = random.nextInt(5);
+            if (operation == 0) {
+                final int index = random.nextInt(4 << 16);
+                expected.add(index);
+                bitmap = bitmap.union(IndexBitmap.with(index));
+            } else if (operation == 1) {
+                final @Nullable Integer present = expected.ceiling(random.nextInt(4 << 16));
+                final int index = present != null && random.nextBoolean() ? present : random.nextInt(4 << 16);
+                expected.remove(index);
+                bitmap = bitmap.difference(IndexBitmap.with(index));
+            } else {
+                final @Nonnull TreeSet<@Nonnull Integer> other = randomSet(random);
+                final @Nonnull IndexBitmap otherBitmap = of(other);
+                assertSame(other, otherBitmap);
+                if (operation == 2) {
+                    expected.addAll(other);
+                    bitmap = bitmap.union(otherBitmap);
+                } else if (operation == 3) {
+                    expected.removeAll(other);
+                    bitmap = bitmap.difference(otherBitmap);
+                } else {
+                    expected.retainAll(other);
+                    bitmap = bitmap.intersection(otherBitmap);
+                }
+            }
+            assertSame(expected, bitmap);
+            if (expected.size() > 100_000) {
+                expected = new TreeSet<>();
+                bitmap = IndexBitmap.EMPTY;
+            }
+        }
+    }
+    
+}
@@ -13,114 +13,158 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// TODO: Adapt to the new library.
+package net.digitalid.core.node.context;
 
-//package net.digitalid.core.node.context;
-//
-//import java.sql.SQLException;
-//
-//import javax.annotation.Nonnull;
-//
-//import net.digitalid.core.node.contact.Contact;
-//
-//import net.digitalid.database.annotations.transaction.Committing;
-//import net.digitalid.database.interfaces.Database;
-//
-//import net.digitalid.core.context.Context;
-//import net.digitalid.core.context.Context;
-//import net.digitalid.core.context.FreezableContacts;
-//import net.digitalid.core.context.FreezableContacts;
-//import net.digitalid.core.server.IdentitySetup;
-//
-//import org.junit.Assert;
-//import org.junit.BeforeClass;
-//import org.junit.FixMethodOrder;
-//import org.junit.Test;
-//import org.junit.runners.MethodSorters;
-//
-///**
-// * Unit testing of the {@link Context context} with its {@link Action actions}.
-// */
-//@FixMethodOrder(MethodSorters.NAME_ASCENDING)
-//public final class ContextTest extends IdentitySetup {
-//    
-//    private static @Nonnull Context context;
-//    
-//    private static @Nonnull Contact contact;
-//    
-//    @BeforeClass
-//    public static void setUpContext() {
-//        print("setUpContext");
-//        context = Context.getRoot(getRole());
-//        contact = Contact.get(getRole(), getSubject());
-//    }
-//    
-//    @Test
-//    @Committing
-//    public void _01_testEmptyContext() throws DatabaseException {
-//        print("_01_testEmptyContext");
-//        try {
-//            Assert.assertTrue(context.getContacts().isEmpty());
-//            Database.commit();
-//        } catch (@Nonnull SQLException exception) {
-//            exception.printStackTrace();
-//            Database.rollback();
-//            throw exception;
-//        }
-//    }
-//    
-//    @Test
-//    @Committing
-//    public void _02_testAddContact() throws DatabaseException {
-//        print("_02_testAddContact");
-//        try {
-//            context.addContacts(new FreezableContacts(contact).freeze());
-//        } catch (@Nonnull SQLException exception) {
-//            exception.printStackTrace();
-//            Database.rollback();
-//            throw exception;
-//        }
-//    }
-//    
-//    @Test
-//    @Committing
-//    public void _03_testContainsContact() throws DatabaseException {
-//        print("_03_testContainsContact");
-//        try {
-//            Assert.assertTrue(context.contains(contact));
-//            Database.commit();
-//        } catch (@Nonnull SQLException exception) {
-//            exception.printStackTrace();
-//            Database.rollback();
-//            throw exception;
-//        }
-//    }
-//    
-//    @Test
-//    @Committing
-//    public void _04_testRemoveContact() throws DatabaseException {
-//        print("_04_testRemoveContact");
-//        try {
-//            context.removeContacts(new FreezableContacts(contact).freeze());
-//        } catch (@Nonnull SQLException exception) {
-//            exception.printStackTrace();
-//            Database.rollback();
-//            throw exception;
-//        }
-//    }
-//    
-//    @Test
-//    @Committing
-//    public void _05_testEmptyContext() throws DatabaseException {
-//        print("_05_testEmptyContext");
-//        try {
-//            Assert.assertTrue(context.getContacts().isEmpty());
-//            Database.commit();
-//        } catch (@Nonnull SQLException exception) {
-//            exception.printStackTrace();
-//            Database.rollback();
-//            throw exception;
-//        }
-//    }
-//    
-//}
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.exceptions.UncheckedExceptionBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.entity.NonHostEntityConverter;
+import net.digitalid.core.identification.identity.InternalNonHostIdentity;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.CoreUnit;
+import net.digitalid.core.unit.TransactionEnd;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+abstract class TestUnit extends CoreUnit {}
+
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateConverter
+interface TestNonHostEntity extends NonHostEntity {
+    
+    @Pure
+    @Override
+    @PrimaryKey
+    public long getKey();
+    
+    @Pure
+    @Override
+    public @Nonnull InternalNonHostIdentity getIdentity();
+    
+}
+
+/**
+ * Unit testing of the {@link ContextHierarchy context hierarchy} with its closure table and its cache.
+ */
+public class ContextTest extends CoreTest {
+    
+    private static final @Nonnull TestUnit UNIT;
+    
+    static {
+        try {
+            UNIT = TestUnitBuilder.withName("default").withHost(false).withClient(true).build();
+        } catch (@Nonnull ExternalException exception) {
+            throw UncheckedExceptionBuilder.withCause(exception).build();
+        }
+    }
+    
+    private static final @Nonnull SemanticType TYPE = SemanticType.map("test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.BOOLEAN).build());
+    
+    private static final @Nonnull TestNonHostEntity ENTITY = TestNonHostEntityBuilder.withUnit(UNIT).withKey(0).withIdentity(TYPE).build();
+    
+    @Impure
+    @BeforeClass
+    public static void createTables() throws ExternalException {
+        SQL.createTable(NonHostEntityConverter.INSTANCE, UNIT);
+        SQL.createTable(ContextSubclass.SUPER_MODULE.getSubjectTable(), UNIT);
+        ContextSubclass.MODULE.accept(table -> SQL.createTable(table, UNIT));
+        SQL.insertOrAbort(NonHostEntityConverter.INSTANCE, ENTITY, UNIT);
+        Database.commit();
+    }
+    
+    private static @Nonnull Context context(long key) throws DatabaseException {
+        return Context.of(ENTITY, key);
+    }
+    
+    @Test
+    public void shouldRelateMovedSubtreesToAllTheirSupercontexts() throws ExternalException {
+        final @Nonnull Context root = Context.of(ENTITY);
+        final @Nonnull Context a = context(2);
+        final @Nonnull Context b = context(4);
+        final @Nonnull Context c = context(6);
+        a.moveTo(null);
+        c.moveTo(b);
+        b.moveTo(a);
+        Database.commit();
+        
+        assertThat(a.isSupernodeOf(c)).isTrue();
+        assertThat(root.isSupernodeOf(c)).isTrue();
+        assertThat(c.isSupernodeOf(a)).isFalse();
+        assertThat(a.getAllSubcontexts()).containsExactlyInAnyOrder(a, b, c);
+        assertThat(c.getSupercontexts()).containsExactly(b);
+        assertThat(ContextHierarchy.of(ENTITY).getAncestors(c.getKey())).containsEntry(b.getKey(), 1).containsEntry(a.getKey(), 2).containsEntry(Context.ROOT, 3);
+        
+        b.moveTo(null);
+        Database.commit();
+        
+        assertThat(a.isSupernodeOf(c)).isFalse();
+        assertThat(b.isSupernodeOf(c)).isTrue();
+        assertThat(a.getAllSubcontexts()).containsExactly(a);
+        assertThat(b.getSupercontexts()).containsExactly(root);
+        assertThat(ContextHierarchy.of(ENTITY).getAncestors(c.getKey())).containsOnlyKeys(b.getKey(), Context.ROOT);
+    }
+    
+    @Test
+    public void shouldCacheOnlyCommittedHierarchies() throws DatabaseException {
+        final @Nonnull Context d = context(8);
+        final @Nonnull Context e = context(10);
+        d.moveTo(null);
+        e.moveTo(null);
+        Database.commit();
+        
+        final @Nonnull ContextHierarchy cached = ContextHierarchy.of(ENTITY);
+        assertThat(ContextHierarchy.of(ENTITY)).isSameAs(cached);
+        
+        e.moveTo(d);
+        assertThat(ContextHierarchy.isModified(ENTITY)).isTrue();
+        assertThat(d.isSupernodeOf(e)).isTrue();
+        assertThat(ContextHierarchy.of(ENTITY)).isNotSameAs(cached);
+        
+        TransactionEnd.rollback();
+        assertThat(ContextHierarchy.isModified(ENTITY)).isFalse();
+        assertThat(ContextHierarchy.of(ENTITY)).isSameAs(cached);
+        assertThat(d.isSupernodeOf(e)).isFalse();
+        
+        e.moveTo(d);
+        Database.commit();
+        assertThat(ContextHierarchy.isModified(ENTITY)).isFalse();
+        assertThat(ContextHierarchy.of(ENTITY)).isNotSameAs(cached);
+        assertThat(d.isSupernodeOf(e)).isTrue();
+        Database.commit();
+    }
+    
+    @Test
+    public void shouldNotWriteWhenRecoveringContexts() throws DatabaseException {
+        Database.commit();
+        final long version = ContextHierarchy.getVersion(ENTITY);
+        final @Nonnull Context f = context(12);
+        assertThat(ContextHierarchy.isModified(ENTITY)).isFalse();
+        assertThat(ContextHierarchy.of(ENTITY).getDescendants(Context.ROOT)).doesNotContain(f.getKey());
+        Database.commit();
+        assertThat(ContextHierarchy.getVersion(ENTITY)).isEqualTo(version);
+    }
+    
+}
@@ -32,6 +32,7 @@ import net.digitalid.utility.annotations.parameter.Unmodified;
 import net.digitalid.utility.circumfixes.Quotes;
 import net.digitalid.utility.conversion.converters.StringConverter;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
 import net.digitalid.utility.conversion.interfaces.Converter;
 import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
@@ -79,6 +80,34 @@ public abstract class Pack extends RootClass {
         return XDF.recover(converter, provided, getBytes());
     }
     
+    /**
+     * Unpacks the content of this pack as an integer of one, two, four or eight bytes without allocating a decoder.
+     * 
+     * @throws RecoveryException if the content of this pack does not have the size of such an integer.
+     */
+    @Pure
+    public long unpackInteger() throws RecoveryException {
+        final @Nonnull byte[] bytes = getBytes();
+        final int length = bytes.length;
+        if (length != 1 && length != 2 && length != 4 && length != 8) { throw RecoveryExceptionBuilder.withMessage("The content of an integer may not consist of " + length + " bytes.").build(); }
+        long value = bytes[0]; // The first byte is sign-extended.
+        for (int i = 1; i < length; i++) { value = (value << 8) | (bytes[i] & 0xFF); }
+        return value;
+    }
+    
+    /**
+     * Unpacks the content of this pack as a decimal of four or eight bytes without allocating a decoder.
+     * 
+     * @throws RecoveryException if the content of this pack does not have the size of such a decimal.
+     */
+    @Pure
+    public double unpackDecimal() throws RecoveryException {
+        final @Nonnull byte[] bytes = getBytes();
+        if (bytes.length != 4 && bytes.length != 8) { throw RecoveryExceptionBuilder.withMessage("The content of a decimal may not consist of " + bytes.length + " bytes.").build(); }
+        final long bits = unpackInteger();
+        return bytes.length == 4 ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+    }
+    
     /**
      * Packs the given object with the given converter by serializing its content and using the given semantic type.
      */
@@ -17,7 +17,14 @@ package net.digitalid.core.pack;
 
 import javax.annotation.Nonnull;
 
+import net.digitalid.utility.conversion.converters.Decimal32Converter;
+import net.digitalid.utility.conversion.converters.Decimal64Converter;
+import net.digitalid.utility.conversion.converters.Integer08Converter;
+import net.digitalid.utility.conversion.converters.Integer16Converter;
+import net.digitalid.utility.conversion.converters.Integer32Converter;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
 import net.digitalid.utility.conversion.converters.StringConverter;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.time.Time;
 
 import net.digitalid.core.annotations.type.Loaded;
@@ -40,4 +47,36 @@ public class PackTest extends CoreTest {
         assertThat(pack1).isEqualTo(pack2);
     }
     
+    @Test
+    public void testUnpackInteger() throws RecoveryException {
+        for (byte value : new byte[] {0, 1, -1, Byte.MIN_VALUE, Byte.MAX_VALUE}) {
+            assertThat(Pack.pack(Integer08Converter.INSTANCE, value).unpackInteger()).isEqualTo(value);
+        }
+        for (short value : new short[] {0, 1, -1, 0x00FF, -0x0100, Short.MIN_VALUE, Short.MAX_VALUE}) {
+            assertThat(Pack.pack(Integer16Converter.INSTANCE, value).unpackInteger()).isEqualTo(value);
+        }
+        for (int value : new int[] {0, 1, -1, 0x00FF_FFFF, -0x0100_0000, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            assertThat(Pack.pack(Integer32Converter.INSTANCE, value).unpackInteger()).isEqualTo(value);
+        }
+        for (long value : new long[] {0, 1, -1, 0x00FF_FFFF_FFFF_FFFFL, -0x0100_0000_0000_0000L, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertThat(Pack.pack(Integer64Converter.INSTANCE, value).unpackInteger()).isEqualTo(value);
+        }
+    }
+    
+    @Test
+    public void testUnpackDecimal() throws RecoveryException {
+        for (float value : new float[] {0f, -0f, 1.5f, -3.25f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NEGATIVE_INFINITY}) {
+            assertThat(Pack.pack(Decimal32Converter.INSTANCE, value).unpackDecimal()).isEqualTo((double) value);
+        }
+        for (double value : new double[] {0d, -0d, 1.5d, -3.25d, Double.MIN_VALUE, Double.MAX_VALUE, Double.NEGATIVE_INFINITY}) {
+            assertThat(Pack.pack(Decimal64Converter.INSTANCE, value).unpackDecimal()).isEqualTo(value);
+        }
+    }
+    
+    @Test
+    public void testUnpackWithWrongSize() {
+        assertThatThrownBy(() -> Pack.pack(StringConverter.INSTANCE, "abcde").unpackInteger()).isInstanceOf(RecoveryException.class);
+        assertThatThrownBy(() -> Pack.pack(Integer16Converter.INSTANCE, (short) 1).unpackDecimal()).isInstanceOf(RecoveryException.class);
+    }
+    
 }
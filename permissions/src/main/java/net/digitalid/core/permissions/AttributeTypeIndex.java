@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.permissions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.core.identification.annotations.AttributeType;
+import net.digitalid.core.identification.identity.SemanticType;
+
+/**
+ * The attribute type index assigns dense indices to the attribute types that occur in agent permissions of this process.
+ * These indices are used to represent frozen agent permissions as bitsets and are not persisted.
+ * The index is process-global and only grows because frozen permissions keep referring to the assigned indices,
+ * which is acceptable as long as the number of attribute types that occur in agent permissions is bounded by the loaded types.
+ * 
+ * @see FreezableAgentPermissions
+ */
+@Utility
+abstract class AttributeTypeIndex {
+    
+    /**
+     * Maps the indexed attribute types to their index.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull SemanticType, @Nonnull Integer> indices = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Maps the indices to their attribute type.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull Integer, @Nonnull SemanticType> types = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns the index of the given attribute type, which is assigned if the type has not yet been indexed.
+     */
+    @Impure
+    static @NonNegative int of(@Nonnull @AttributeType SemanticType type) {
+        final @Nullable Integer index = indices.get(type);
+        if (index != null) { return index; }
+        synchronized (indices) {
+            final @Nullable Integer existing = indices.get(type);
+            if (existing != null) { return existing; }
+            final int assigned = indices.size();
+            types.put(assigned, type);
+            indices.put(type, assigned);
+            return assigned;
+        }
+    }
+    
+    /**
+     * Returns the index of the given attribute type or -1 if the type has not yet been indexed and can thus not be contained in any bitset.
+     */
+    @Pure
+    static int find(@Nonnull @AttributeType SemanticType type) {
+        final @Nullable Integer index = indices.get(type);
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * Returns the attribute type with the given index.
+     * 
+     * @require index < indices.size() : "The index has been assigned.";
+     */
+    @Pure
+    static @Nonnull SemanticType get(@NonNegative int index) {
+        final @Nullable SemanticType type = types.get(index);
+        Require.that(type != null).orThrow("No attribute type has the index $.", index);
+        return type;
+    }
+    
+}
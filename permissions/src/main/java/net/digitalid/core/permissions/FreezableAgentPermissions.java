@@ -15,6 +15,8 @@
  */
 package net.digitalid.core.permissions;
 
+import java.util.Arrays;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -38,6 +40,7 @@ import net.digitalid.core.identification.identity.SemanticType;
 
 /**
  * This class models the permissions of agents as a mapping from attribute types to writings.
+ * Once frozen, the permissions are additionally represented as bitsets so that coverage checks and restrictions are computed word by word.
  */
 @GenerateSubclass
 @Freezable(ReadOnlyAgentPermissions.class)
@@ -153,6 +156,110 @@ public abstract class FreezableAgentPermissions extends FreezableLinkedHashMap<@
         return result;
     }
     
+    /* -------------------------------------------------- Bitsets -------------------------------------------------- */
+    
+    /**
+     * Stores the bitsets of these permissions once they are frozen or null otherwise.
+     * The first word indicates the general read permission with the lowest bit and the general write permission with the second bit.
+     * The following words alternately indicate the readable types (including the writable types) and the writable types by their {@link AttributeTypeIndex index}.
+     */
+    private volatile @Nullable long[] bits;
+    
+    /**
+     * Returns the bitsets of the given permissions, which are computed if the permissions are not frozen.
+     */
+    @Pure
+    private static @Nonnull long[] getBits(@Nonnull ReadOnlyAgentPermissions permissions) {
+        if (permissions instanceof FreezableAgentPermissions) {
+            final @Nullable long[] bits = ((FreezableAgentPermissions) permissions).bits;
+            if (bits != null) { return bits; }
+        }
+        
+        @Nonnull long[] bits = new long[1];
+        for (@Nonnull SemanticType type : permissions.keySet()) {
+            final boolean writing = permissions.get(type);
+            if (type.equals(GENERAL)) {
+                bits[0] |= writing ? 3L : 1L;
+            } else {
+                final int index = AttributeTypeIndex.of(type);
+                final int position = 1 + 2 * (index >>> 6);
+                if (position >= bits.length) { bits = Arrays.copyOf(bits, position + 2); }
+                bits[position] |= 1L << index;
+                if (writing) { bits[position + 1] |= 1L << index; }
+            }
+        }
+        return bits;
+    }
+    
+    /**
+     * Returns the number of words that indicate the readable types in the given bitsets.
+     */
+    @Pure
+    private static int getNumberOfWords(@Nonnull long[] bits) {
+        return (bits.length - 1) / 2;
+    }
+    
+    /**
+     * Returns the readable (if writing is false) or writable (if writing is true) word with the given number or zero if the bitsets are shorter.
+     */
+    @Pure
+    private static long getWord(@Nonnull long[] bits, int number, boolean writing) {
+        final int position = 1 + 2 * number + (writing ? 1 : 0);
+        return position < bits.length ? bits[position] : 0L;
+    }
+    
+    /**
+     * Returns whether the given bitsets contain the readable (if writing is false) or writable (if writing is true) type with the given index.
+     */
+    @Pure
+    private static boolean contains(@Nonnull long[] bits, int index, boolean writing) {
+        return index >= 0 && (getWord(bits, index >>> 6, writing) & (1L << index)) != 0;
+    }
+    
+    /**
+     * Returns whether the given bitsets contain the general read (if writing is false) or write (if writing is true) permission.
+     */
+    @Pure
+    private static boolean containsGeneral(@Nonnull long[] bits, boolean writing) {
+        return (bits[0] & (writing ? 2L : 1L)) != 0;
+    }
+    
+    /* -------------------------------------------------- Queries -------------------------------------------------- */
+    
+    @Pure
+    @Override
+    public boolean allowToRead(@Nonnull @AttributeType SemanticType type) {
+        final @Nullable long[] bits = this.bits;
+        if (bits == null) { return ReadOnlyAgentPermissions.super.allowToRead(type); }
+        return containsGeneral(bits, false) || contains(bits, AttributeTypeIndex.find(type), false);
+    }
+    
+    @Pure
+    @Override
+    public boolean allowToWrite(@Nonnull @AttributeType SemanticType type) {
+        final @Nullable long[] bits = this.bits;
+        if (bits == null) { return ReadOnlyAgentPermissions.super.allowToWrite(type); }
+        return containsGeneral(bits, true) || contains(bits, AttributeTypeIndex.find(type), true);
+    }
+    
+    @Pure
+    @Override
+    public boolean cover(@Nonnull ReadOnlyAgentPermissions permissions) {
+        final @Nullable long[] bits = this.bits;
+        if (bits == null || !(permissions instanceof FreezableAgentPermissions) || ((FreezableAgentPermissions) permissions).bits == null) { return ReadOnlyAgentPermissions.super.cover(permissions); }
+        
+        if (containsGeneral(bits, true)) { return true; }
+        final @Nonnull long[] otherBits = getBits(permissions);
+        if (containsGeneral(otherBits, true)) { return false; }
+        final boolean generalRead = containsGeneral(bits, false);
+        if (containsGeneral(otherBits, false) && !generalRead) { return false; }
+        for (int number = 0; number < getNumberOfWords(otherBits); number++) {
+            if (!generalRead && (getWord(otherBits, number, false) & ~getWord(bits, number, false)) != 0) { return false; }
+            if ((getWord(otherBits, number, true) & ~getWord(bits, number, true)) != 0) { return false; }
+        }
+        return true;
+    }
+    
     /* -------------------------------------------------- Restriction -------------------------------------------------- */
     
     /**
@@ -161,9 +268,19 @@ public abstract class FreezableAgentPermissions extends FreezableLinkedHashMap<@
     @Impure
     @NonFrozenRecipient
     public void restrictTo(@Nonnull ReadOnlyAgentPermissions permissions) {
-        for (@Nonnull SemanticType type : keySet()) {
-            if (!permissions.allowToRead(type)) { remove(type); }
-            else if (get(type) && !permissions.allowToWrite(type)) { put(type, false); }
+        final @Nonnull long[] otherBits = getBits(permissions);
+        if (containsGeneral(otherBits, true)) { return; }
+        final boolean generalRead = containsGeneral(otherBits, false);
+        
+        final @Nonnull long[] bits = getBits(this);
+        if (containsGeneral(bits, false) && !generalRead) { remove(GENERAL); }
+        else if (containsGeneral(bits, true)) { super.put(GENERAL, false); }
+        
+        for (int number = 0; number < getNumberOfWords(bits); number++) {
+            final long removals = generalRead ? 0L : getWord(bits, number, false) & ~getWord(otherBits, number, false);
+            final long downgrades = getWord(bits, number, true) & ~removals & ~getWord(otherBits, number, true);
+            for (long word = removals; word != 0; word &= word - 1) { remove(AttributeTypeIndex.get(64 * number + Long.numberOfTrailingZeros(word))); }
+            for (long word = downgrades; word != 0; word &= word - 1) { super.put(AttributeTypeIndex.get(64 * number + Long.numberOfTrailingZeros(word)), false); }
         }
     }
     
@@ -190,6 +307,7 @@ public abstract class FreezableAgentPermissions extends FreezableLinkedHashMap<@
     @NonFrozenRecipient
     public @Chainable @Nonnull @Frozen ReadOnlyAgentPermissions freeze() {
         super.freeze();
+        if (bits == null) { bits = getBits(this); }
         return this;
     }
     
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.permissions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.time.Time;
+
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.testing.CoreTest;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static net.digitalid.core.permissions.ReadOnlyAgentPermissions.GENERAL;
+
+/**
+ * Unit testing of the {@link FreezableAgentPermissions agent permissions}, whose frozen bitsets have to agree with the mapping.
+ */
+public class FreezableAgentPermissionsTest extends CoreTest {
+    
+    /**
+     * Stores enough attribute types so that their indices span more than one word.
+     */
+    private static final @Nonnull List<@Nonnull SemanticType> types = new ArrayList<>();
+    
+    @BeforeClass
+    public static void mapTypes() {
+        for (int i = 0; i < 70; i++) {
+            types.add(SemanticType.map("type" + i + ".permission.test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.STRING).withCategories(Category.INTERNAL_NON_HOST_IDENTITIES).withCachingPeriod(Time.MONTH).build()));
+        }
+    }
+    
+    /**
+     * Returns new agent permissions with the given types, where each type is followed by its writing.
+     */
+    private static @Nonnull FreezableAgentPermissions with(@Nonnull Object... typesAndWritings) {
+        final @Nonnull FreezableAgentPermissions permissions = FreezableAgentPermissions.withNoPermissions();
+        for (int i = 0; i < typesAndWritings.length; i += 2) {
+            permissions.put((SemanticType) typesAndWritings[i], (Boolean) typesAndWritings[i + 1]);
+        }
+        return permissions;
+    }
+    
+    /**
+     * Returns various valid agent permissions, which are not frozen.
+     */
+    private static @Nonnull List<@Nonnull FreezableAgentPermissions> getPermissions() {
+        final @Nonnull SemanticType a = types.get(0);
+        final @Nonnull SemanticType b = types.get(1);
+        final @Nonnull SemanticType c = types.get(69);
+        final @Nonnull List<@Nonnull FreezableAgentPermissions> result = new ArrayList<>();
+        result.add(with());
+        result.add(with(GENERAL, false));
+        result.add(with(GENERAL, true));
+        result.add(with(GENERAL, false, a, true));
+        result.add(with(GENERAL, false, a, true, c, true));
+        result.add(with(a, false));
+        result.add(with(a, true));
+        result.add(with(b, true));
+        result.add(with(a, true, b, false));
+        result.add(with(a, false, b, true));
+        result.add(with(c, false));
+        result.add(with(c, true));
+        result.add(with(a, true, c, false));
+        result.add(with(a, false, b, false, c, true));
+        return result;
+    }
+    
+    /**
+     * Restricts the given permissions to the other permissions like the mapping did before the bitsets were introduced.
+     */
+    private static void restrictWithMapping(@Nonnull FreezableAgentPermissions permissions, @Nonnull ReadOnlyAgentPermissions other) {
+        for (@Nonnull SemanticType type : new ArrayList<>(permissions.keySet())) {
+            if (!other.allowToRead(type)) { permissions.remove(type); }
+            else if (permissions.get(type) && !other.allowToWrite(type)) { permissions.put(type, false); }
+        }
+    }
+    
+    @Test
+    public void shouldCoverLikeTheMapping() {
+        for (@Nonnull FreezableAgentPermissions first : getPermissions()) {
+            for (@Nonnull FreezableAgentPermissions second : getPermissions()) {
+                final boolean expected = first.cover(second);
+                final boolean actual = first.clone().freeze().cover(second.clone().freeze());
+                assertThat(actual).as("%s covers %s", first, second).isEqualTo(expected);
+            }
+        }
+    }
+    
+    @Test
+    public void shouldAllowLikeTheMapping() {
+        for (@Nonnull FreezableAgentPermissions permissions : getPermissions()) {
+            final @Nonnull ReadOnlyAgentPermissions frozen = permissions.clone().freeze();
+            for (@Nonnull SemanticType type : types) {
+                assertThat(frozen.allowToRead(type)).as("%s allows to read %s", permissions, type).isEqualTo(permissions.allowToRead(type));
+                assertThat(frozen.allowToWrite(type)).as("%s allows to write %s", permissions, type).isEqualTo(permissions.allowToWrite(type));
+            }
+        }
+    }
+    
+    @Test
+    public void shouldRestrictLikeTheMapping() {
+        for (@Nonnull FreezableAgentPermissions first : getPermissions()) {
+            for (@Nonnull FreezableAgentPermissions second : getPermissions()) {
+                final @Nonnull FreezableAgentPermissions expected = first.clone();
+                restrictWithMapping(expected, second);
+                final @Nonnull FreezableAgentPermissions actual = first.clone();
+                actual.restrictTo(second.clone().freeze());
+                assertThat(actual).as("%s restricted to %s", first, second).isEqualTo(expected);
+            }
+        }
+    }
+    
+    @Test
+    public void shouldRestrictToGeneralPermissions() {
+        final @Nonnull FreezableAgentPermissions permissions = with(types.get(0), true, types.get(69), false);
+        
+        final @Nonnull FreezableAgentPermissions read = permissions.clone();
+        read.restrictTo(ReadOnlyAgentPermissions.GENERAL_READ);
+        assertThat(read).isEqualTo(with(types.get(0), false, types.get(69), false));
+        
+        final @Nonnull FreezableAgentPermissions write = permissions.clone();
+        write.restrictTo(ReadOnlyAgentPermissions.GENERAL_WRITE);
+        assertThat(write).isEqualTo(permissions);
+        
+        final @Nonnull FreezableAgentPermissions none = permissions.clone();
+        none.restrictTo(ReadOnlyAgentPermissions.NONE);
+        assertThat(none).isEmpty();
+    }
+    
+}
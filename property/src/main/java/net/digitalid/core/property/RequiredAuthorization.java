@@ -15,6 +15,8 @@
  */
 package net.digitalid.core.property;
 
+import java.util.Objects;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -101,4 +103,17 @@ public interface RequiredAuthorization<@Unspecifiable ENTITY extends Entity, @Un
     @TODO(task = "Improve the flexibility so that tables can also be joined.", date = "2017-01-19", author = Author.KASPAR_ETTER)
     public abstract @Nonnull UnaryFunction<@Nonnull Triplet<@Nonnull ReadOnlyAgentPermissions, @Nonnull Restrictions, @Nullable Agent>, @Nonnull SQLBooleanExpression> getStateFilter();
     
+    /**
+     * Returns whether the given values require the same authorization for the given subject so that they can be modified in a single action.
+     */
+    @Pure
+    public default boolean requiresSameAuthorization(@Nonnull SUBJECT subject, @Nonnull VALUE value1, @Nonnull VALUE value2) {
+        return getRequiredPermissionsToExecuteMethod().evaluate(subject, value1).equals(getRequiredPermissionsToExecuteMethod().evaluate(subject, value2))
+                && getRequiredRestrictionsToExecuteMethod().evaluate(subject, value1).equals(getRequiredRestrictionsToExecuteMethod().evaluate(subject, value2))
+                && Objects.equals(getRequiredAgentToExecuteMethod().evaluate(subject, value1), getRequiredAgentToExecuteMethod().evaluate(subject, value2))
+                && getRequiredPermissionsToSeeMethod().evaluate(subject, value1).equals(getRequiredPermissionsToSeeMethod().evaluate(subject, value2))
+                && getRequiredRestrictionsToSeeMethod().evaluate(subject, value1).equals(getRequiredRestrictionsToSeeMethod().evaluate(subject, value2))
+                && Objects.equals(getRequiredAgentToSeeMethod().evaluate(subject, value1), getRequiredAgentToSeeMethod().evaluate(subject, value2));
+    }
+    
 }
@@ -29,7 +29,9 @@ import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.functional.interfaces.Predicate;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.immutable.ImmutableList;
 import net.digitalid.utility.storage.Storage;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.value.Valid;
 
@@ -72,16 +74,25 @@ public abstract class MapPropertyInternalAction<@Unspecifiable ENTITY extends En
     /* -------------------------------------------------- Values -------------------------------------------------- */
     
     /**
-     * Returns the key added to or removed from the property.
+     * Returns the keys added to or removed from the property.
+     * All keys require the same authorization, which is why the first key is representative for all of them.
      */
     @Pure
-    protected abstract @Nonnull @Valid("key") MAP_KEY getKey();
+    protected abstract @Nonnull @NonEmpty ImmutableList<@Nonnull @Valid("key") MAP_KEY> getKeys();
     
     /**
-     * Returns the value added to or removed from the property.
+     * Returns the values added to or removed from the property at the same positions as their keys.
      */
     @Pure
-    protected abstract @Nonnull @Valid MAP_VALUE getValue();
+    protected abstract @Nonnull @NonEmpty ImmutableList<@Nonnull @Valid MAP_VALUE> getValues();
+    
+    /**
+     * Returns the key that determines the required authorization of this action.
+     */
+    @Pure
+    protected @Nonnull @Valid("key") MAP_KEY getKey() {
+        return getKeys().getFirst();
+    }
     
     /**
      * Returns whether the key and value are added to or removed from the property.
@@ -104,7 +115,7 @@ public abstract class MapPropertyInternalAction<@Unspecifiable ENTITY extends En
     @NonCommitting
     @PureWithSideEffects
     protected void executeOnBoth() throws DatabaseException, RecoveryException {
-        getProperty().modify(getKey(), getValue(), isAdded());
+        getProperty().modify(getKeys(), getValues(), isAdded());
     }
     
     @Pure
@@ -117,7 +128,7 @@ public abstract class MapPropertyInternalAction<@Unspecifiable ENTITY extends En
     @Override
     @OnClientRecipient
     public @Nonnull MapPropertyInternalAction<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE> getReverse() {
-        return MapPropertyInternalActionBuilder.withProperty(getProperty()).withKey(getKey()).withValue(getValue()).withAdded(isAdded()).build();
+        return MapPropertyInternalActionBuilder.withProperty(getProperty()).withKeys(getKeys()).withValues(getValues()).withAdded(isAdded()).build();
     }
     
     /* -------------------------------------------------- Required Authorization -------------------------------------------------- */
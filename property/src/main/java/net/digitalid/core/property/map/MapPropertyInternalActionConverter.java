@@ -15,6 +15,8 @@
  */
 package net.digitalid.core.property.map;
 
+import java.util.Objects;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -25,6 +27,9 @@ import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.ownership.NonCaptured;
 import net.digitalid.utility.annotations.parameter.Modified;
 import net.digitalid.utility.annotations.parameter.Unmodified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.conversion.collectors.CollectionCollector;
 import net.digitalid.utility.conversion.enumerations.Representation;
 import net.digitalid.utility.conversion.exceptions.ConnectionException;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
@@ -114,8 +119,8 @@ public abstract class MapPropertyInternalActionConverter<@Unspecifiable ENTITY e
         final @Nonnull SynchronizedMapPropertyTable<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE, PROVIDED_FOR_KEY, PROVIDED_FOR_VALUE> propertyTable = getPropertyTable();
         return ImmutableList.withElements(
                 CustomField.with(CustomType.TUPLE.of(propertyTable.getParentModule().getSubjectTable()), "subject", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
-                CustomField.with(CustomType.TUPLE.of(propertyTable.getKeyConverter()), "key", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
-                CustomField.with(CustomType.TUPLE.of(propertyTable.getValueConverter()), "value", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
+                CustomField.with(CustomType.LIST.of(CustomType.TUPLE.of(propertyTable.getKeyConverter())), "keys", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
+                CustomField.with(CustomType.LIST.of(CustomType.TUPLE.of(propertyTable.getValueConverter())), "values", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
                 CustomField.with(CustomType.BOOLEAN, "added")
         );
     }
@@ -127,8 +132,8 @@ public abstract class MapPropertyInternalActionConverter<@Unspecifiable ENTITY e
     public <@Unspecifiable EXCEPTION extends ConnectionException> void convert(@NonCaptured @Unmodified @Nonnull MapPropertyInternalAction<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE> action, @NonCaptured @Modified @Nonnull Encoder<EXCEPTION> encoder) throws EXCEPTION {
         final @Nonnull SynchronizedMapPropertyTable<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE, PROVIDED_FOR_KEY, PROVIDED_FOR_VALUE> propertyTable = getPropertyTable();
         encoder.encodeObject(propertyTable.getParentModule().getCoreSubjectTable(), action.getProperty().getSubject());
-        encoder.encodeObject(propertyTable.getKeyConverter(), action.getKey());
-        encoder.encodeObject(propertyTable.getValueConverter(), action.getValue());
+        encoder.encodeOrderedIterable(propertyTable.getKeyConverter(), action.getKeys());
+        encoder.encodeOrderedIterable(propertyTable.getValueConverter(), action.getValues());
         encoder.encodeBoolean(action.isAdded());
     }
     
@@ -151,15 +156,24 @@ public abstract class MapPropertyInternalActionConverter<@Unspecifiable ENTITY e
         
         final @Nonnull WritableSynchronizedMapProperty<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE, ?, ?> synchronizedProperty = (WritableSynchronizedMapProperty<ENTITY, KEY, SUBJECT, MAP_KEY, MAP_VALUE, ?, ?>) persistentProperty;
         
-        final @Nonnull MAP_KEY key = decoder.decodeObject(propertyTable.getKeyConverter(), propertyTable.getProvidedObjectForKeyExtractor().evaluate(subject));
-        if (!propertyTable.getKeyValidator().evaluate(key))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The key $ is not valid.", key)).build(); }
+        final @Nonnull ReadOnlyList<@Nonnull MAP_KEY> keys = decoder.decodeOrderedIterable(propertyTable.getKeyConverter(), propertyTable.getProvidedObjectForKeyExtractor().evaluate(subject), size -> CollectionCollector.with(FreezableArrayList.withInitialCapacity(size)));
+        if (keys.isEmpty()) { throw RecoveryExceptionBuilder.withMessage("The recovered action has to contain at least one key.").build(); }
+        final PROVIDED_FOR_VALUE providedForValue = propertyTable.getProvidedObjectForValueExtractor().evaluate(subject, keys.getFirst());
+        for (@Nonnull MAP_KEY key : keys) {
+            if (!propertyTable.getKeyValidator().evaluate(key))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The key $ is not valid.", key)).build(); }
+            if (!propertyTable.getRequiredAuthorization().requiresSameAuthorization(subject, keys.getFirst(), key)) { throw RecoveryExceptionBuilder.withMessage(Strings.format("The key $ requires a different authorization than the other keys.", key)).build(); }
+            if (!Objects.equals(providedForValue, propertyTable.getProvidedObjectForValueExtractor().evaluate(subject, key))) { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value of the key $ requires a different provided object than the other values.", key)).build(); }
+        }
         
-        final @Nonnull MAP_VALUE value = decoder.decodeObject(propertyTable.getValueConverter(), propertyTable.getProvidedObjectForValueExtractor().evaluate(subject, key));
-        if (!propertyTable.getValueValidator().evaluate(value))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value $ is not valid.", value)).build(); }
+        final @Nonnull ReadOnlyList<@Nonnull MAP_VALUE> values = decoder.decodeOrderedIterable(propertyTable.getValueConverter(), providedForValue, size -> CollectionCollector.with(FreezableArrayList.withInitialCapacity(size)));
+        if (values.size() != keys.size()) { throw RecoveryExceptionBuilder.withMessage(Strings.format("The number of values $ does not match the number of keys $.", values.size(), keys.size())).build(); }
+        for (@Nonnull MAP_VALUE value : values) {
+            if (!propertyTable.getValueValidator().evaluate(value))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value $ is not valid.", value)).build(); }
+        }
         
         final boolean added = decoder.decodeBoolean();
         
-        return new MapPropertyInternalActionSubclass<>(signature, synchronizedProperty, key, value, added);
+        return new MapPropertyInternalActionSubclass<>(signature, synchronizedProperty, ImmutableList.withElementsOf(keys), ImmutableList.withElementsOf(values), added);
     }
     
 }
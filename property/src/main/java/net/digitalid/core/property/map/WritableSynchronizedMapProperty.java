@@ -15,6 +15,8 @@
  */
 package net.digitalid.core.property.map;
 
+import java.util.Objects;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -28,12 +30,16 @@ import net.digitalid.utility.annotations.parameter.Unmodified;
 import net.digitalid.utility.annotations.type.ThreadSafe;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
 import net.digitalid.utility.collections.map.FreezableMap;
 import net.digitalid.utility.collections.map.ReadOnlyMap;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.freezable.annotations.NonFrozen;
+import net.digitalid.utility.functional.iterables.FiniteIterable;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.immutable.ImmutableList;
 import net.digitalid.utility.validation.annotations.lock.LockNotHeldByCurrentThread;
 import net.digitalid.utility.validation.annotations.type.Mutable;
 import net.digitalid.utility.validation.annotations.value.Valid;
@@ -51,6 +57,8 @@ import net.digitalid.database.property.map.ReadOnlyPersistentMapProperty;
 import net.digitalid.database.property.map.WritablePersistentMapPropertyImplementation;
 
 import net.digitalid.core.entity.Entity;
+import net.digitalid.core.handler.method.action.InternalAction;
+import net.digitalid.core.property.RequiredAuthorization;
 import net.digitalid.core.property.SynchronizedProperty;
 import net.digitalid.core.subject.CoreSubject;
 import net.digitalid.core.synchronizer.Synchronizer;
@@ -91,7 +99,7 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
             Database.commit();
             return false;
         } else {
-            Synchronizer.execute(MapPropertyInternalActionBuilder.withProperty(this).withKey(key).withValue(value).withAdded(true).build());
+            Synchronizer.execute(MapPropertyInternalActionBuilder.withProperty(this).withKeys(ImmutableList.withElements(key)).withValues(ImmutableList.withElements(value)).withAdded(true).build());
             return true;
         }
     }
@@ -103,7 +111,7 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
     public @Capturable @Nullable @Valid MAP_VALUE remove(@NonCaptured @Unmodified @Nonnull @Valid("key") MAP_KEY key) throws DatabaseException, RecoveryException {
         if (get().containsKey(key)) {
             final @Nullable @Valid MAP_VALUE value = getMap().get(key);
-            Synchronizer.execute(MapPropertyInternalActionBuilder.withProperty(this).withKey(key).withValue(value).withAdded(false).build());
+            Synchronizer.execute(MapPropertyInternalActionBuilder.withProperty(this).withKeys(ImmutableList.withElements(key)).withValues(ImmutableList.withElements(value)).withAdded(false).build());
             return value;
         } else {
             Database.commit();
@@ -111,6 +119,70 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
         }
     }
     
+    /**
+     * Adds the entries of the given map to this property with as few internal actions as possible.
+     * Entries whose key is already in use are ignored and entries whose keys require the same
+     * authorization are added together in a single internal action.
+     * All internal actions are executed in a single transaction so that either all or none of them are executed.
+     * 
+     * @return whether at least one of the given entries was added.
+     */
+    @Impure
+    @Committing
+    @LockNotHeldByCurrentThread
+    public boolean addAll(@NonCaptured @Unmodified @Nonnull ReadOnlyMap<@Nonnull @Valid("key") MAP_KEY, @Nonnull @Valid MAP_VALUE> map) throws DatabaseException, RecoveryException {
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull MAP_KEY>> groups = groupByAuthorization(map.keySet().filter(key -> !get().containsKey(key)));
+        final @Nonnull FreezableList<@Nonnull InternalAction> actions = FreezableArrayList.withNoElements();
+        for (@Nonnull FreezableList<@Nonnull MAP_KEY> group : groups) {
+            actions.add(MapPropertyInternalActionBuilder.withProperty(this).withKeys(ImmutableList.withElementsOf(group)).withValues(ImmutableList.withElementsOf(group.map(map::get))).withAdded(true).build());
+        }
+        if (actions.isEmpty()) { Database.commit(); }
+        else { Synchronizer.executeAll(actions.freeze()); }
+        return !groups.isEmpty();
+    }
+    
+    /**
+     * Removes the values indexed by the given keys from this property with as few internal actions as possible.
+     * Keys that are not in use are ignored and keys that require the same authorization are
+     * removed together in a single internal action.
+     * All internal actions are executed in a single transaction so that either all or none of them are executed.
+     * 
+     * @return whether at least one of the given keys was in use.
+     */
+    @Impure
+    @Committing
+    @LockNotHeldByCurrentThread
+    public boolean removeAll(@NonCaptured @Unmodified @Nonnull FiniteIterable<@Nonnull @Valid("key") MAP_KEY> keys) throws DatabaseException, RecoveryException {
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull MAP_KEY>> groups = groupByAuthorization(keys.filter(key -> get().containsKey(key)).distinct());
+        final @Nonnull FreezableList<@Nonnull InternalAction> actions = FreezableArrayList.withNoElements();
+        for (@Nonnull FreezableList<@Nonnull MAP_KEY> group : groups) {
+            actions.add(MapPropertyInternalActionBuilder.withProperty(this).withKeys(ImmutableList.withElementsOf(group)).withValues(ImmutableList.withElementsOf(group.map(getMap()::get))).withAdded(false).build());
+        }
+        if (actions.isEmpty()) { Database.commit(); }
+        else { Synchronizer.executeAll(actions.freeze()); }
+        return !groups.isEmpty();
+    }
+    
+    /**
+     * Groups the given keys so that all keys of a group require the same authorization and the same object provided for their values.
+     * The latter allows the values of an action to be decoded as one iterable.
+     */
+    @Pure
+    private @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull MAP_KEY>> groupByAuthorization(@Nonnull FiniteIterable<@Nonnull MAP_KEY> keys) {
+        final @Nonnull RequiredAuthorization<ENTITY, KEY, SUBJECT, MAP_KEY> authorization = getTable().getRequiredAuthorization();
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull MAP_KEY>> groups = FreezableArrayList.withNoElements();
+        outer: for (@Nonnull MAP_KEY key : keys) {
+            for (@Nonnull FreezableList<@Nonnull MAP_KEY> group : groups) {
+                if (authorization.requiresSameAuthorization(getSubject(), group.getFirst(), key) && Objects.equals(getTable().getProvidedObjectForValueExtractor().evaluate(getSubject(), group.getFirst()), getTable().getProvidedObjectForValueExtractor().evaluate(getSubject(), key))) {
+                    group.add(key);
+                    continue outer;
+                }
+            }
+            groups.add(FreezableArrayList.withElement(key));
+        }
+        return groups;
+    }
+    
     /**
      * Adds the given value indexed by the given key to this property without synchronization.
      * This method is intended to be called only by other actions.
@@ -124,7 +196,7 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
         if (get().containsKey(key)) {
             return false;
         } else {
-            modify(key, value, true);
+            modify(ImmutableList.withElements(key), ImmutableList.withElements(value), true);
             return true;
         }
     }
@@ -141,7 +213,7 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
     public @Capturable @Nullable @Valid MAP_VALUE removeWithoutSynchronization(@NonCaptured @Unmodified @Nonnull @Valid("key") MAP_KEY key) throws DatabaseException, RecoveryException {
         if (get().containsKey(key)) {
             final @Nullable @Valid MAP_VALUE value = getMap().get(key);
-            modify(key, value, false);
+            modify(ImmutableList.withElements(key), ImmutableList.withElements(value), false);
             return value;
         } else {
             return null;
@@ -151,24 +223,31 @@ public abstract class WritableSynchronizedMapProperty<@Unspecifiable ENTITY exte
     /* -------------------------------------------------- Action -------------------------------------------------- */
     
     /**
-     * Adds or removes the given value to or from this property from the {@link MapPropertyInternalAction}.
+     * Adds or removes the given keys and values to or from this property from the {@link MapPropertyInternalAction}.
+     * All rows are written while holding the lock once so that observers never see a partially applied action.
      */
     @Impure
     @NonCommitting
     @LockNotHeldByCurrentThread
     @TODO(task = "Throw a database exception if no value was deleted (because it did not exist).", date = "2017-08-17", author = Author.KASPAR_ETTER)
-    protected void modify(@Nonnull @Valid("key") MAP_KEY key, @Nonnull @Valid MAP_VALUE value, boolean added) throws DatabaseException, RecoveryException {
+    protected void modify(@Nonnull ImmutableList<@Nonnull @Valid("key") MAP_KEY> keys, @Nonnull ImmutableList<@Nonnull @Valid MAP_VALUE> values, boolean added) throws DatabaseException, RecoveryException {
         lock.lock();
         try {
-            final @Nonnull PersistentMapPropertyEntry<SUBJECT, MAP_KEY, MAP_VALUE> entry = PersistentMapPropertyEntryBuilder.<SUBJECT, MAP_KEY, MAP_VALUE>withSubject(getSubject()).withKey(key).withValue(value).build();
-            if (added) {
-                SQL.insertOrAbort(getTable(), entry, getSubject().getUnit());
-                getMap().put(key, value);
-            } else {
-                SQL.delete(getTable(), getSubject().getUnit(), WhereConditionBuilder.withConverter(getTable()).withObject(entry).build());
-                getMap().remove(key);
+            for (int i = 0; i < keys.size(); i++) {
+                final @Nonnull MAP_KEY key = keys.get(i);
+                final @Nonnull MAP_VALUE value = values.get(i);
+                final @Nonnull PersistentMapPropertyEntry<SUBJECT, MAP_KEY, MAP_VALUE> entry = PersistentMapPropertyEntryBuilder.<SUBJECT, MAP_KEY, MAP_VALUE>withSubject(getSubject()).withKey(key).withValue(value).build();
+                if (added) {
+                    SQL.insertOrAbort(getTable(), entry, getSubject().getUnit());
+                    getMap().put(key, value);
+                } else {
+                    SQL.delete(getTable(), getSubject().getUnit(), WhereConditionBuilder.withConverter(getTable()).withObject(entry).build());
+                    getMap().remove(key);
+                }
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                notifyObservers(keys.get(i), values.get(i), added);
             }
-            notifyObservers(key, value, added);
         } finally {
             lock.unlock();
         }
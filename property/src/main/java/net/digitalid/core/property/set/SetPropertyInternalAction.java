@@ -29,7 +29,9 @@ import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.functional.interfaces.Predicate;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.immutable.ImmutableList;
 import net.digitalid.utility.storage.Storage;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.value.Valid;
 
@@ -66,13 +68,22 @@ public abstract class SetPropertyInternalAction<@Unspecifiable ENTITY extends En
     /* -------------------------------------------------- Values -------------------------------------------------- */
     
     /**
-     * Returns the value added to or removed from the property.
+     * Returns the values added to or removed from the property.
+     * All values require the same authorization, which is why the first value is representative for all of them.
      */
     @Pure
-    protected abstract @Nonnull @Valid VALUE getValue();
+    protected abstract @Nonnull @NonEmpty ImmutableList<@Nonnull @Valid VALUE> getValues();
     
     /**
-     * Returns whether the value is added to or removed from the property.
+     * Returns the value that determines the required authorization of this action.
+     */
+    @Pure
+    protected @Nonnull @Valid VALUE getValue() {
+        return getValues().getFirst();
+    }
+    
+    /**
+     * Returns whether the values are added to or removed from the property.
      */
     @Pure
     protected abstract boolean isAdded();
@@ -92,7 +103,7 @@ public abstract class SetPropertyInternalAction<@Unspecifiable ENTITY extends En
     @NonCommitting
     @PureWithSideEffects
     protected void executeOnBoth() throws DatabaseException, RecoveryException {
-        getProperty().modify(getValue(), isAdded());
+        getProperty().modify(getValues(), isAdded());
     }
     
     @Pure
@@ -105,7 +116,7 @@ public abstract class SetPropertyInternalAction<@Unspecifiable ENTITY extends En
     @Override
     @OnClientRecipient
     public @Nonnull SetPropertyInternalAction<ENTITY, KEY, SUBJECT, VALUE> getReverse() {
-        return SetPropertyInternalActionBuilder.withProperty(getProperty()).withValue(getValue()).withAdded(isAdded()).build();
+        return SetPropertyInternalActionBuilder.withProperty(getProperty()).withValues(getValues()).withAdded(isAdded()).build();
     }
     
     /* -------------------------------------------------- Required Authorization -------------------------------------------------- */
@@ -25,6 +25,9 @@ import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.ownership.NonCaptured;
 import net.digitalid.utility.annotations.parameter.Modified;
 import net.digitalid.utility.annotations.parameter.Unmodified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.conversion.collectors.CollectionCollector;
 import net.digitalid.utility.conversion.enumerations.Representation;
 import net.digitalid.utility.conversion.exceptions.ConnectionException;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
@@ -114,7 +117,7 @@ public abstract class SetPropertyInternalActionConverter<@Unspecifiable ENTITY e
         final @Nonnull SynchronizedSetPropertyTable<ENTITY, KEY, SUBJECT, VALUE, PROVIDED_FOR_VALUE> propertyTable = getPropertyTable();
         return ImmutableList.withElements(
                 CustomField.with(CustomType.TUPLE.of(propertyTable.getParentModule().getSubjectTable()), "subject", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
-                CustomField.with(CustomType.TUPLE.of(propertyTable.getValueConverter()), "value", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
+                CustomField.with(CustomType.LIST.of(CustomType.TUPLE.of(propertyTable.getValueConverter())), "values", ImmutableList.withElements(CustomAnnotation.with(Nonnull.class))),
                 CustomField.with(CustomType.BOOLEAN, "added")
         );
     }
@@ -126,7 +129,7 @@ public abstract class SetPropertyInternalActionConverter<@Unspecifiable ENTITY e
     public <@Unspecifiable EXCEPTION extends ConnectionException> void convert(@NonCaptured @Unmodified @Nonnull SetPropertyInternalAction<ENTITY, KEY, SUBJECT, VALUE> action, @NonCaptured @Modified @Nonnull Encoder<EXCEPTION> encoder) throws EXCEPTION {
         final @Nonnull SynchronizedSetPropertyTable<ENTITY, KEY, SUBJECT, VALUE, PROVIDED_FOR_VALUE> propertyTable = getPropertyTable();
         encoder.encodeObject(propertyTable.getParentModule().getCoreSubjectTable(), action.getProperty().getSubject());
-        encoder.encodeObject(propertyTable.getValueConverter(), action.getValue());
+        encoder.encodeOrderedIterable(propertyTable.getValueConverter(), action.getValues());
         encoder.encodeBoolean(action.isAdded());
     }
     
@@ -149,12 +152,16 @@ public abstract class SetPropertyInternalActionConverter<@Unspecifiable ENTITY e
         
         final @Nonnull WritableSynchronizedSetProperty<ENTITY, KEY, SUBJECT, VALUE, ?, ?> synchronizedProperty = (WritableSynchronizedSetProperty<ENTITY, KEY, SUBJECT, VALUE, ?, ?>) persistentProperty;
         
-        final @Nonnull VALUE value = decoder.decodeObject(propertyTable.getValueConverter(), propertyTable.getProvidedObjectExtractor().evaluate(subject));
-        if (!propertyTable.getValueValidator().evaluate(value))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value $ is not valid.", value)).build(); }
+        final @Nonnull ReadOnlyList<@Nonnull VALUE> values = decoder.decodeOrderedIterable(propertyTable.getValueConverter(), propertyTable.getProvidedObjectExtractor().evaluate(subject), size -> CollectionCollector.with(FreezableArrayList.withInitialCapacity(size)));
+        if (values.isEmpty()) { throw RecoveryExceptionBuilder.withMessage("The recovered action has to contain at least one value.").build(); }
+        for (@Nonnull VALUE value : values) {
+            if (!propertyTable.getValueValidator().evaluate(value))  { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value $ is not valid.", value)).build(); }
+            if (!propertyTable.getRequiredAuthorization().requiresSameAuthorization(subject, values.getFirst(), value)) { throw RecoveryExceptionBuilder.withMessage(Strings.format("The value $ requires a different authorization than the other values.", value)).build(); }
+        }
         
         final boolean added = decoder.decodeBoolean();
         
-        return new SetPropertyInternalActionSubclass<>(signature, synchronizedProperty, value, added);
+        return new SetPropertyInternalActionSubclass<>(signature, synchronizedProperty, ImmutableList.withElementsOf(values), added);
     }
     
 }
@@ -26,12 +26,16 @@ import net.digitalid.utility.annotations.parameter.Unmodified;
 import net.digitalid.utility.annotations.type.ThreadSafe;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
 import net.digitalid.utility.collections.set.FreezableSet;
 import net.digitalid.utility.collections.set.ReadOnlySet;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.freezable.annotations.NonFrozen;
+import net.digitalid.utility.functional.iterables.FiniteIterable;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.immutable.ImmutableList;
 import net.digitalid.utility.validation.annotations.lock.LockNotHeldByCurrentThread;
 import net.digitalid.utility.validation.annotations.type.Mutable;
 import net.digitalid.utility.validation.annotations.value.Valid;
@@ -49,6 +53,8 @@ import net.digitalid.database.property.set.ReadOnlyPersistentSetProperty;
 import net.digitalid.database.property.set.WritablePersistentSetPropertyImplementation;
 
 import net.digitalid.core.entity.Entity;
+import net.digitalid.core.handler.method.action.InternalAction;
+import net.digitalid.core.property.RequiredAuthorization;
 import net.digitalid.core.property.SynchronizedProperty;
 import net.digitalid.core.subject.CoreSubject;
 import net.digitalid.core.synchronizer.Synchronizer;
@@ -89,7 +95,7 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
             Database.commit();
             return false;
         } else {
-            Synchronizer.execute(SetPropertyInternalActionBuilder.withProperty(this).withValue(value).withAdded(true).build());
+            Synchronizer.execute(SetPropertyInternalActionBuilder.withProperty(this).withValues(ImmutableList.withElements(value)).withAdded(true).build());
             return true;
         }
     }
@@ -100,7 +106,7 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
     @LockNotHeldByCurrentThread
     public boolean remove(@NonCaptured @Unmodified @Nonnull @Valid VALUE value) throws DatabaseException, RecoveryException {
         if (get().contains(value)) {
-            Synchronizer.execute(SetPropertyInternalActionBuilder.withProperty(this).withValue(value).withAdded(false).build());
+            Synchronizer.execute(SetPropertyInternalActionBuilder.withProperty(this).withValues(ImmutableList.withElements(value)).withAdded(false).build());
             return true;
         } else {
             Database.commit();
@@ -108,6 +114,69 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
         }
     }
     
+    /**
+     * Adds the given values to this property with as few internal actions as possible.
+     * Values that are already stored are ignored and values that require the same
+     * authorization are added together in a single internal action.
+     * All internal actions are executed in a single transaction so that either all or none of them are executed.
+     * 
+     * @return whether at least one of the given values was not already stored.
+     */
+    @Impure
+    @Committing
+    @LockNotHeldByCurrentThread
+    public boolean addAll(@NonCaptured @Unmodified @Nonnull FiniteIterable<@Nonnull @Valid VALUE> values) throws DatabaseException, RecoveryException {
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull VALUE>> groups = groupByAuthorization(values.filter(value -> !get().contains(value)).distinct());
+        final @Nonnull FreezableList<@Nonnull InternalAction> actions = FreezableArrayList.withNoElements();
+        for (@Nonnull FreezableList<@Nonnull VALUE> group : groups) {
+            actions.add(SetPropertyInternalActionBuilder.withProperty(this).withValues(ImmutableList.withElementsOf(group)).withAdded(true).build());
+        }
+        if (actions.isEmpty()) { Database.commit(); }
+        else { Synchronizer.executeAll(actions.freeze()); }
+        return !groups.isEmpty();
+    }
+    
+    /**
+     * Removes the given values from this property with as few internal actions as possible.
+     * Values that are not stored are ignored and values that require the same
+     * authorization are removed together in a single internal action.
+     * All internal actions are executed in a single transaction so that either all or none of them are executed.
+     * 
+     * @return whether at least one of the given values was stored.
+     */
+    @Impure
+    @Committing
+    @LockNotHeldByCurrentThread
+    public boolean removeAll(@NonCaptured @Unmodified @Nonnull FiniteIterable<@Nonnull @Valid VALUE> values) throws DatabaseException, RecoveryException {
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull VALUE>> groups = groupByAuthorization(values.filter(value -> get().contains(value)).distinct());
+        final @Nonnull FreezableList<@Nonnull InternalAction> actions = FreezableArrayList.withNoElements();
+        for (@Nonnull FreezableList<@Nonnull VALUE> group : groups) {
+            actions.add(SetPropertyInternalActionBuilder.withProperty(this).withValues(ImmutableList.withElementsOf(group)).withAdded(false).build());
+        }
+        if (actions.isEmpty()) { Database.commit(); }
+        else { Synchronizer.executeAll(actions.freeze()); }
+        return !groups.isEmpty();
+    }
+    
+    /**
+     * Groups the given values so that all values of a group require the same authorization.
+     */
+    @Pure
+    private @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull VALUE>> groupByAuthorization(@Nonnull FiniteIterable<@Nonnull VALUE> values) {
+        final @Nonnull RequiredAuthorization<ENTITY, KEY, SUBJECT, VALUE> authorization = getTable().getRequiredAuthorization();
+        final @Nonnull FreezableList<@Nonnull FreezableList<@Nonnull VALUE>> groups = FreezableArrayList.withNoElements();
+        outer: for (@Nonnull VALUE value : values) {
+            for (@Nonnull FreezableList<@Nonnull VALUE> group : groups) {
+                if (authorization.requiresSameAuthorization(getSubject(), group.getFirst(), value)) {
+                    group.add(value);
+                    continue outer;
+                }
+            }
+            groups.add(FreezableArrayList.withElement(value));
+        }
+        return groups;
+    }
+    
     /**
      * Adds the given value to the values of this property without synchronization.
      * This method is intended to be called only by other actions.
@@ -121,7 +190,7 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
         if (get().contains(value)) {
             return false;
         } else {
-            modify(value, true);
+            modify(ImmutableList.withElements(value), true);
             return true;
         }
     }
@@ -137,7 +206,7 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
     @LockNotHeldByCurrentThread
     public boolean removeWithoutSynchronization(@NonCaptured @Unmodified @Nonnull @Valid VALUE value) throws DatabaseException, RecoveryException {
         if (get().contains(value)) {
-            modify(value, false);
+            modify(ImmutableList.withElements(value), false);
             return true;
         } else {
             return false;
@@ -147,24 +216,29 @@ public abstract class WritableSynchronizedSetProperty<@Unspecifiable ENTITY exte
     /* -------------------------------------------------- Action -------------------------------------------------- */
     
     /**
-     * Adds or removes the given value to or from this property from the {@link SetPropertyInternalAction}.
+     * Adds or removes the given values to or from this property from the {@link SetPropertyInternalAction}.
+     * All rows are written while holding the lock once so that observers never see a partially applied action.
      */
     @Impure
     @NonCommitting
     @LockNotHeldByCurrentThread
     @TODO(task = "Throw a database exception if no value was deleted (because it did not exist).", date = "2017-08-17", author = Author.KASPAR_ETTER)
-    protected void modify(@Nonnull @Valid VALUE value, boolean added) throws DatabaseException, RecoveryException {
+    protected void modify(@Nonnull ImmutableList<@Nonnull @Valid VALUE> values, boolean added) throws DatabaseException, RecoveryException {
         lock.lock();
         try {
-            final @Nonnull PersistentSetPropertyEntry<SUBJECT, VALUE> entry = PersistentSetPropertyEntryBuilder.<SUBJECT, VALUE>withSubject(getSubject()).withValue(value).build();
-            if (added) {
-                SQL.insertOrAbort(getTable(), entry, getSubject().getUnit());
-                getSet().add(value);
-            } else {
-                SQL.delete(getTable(), getSubject().getUnit(), WhereConditionBuilder.withConverter(getTable()).withObject(entry).build());
-                getSet().remove(value);
+            for (@Nonnull VALUE value : values) {
+                final @Nonnull PersistentSetPropertyEntry<SUBJECT, VALUE> entry = PersistentSetPropertyEntryBuilder.<SUBJECT, VALUE>withSubject(getSubject()).withValue(value).build();
+                if (added) {
+                    SQL.insertOrAbort(getTable(), entry, getSubject().getUnit());
+                    getSet().add(value);
+                } else {
+                    SQL.delete(getTable(), getSubject().getUnit(), WhereConditionBuilder.withConverter(getTable()).withObject(entry).build());
+                    getSet().remove(value);
+                }
+            }
+            for (@Nonnull VALUE value : values) {
+                notifyObservers(value, added);
             }
-            notifyObservers(value, added);
         } finally {
             lock.unlock();
         }
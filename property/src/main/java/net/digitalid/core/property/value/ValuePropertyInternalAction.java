@@ -137,6 +137,23 @@ public abstract class ValuePropertyInternalAction<@Unspecifiable ENTITY extends
         return ValuePropertyInternalActionBuilder.withProperty(getProperty()).withOldValue(getNewValue()).withNewValue(getOldValue()).withOldTime(getNewTime()).withNewTime(getOldTime()).build();
     }
     
+    /**
+     * Coalesces the given replacement of the same property with this replacement if this replacement continues from the value of the given one.
+     * The replacements are not coalesced if the property would end up with its original value because such an action is not valid.
+     */
+    @Pure
+    @Override
+    @OnClientRecipient
+    @SuppressWarnings("unchecked")
+    public @Nullable ValuePropertyInternalAction<ENTITY, KEY, SUBJECT, VALUE> coalesceWith(@Nonnull InternalAction previous) {
+        if (!(previous instanceof ValuePropertyInternalAction<?, ?, ?, ?>)) { return null; }
+        final @Nonnull ValuePropertyInternalAction<?, ?, ?, ?> action = (ValuePropertyInternalAction<?, ?, ?, ?>) previous;
+        if (!action.getProperty().equals(getProperty()) || !Objects.equals(action.getNewValue(), getOldValue()) || !Objects.equals(action.getNewTime(), getOldTime())) { return null; }
+        if (Objects.equals(action.getOldValue(), getNewValue())) { return null; }
+        final @Nonnull ValuePropertyInternalAction<ENTITY, KEY, SUBJECT, VALUE> replacement = (ValuePropertyInternalAction<ENTITY, KEY, SUBJECT, VALUE>) action;
+        return ValuePropertyInternalActionBuilder.withProperty(getProperty()).withOldValue(replacement.getOldValue()).withNewValue(getNewValue()).withOldTime(replacement.getOldTime()).withNewTime(getNewTime()).build();
+    }
+    
     /* -------------------------------------------------- Required Authorization -------------------------------------------------- */
     
     @Pure
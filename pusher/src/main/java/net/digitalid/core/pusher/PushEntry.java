@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.pusher;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.pack.Pack;
+
+/**
+ * This type models an external action that has been executed on a host but not yet been pushed to its recipient.
+ * The entries are stored in the schema of the host so that pending pushes survive a restart.
+ * 
+ * @see Pusher
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter
+abstract class PushEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the number that determines the order in which the pending actions are pushed.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Positive long getNumber();
+    
+    /**
+     * Returns the key of the entity on which the action was executed.
+     */
+    @Pure
+    abstract long getEntity();
+    
+    /**
+     * Returns the host to which the action has to be pushed.
+     */
+    @Pure
+    abstract @Nonnull HostIdentifier getRecipient();
+    
+    /**
+     * Returns the time at which the action was queued for pushing.
+     */
+    @Pure
+    abstract @Nonnull Time getTime();
+    
+    /**
+     * Returns the packed action.
+     */
+    @Pure
+    abstract @Nonnull Pack getAction();
+    
+}
@@ -16,18 +16,48 @@
 package net.digitalid.core.pusher;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.initialization.annotations.Initialize;
 import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.type.Utility;
 
 import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereCondition;
+import net.digitalid.database.conversion.WhereConditionBuilder;
 import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
 
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.handler.method.Method;
+import net.digitalid.core.handler.method.MethodIndex;
 import net.digitalid.core.handler.method.action.ExternalAction;
+import net.digitalid.core.handler.method.action.RecipientQueues;
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.unit.CoreUnit;
+import net.digitalid.core.unit.NumberSequence;
 
 /**
  * Pushes the external actions to their recipients (and retries on failure).
+ * The actions are stored in a persistent queue per recipient, from which they are pushed by a bounded pool of senders.
+ * Since at most one sender runs per recipient, a recipient that is slow or cannot be reached does not delay the pushing to other recipients.
  * 
  * TODO: Only retries if the connection could not be established. Otherwise an external action is created, signed and added to the internal audit.
  * 
@@ -36,10 +66,195 @@ import net.digitalid.core.handler.method.action.ExternalAction;
 @Utility
 public abstract class Pusher extends Thread {
     
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal interval in milliseconds after which the pushing to an unreachable recipient is retried.
+     */
+    public static final @Nonnull Configuration<Long> maximalBackoff = Configuration.with(60_000l);
+    
+    /**
+     * Stores the period after which the pushing of an action is given up and the action is {@link ExternalAction#executeOnFailure() executed on failure}.
+     */
+    public static final @Nonnull Configuration<Time> expiration = Configuration.with(Time.WEEK);
+    
+    /* -------------------------------------------------- Pending Pushes -------------------------------------------------- */
+    
+    /**
+     * A pending push consists of its persisted entry and the action itself, which is only recovered when it is pushed if the entry was loaded from the database.
+     */
+    @Immutable
+    static final class PendingPush {
+        
+        private final @Nonnull CoreUnit unit;
+        
+        private final @Nonnull PushEntry entry;
+        
+        private final @Nullable ExternalAction action;
+        
+        private PendingPush(@Nonnull CoreUnit unit, @Nonnull PushEntry entry, @Nullable ExternalAction action) {
+            this.unit = unit;
+            this.entry = entry;
+            this.action = action;
+        }
+        
+    }
+    
+    /**
+     * Stores the queues of the actions that are pending for each recipient, which are pushed by a bounded pool of senders.
+     */
+    private static final @Nonnull RecipientQueues<@Nonnull PendingPush> queues = new RecipientQueues<>("Pusher", 8, maximalBackoff, Pusher::push);
+    
+    /**
+     * Stores the sequences that assign the numbers of the pending pushes in each unit, which are kept when a unit is suspended.
+     * As the sequences are kept in memory, the actions of a unit may only be pushed by a single process.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull CoreUnit, @Nonnull NumberSequence> sequences = ConcurrentHashMapBuilder.build();
+    
+    /* -------------------------------------------------- Resumption -------------------------------------------------- */
+    
+    /**
+     * Stores the units whose pending pushes have already been loaded.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull CoreUnit, @Nonnull Boolean> units = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Creates the table of pending pushes in the given unit and queues the actions that could not be pushed before the last shutdown.
+     * This method has no effect if the pending pushes of the given unit have already been loaded.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void resume(@Nonnull CoreUnit unit) throws DatabaseException {
+        if (units.putIfAbsent(unit, Boolean.TRUE) != null) { return; }
+        
+        SQL.createTable(PushEntryConverter.INSTANCE, unit);
+        if (!sequences.containsKey(unit)) { sequences.putIfAbsent(unit, NumberSequence.continuing(PushEntryConverter.INSTANCE, unit, "number")); }
+        
+        final @Nonnull FreezableList<@Nonnull PushEntry> entries = SQL.selectAll(PushEntryConverter.INSTANCE, null, unit, null);
+        entries.sort((entry1, entry2) -> Long.compare(entry1.getNumber(), entry2.getNumber()));
+        
+        for (@Nonnull PushEntry entry : entries) {
+            queues.add(entry.getRecipient(), new PendingPush(unit, entry, null));
+        }
+        Log.debugging("Resumed the pushing of $ pending actions of the unit $.", entries.size(), unit);
+    }
+    
+    /**
+     * Stops the pushing of the pending actions of the given unit, for example because the unit is removed from this server.
+     * The pending actions remain in the database and are pushed again once the unit is {@link #resume(CoreUnit) resumed}.
+     * A push that is already in progress is completed.
+     */
+    @Impure
+    public static void suspend(@Nonnull CoreUnit unit) {
+        if (units.remove(unit) == null) { return; }
+        
+        queues.removeIf(pendingPush -> pendingPush.unit.equals(unit));
+        Log.debugging("Suspended the pushing of the pending actions of the unit $.", unit);
+    }
+    
+    /* -------------------------------------------------- Queueing -------------------------------------------------- */
+    
+    /**
+     * Queues the given action for pushing to its recipient and returns the number of the pending push.
+     * The action is stored in the current transaction and is only
+     * queued once this transaction has been committed.
+     * 
+     * @require action.getEntity() != null : "The entity of the action is not null.";
+     */
     @NonCommitting
     @PureWithSideEffects
-    public static void send(@Nonnull ExternalAction action) throws DatabaseException {
-        Log.error("The action '" + action + "' should have been pushed but this is not implemented yet."); // TODO: Write a real implementation!
+    public static @Positive long send(@Nonnull ExternalAction action) throws DatabaseException {
+        Require.that(action.getEntity() != null).orThrow("The entity of the action $ is not null.", action);
+        
+        final @Nonnull NonHostEntity entity = action.getEntity();
+        final @Nonnull CoreUnit unit = entity.getUnit();
+        resume(unit);
+        
+        final @Nonnull HostIdentifier recipient = action.getRecipient();
+        final @Nonnull NumberSequence sequence = sequences.get(unit);
+        final @Nonnull PushEntry entry = PushEntryBuilder.withNumber(sequence.next()).withEntity(entity.getKey()).withRecipient(recipient).withTime(TimeBuilder.build()).withAction(action.pack()).build();
+        boolean inserted = false;
+        try {
+            SQL.insertOrAbort(PushEntryConverter.INSTANCE, entry, unit);
+            inserted = true;
+        } finally {
+            if (!inserted) { sequence.release(entry.getNumber()); }
+        }
+        Database.instance.get().runAfterCommit(() -> queues.add(recipient, new PendingPush(unit, entry, action)));
+        Log.debugging("Queued the action $ for pushing to $.", action, recipient);
+        return entry.getNumber();
+    }
+    
+    /**
+     * Initializes the pusher of external actions.
+     */
+    @PureWithSideEffects
+    @Initialize(target = ExternalAction.class)
+    public static void initializeExternalAction() {
+        ExternalAction.pusher.set(Pusher::send);
+    }
+    
+    /* -------------------------------------------------- Pushing -------------------------------------------------- */
+    
+    /**
+     * Returns the recovered action of the given pending push or null if the action can no longer be recovered.
+     * 
+     * @throws RequestException if the converter of the action has not yet been registered, in which case the recovery is retried later.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nullable ExternalAction recover(@Nonnull PendingPush pendingPush) throws DatabaseException, RequestException {
+        if (pendingPush.action != null) { return pendingPush.action; }
+        try {
+            final @Nonnull Method<?> method = MethodIndex.get(pendingPush.entry.getAction(), NonHostEntity.with(pendingPush.unit, pendingPush.entry.getEntity()));
+            if (method instanceof ExternalAction) { return (ExternalAction) method; }
+            Log.error("The pending push $ is not an external action and is therefore dropped.", pendingPush.entry.getNumber());
+        } catch (@Nonnull RecoveryException exception) {
+            Log.error("The pending push $ could not be recovered and is therefore dropped.", exception, pendingPush.entry.getNumber());
+        }
+        return null;
+    }
+    
+    /**
+     * Pushes the given pending push to the given recipient and removes it afterwards.
+     * Actions that are rejected by the recipient or that expired are executed on failure and removed like the actions that were pushed.
+     * Pending pushes whose entry no longer exists, for example because their unit was removed in the meantime, are dropped.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void push(@Nonnull HostIdentifier recipient, @Nonnull PendingPush pendingPush) throws ExternalException {
+        final @Nonnull WhereCondition<Long> whereCondition = WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(pendingPush.entry.getNumber()).withPrefix("number").build();
+        if (SQL.selectFirst(PushEntryConverter.INSTANCE, null, pendingPush.unit, whereCondition) == null) {
+            Log.debugging("The pending push $ is dropped because it no longer exists.", pendingPush.entry.getNumber());
+            return;
+        }
+        
+        final @Nullable ExternalAction action = recover(pendingPush);
+        if (action != null) {
+            if (pendingPush.entry.getTime().isLessThan(expiration.get().ago())) {
+                Log.warning("The pushing of the action $ to $ expired.", action, recipient);
+                action.executeOnFailure();
+            } else {
+                try {
+                    action.send();
+                    action.executeOnSuccess();
+                } catch (@Nonnull RequestException exception) {
+                    Log.warning("The action $ was rejected by $.", exception, action, recipient);
+                    action.executeOnFailure();
+                }
+            }
+            action.notifyObserver();
+        }
+        SQL.delete(PushEntryConverter.INSTANCE, pendingPush.unit, whereCondition);
+    }
+    
+    /**
+     * Shuts down the senders after the pushes in progress have been completed.
+     * The remaining pending actions stay in the database and are pushed again after the next start.
+     */
+    @Impure
+    public static void shutDown() {
+        queues.shutDown();
     }
     
     // TODO: Make sure that failed pushs are signed and audited but not transmitted.
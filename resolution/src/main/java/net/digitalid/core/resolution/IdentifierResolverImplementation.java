@@ -15,29 +15,59 @@
  */
 package net.digitalid.core.resolution;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.generics.Unspecifiable;
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.collaboration.annotations.TODO;
 import net.digitalid.utility.collaboration.enumerations.Author;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.conversion.converters.Integer64Converter;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.exceptions.CaseExceptionBuilder;
 import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.freezable.annotations.Frozen;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.initialization.annotations.Initialize;
 import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.threading.NamedThreadFactory;
+import net.digitalid.utility.validation.annotations.elements.NonNullableElements;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.math.Positive;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.database.annotations.transaction.Committing;
 import net.digitalid.database.annotations.transaction.NonCommitting;
 import net.digitalid.database.conversion.SQL;
 import net.digitalid.database.conversion.WhereCondition;
 import net.digitalid.database.conversion.WhereConditionBuilder;
 import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
 
+import net.digitalid.core.exceptions.request.RequestErrorCode;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
 import net.digitalid.core.identification.identifier.EmailIdentifier;
 import net.digitalid.core.identification.identifier.HostIdentifier;
 import net.digitalid.core.identification.identifier.Identifier;
@@ -48,6 +78,10 @@ import net.digitalid.core.identification.identity.Category;
 import net.digitalid.core.identification.identity.IdentifierResolver;
 import net.digitalid.core.identification.identity.Identity;
 import net.digitalid.core.identification.identity.Type;
+import net.digitalid.core.resolution.handlers.IdentitiesQuery;
+import net.digitalid.core.resolution.handlers.IdentitiesQueryBuilder;
+import net.digitalid.core.resolution.handlers.IdentitiesReply;
+import net.digitalid.core.resolution.handlers.IdentitiesReplyConverter;
 import net.digitalid.core.resolution.handlers.IdentityQuery;
 import net.digitalid.core.resolution.handlers.IdentityQueryBuilder;
 import net.digitalid.core.resolution.handlers.IdentityReply;
@@ -59,6 +93,7 @@ import net.digitalid.core.resolution.tables.IdentityEntry;
 import net.digitalid.core.resolution.tables.IdentityEntryBuilder;
 import net.digitalid.core.resolution.tables.IdentityEntryConverter;
 import net.digitalid.core.unit.GeneralUnit;
+import net.digitalid.core.unit.TransactionEnd;
 
 /**
  * This class implements the {@link IdentifierResolver}.
@@ -135,6 +170,228 @@ public abstract class IdentifierResolverImplementation extends IdentifierResolve
         return identity;
     }
     
+    /* -------------------------------------------------- Failures -------------------------------------------------- */
+    
+    /**
+     * Stores the time in milliseconds during which a query of an identifier that does not exist is not repeated.
+     */
+    public static final @Nonnull Configuration<@NonNegative Long> failureTimeToLive = Configuration.with(10_000l);
+    
+    /**
+     * A failure stores the exception with which a host answered that an identifier does not exist and when it expires.
+     */
+    @Immutable
+    private static final class Failure {
+        
+        private final @Nonnull ExternalException exception;
+        
+        private final long expiration;
+        
+        Failure(@Nonnull ExternalException exception) {
+            this.exception = exception;
+            this.expiration = System.currentTimeMillis() + failureTimeToLive.get();
+        }
+        
+        /**
+         * Returns whether this failure has expired.
+         */
+        @Pure
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiration;
+        }
+        
+    }
+    
+    /**
+     * Stores the number of failures after which the expired failures are purged.
+     */
+    private static final int PURGE_THRESHOLD = 1_000;
+    
+    /**
+     * Maps identifiers that do not exist according to their host onto their failure.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull Identifier, @Nonnull Failure> failures = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns whether the given exception states definitively that an identifier does not exist, in contrast to transient errors like network failures.
+     */
+    @Pure
+    private static boolean isDefinitive(@Nonnull ExternalException exception) {
+        return exception instanceof RequestException && ((RequestException) exception).getCode() == RequestErrorCode.IDENTITY;
+    }
+    
+    /**
+     * Remembers the given failure of the given identifier if it is definitive.
+     */
+    @PureWithSideEffects
+    private void remember(@Nonnull Identifier identifier, @Nonnull ExternalException exception) {
+        if (!isDefinitive(exception)) { return; }
+        if (failures.size() >= PURGE_THRESHOLD) { failures.values().removeIf(Failure::isExpired); }
+        failures.put(identifier, new Failure(exception));
+    }
+    
+    /**
+     * Throws the exception with which the host of the given identifier answered recently that it does not exist.
+     */
+    @Pure
+    private void checkFailure(@Nonnull Identifier identifier) throws ExternalException {
+        final @Nullable Failure failure = failures.get(identifier);
+        if (failure != null) {
+            if (!failure.isExpired()) {
+                Log.verbose("The identifier $ was recently found not to exist.", identifier.getString());
+                throw failure.exception;
+            }
+            failures.remove(identifier, failure);
+        }
+    }
+    
+    /* -------------------------------------------------- Resolutions -------------------------------------------------- */
+    
+    /**
+     * Maps identifiers whose category is currently being queried onto the pending query, which concurrent callers wait for.
+     * The pending queries are completed as soon as the host replied and thus never depend on the transaction of the querying caller.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull Identifier, @Nonnull CompletableFuture<@Nonnull Category>> resolutions = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Queries the category of the given identifier or waits for the pending query of the same identifier by a concurrent caller.
+     */
+    @PureWithSideEffects
+    private @Nonnull Category query(@Nonnull InternalNonHostIdentifier identifier) throws ExternalException {
+        checkFailure(identifier);
+        
+        final @Nonnull CompletableFuture<@Nonnull Category> resolution = new CompletableFuture<>();
+        final @Nonnull CompletableFuture<@Nonnull Category> presentResolution = resolutions.putIfAbsentElseReturnPresent(identifier, resolution);
+        if (presentResolution != resolution) {
+            Log.verbose("Waiting for the pending query of the identifier $.", identifier.getString());
+            return await(presentResolution);
+        }
+        
+        Log.verbose("Querying the identifier $.", identifier.getString());
+        try {
+            final @Nonnull IdentityQuery query = IdentityQueryBuilder.withProvidedSubject(identifier).build();
+            final @Nonnull IdentityReply reply = query.send(IdentityReplyConverter.INSTANCE);
+            resolution.complete(reply.getCategory());
+            return reply.getCategory();
+        } catch (@Nonnull ExternalException exception) {
+            remember(identifier, exception);
+            resolution.completeExceptionally(exception);
+            throw exception;
+        } catch (@Nonnull RuntimeException | Error exception) {
+            resolution.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            resolutions.remove(identifier, resolution);
+        }
+    }
+    
+    /* -------------------------------------------------- Mappings -------------------------------------------------- */
+    
+    /**
+     * Stores the time in milliseconds that a caller waits for the transaction of a concurrent caller that maps the same identifier before mapping it itself.
+     */
+    public static final @Nonnull Configuration<@NonNegative Long> mappingTimeout = Configuration.with(10_000l);
+    
+    /**
+     * A mapping is claimed by the thread that maps an identifier and ends with the transaction of this thread.
+     */
+    @Immutable
+    private static final class Mapping {
+        
+        private final @Nonnull Thread thread = Thread.currentThread();
+        
+        private final @Nonnull CompletableFuture<@Nullable Void> end = new CompletableFuture<>();
+        
+    }
+    
+    /**
+     * Maps identifiers that are being mapped in a transaction that has not yet ended onto their mapping.
+     * This ensures that only one caller maps an identifier at a time instead of having the unique insert abort the transactions of all other callers.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull Identifier, @Nonnull Mapping> mappings = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns the identity of the given identifier if it has been mapped in the meantime or maps it with the given category in the current transaction.
+     * If a concurrent caller is mapping the same identifier, this method waits until the transaction of that caller has ended and loads the identifier again.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private @Nonnull Identity loadOrMap(@Nonnull Category category, @Nonnull Identifier identifier) throws DatabaseException, RecoveryException {
+        while (true) {
+            final @Nullable Identity identity = load(identifier);
+            if (identity != null) { return identity; }
+            
+            final @Nonnull Mapping mapping = new Mapping();
+            final @Nonnull Mapping presentMapping = mappings.putIfAbsentElseReturnPresent(identifier, mapping);
+            if (presentMapping == mapping || presentMapping.thread == Thread.currentThread()) {
+                try {
+                    return map(category, identifier);
+                } finally {
+                    TransactionEnd.runAfterEnd(() -> {
+                        mappings.remove(identifier, mapping);
+                        mapping.end.complete(null);
+                    });
+                }
+            }
+            
+            Log.verbose("Waiting for the concurrent mapping of the identifier $.", identifier.getString());
+            try {
+                presentMapping.end.get(mappingTimeout.get(), TimeUnit.MILLISECONDS);
+            } catch (@Nonnull InterruptedException | ExecutionException | TimeoutException exception) {
+                if (exception instanceof InterruptedException) { Thread.currentThread().interrupt(); }
+                Log.warning("The concurrent mapping of the identifier $ did not end in time.", exception, identifier.getString());
+                return map(category, identifier);
+            }
+        }
+    }
+    
+    
+    /**
+     * Waits for the given query to complete and returns its result.
+     * As pending queries only wait for the reply of a host, callers can wait for them without blocking other transactions.
+     * 
+     * @throws ExternalException if the query failed with an external exception.
+     */
+    @PureWithSideEffects
+    private static <@Unspecifiable RESULT> RESULT await(@Nonnull CompletableFuture<RESULT> computation) throws ExternalException {
+        try {
+            return computation.join();
+        } catch (@Nonnull CompletionException exception) {
+            final @Nullable Throwable cause = exception.getCause();
+            if (cause instanceof ExternalException) { throw (ExternalException) cause; }
+            if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+            if (cause instanceof Error) { throw (Error) cause; }
+            throw exception;
+        }
+    }
+    
+    /**
+     * Resolves the given identifier, which could not be loaded, by mapping it with the queried category if necessary.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private @Nonnull Identity resolveUnknown(@Nonnull Identifier identifier) throws ExternalException {
+        if (identifier instanceof HostIdentifier) {
+            // TODO: HostIdentifiers have to be handled differently (because the response signature cannot be verified immediately).
+            return loadOrMap(Category.HOST, identifier); // TODO: This line is only temporary.
+        } else if (identifier instanceof InternalNonHostIdentifier) {
+            final @Nonnull InternalNonHostIdentifier internalNonHostIdentifier = (InternalNonHostIdentifier) identifier;
+            final @Nonnull HostIdentifier hostIdentifier = internalNonHostIdentifier.getHostIdentifier();
+            if (hostIdentifier.equals(HostIdentifier.DIGITALID)) {
+                Log.verbose("The identifier $ is mapped as a semantic type without querying.", identifier.getString());
+                return loadOrMap(Category.SEMANTIC_TYPE, identifier);
+            } else {
+                return loadOrMap(query(internalNonHostIdentifier), identifier);
+            }
+        } else if (identifier instanceof EmailIdentifier) {
+            return loadOrMap(Category.EMAIL_PERSON, identifier);
+        } else if (identifier instanceof MobileIdentifier) {
+            return loadOrMap(Category.MOBILE_PERSON, identifier);
+        } else {
+            throw CaseExceptionBuilder.withVariable("identifier").withValue(identifier).build();
+        }
+    }
+    
     /* -------------------------------------------------- Identifier Resolution -------------------------------------------------- */
     
     @Override
@@ -143,32 +400,155 @@ public abstract class IdentifierResolverImplementation extends IdentifierResolve
     public @Nonnull Identity resolve(@Nonnull Identifier identifier) throws ExternalException {
         Log.verbose("Resolving the identifier $.", identifier.getString());
         @Nullable Identity identity = load(identifier);
-        if (identity == null) {
-            if (identifier instanceof HostIdentifier) {
-                // TODO: HostIdentifiers have to be handled differently (because the response signature cannot be verified immediately).
-                identity = map(Category.HOST, identifier); // TODO: This line is only temporary.
-            } else if (identifier instanceof InternalNonHostIdentifier) {
-                final @Nonnull InternalNonHostIdentifier internalNonHostIdentifier = (InternalNonHostIdentifier) identifier;
-                final @Nonnull HostIdentifier hostIdentifier = internalNonHostIdentifier.getHostIdentifier();
-                if (hostIdentifier.equals(HostIdentifier.DIGITALID)) {
-                    Log.verbose("The identifier $ is mapped as a semantic type without querying.", identifier.getString());
-                    identity = map(Category.SEMANTIC_TYPE, identifier);
-                } else {
-                    Log.verbose("Querying the identifier $.", identifier.getString());
-                    final @Nonnull IdentityQuery query = IdentityQueryBuilder.withProvidedSubject(internalNonHostIdentifier).build();
-                    final @Nonnull IdentityReply reply = query.send(IdentityReplyConverter.INSTANCE);
-                    identity = map(reply.getCategory(), identifier);
+        if (identity == null) { identity = resolveUnknown(identifier); }
+        if (identity instanceof Type) { ((Type) identity).ensureLoaded(); }
+        return identity;
+    }
+    
+    /* -------------------------------------------------- Bulk Resolution -------------------------------------------------- */
+    
+    /**
+     * Stores the maximum number of hosts that are queried in parallel, which also bounds the number of transactions that the queriers keep open.
+     */
+    public static final @Nonnull Configuration<@Positive Integer> numberOfQueriers = Configuration.with(8);
+    
+    /**
+     * Stores the executor that queries the identities of different hosts in parallel.
+     * Batches beyond the configured number of queriers wait in the queue instead of running on the calling thread, whose transaction they would commit.
+     */
+    private static final @Nonnull ThreadPoolExecutor QUERIERS = new ThreadPoolExecutor(numberOfQueriers.get(), numberOfQueriers.get(), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), NamedThreadFactory.with("Resolver"));
+    
+    static {
+        QUERIERS.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Shuts down the executor that queries the identities of different hosts.
+     */
+    @Impure
+    public static void shutDown() {
+        try {
+            QUERIERS.shutdown();
+            QUERIERS.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (@Nonnull InterruptedException exception) {
+            Log.warning("Could not shut down the queriers of the identifier resolver.", exception);
+        }
+    }
+    
+    /**
+     * Queries the categories of the given identifiers, which are all hosted on the given host, with a single request.
+     * The returned list contains null for each identifier that has no identity on its host.
+     * Since this method is executed on a thread of the executor, it commits or rolls back its own transaction.
+     * This transaction is independent of the transaction of the caller of {@link #resolveAll(ReadOnlyList)}, which is why whatever is stored while sending the request remains even if the caller rolls back.
+     */
+    @Committing
+    @PureWithSideEffects
+    private static @Nonnull ReadOnlyList<Category> query(@Nonnull HostIdentifier host, @Nonnull @Frozen @NonNullableElements ReadOnlyList<@Nonnull InternalNonHostIdentifier> identifiers) throws ExternalException {
+        Log.verbose("Querying $ identifiers of the host $.", identifiers.size(), host.getString());
+        try {
+            final @Nonnull IdentitiesReply reply = IdentitiesQueryBuilder.withIdentifiers(identifiers).withProvidedSubject(host).build().send(IdentitiesReplyConverter.INSTANCE);
+            Database.commit();
+            return reply.getCategories();
+        } catch (@Nonnull ExternalException | RuntimeException exception) {
+            TransactionEnd.rollback();
+            throw exception;
+        }
+    }
+    
+    @Override
+    @NonCommitting
+    @PureWithSideEffects
+    public @Nonnull @NonNullableElements ReadOnlyList<@Nonnull Identity> resolveAll(@Nonnull @NonNullableElements ReadOnlyList<? extends @Nonnull Identifier> identifiers) throws ExternalException {
+        Log.verbose("Resolving $ identifiers in bulk.", identifiers.size());
+        final @Nonnull Map<@Nonnull Identifier, @Nonnull Identity> resolved = new HashMap<>();
+        final @Nonnull Map<@Nonnull Identifier, @Nonnull CompletableFuture<@Nonnull Category>> ownResolutions = new HashMap<>();
+        final @Nonnull Map<@Nonnull HostIdentifier, @Nonnull FreezableList<@Nonnull InternalNonHostIdentifier>> openBatches = new HashMap<>();
+        final @Nonnull List<@Nonnull FreezableList<@Nonnull InternalNonHostIdentifier>> batches = new ArrayList<>();
+        try {
+            // Group the unknown identifiers that have to be queried into batches per host and register their pending resolutions.
+            for (final @Nonnull Identifier identifier : identifiers) {
+                if (identifier instanceof InternalNonHostIdentifier && !resolved.containsKey(identifier) && !ownResolutions.containsKey(identifier)) {
+                    final @Nullable Identity identity = load(identifier);
+                    if (identity != null) { resolved.put(identifier, identity); continue; }
+                    final @Nonnull InternalNonHostIdentifier internalNonHostIdentifier = (InternalNonHostIdentifier) identifier;
+                    final @Nonnull HostIdentifier hostIdentifier = internalNonHostIdentifier.getHostIdentifier();
+                    final @Nullable Failure failure = failures.get(identifier);
+                    if (!hostIdentifier.equals(HostIdentifier.DIGITALID) && (failure == null || failure.isExpired())) {
+                        final @Nonnull CompletableFuture<@Nonnull Category> resolution = new CompletableFuture<>();
+                        if (resolutions.putIfAbsentElseReturnPresent(identifier, resolution) == resolution) {
+                            ownResolutions.put(identifier, resolution);
+                            @Nullable FreezableList<@Nonnull InternalNonHostIdentifier> batch = openBatches.get(hostIdentifier);
+                            if (batch == null || batch.size() >= IdentitiesQuery.MAXIMAL_NUMBER_OF_IDENTIFIERS) {
+                                batch = FreezableArrayList.withNoElements();
+                                openBatches.put(hostIdentifier, batch);
+                                batches.add(batch);
+                            }
+                            batch.add(internalNonHostIdentifier);
+                        }
+                    }
                 }
-            } else if (identifier instanceof EmailIdentifier) {
-                identity = map(Category.EMAIL_PERSON, identifier);
-            } else if (identifier instanceof MobileIdentifier) {
-                identity = map(Category.MOBILE_PERSON, identifier);
-            } else {
-                throw CaseExceptionBuilder.withVariable("identifier").withValue(identifier).build();
             }
+            
+            // Query the batches in parallel.
+            final @Nonnull List<@Nonnull CompletableFuture<@Nonnull ReadOnlyList<Category>>> queries = new ArrayList<>(batches.size());
+            for (final @Nonnull FreezableList<@Nonnull InternalNonHostIdentifier> batch : batches) {
+                final @Nonnull ReadOnlyList<@Nonnull InternalNonHostIdentifier> frozenBatch = batch.freeze();
+                queries.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return query(frozenBatch.get(0).getHostIdentifier(), frozenBatch);
+                    } catch (@Nonnull ExternalException exception) {
+                        throw new CompletionException(exception);
+                    }
+                }, QUERIERS));
+            }
+            
+            // Complete the pending queries with the replies of the hosts and map the queried identities in the current transaction.
+            @Nullable ExternalException firstException = null;
+            for (int b = 0; b < batches.size(); b++) {
+                final @Nonnull FreezableList<@Nonnull InternalNonHostIdentifier> batch = batches.get(b);
+                final @Nonnull ReadOnlyList<Category> categories;
+                try {
+                    categories = await(queries.get(b));
+                } catch (@Nonnull ExternalException exception) {
+                    for (final @Nonnull InternalNonHostIdentifier identifier : batch) {
+                        remember(identifier, exception);
+                        ownResolutions.get(identifier).completeExceptionally(exception);
+                    }
+                    if (firstException == null) { firstException = exception; }
+                    continue;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    final @Nonnull InternalNonHostIdentifier identifier = batch.get(i);
+                    final @Nullable Category category = categories.get(i);
+                    if (category != null) {
+                        ownResolutions.get(identifier).complete(category);
+                        resolved.put(identifier, loadOrMap(category, identifier));
+                    } else {
+                        final @Nonnull ExternalException exception = RequestExceptionBuilder.withCode(RequestErrorCode.IDENTITY).withMessage("There exists no identity with the identifier '" + identifier + "'.").build();
+                        remember(identifier, exception);
+                        ownResolutions.get(identifier).completeExceptionally(exception);
+                    }
+                }
+            }
+            if (firstException != null) { throw firstException; }
+        } catch (@Nonnull ExternalException | RuntimeException | Error exception) {
+            for (final @Nonnull CompletableFuture<@Nonnull Category> resolution : ownResolutions.values()) { resolution.completeExceptionally(exception); }
+            throw exception;
+        } finally {
+            for (final @Nonnull Map.Entry<@Nonnull Identifier, @Nonnull CompletableFuture<@Nonnull Category>> entry : ownResolutions.entrySet()) { resolutions.remove(entry.getKey(), entry.getValue()); }
         }
-        if (identity instanceof Type) { ((Type) identity).ensureLoaded(); }
-        return identity;
+        
+        // Resolve the remaining identifiers individually, which does not send any requests except for recent failures and pending resolutions.
+        final @Nonnull FreezableList<@Nonnull Identity> result = FreezableArrayList.withInitialCapacity(identifiers.size());
+        for (final @Nonnull Identifier identifier : identifiers) {
+            final @Nullable Identity identity = resolved.get(identifier);
+            if (identity == null) { result.add(resolve(identifier)); }
+            else {
+                if (identity instanceof Type) { ((Type) identity).ensureLoaded(); }
+                result.add(identity);
+            }
+        }
+        return result.freeze();
     }
     
 }
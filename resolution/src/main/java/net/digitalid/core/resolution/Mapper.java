@@ -15,41 +15,351 @@
  */
 package net.digitalid.core.resolution;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.functional.interfaces.Predicate;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
 import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.type.Mutable;
 
 import net.digitalid.database.interfaces.Database;
 
 import net.digitalid.core.identification.identifier.Identifier;
+import net.digitalid.core.identification.identity.Category;
 import net.digitalid.core.identification.identity.Identity;
 
 /**
  * This class caches identities in {@link Map maps}.
+ * The number of strongly cached identities is bounded by the configured capacity, and identities that are not pinned are demoted
+ * to weak references with the clock algorithm (an approximation of least recently used) as soon as a segment is full. A demoted
+ * identity is returned again as long as it is reachable from elsewhere, which keeps identities canonical, and only unreachable
+ * identities are removed and later reloaded from the identity and identifier tables by the {@link IdentifierResolverImplementation identifier resolver}.
  */
 @Mutable
 @GenerateSubclass
 public abstract class Mapper {
     
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal number of identities that are strongly cached unless they are pinned.
+     * The capacity is read whenever an identity is cached so that it can also be changed after the initialization.
+     */
+    public static final @Nonnull Configuration<@Positive Integer> capacity = Configuration.with(100_000);
+    
+    /**
+     * Stores the predicate that determines whether an identity is pinned, which means that it is never demoted.
+     * Types are always pinned because they keep their loaded attributes in the identity object.
+     */
+    public static final @Nonnull Configuration<@Nonnull Predicate<? super @Nonnull Identity>> pinned = Configuration.with(identity -> identity.getCategory() == Category.HOST);
+    
+    /**
+     * Returns whether the given identity is pinned.
+     */
+    @Pure
+    static boolean isPinned(@Nonnull Identity identity) {
+        return identity.getCategory().isType() || pinned.get().evaluate(identity);
+    }
+    
+    /* -------------------------------------------------- Reference -------------------------------------------------- */
+    
+    /**
+     * An identity reference refers weakly to an identity and remembers its key and address so that it can be removed once the identity has been collected.
+     */
+    @Immutable
+    private static final class IdentityReference extends WeakReference<Identity> {
+        
+        /**
+         * Stores the key of the referenced identity.
+         */
+        private final long key;
+        
+        /**
+         * Stores the address of the referenced identity.
+         */
+        private final @Nonnull Identifier address;
+        
+        IdentityReference(@Nonnull Identity identity, @Nonnull ReferenceQueue<Identity> queue) {
+            super(identity, queue);
+            this.key = identity.getKey();
+            this.address = identity.getAddress();
+        }
+        
+    }
+    
+    /* -------------------------------------------------- Segment -------------------------------------------------- */
+    
+    /**
+     * A segment maps primitive keys onto identities with open addressing and demotes unreferenced identities to weak references with a clock hand.
+     */
+    @Mutable
+    private static final class Segment {
+        
+        /**
+         * Stores the keys of the slots.
+         */
+        private @Nonnull long[] keys = new long[16];
+        
+        /**
+         * Stores the weak references to the identities of the slots, which are null for empty slots.
+         */
+        private @Nonnull IdentityReference[] references = new IdentityReference[16];
+        
+        /**
+         * Stores the strong references to the identities of the slots, which are null for empty slots and demoted identities.
+         */
+        private @Nonnull Identity[] identities = new Identity[16];
+        
+        /**
+         * Stores whether the identities of the slots have been accessed since the clock hand passed them.
+         */
+        private @Nonnull boolean[] referenced = new boolean[16];
+        
+        /**
+         * Stores whether the identities of the slots are pinned.
+         */
+        private @Nonnull boolean[] pinned = new boolean[16];
+        
+        /**
+         * Stores the number of occupied slots in this segment.
+         */
+        private int size = 0;
+        
+        /**
+         * Stores the number of identities that are strongly referenced by this segment.
+         */
+        private int retained = 0;
+        
+        /**
+         * Stores the position of the clock hand.
+         */
+        private int hand = 0;
+        
+        /**
+         * Returns the maximal number of identities that are strongly referenced by a segment.
+         */
+        @Pure
+        private static int getCapacity() {
+            return Math.max(1, capacity.get() / SEGMENTS);
+        }
+        
+        /**
+         * Returns the slot of the given key or the empty slot where it would be inserted.
+         */
+        @Pure
+        private int getSlot(long key) {
+            final int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (references[slot] != null && keys[slot] != key) { slot = (slot + 1) & mask; }
+            return slot;
+        }
+        
+        /**
+         * Returns the identity with the given key and retains it strongly again if it has been demoted.
+         */
+        @Impure
+        synchronized @Nullable Identity get(long key) {
+            final int slot = getSlot(key);
+            if (references[slot] == null) { return null; }
+            final @Nullable Identity identity = references[slot].get();
+            if (identity == null) { delete(slot); return null; }
+            referenced[slot] = true;
+            if (identities[slot] == null) {
+                identities[slot] = identity;
+                retained++;
+                if (retained > getCapacity()) { demote(); }
+            }
+            return identity;
+        }
+        
+        /**
+         * Stores the given identity with the given reference to it.
+         */
+        @Impure
+        synchronized void put(@Nonnull IdentityReference reference, @Nonnull Identity identity) {
+            int slot = getSlot(reference.key);
+            if (references[slot] == null) {
+                if (retained >= getCapacity()) { demote(); }
+                if (2 * (size + 1) > keys.length) {
+                    resize(keys.length * 2);
+                    slot = getSlot(reference.key);
+                }
+                keys[slot] = reference.key;
+                size++;
+            }
+            if (identities[slot] == null) { retained++; }
+            references[slot] = reference;
+            identities[slot] = identity;
+            referenced[slot] = false;
+            pinned[slot] = isPinned(identity);
+        }
+        
+        /**
+         * Demotes an identity that is neither pinned nor referenced to a weak reference.
+         */
+        @Impure
+        private void demote() {
+            final int mask = keys.length - 1;
+            for (int i = 0; i < 2 * keys.length; i++) {
+                final int slot = hand;
+                hand = (hand + 1) & mask;
+                if (identities[slot] == null || pinned[slot]) { continue; }
+                if (referenced[slot]) { referenced[slot] = false; continue; }
+                identities[slot] = null;
+                retained--;
+                return;
+            }
+        }
+        
+        /**
+         * Removes the identity with the given key.
+         */
+        @Impure
+        synchronized void remove(long key) {
+            final int slot = getSlot(key);
+            if (references[slot] != null) { delete(slot); }
+        }
+        
+        /**
+         * Removes the given reference if its identity has not been replaced in the meantime.
+         */
+        @Impure
+        synchronized void remove(@Nonnull IdentityReference reference) {
+            final int slot = getSlot(reference.key);
+            if (references[slot] == reference) { delete(slot); }
+        }
+        
+        /**
+         * Deletes the identity in the given slot and shifts the following identities of the same cluster backwards.
+         */
+        @Impure
+        private void delete(int slot) {
+            if (identities[slot] != null) { retained--; }
+            final int mask = keys.length - 1;
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (references[next] != null) {
+                final int home = mix(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    references[gap] = references[next];
+                    identities[gap] = identities[next];
+                    referenced[gap] = referenced[next];
+                    pinned[gap] = pinned[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            references[gap] = null;
+            identities[gap] = null;
+            size--;
+        }
+        
+        @Impure
+        private void resize(int length) {
+            final @Nonnull long[] oldKeys = keys;
+            final @Nonnull IdentityReference[] oldReferences = references;
+            final @Nonnull Identity[] oldIdentities = identities;
+            final @Nonnull boolean[] oldReferenced = referenced;
+            final @Nonnull boolean[] oldPinned = pinned;
+            this.keys = new long[length];
+            this.references = new IdentityReference[length];
+            this.identities = new Identity[length];
+            this.referenced = new boolean[length];
+            this.pinned = new boolean[length];
+            this.hand = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldReferences[i] != null) {
+                    final int slot = getSlot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    references[slot] = oldReferences[i];
+                    identities[slot] = oldIdentities[i];
+                    referenced[slot] = oldReferenced[i];
+                    pinned[slot] = oldPinned[i];
+                }
+            }
+        }
+        
+        @Impure
+        synchronized void clear() {
+            Arrays.fill(references, null);
+            Arrays.fill(identities, null);
+            size = 0;
+            retained = 0;
+            hand = 0;
+        }
+        
+    }
+    
+    /**
+     * Returns the hash of the given key, whose bits are spread so that consecutive keys are distributed well.
+     */
+    @Pure
+    private static int mix(long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+    
     /* -------------------------------------------------- Maps -------------------------------------------------- */
     
+    /**
+     * Stores the number of segments, which is a power of two so that concurrent accesses rarely contend for the same lock.
+     */
+    private static final int SEGMENTS = 16;
+    
     /**
      * Maps numbers onto identities by caching the corresponding entries from the database.
      */
-    private final @Nonnull Map<@Nonnull Long, @Nonnull Identity> keys = new ConcurrentHashMap<>();
+    private final @Nonnull Segment[] keys = new Segment[SEGMENTS];
+    
+    {
+        for (int i = 0; i < SEGMENTS; i++) { keys[i] = new Segment(); }
+    }
+    
+    /**
+     * Returns the segment responsible for the given key.
+     */
+    @Pure
+    private @Nonnull Segment getSegment(long key) {
+        return keys[(mix(key) >>> 28) & (SEGMENTS - 1)];
+    }
+    
+    /**
+     * Maps identifiers onto weak references to identities so that this map does not keep demoted identities reachable.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull Identifier, @Nonnull IdentityReference> identifiers = ConcurrentHashMapBuilder.build();
     
     /**
-     * Maps identifiers onto identities by caching the corresponding entries from the database.
+     * Stores the references whose identities have been collected.
      */
-    private final @Nonnull Map<@Nonnull Identifier, @Nonnull Identity> identifiers = new ConcurrentHashMap<>();
+    private final @Nonnull ReferenceQueue<Identity> queue = new ReferenceQueue<>();
+    
+    /**
+     * Removes the entries whose identities have been collected.
+     */
+    @Impure
+    private void purge() {
+        @Nullable Reference<? extends Identity> reference;
+        while ((reference = queue.poll()) != null) {
+            final @Nonnull IdentityReference identityReference = (IdentityReference) reference;
+            getSegment(identityReference.key).remove(identityReference);
+            identifiers.remove(identityReference.address, identityReference);
+        }
+    }
     
     /* -------------------------------------------------- Retrievals -------------------------------------------------- */
     
@@ -58,7 +368,7 @@ public abstract class Mapper {
      */
     @Pure
     public @Nullable Identity getIdentity(long key) {
-        return keys.get(key);
+        return getSegment(key).get(key);
     }
     
     /**
@@ -66,7 +376,11 @@ public abstract class Mapper {
      */
     @Pure
     public @Nullable Identity getIdentity(@Nonnull Identifier identifier) {
-        return identifiers.get(identifier);
+        final @Nullable IdentityReference reference = identifiers.get(identifier);
+        if (reference == null) { return null; }
+        final @Nullable Identity identity = reference.get();
+        if (identity != null) { getSegment(identity.getKey()).get(identity.getKey()); }
+        return identity;
     }
     
     /* -------------------------------------------------- Modifications -------------------------------------------------- */
@@ -76,8 +390,10 @@ public abstract class Mapper {
      */
     @Impure
     public void map(@Nonnull Identity identity) {
-        keys.put(identity.getKey(), identity);
-        identifiers.put(identity.getAddress(), identity);
+        purge();
+        final @Nonnull IdentityReference reference = new IdentityReference(identity, queue);
+        getSegment(identity.getKey()).put(reference, identity);
+        identifiers.put(identity.getAddress(), reference);
         Log.debugging("The identity of $ was mapped.", identity.getAddress().getString());
     }
     
@@ -95,7 +411,7 @@ public abstract class Mapper {
      */
     @Impure
     public void unmap(@Nonnull Identity identity) {
-        keys.remove(identity.getKey());
+        getSegment(identity.getKey()).remove(identity.getKey());
         identifiers.remove(identity.getAddress());
         Log.debugging("The identity of $ was unmapped.", identity.getAddress().getString());
     }
@@ -105,7 +421,7 @@ public abstract class Mapper {
      */
     @Impure
     public void unmapAll() {
-        keys.clear();
+        for (@Nonnull Segment segment : keys) { segment.clear(); }
         identifiers.clear();
     }
     
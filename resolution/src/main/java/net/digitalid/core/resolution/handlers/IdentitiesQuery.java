@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.resolution.handlers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.conversion.exceptions.RecoveryException;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.elements.NonNullableElements;
+import net.digitalid.utility.validation.annotations.size.MaxSize;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.exceptions.DatabaseException;
+
+import net.digitalid.core.entity.Entity;
+import net.digitalid.core.exceptions.request.RequestErrorCode;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
+import net.digitalid.core.handler.annotations.Matching;
+import net.digitalid.core.handler.annotations.MethodHasBeenReceived;
+import net.digitalid.core.handler.method.CoreMethod;
+import net.digitalid.core.handler.method.query.ExternalQuery;
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.identification.identity.Category;
+import net.digitalid.core.identification.identity.IdentifierResolver;
+import net.digitalid.core.identification.identity.Identity;
+import net.digitalid.core.typeset.authentications.FreezableAuthentications;
+import net.digitalid.core.typeset.authentications.ReadOnlyAuthentications;
+import net.digitalid.core.unit.annotations.OnHostRecipient;
+
+/**
+ * Queries the identities of the given identifiers from the host which is the subject of this query.
+ * This query allows a requester to resolve several identifiers of the same host with a single request.
+ * 
+ * @see IdentitiesReply
+ * @see IdentityQuery
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateConverter
+public abstract class IdentitiesQuery extends ExternalQuery<Entity> implements CoreMethod<Entity> {
+    
+    /* -------------------------------------------------- Limit -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal number of identifiers that can be queried with a single request.
+     */
+    public static final int MAXIMAL_NUMBER_OF_IDENTIFIERS = 100;
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the identifiers whose identities are queried.
+     */
+    @Pure
+    public abstract @Nonnull @Frozen @NonNullableElements @NonEmpty @MaxSize(MAXIMAL_NUMBER_OF_IDENTIFIERS) ReadOnlyList<@Nonnull InternalNonHostIdentifier> getIdentifiers();
+    
+    /* -------------------------------------------------- Request Signature -------------------------------------------------- */
+    
+    @Pure
+    @Override
+    public @Nonnull ReadOnlyAuthentications getAuthentications() {
+        return FreezableAuthentications.NONE;
+    }
+    
+    /* -------------------------------------------------- Execution -------------------------------------------------- */
+    
+    @Override
+    @NonCommitting
+    @OnHostRecipient
+    @PureWithSideEffects
+    @MethodHasBeenReceived
+    public @Nonnull @Matching IdentitiesReply executeOnHost() throws RequestException, DatabaseException, RecoveryException {
+        final @Nonnull FreezableList<Category> categories = FreezableArrayList.withInitialCapacity(getIdentifiers().size());
+        for (final @Nonnull InternalNonHostIdentifier identifier : getIdentifiers()) {
+            if (!identifier.getHostIdentifier().equals(getSubject())) { throw RequestExceptionBuilder.withCode(RequestErrorCode.IDENTITY).withMessage("The identifier '" + identifier + "' is not hosted on '" + getSubject() + "'.").build(); }
+            final @Nullable Identity identity = IdentifierResolver.configuration.get().load(identifier);
+            categories.add(identity != null ? identity.getCategory() : null);
+        }
+        return IdentitiesReplyBuilder.withEntity(getEntity()).withCategories(categories.freeze()).build();
+    }
+    
+}
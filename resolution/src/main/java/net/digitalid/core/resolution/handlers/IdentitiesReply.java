@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.resolution.handlers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.freezable.annotations.Frozen;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateConverter;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.elements.NullableElements;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+import net.digitalid.utility.validation.annotations.value.Valid;
+
+import net.digitalid.core.entity.Entity;
+import net.digitalid.core.handler.CoreHandler;
+import net.digitalid.core.handler.method.Method;
+import net.digitalid.core.handler.reply.QueryReply;
+import net.digitalid.core.identification.identity.Category;
+
+/**
+ * Replies the categories of the queried identifiers in the order in which they were queried.
+ * 
+ * @see IdentitiesQuery
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateConverter
+public abstract class IdentitiesReply extends QueryReply<Entity> implements CoreHandler<Entity> {
+    
+    /* -------------------------------------------------- Validity -------------------------------------------------- */
+    
+    /**
+     * Returns whether all the categories which are not null denote internal non-host identities.
+     */
+    @Pure
+    static boolean isValid(@Nonnull ReadOnlyList<Category> categories) {
+        for (final @Nullable Category category : categories) {
+            if (category != null && !category.isInternalNonHostIdentity()) { return false; }
+        }
+        return true;
+    }
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the categories of the queried identifiers, which are null for identifiers that have no identity.
+     */
+    @Pure
+    public abstract @Nonnull @Frozen @NullableElements @NonEmpty @Valid ReadOnlyList<Category> getCategories();
+    
+    /* -------------------------------------------------- Matching -------------------------------------------------- */
+    
+    @Pure
+    @Override
+    public boolean matches(@Nonnull Method<Entity> method) {
+        return method instanceof IdentitiesQuery && ((IdentitiesQuery) method).getIdentifiers().size() == getCategories().size();
+    }
+    
+}
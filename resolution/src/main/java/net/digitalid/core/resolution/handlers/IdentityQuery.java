@@ -64,6 +64,14 @@ public abstract class IdentityQuery extends ExternalQuery<NonHostEntity> impleme
         return FreezableAuthentications.NONE;
     }
     
+    /* -------------------------------------------------- Caching -------------------------------------------------- */
+    
+    @Pure
+    @Override
+    public boolean isRequesterIndependent() {
+        return true;
+    }
+    
     /* -------------------------------------------------- Execution -------------------------------------------------- */
     
     @Override
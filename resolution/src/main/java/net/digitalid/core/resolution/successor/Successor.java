@@ -15,62 +15,146 @@
  */
 package net.digitalid.core.resolution.successor;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
-import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
 import net.digitalid.utility.exceptions.ExternalException;
-import net.digitalid.utility.threading.Threading;
+import net.digitalid.utility.initialization.annotations.Initialize;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.time.TimeBuilder;
 import net.digitalid.utility.validation.annotations.type.Utility;
 
 import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
 import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
 
 import net.digitalid.core.exceptions.request.RequestErrorCode;
+import net.digitalid.core.exceptions.request.RequestException;
 import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
 import net.digitalid.core.handler.reply.Reply;
+import net.digitalid.core.handler.reply.ReplyIndex;
 import net.digitalid.core.identification.identifier.ExternalIdentifier;
 import net.digitalid.core.identification.identifier.Identifier;
 import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifierConverter;
 import net.digitalid.core.identification.identifier.NonHostIdentifier;
+import net.digitalid.core.identification.identifier.NonHostIdentifierConverter;
+import net.digitalid.core.unit.GeneralUnit;
+import net.digitalid.core.unit.TransactionEnd;
 
 /**
  * This class models the successor of an {@link Identifier identifier}.
+ * The successor chains are collapsed whenever a successor is set so that each identifier references its final successor.
  * 
  * TODO: Support the export and import of all successors that belong to identifiers of a certain host.
  */
 @Utility
 public abstract class Successor {
     
-    static {
-        Require.that(Threading.isMainThread()).orThrow("This static block is called in the main thread.");
-        
-        // TODO: Use the new database API.
+    /* -------------------------------------------------- Initialization -------------------------------------------------- */
+    
+    /**
+     * Creates the successor table.
+     */
+    @PureWithSideEffects
+    @Initialize(target = Successor.class, dependencies = GeneralUnit.class)
+    public static void initializeSuccessors() throws DatabaseException {
+        SQL.createTable(SuccessorEntryConverter.INSTANCE, GeneralUnit.INSTANCE);
+    }
+    
+    /* -------------------------------------------------- Cache -------------------------------------------------- */
+    
+    /**
+     * Caches the committed successor entries that have been loaded from the database.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull NonHostIdentifier, @Nonnull SuccessorEntry> entries = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Stores the identifiers whose successor has been set by the current thread in its current transaction, for which the cache is bypassed.
+     */
+    private static final @Nonnull ThreadLocal<@Nonnull Set<@Nonnull NonHostIdentifier>> modifiedIdentifiers = ThreadLocal.withInitial(HashSet::new);
+    
+    /**
+     * Stores the number of committed transactions that set a successor.
+     */
+    private static final @Nonnull AtomicLong version = new AtomicLong();
+    
+    /**
+     * Marks the given identifier as modified until the current transaction has ended and evicts it from the cache after the transaction has been committed.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void invalidate(@Nonnull NonHostIdentifier identifier) {
+        final @Nonnull Set<@Nonnull NonHostIdentifier> identifiers = modifiedIdentifiers.get();
+        identifiers.add(identifier);
+        entries.remove(identifier);
+        Database.instance.get().runAfterCommit(() -> {
+            version.incrementAndGet();
+            entries.remove(identifier);
+        });
+        TransactionEnd.runAfterEnd(() -> identifiers.remove(identifier));
+    }
+    
+    /**
+     * Returns the successor entry of the given identifier or null if it has not been relocated.
+     * A loaded entry is only cached if no successor was set by another transaction while it was loaded.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nullable SuccessorEntry load(@Nonnull NonHostIdentifier identifier) throws DatabaseException {
+        final boolean modified = modifiedIdentifiers.get().contains(identifier);
+        if (!modified) {
+            final @Nullable SuccessorEntry cachedEntry = entries.get(identifier);
+            if (cachedEntry != null) { return cachedEntry; }
+        }
         
-//        try (@Nonnull Statement statement = Database.createStatement()) {
-//            statement.executeUpdate("CREATE TABLE IF NOT EXISTS general_successor (identifier " + IdentifierImplementation.FORMAT + " NOT NULL, successor " + IdentifierImplementation.FORMAT + " NOT NULL, reply " + Reply.FORMAT + ", PRIMARY KEY (identifier), FOREIGN KEY (reply) " + Reply.REFERENCE + ")");
-//        } catch (@Nonnull SQLException exception) {
-//            throw InitializationError.get("The database tables of the predecessors could not be created.", exception);
-//        }
+        final long currentVersion = version.get();
+        final @Nullable SuccessorEntry entry = SQL.selectFirst(SuccessorEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(NonHostIdentifierConverter.INSTANCE).withObject(identifier).withPrefix("identifier").build());
+        if (entry != null && !modified) {
+            entries.put(identifier, entry);
+            if (version.get() != currentVersion) { entries.remove(identifier, entry); }
+        }
+        return entry;
     }
     
     /**
-     * Returns the successor of the given identifier as stored in the database.
+     * Returns the earlier of the given times.
+     */
+    @Pure
+    private static @Nonnull Time min(@Nonnull Time time1, @Nonnull Time time2) {
+        return time1.isLessThan(time2) ? time1 : time2;
+    }
+    
+    /* -------------------------------------------------- Retrieval -------------------------------------------------- */
+    
+    /**
+     * Returns the final successor of the given identifier as stored in the database.
      */
     @Pure
     @NonCommitting
     public static @Nullable InternalNonHostIdentifier get(@Nonnull NonHostIdentifier identifier) throws DatabaseException {
-        // TODO: Use the new database API.
-        
-        throw new UnsupportedOperationException();
-        
-//        @Nonnull String query = "SELECT successor FROM general_successor WHERE identifier = " + identifier;
-//        try (@Nonnull Statement statement = Database.createStatement(); @Nonnull ResultSet resultSet = statement.executeQuery(query)) {
-//            if (resultSet.next()) { return new InternalNonHostIdentifier(resultSet.getString(1)); }
-//            else { return null; }
-//        }
+        final @Nullable SuccessorEntry entry = load(identifier);
+        return entry != null ? entry.getSuccessor() : null;
+    }
+    
+    /**
+     * Returns the time at which the oldest relocation from the given identifier to its final successor was verified or null if it has not been relocated.
+     */
+    @Pure
+    @NonCommitting
+    public static @Nullable Time getTime(@Nonnull NonHostIdentifier identifier) throws DatabaseException {
+        final @Nullable SuccessorEntry entry = load(identifier);
+        return entry != null ? entry.getTime() : null;
     }
     
     /**
@@ -85,7 +169,7 @@ public abstract class Successor {
     public static @Nonnull InternalNonHostIdentifier getReloaded(@Nonnull NonHostIdentifier identifier) throws ExternalException {
         @Nullable InternalNonHostIdentifier successor = get(identifier);
         if (successor == null) {
-            final @Nonnull Reply reply;
+            final @Nullable Reply<?> reply;
             if (identifier instanceof InternalNonHostIdentifier) {
                 // TODO
 //                final @Nonnull IdentityReply identityReply = new IdentityQuerySubclass((InternalNonHostIdentifier) identifier).send();
@@ -106,20 +190,34 @@ public abstract class Successor {
     
     /**
      * Sets the successor of the given identifier to the given value.
+     * The given identifier and all identifiers that were relocated to it are redirected to the final successor of the given successor.
+     * The time of each redirected entry is the time at which the oldest relocation on its new path was verified.
      * Only commit the transaction if the successor has been verified.
      * 
      * @param identifier the identifier whose successor is to be set.
      * @param successor the successor to be set for the given identifier.
-     * @param reply the reply stating that the given identifier has the given successor.
+     * @param reply the reply stating that the given identifier has the given successor, which is stored in the reply index if it has been received.
+     * 
+     * @throws RequestException if the successor leads back to the given identifier.
      */
     @NonCommitting
     @PureWithSideEffects
-    public static void set(@Nonnull NonHostIdentifier identifier, @Nonnull InternalNonHostIdentifier successor, @Nullable Reply reply) throws DatabaseException {
-        // TODO: Use the new database API.
+    public static void set(@Nonnull NonHostIdentifier identifier, @Nonnull InternalNonHostIdentifier successor, @Nullable Reply<?> reply) throws DatabaseException, RequestException {
+        final @Nullable SuccessorEntry successorEntry = load(successor);
+        final @Nonnull InternalNonHostIdentifier finalSuccessor = successorEntry != null ? successorEntry.getSuccessor() : successor;
+        if (finalSuccessor.equals(identifier)) { throw RequestExceptionBuilder.withCode(RequestErrorCode.RELOCATION).withMessage("The successor " + successor + " of " + identifier + " may not lead back to it.").build(); }
         
-//        try (@Nonnull Statement statement = Database.createStatement()) {
-//            statement.executeUpdate("INSERT INTO general_successor (identifier, successor, reply) VALUES (" + identifier + ", " + successor + ", " + reply + ")");
-//        }
+        final @Nonnull Time time = successorEntry != null ? min(TimeBuilder.build(), successorEntry.getTime()) : TimeBuilder.build();
+        final long number = reply != null && reply.getSignature() != null ? ReplyIndex.store(reply) : 0;
+        SQL.insertOrReplace(SuccessorEntryConverter.INSTANCE, SuccessorEntryBuilder.withIdentifier(identifier).withSuccessor(finalSuccessor).withTime(time).withReply(number).build(), GeneralUnit.INSTANCE);
+        invalidate(identifier);
+        
+        if (identifier instanceof InternalNonHostIdentifier) {
+            for (final @Nonnull SuccessorEntry predecessor : SQL.selectAll(SuccessorEntryConverter.INSTANCE, null, GeneralUnit.INSTANCE, WhereConditionBuilder.withConverter(InternalNonHostIdentifierConverter.INSTANCE).withObject((InternalNonHostIdentifier) identifier).withPrefix("successor").build())) {
+                SQL.insertOrReplace(SuccessorEntryConverter.INSTANCE, SuccessorEntryBuilder.withIdentifier(predecessor.getIdentifier()).withSuccessor(finalSuccessor).withTime(min(predecessor.getTime(), time)).withReply(predecessor.getReply()).build(), GeneralUnit.INSTANCE);
+                invalidate(predecessor.getIdentifier());
+            }
+        }
     }
     
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.resolution.successor;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.generator.annotations.generators.GenerateTableConverter;
+import net.digitalid.utility.rootclass.RootClass;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.annotations.constraints.PrimaryKey;
+
+import net.digitalid.core.handler.reply.ReplyIndex;
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.identification.identifier.NonHostIdentifier;
+
+/**
+ * This type models an entry in the successor table.
+ * Each identifier references its final successor directly so that a relocated identifier is resolved with a single lookup.
+ * 
+ * @see Successor
+ */
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+@GenerateTableConverter(schema = "general")
+abstract class SuccessorEntry extends RootClass {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Returns the identifier that has been relocated.
+     */
+    @Pure
+    @PrimaryKey
+    abstract @Nonnull NonHostIdentifier getIdentifier();
+    
+    /**
+     * Returns the final successor of the identifier, which has not been relocated itself.
+     */
+    @Pure
+    abstract @Nonnull InternalNonHostIdentifier getSuccessor();
+    
+    /**
+     * Returns the time at which the oldest relocation on the path from the identifier to its final successor was verified.
+     */
+    @Pure
+    abstract @Nonnull Time getTime();
+    
+    /**
+     * Returns the number of the stored reply that stated the relocation of the identifier or zero if no reply was stored.
+     * 
+     * @see ReplyIndex#load(net.digitalid.core.entity.Entity, long)
+     */
+    @Pure
+    abstract @NonNegative long getReply();
+    
+}
@@ -15,10 +15,24 @@
  */
 package net.digitalid.core.resolution;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import javax.annotation.Nonnull;
 
+import net.digitalid.database.interfaces.Database;
+
 import net.digitalid.core.annotations.type.NonLoaded;
+import net.digitalid.core.identification.identifier.EmailIdentifier;
+import net.digitalid.core.identification.identity.IdentifierResolver;
 import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.unit.TransactionEnd;
 import net.digitalid.core.testing.CoreTest;
 
 import org.junit.Test;
@@ -31,5 +45,35 @@ public class IdentifierResolverImplementationTest extends CoreTest {
         final @Nonnull @NonLoaded SemanticType mapping2 = SemanticType.map("type@test.digitalid.net");
         assertThat(mapping1.getKey()).isEqualTo(mapping2.getKey());
     }
+    
+    @Test
+    public void testConcurrentMapping() throws Exception {
+        final @Nonnull EmailIdentifier identifier = EmailIdentifier.with("email:concurrent@test.digitalid.net");
+        final int threads = 8;
+        final @Nonnull CountDownLatch start = new CountDownLatch(1);
+        final @Nonnull ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final @Nonnull List<@Nonnull Future<@Nonnull Long>> keys = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                keys.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        final long key = IdentifierResolver.configuration.get().resolve(identifier).getKey();
+                        Database.commit();
+                        return key;
+                    } catch (Exception exception) {
+                        TransactionEnd.rollback();
+                        throw exception;
+                    }
+                }));
+            }
+            start.countDown();
+            final @Nonnull Set<@Nonnull Long> distinctKeys = new HashSet<>();
+            for (final @Nonnull Future<@Nonnull Long> key : keys) { distinctKeys.add(key.get()); }
+            assertThat(distinctKeys).hasSize(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.resolution.successor;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.time.Time;
+
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.TransactionEnd;
+
+import org.junit.Test;
+
+/**
+ * Unit testing of the {@link Successor successor} with its collapsed chains.
+ */
+public class SuccessorTest extends CoreTest {
+    
+    private static @Nonnull InternalNonHostIdentifier identifier(@Nonnull String name) {
+        return InternalNonHostIdentifier.with(name + "@successor.digitalid.net");
+    }
+    
+    @Test
+    public void shouldKeepTheOldestVerificationTimeWhenCollapsingSuccessors() throws ExternalException, InterruptedException {
+        final @Nonnull InternalNonHostIdentifier a = identifier("a1");
+        final @Nonnull InternalNonHostIdentifier b = identifier("b1");
+        final @Nonnull InternalNonHostIdentifier c = identifier("c1");
+        final @Nonnull InternalNonHostIdentifier d = identifier("d1");
+        
+        Successor.set(a, b, null);
+        Database.commit();
+        final @Nonnull Time timeOfA = Successor.getTime(a);
+        
+        Thread.sleep(10);
+        Successor.set(c, d, null);
+        Database.commit();
+        final @Nonnull Time timeOfC = Successor.getTime(c);
+        assertThat(timeOfA.isLessThan(timeOfC)).isTrue();
+        
+        Thread.sleep(10);
+        Successor.set(b, c, null);
+        Database.commit();
+        
+        assertThat(Successor.get(a)).isEqualTo(d);
+        assertThat(Successor.get(b)).isEqualTo(d);
+        assertThat(Successor.getTime(a)).isEqualTo(timeOfA);
+        assertThat(Successor.getTime(b)).isEqualTo(timeOfC);
+        assertThat(Successor.getTime(c)).isEqualTo(timeOfC);
+    }
+    
+    @Test
+    public void shouldNotRetainRolledBackSuccessors() throws ExternalException {
+        final @Nonnull InternalNonHostIdentifier a = identifier("a2");
+        final @Nonnull InternalNonHostIdentifier b = identifier("b2");
+        
+        Successor.set(a, b, null);
+        assertThat(Successor.get(a)).isEqualTo(b);
+        TransactionEnd.rollback();
+        
+        assertThat(Successor.get(a)).isNull();
+        Database.commit();
+    }
+    
+}
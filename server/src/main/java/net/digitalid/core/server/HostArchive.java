@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.server;
+
+import java.io.File;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.map.FreezableLinkedHashMapBuilder;
+import net.digitalid.utility.collections.map.FreezableMap;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.conversion.exceptions.ConversionException;
+import net.digitalid.utility.conversion.exceptions.RecoveryExceptionBuilder;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.storage.Table;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.Committing;
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.dialect.statement.select.unordered.simple.SQLSimpleSelectStatement;
+import net.digitalid.database.dialect.statement.select.unordered.simple.SQLSimpleSelectStatementBuilder;
+import net.digitalid.database.dialect.statement.select.unordered.simple.sources.SQLTableSourceBuilder;
+import net.digitalid.database.interfaces.Database;
+import net.digitalid.database.interfaces.SQLDecoder;
+
+import net.digitalid.core.conversion.decoders.FileDecoder;
+import net.digitalid.core.conversion.encoders.FileEncoder;
+import net.digitalid.core.host.Host;
+import net.digitalid.core.host.HostBuilder;
+import net.digitalid.core.host.key.PrivateKeyChainLoader;
+import net.digitalid.core.host.key.PublicKeyChainLoader;
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.pack.PackConverter;
+import net.digitalid.core.unit.CoreUnit;
+import net.digitalid.core.unit.UnitTables;
+
+/**
+ * This class exports and imports a {@link Host host} with its keys and the tables of all {@link CoreUnit#MODULE modules} to and from a file.
+ * The rows of each table are written as a sequence of frames, which consist of the number of rows followed by the rows themselves,
+ * so that the file is streamed in both directions and the import inserts the rows of all tables in a single transaction.
+ */
+@Utility
+abstract class HostArchive {
+    
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal number of rows in a frame, which is also the maximal number of rows that are held in memory.
+     */
+    static final @Nonnull Configuration<Integer> frameSize = Configuration.with(1_000);
+    
+    /* -------------------------------------------------- Tables -------------------------------------------------- */
+    
+    /**
+     * Returns the tables of all modules that are created on each unit mapped from their full name.
+     */
+    @PureWithSideEffects
+    private static @Nonnull FreezableMap<@Nonnull String, @Nonnull Table<?, ?>> getTables() {
+        final @Nonnull FreezableMap<@Nonnull String, @Nonnull Table<?, ?>> tables = FreezableLinkedHashMapBuilder.build();
+        CoreUnit.MODULE.accept(table -> tables.put(table.getFullNameWithUnderlines(), table));
+        return tables;
+    }
+    
+    /* -------------------------------------------------- Export -------------------------------------------------- */
+    
+    /**
+     * Writes the rows of the given table in the given host in frames of at most {@link #frameSize} rows to the given encoder.
+     * The rows are read one after the other from the result of the selection so that at most one frame is held in memory.
+     */
+    @Impure
+    @SuppressWarnings("unchecked")
+    private static <TYPE> void exportTable(@Nonnull Host host, @Nonnull Table<TYPE, ?> table, @Nonnull FileEncoder encoder) throws ConversionException {
+        final @Nonnull Table<TYPE, @Nonnull CoreUnit> unitTable = (Table<TYPE, @Nonnull CoreUnit>) table;
+        final @Nonnull FreezableList<@Nonnull TYPE> frame = FreezableArrayList.withInitialCapacity(frameSize.get());
+        final @Nonnull SQLSimpleSelectStatement selectStatement = SQLSimpleSelectStatementBuilder.withColumns(UnitTables.getResultColumns(unitTable)).withSources(ImmutableList.withElements(SQLTableSourceBuilder.withSource(UnitTables.getQualifiedTable(unitTable, host)).build())).build();
+        final @Nonnull SQLDecoder decoder = Database.instance.get().getEncoder(selectStatement, host).execute();
+        while (decoder.moveToNextRow()) {
+            frame.add(unitTable.recover(decoder, host));
+            if (frame.size() == frameSize.get()) { exportFrame(unitTable, frame, encoder); }
+        }
+        if (!frame.isEmpty()) { exportFrame(unitTable, frame, encoder); }
+        encoder.encodeInteger32(0);
+    }
+    
+    /**
+     * Writes the given rows as a frame to the given encoder and clears them afterwards.
+     */
+    @Impure
+    private static <TYPE> void exportFrame(@Nonnull Table<TYPE, ?> table, @Nonnull FreezableList<@Nonnull TYPE> frame, @Nonnull FileEncoder encoder) throws ConversionException {
+        encoder.encodeInteger32(frame.size());
+        for (@Nonnull TYPE row : frame) { encoder.encodeObject(table, row); }
+        frame.clear();
+    }
+    
+    /**
+     * Exports the given host with its keys and tables to the given file.
+     * The tables are all read in a single transaction so that the archive is a consistent snapshot of the host.
+     */
+    @Impure
+    @Committing
+    public static void exportHost(@Nonnull Host host, @Nonnull File file) throws ConversionException {
+        final @Nonnull HostIdentifier identifier = host.getIdentifier();
+        boolean committed = false;
+        try (@Nonnull FileEncoder encoder = FileEncoder.of(file)) {
+            encoder.startCompressing(new Deflater(Deflater.DEFAULT_COMPRESSION));
+            encoder.encodeString(identifier.getString());
+            encoder.encodeObject(PackConverter.INSTANCE, Pack.loadFrom(PrivateKeyChainLoader.getFile(identifier)));
+            encoder.encodeObject(PackConverter.INSTANCE, Pack.loadFrom(PublicKeyChainLoader.getFile(identifier)));
+            for (@Nonnull Table<?, ?> table : getTables().values()) {
+                encoder.encodeBoolean(true);
+                encoder.encodeString(table.getFullNameWithUnderlines());
+                exportTable(host, table, encoder);
+            }
+            encoder.encodeBoolean(false);
+            encoder.stopCompressing();
+            Database.commit();
+            committed = true;
+        } finally {
+            if (!committed) { Database.rollback(); }
+        }
+        Log.information("Exported the host $ to the file $.", identifier, file);
+    }
+    
+    /* -------------------------------------------------- Import -------------------------------------------------- */
+    
+    /**
+     * Reads the frames of the given table from the given decoder and inserts their rows into the given host in the current transaction.
+     */
+    @Impure
+    @NonCommitting
+    @SuppressWarnings("unchecked")
+    private static <TYPE> void importTable(@Nonnull Host host, @Nonnull Table<TYPE, ?> table, @Nonnull FileDecoder decoder) throws ConversionException {
+        final @Nonnull Table<TYPE, @Nonnull CoreUnit> unitTable = (Table<TYPE, @Nonnull CoreUnit>) table;
+        for (int size = decoder.decodeInteger32(); size > 0; size = decoder.decodeInteger32()) {
+            for (int i = 0; i < size; i++) {
+                SQL.insertOrReplace(unitTable, decoder.decodeObject(unitTable, host), host);
+            }
+        }
+    }
+    
+    /**
+     * Moves the given file to its backup if it exists and returns the backup or null if the file does not exist.
+     */
+    @Impure
+    private static @Nullable File backUp(@Nonnull File file) throws ConversionException {
+        if (!file.exists()) { return null; }
+        final @Nonnull File backup = new File(file.getPath() + ".backup");
+        if (backup.exists() && !backup.delete() || !file.renameTo(backup)) { throw RecoveryExceptionBuilder.withMessage("Could not back up the existing file " + file + ".").build(); }
+        return backup;
+    }
+    
+    /**
+     * Deletes the given file and moves the given backup back to it if it is not null.
+     */
+    @Impure
+    private static void restore(@Nonnull File file, @Nullable File backup) {
+        if (file.exists() && !file.delete()) { Log.warning("Could not delete the file $ of a failed import.", file); }
+        if (backup != null && !backup.renameTo(file)) { Log.warning("Could not restore the file $ from its backup $.", file, backup); }
+    }
+    
+    /**
+     * Imports the host with its keys and tables from the given file and returns it.
+     * The rows of all tables are inserted in a single transaction, and the host handles requests only after this transaction has been committed.
+     * Existing key files are backed up before they are overwritten. If the import fails, the transaction is rolled back,
+     * the written keys are deleted and the backed up keys are restored. After a successful import, the backups are deleted.
+     */
+    @Impure
+    @Committing
+    public static @Nonnull Host importHost(@Nonnull File file) throws ConversionException {
+        final @Nonnull Host host;
+        @Nullable HostIdentifier identifier = null;
+        @Nullable File privateKeyBackup = null;
+        @Nullable File publicKeyBackup = null;
+        boolean keysStored = false;
+        try (@Nonnull FileDecoder decoder = FileDecoder.of(file)) {
+            decoder.startDecompressing(new Inflater());
+            final @Nonnull String string = decoder.decodeString();
+            if (!HostIdentifier.isValid(string)) { throw RecoveryExceptionBuilder.withMessage("The file does not contain a valid host identifier but '" + string + "'.").build(); }
+            if (Host.exists(HostIdentifier.with(string))) { throw RecoveryExceptionBuilder.withMessage("The host " + string + " already exists on this server.").build(); }
+            identifier = HostIdentifier.with(string);
+            Host.deferRegistration(identifier);
+            
+            privateKeyBackup = backUp(PrivateKeyChainLoader.getFile(identifier));
+            publicKeyBackup = backUp(PublicKeyChainLoader.getFile(identifier));
+            keysStored = true;
+            decoder.decodeObject(PackConverter.INSTANCE, null).storeTo(PrivateKeyChainLoader.getFile(identifier));
+            decoder.decodeObject(PackConverter.INSTANCE, null).storeTo(PublicKeyChainLoader.getFile(identifier));
+            host = HostBuilder.withIdentifier(identifier).build();
+            
+            final @Nonnull FreezableMap<@Nonnull String, @Nonnull Table<?, ?>> tables = getTables();
+            while (decoder.decodeBoolean()) {
+                final @Nonnull String name = decoder.decodeString();
+                final @Nullable Table<?, ?> table = tables.get(name);
+                if (table == null) { throw RecoveryExceptionBuilder.withMessage("The table " + name + " of the imported host is not created on this server.").build(); }
+                importTable(host, table, decoder);
+            }
+            decoder.stopDecompressing();
+            Database.commit();
+        } catch (@Nonnull ConversionException | RuntimeException exception) {
+            Database.rollback();
+            if (identifier != null) {
+                Host.remove(identifier);
+                if (keysStored || privateKeyBackup != null) { restore(PrivateKeyChainLoader.getFile(identifier), privateKeyBackup); }
+                if (keysStored || publicKeyBackup != null) { restore(PublicKeyChainLoader.getFile(identifier), publicKeyBackup); }
+            }
+            throw exception;
+        }
+        if (privateKeyBackup != null && !privateKeyBackup.delete() || publicKeyBackup != null && !publicKeyBackup.delete()) { Log.warning("Could not delete the backed up keys of the imported host $.", identifier); }
+        Host.register(host);
+        Database.commit();
+        ReplyCache.invalidate(host.getIdentifier());
+        Log.information("Imported the host $ from the file $.", host.getIdentifier(), file);
+        return host;
+    }
+    
+}
@@ -16,30 +16,65 @@
 package net.digitalid.core.server;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.logging.Log;
 import net.digitalid.utility.threading.NamedThreadFactory;
 import net.digitalid.utility.validation.annotations.type.Immutable;
 
+import net.digitalid.core.exceptions.request.RequestErrorCode;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
 import net.digitalid.core.packet.Request;
 
 /**
  * A listener accepts incoming {@link Request requests} and lets them handle by {@link Worker workers}.
+ * Requests beyond the configured limits are answered immediately with a {@link RequestErrorCode#BUSY busy} error.
  */
 @Immutable
 @GenerateBuilder
 public class Listener extends Thread {
     
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the number of workers that handle requests concurrently.
+     */
+    public static final @Nonnull Configuration<Integer> WORKERS = Configuration.with(16);
+    
+    /**
+     * Stores the maximum number of accepted requests that wait for a worker.
+     */
+    public static final @Nonnull Configuration<Integer> QUEUE = Configuration.with(256);
+    
+    /**
+     * Stores the maximum time in milliseconds that a request may wait for a worker before it is rejected.
+     */
+    public static final @Nonnull Configuration<Integer> QUEUE_WAIT = Configuration.with(10_000);
+    
+    /**
+     * Stores the maximum number of requests from the same address that are handled or waiting at the same time.
+     * This limit prevents a single client from occupying the whole queue.
+     */
+    public static final @Nonnull Configuration<Integer> REQUESTS_PER_ADDRESS = Configuration.with(16);
+    
     /* -------------------------------------------------- Socket -------------------------------------------------- */
     
     /**
@@ -52,7 +87,64 @@ public class Listener extends Thread {
     /**
      * The thread pool executor runs the {@link Worker workers} that handle the incoming {@link Request requests}.
      */
-    private final @Nonnull ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(8, 16, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(32), NamedThreadFactory.with("Worker"), new ThreadPoolExecutor.AbortPolicy());
+    private final @Nonnull ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(WORKERS.get(), WORKERS.get(), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE.get()), NamedThreadFactory.with("Worker"), new ThreadPoolExecutor.AbortPolicy());
+    
+    /* -------------------------------------------------- Admission -------------------------------------------------- */
+    
+    /**
+     * Counts the requests that are handled or waiting for each address.
+     */
+    private final @Nonnull ConcurrentMap<@Nonnull InetAddress, @Nonnull AtomicInteger> requestsPerAddress = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns whether a request from the given address is admitted and, if so, counts it.
+     */
+    @Impure
+    private boolean admit(@Nonnull InetAddress address) {
+        if (threadPoolExecutor.getQueue().remainingCapacity() == 0) { return false; }
+        @Nullable AtomicInteger counter = requestsPerAddress.get(address);
+        if (counter == null) { counter = requestsPerAddress.putIfAbsentElseReturnPresent(address, new AtomicInteger()); }
+        if (counter.incrementAndGet() > REQUESTS_PER_ADDRESS.get()) { release(address); return false; }
+        return true;
+    }
+    
+    /**
+     * Releases a request from the given address that was admitted before.
+     */
+    @Impure
+    private void release(@Nonnull InetAddress address) {
+        final @Nullable AtomicInteger counter = requestsPerAddress.get(address);
+        if (counter != null && counter.decrementAndGet() <= 0) { requestsPerAddress.remove(address, counter); }
+    }
+    
+    /**
+     * Returns the request exception with which requests are rejected if this server is busy.
+     */
+    @Pure
+    private static @Nonnull RequestException getBusyException() {
+        return RequestExceptionBuilder.withCode(RequestErrorCode.BUSY).withMessage("The server is busy. Please retry after " + QUEUE_WAIT.get() + " ms.").withRetryAfter(QUEUE_WAIT.get()).build();
+    }
+    
+    /**
+     * The rejector executor answers the rejected requests so that the listener can continue to accept requests without waiting for slow clients.
+     */
+    private final @Nonnull ThreadPoolExecutor rejectorExecutor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE.get()), NamedThreadFactory.with("Rejector"), new ThreadPoolExecutor.AbortPolicy());
+    
+    /**
+     * Rejects the request on the given socket with a busy error or, if even the rejections are queued up, closes the socket right away.
+     */
+    @PureWithSideEffects
+    private void reject(@Nonnull Socket socket) {
+        try {
+            rejectorExecutor.execute(() -> Worker.reject(socket, getBusyException()));
+        } catch (@Nonnull RejectedExecutionException exception) {
+            try {
+                socket.close();
+            } catch (@Nonnull IOException ioException) {
+                Log.warning("Could not close the socket.", ioException);
+            }
+        }
+    }
     
     /* -------------------------------------------------- Constructor -------------------------------------------------- */
     
@@ -77,15 +169,32 @@ public class Listener extends Thread {
             try {
                 final @Nonnull Socket socket = serverSocket.accept();
                 socket.setSoTimeout(Request.TIMEOUT.get());
-                try {
-                    threadPoolExecutor.execute(WorkerBuilder.withSocket(socket).build());
-                    Log.verbose("Connection accepted from '" + socket.getInetAddress().toString().substring(1) + "'.");
-                } catch (@Nonnull RejectedExecutionException exception) {
-                    Log.warning("Could not add a new worker.", exception);
-                    socket.close();
+                final @Nonnull InetAddress address = socket.getInetAddress();
+                if (admit(address)) {
+                    final long admission = System.currentTimeMillis();
+                    try {
+                        threadPoolExecutor.execute(() -> {
+                            try {
+                                if (System.currentTimeMillis() - admission > QUEUE_WAIT.get()) { Worker.reject(socket, getBusyException()); }
+                                else { WorkerBuilder.withSocket(socket).build().run(); }
+                            } finally {
+                                release(address);
+                            }
+                        });
+                        Log.verbose("Connection accepted from '" + address.toString().substring(1) + "'.");
+                    } catch (@Nonnull RejectedExecutionException exception) {
+                        release(address);
+                        Log.warning("Could not add a new worker.", exception);
+                        reject(socket);
+                    }
+                } else {
+                    Log.verbose("Connection from '" + address.toString().substring(1) + "' rejected because the server is busy.");
+                    reject(socket);
                 }
             } catch (@Nonnull IOException exception) {
                 if (!serverSocket.isClosed()) { Log.warning("Could not accept or close a socket.", exception); }
+            } catch (@Nonnull RuntimeException exception) {
+                Log.error("Could not handle an accepted socket.", exception);
             }
         }
     }
@@ -100,7 +209,9 @@ public class Listener extends Thread {
         try {
             serverSocket.close();
             threadPoolExecutor.shutdown();
+            rejectorExecutor.shutdown();
             threadPoolExecutor.awaitTermination(5L, TimeUnit.SECONDS);
+            rejectorExecutor.awaitTermination(5L, TimeUnit.SECONDS);
         } catch (@Nonnull IOException | InterruptedException exception) {
             Log.warning("Could not shut down the listener.", exception);
         }
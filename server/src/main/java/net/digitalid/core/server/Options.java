@@ -15,13 +15,12 @@
  */
 package net.digitalid.core.server;
 
-import java.util.Collection;
+import java.io.File;
 
 import javax.annotation.Nonnull;
 
 import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.collections.collection.ReadOnlyCollection;
-import net.digitalid.utility.collections.list.FreezableArrayList;
 import net.digitalid.utility.collections.list.ReadOnlyList;
 import net.digitalid.utility.console.Console;
 import net.digitalid.utility.console.Option;
@@ -82,7 +81,7 @@ abstract class Options {
      */
     @Impure
     private static @Nonnull Host selectHost() throws EscapeException {
-        final @Nonnull ReadOnlyList<Host> hosts = FreezableArrayList.withElementsOf((Collection<? extends Host>) Host.getAll()).freeze();
+        final @Nonnull ReadOnlyList<Host> hosts = Host.getAll();
         if (!hosts.isEmpty()) {
             Console.writeLine("Please select one of the following hosts:");
             Console.writeLine("- 0: [Escape]");
@@ -150,10 +149,11 @@ abstract class Options {
         @Committing
         public void execute() {
             Console.writeLine("The following hosts are running on this server:");
-            for (final @Nonnull Host host : Host.getAll()) {
+            final @Nonnull ReadOnlyList<Host> hosts = Host.getAll();
+            for (final @Nonnull Host host : hosts) {
                 Console.writeLine("- " + host.getIdentifier().getString());
             }
-            if (Host.getAll().isEmpty()) { Console.writeLine("(None)"); }
+            if (hosts.isEmpty()) { Console.writeLine("(None)"); }
         }
         
     }
@@ -176,6 +176,7 @@ abstract class Options {
                 final @Nonnull HostIdentifier identifier = HostIdentifier.with(string);
                 try {
                     HostBuilder.withIdentifier(identifier).build();
+                    ReplyCache.invalidate(identifier);
                 } catch (@Nonnull ConversionException exception) {
                     Log.error("Could not create the host $.", exception, identifier);
                     Console.writeLine("Could not create the host $ ($).", identifier, exception);
@@ -195,8 +196,17 @@ abstract class Options {
         
         @Override
         @Committing
-        public void execute() {
-            Console.writeLine("To be implemented."); // TODO
+        public void execute() throws EscapeException {
+            final @Nonnull Host host = selectHost();
+            final @Nonnull File file = new File(Console.readString("Please enter the path of the file to export to (the default is " + host.getIdentifier() + ".host.xdf): ", host.getIdentifier().getString() + ".host.xdf"));
+            try {
+                HostArchive.exportHost(host, file);
+                Console.writeLine("The host $ has been exported to $.", host.getIdentifier(), file.getAbsolutePath());
+            } catch (@Nonnull ConversionException exception) {
+                Log.error("Could not export the host $.", exception, host.getIdentifier());
+                Console.writeLine("Could not export the host $ ($).", host.getIdentifier(), exception);
+                Database.rollback();
+            }
         }
         
     }
@@ -211,7 +221,19 @@ abstract class Options {
         @Override
         @Committing
         public void execute() {
-            Console.writeLine("To be implemented."); // TODO
+            final @Nonnull File file = new File(Console.readString("Please enter the path of the file to import from: ", null));
+            if (!file.isFile()) {
+                Console.writeLine("The file $ does not exist.", file.getAbsolutePath());
+                return;
+            }
+            try {
+                final @Nonnull Host host = HostArchive.importHost(file);
+                Console.writeLine("The host $ has been imported from $.", host.getIdentifier(), file.getAbsolutePath());
+            } catch (@Nonnull ConversionException exception) {
+                Log.error("Could not import the host from the file $.", exception, file);
+                Console.writeLine("Could not import the host from the file $ ($).", file.getAbsolutePath(), exception);
+                Database.rollback();
+            }
         }
         
     }
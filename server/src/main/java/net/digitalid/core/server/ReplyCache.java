@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.server;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.configuration.Configuration;
+import net.digitalid.utility.time.Time;
+import net.digitalid.utility.tuples.Pair;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.core.asymmetrickey.PrivateKey;
+import net.digitalid.core.compression.Compression;
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.handler.method.action.Action;
+import net.digitalid.core.host.Host;
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.identification.identifier.InternalIdentifier;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.signature.Signature;
+
+/**
+ * The reply cache stores the compressed and signed replies to {@link net.digitalid.core.handler.method.Method#isRequesterIndependent() requester-independent} methods.
+ * A cached reply is keyed by the recipient, its current private key, the subject, the kind of signature and the content of the method.
+ * Since the private key is part of the key, a cached reply is no longer reused once the recipient signs with a new key.
+ * It is only reused as long as its signature is recent enough and is invalidated as soon as an action that was executed on its subject has been committed,
+ * of which the cache is notified through the {@link Action#observer observer} of actions independently of where the action was executed.
+ * Invalidation only records the stamp of the invalidation for the subject so that it does not have to iterate over the cached replies.
+ * Both the cached replies and the recorded invalidations are bounded and evicted in the order of their last use.
+ * 
+ * @see Worker
+ */
+@Utility
+abstract class ReplyCache {
+    
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the period during which a signed reply is reused, which has to be well within the period in which a signature is considered active.
+     */
+    static final @Nonnull Configuration<Time> REUSE_PERIOD = Configuration.with(Time.MINUTE);
+    
+    /**
+     * Stores the maximum number of cached replies and of recorded invalidations.
+     */
+    static final @Nonnull Configuration<Integer> CAPACITY = Configuration.with(10_000);
+    
+    /* -------------------------------------------------- Key -------------------------------------------------- */
+    
+    /**
+     * A key identifies a method by everything that its requester-independent reply can depend on.
+     */
+    @Immutable
+    static final class Key {
+        
+        private final @Nonnull HostIdentifier recipient;
+        
+        /**
+         * Stores the private key with which the recipient currently signs, which is compared by identity.
+         */
+        private final @Nonnull PrivateKey privateKey;
+        
+        private final @Nonnull InternalIdentifier subject;
+        
+        private final @Nonnull Class<?> signatureClass;
+        
+        private final @Nonnull byte[] content;
+        
+        private final int hashCode;
+        
+        /**
+         * Stores the stamp when this key was created, which is not part of the identity of this key.
+         */
+        private final long stamp;
+        
+        private Key(@Nonnull HostIdentifier recipient, @Nonnull PrivateKey privateKey, @Nonnull Signature<Compression<Pack>> signedMethod) {
+            this.recipient = recipient;
+            this.privateKey = privateKey;
+            this.subject = signedMethod.getSubject();
+            this.stamp = clock.get();
+            this.signatureClass = signedMethod.getClass();
+            this.content = signedMethod.getObject().getObject().store();
+            this.hashCode = (Objects.hash(recipient, subject, signatureClass) * 31 + System.identityHashCode(privateKey)) * 31 + Arrays.hashCode(content);
+        }
+        
+        @Pure
+        @Override
+        public boolean equals(@Nullable Object object) {
+            if (object == this) { return true; }
+            if (!(object instanceof Key)) { return false; }
+            final @Nonnull Key other = (Key) object;
+            return hashCode == other.hashCode && recipient.equals(other.recipient) && privateKey == other.privateKey && subject.equals(other.subject) && signatureClass.equals(other.signatureClass) && Arrays.equals(content, other.content);
+        }
+        
+        @Pure
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+    }
+    
+    /**
+     * Returns the key of the given signed method sent to the given recipient, which currently signs with the given private key.
+     * The key has to be created before the method is executed so that a concurrent invalidation is not missed
+     * but only after the method has been recovered and found to be requester-independent, which is when its content is serialized.
+     */
+    @Pure
+    static @Nonnull Key getKey(@Nonnull HostIdentifier recipient, @Nonnull PrivateKey privateKey, @Nonnull Signature<Compression<Pack>> signedMethod) {
+        return new Key(recipient, privateKey, signedMethod);
+    }
+    
+    /* -------------------------------------------------- Invalidations -------------------------------------------------- */
+    
+    /**
+     * Stores the stamp of the last invalidation, which is increased with every invalidation.
+     */
+    private static final @Nonnull AtomicLong clock = new AtomicLong();
+    
+    /**
+     * Stores the stamp of the last evicted invalidation, which applies to all subjects without a recorded invalidation.
+     * An evicted invalidation thus only invalidates more replies than necessary but never too few.
+     */
+    private static long floor = 0L;
+    
+    /**
+     * Maps the subjects on recipients to the stamp of their last invalidation in the order of their last access, which is guarded by the lock of the replies.
+     */
+    private static final @Nonnull LinkedHashMap<@Nonnull Pair<@Nonnull HostIdentifier, @Nonnull InternalIdentifier>, @Nonnull Long> invalidations = new LinkedHashMap<Pair<HostIdentifier, InternalIdentifier>, Long>(16, 0.75f, true) {
+        
+        @Pure
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<Pair<HostIdentifier, InternalIdentifier>, Long> eldest) {
+            if (size() <= CAPACITY.get()) { return false; }
+            floor = Math.max(floor, eldest.getValue());
+            return true;
+        }
+        
+    };
+    
+    /**
+     * Returns the stamp of the last invalidation of the given subject on the given recipient.
+     * The caller has to hold the lock of the replies.
+     */
+    @PureWithSideEffects
+    private static long getInvalidation(@Nonnull HostIdentifier recipient, @Nonnull InternalIdentifier subject) {
+        final @Nullable Long invalidation = invalidations.get(Pair.of(recipient, subject));
+        return invalidation != null ? invalidation : floor;
+    }
+    
+    /* -------------------------------------------------- Replies -------------------------------------------------- */
+    
+    /**
+     * A cached reply together with the stamp of the key for which the reply was computed.
+     */
+    @Immutable
+    private static final class CachedReply {
+        
+        private final @Nonnull Signature<Compression<Pack>> signedReply;
+        
+        private final long stamp;
+        
+        private CachedReply(@Nonnull Signature<Compression<Pack>> signedReply, long stamp) {
+            this.signedReply = signedReply;
+            this.stamp = stamp;
+        }
+        
+    }
+    
+    /**
+     * Maps the keys of methods to their cached replies in the order of their last access, which also serves as the lock of the cache.
+     */
+    private static final @Nonnull LinkedHashMap<@Nonnull Key, @Nonnull CachedReply> replies = new LinkedHashMap<Key, CachedReply>(16, 0.75f, true) {
+        
+        @Pure
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<Key, CachedReply> eldest) {
+            return size() > CAPACITY.get();
+        }
+        
+    };
+    
+    /**
+     * Returns whether the given cached reply is still valid for the given key.
+     * The caller has to hold the lock of the replies.
+     */
+    @PureWithSideEffects
+    private static boolean isValid(@Nonnull Key key, @Nonnull CachedReply cachedReply, @Nonnull Time cutoff) {
+        return cachedReply.stamp >= getInvalidation(key.recipient, key.subject) && !cachedReply.signedReply.getTime().isLessThan(cutoff);
+    }
+    
+    /**
+     * Returns the cached reply for the given key or null if no valid reply is cached.
+     */
+    @PureWithSideEffects
+    static @Nullable Signature<Compression<Pack>> get(@Nonnull Key key) {
+        final @Nonnull Time cutoff = REUSE_PERIOD.get().ago();
+        synchronized (replies) {
+            final @Nullable CachedReply cachedReply = replies.get(key);
+            if (cachedReply == null) { return null; }
+            if (!isValid(key, cachedReply, cutoff)) { replies.remove(key); return null; }
+            return cachedReply.signedReply;
+        }
+    }
+    
+    /**
+     * Caches the given signed reply for the given key, which has to be created before the reply was computed.
+     * If the cache is full, the least recently used reply is evicted.
+     */
+    @Impure
+    static void put(@Nonnull Key key, @Nonnull Signature<Compression<Pack>> signedReply) {
+        synchronized (replies) {
+            if (key.stamp >= getInvalidation(key.recipient, key.subject)) { replies.put(key, new CachedReply(signedReply, key.stamp)); }
+        }
+    }
+    
+    /* -------------------------------------------------- Invalidation -------------------------------------------------- */
+    
+    /**
+     * Invalidates the cached replies about the given subject on the given recipient.
+     */
+    @Impure
+    static void invalidate(@Nonnull HostIdentifier recipient, @Nonnull InternalIdentifier subject) {
+        synchronized (replies) {
+            invalidations.put(Pair.of(recipient, subject), clock.incrementAndGet());
+        }
+    }
+    
+    /**
+     * Invalidates the cached replies about the given entity if it belongs to a host.
+     * This method is the {@link Action#observer observer} of the actions that have been executed.
+     */
+    @Impure
+    static void invalidate(@Nonnull NonHostEntity entity) {
+        if (entity.getUnit() instanceof Host) { invalidate(((Host) entity.getUnit()).getIdentifier(), entity.getIdentity().getAddress()); }
+    }
+    
+    /**
+     * Removes the cached replies and the recorded invalidations of the given recipient, for example because it was removed or imported.
+     */
+    @Impure
+    static void invalidate(@Nonnull HostIdentifier recipient) {
+        synchronized (replies) {
+            replies.keySet().removeIf(key -> key.recipient.equals(recipient));
+            final @Nonnull Iterator<Map.Entry<Pair<HostIdentifier, InternalIdentifier>, Long>> iterator = invalidations.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final @Nonnull Map.Entry<Pair<HostIdentifier, InternalIdentifier>, Long> entry = iterator.next();
+                if (entry.getKey().get0().equals(recipient)) {
+                    floor = Math.max(floor, entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+}
@@ -22,6 +22,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.console.Console;
 import net.digitalid.utility.conversion.exceptions.ConversionException;
@@ -37,11 +38,19 @@ import net.digitalid.database.annotations.transaction.Committing;
 import net.digitalid.database.interfaces.Database;
 
 import net.digitalid.core.cache.CacheModule;
+import net.digitalid.core.client.CredentialsIndex;
+import net.digitalid.core.host.Host;
 import net.digitalid.core.host.HostBuilder;
 import net.digitalid.core.host.key.PrivateKeyChainLoader;
 import net.digitalid.core.host.key.PublicKeyChainLoader;
 import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.identification.identifier.InternalNonHostIdentifier;
+import net.digitalid.core.identification.identity.Category;
 import net.digitalid.core.packet.Request;
+import net.digitalid.core.pusher.Pusher;
+import net.digitalid.core.resolution.IdentifierResolverImplementation;
+import net.digitalid.core.resolution.Mapper;
+import net.digitalid.core.synchronizer.Synchronizer;
 
 /**
  * The server runs the configured hosts.
@@ -63,6 +72,15 @@ public abstract class Server {
         privateKeyFiles.map(name -> name.substring(0, name.length() - 12)).filterNot(name -> Files.relativeToConfigurationDirectory(name + ".tables.xdf").exists()).map(HostIdentifier::with).doForEach(identifier -> HostBuilder.withIdentifier(identifier).build());
     }
     
+    /**
+     * Pins the identities of the hosts and of their accounts so that the mapper never evicts them.
+     */
+    @PureWithSideEffects
+    @Initialize(target = Mapper.class)
+    public static void initializeMapper() {
+        Mapper.pinned.set(identity -> identity.getCategory() == Category.HOST || identity.getAddress() instanceof InternalNonHostIdentifier && Host.exists(((InternalNonHostIdentifier) identity.getAddress()).getHostIdentifier()));
+    }
+    
     /* -------------------------------------------------- Services -------------------------------------------------- */
     
     /**
@@ -128,6 +146,11 @@ public abstract class Server {
     @Impure
     public static void shutDown() {
         Server.stop();
+        Pusher.shutDown();
+        Synchronizer.shutDown();
+        Worker.shutDown();
+        CredentialsIndex.shutDown();
+        IdentifierResolverImplementation.shutDown();
         System.exit(0);
     }
     
@@ -16,18 +16,25 @@
 package net.digitalid.core.server;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.digitalid.utility.annotations.method.Impure;
 import net.digitalid.utility.annotations.method.Pure;
 import net.digitalid.utility.annotations.method.PureWithSideEffects;
 import net.digitalid.utility.exceptions.ExternalException;
 import net.digitalid.utility.exceptions.InternalException;
 import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
 import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.initialization.annotations.Initialize;
 import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.threading.NamedThreadFactory;
 import net.digitalid.utility.time.Time;
 import net.digitalid.utility.time.TimeBuilder;
 import net.digitalid.utility.validation.annotations.type.Immutable;
@@ -37,6 +44,8 @@ import net.digitalid.database.exceptions.DatabaseException;
 import net.digitalid.database.interfaces.Database;
 
 import net.digitalid.core.account.OpenAccount;
+import net.digitalid.core.asymmetrickey.PrivateKey;
+import net.digitalid.core.audit.module.ActionModule;
 import net.digitalid.core.compression.Compression;
 import net.digitalid.core.compression.CompressionBuilder;
 import net.digitalid.core.compression.CompressionConverterBuilder;
@@ -48,8 +57,11 @@ import net.digitalid.core.encryption.ResponseEncryptionBuilder;
 import net.digitalid.core.exceptions.request.RequestErrorCode;
 import net.digitalid.core.exceptions.request.RequestException;
 import net.digitalid.core.exceptions.request.RequestExceptionBuilder;
+import net.digitalid.core.handler.method.InternalMethod;
 import net.digitalid.core.handler.method.Method;
 import net.digitalid.core.handler.method.MethodIndex;
+import net.digitalid.core.handler.method.action.Action;
+import net.digitalid.core.handler.method.action.InternalAction;
 import net.digitalid.core.handler.reply.Reply;
 import net.digitalid.core.handler.reply.instances.EmptyReplyBuilder;
 import net.digitalid.core.handler.reply.instances.RequestExceptionReplyBuilder;
@@ -64,9 +76,11 @@ import net.digitalid.core.packet.Request;
 import net.digitalid.core.packet.RequestConverter;
 import net.digitalid.core.packet.Response;
 import net.digitalid.core.packet.ResponseBuilder;
+import net.digitalid.core.permissions.ReadOnlyAgentPermissions;
 import net.digitalid.core.signature.Signature;
 import net.digitalid.core.signature.SignatureBuilder;
 import net.digitalid.core.signature.host.HostSignatureCreator;
+import net.digitalid.core.unit.TransactionEnd;
 
 /**
  * A worker processes incoming requests asynchronously.
@@ -78,6 +92,102 @@ import net.digitalid.core.signature.host.HostSignatureCreator;
 @GenerateSubclass
 public abstract class Worker implements Runnable {
     
+    /* -------------------------------------------------- Rejection -------------------------------------------------- */
+    
+    /**
+     * Responds to the request on the given socket with the given exception without reading, decrypting or signing anything.
+     * This is used to reject requests cheaply when the server is overloaded.
+     * Afterwards, the input that is available without blocking (up to 64 KiB) is discarded before the socket is closed so that the connection is usually not reset.
+     */
+    @PureWithSideEffects
+    static void reject(@Nonnull Socket socket, @Nonnull RequestException exception) {
+        try {
+            final @Nonnull Reply<?> reply = RequestExceptionReplyBuilder.withRequestException(exception).build();
+            final @Nonnull Compression<Pack> compressedReply = CompressionBuilder.withObject(reply.pack()).build();
+            final @Nonnull Signature<Compression<Pack>> signedReply = SignatureBuilder.withObjectConverter(CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).withObject(compressedReply).withSubject(HostIdentifier.DIGITALID).build();
+            final @Nonnull Encryption<Signature<Compression<Pack>>> encryptedReply = EncryptionBuilder.withObject(signedReply).build();
+            ResponseBuilder.withEncryption(encryptedReply).build().pack().storeTo(socket);
+        } catch (@Nonnull NetworkException networkException) {
+            Log.warning("Could not send a rejection.", networkException);
+        } finally {
+            try {
+                if (!socket.isClosed()) {
+                    // Closing a socket with unread data makes the operating system reset the connection, which can discard the rejection before the client has read it.
+                    // Only the input that has already arrived is discarded so that a slow client cannot occupy the rejector.
+                    socket.shutdownOutput();
+                    final @Nonnull InputStream inputStream = socket.getInputStream();
+                    final @Nonnull byte[] buffer = new byte[4_096];
+                    int remaining = 65_536;
+                    int available;
+                    while (remaining > 0 && (available = inputStream.available()) > 0) {
+                        final int read = inputStream.read(buffer, 0, Math.min(Math.min(available, buffer.length), remaining));
+                        if (read < 0) { break; }
+                        remaining -= read;
+                    }
+                }
+            } catch (@Nonnull IOException ioException) {
+                Log.verbose("Could not drain the socket of a rejected request.", ioException);
+            } finally {
+                try {
+                    if (!socket.isClosed()) { socket.close(); }
+                } catch (@Nonnull IOException ioException) {
+                    Log.warning("Could not close the socket.", ioException);
+                }
+            }
+        }
+    }
+    
+    /* -------------------------------------------------- Signing -------------------------------------------------- */
+    
+    /**
+     * Stores the executor that computes one of the two exponentiations of each private key operation while the signing worker computes the other one.
+     */
+    private static final @Nonnull ExecutorService EXPONENTIATORS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), NamedThreadFactory.with("Exponentiator"));
+    
+    /**
+     * Initializes the executor of the private keys.
+     */
+    @PureWithSideEffects
+    @Initialize(target = PrivateKey.class)
+    public static void initializePrivateKeyExecutor() {
+        PrivateKey.executor.set(EXPONENTIATORS);
+    }
+    
+    /**
+     * Initializes the observer of the actions, which invalidates the cached replies about the entities whose state was changed.
+     */
+    @PureWithSideEffects
+    @Initialize(target = Action.class)
+    public static void initializeActionObserver() {
+        Action.observer.set(ReplyCache::invalidate);
+    }
+    
+    /**
+     * Shuts down the exponentiators after the pending exponentiations have been computed.
+     */
+    @Impure
+    static void shutDown() {
+        try {
+            EXPONENTIATORS.shutdown();
+            EXPONENTIATORS.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (@Nonnull InterruptedException exception) {
+            Log.warning("Could not shut down the exponentiators.", exception);
+        }
+    }
+    
+    /* -------------------------------------------------- Caching -------------------------------------------------- */
+    
+    /**
+     * Returns whether the reply to the given method can be cached, which requires that the method is requester-independent
+     * and that it is neither an internal method nor requires permissions, whose checks would be skipped when a cached reply is reused.
+     */
+    @Pure
+    private static boolean isCacheable(@Nonnull Method<?> method) {
+        return method.isRequesterIndependent() && !(method instanceof InternalMethod) && method.getRequiredPermissionsToExecuteMethod().equals(ReadOnlyAgentPermissions.NONE);
+    }
+    
+    /* -------------------------------------------------- Socket -------------------------------------------------- */
+    
     /**
      * Returns the socket which this worker is connected to.
      */
@@ -104,6 +214,9 @@ public abstract class Worker implements Runnable {
             @Nullable Method<?> method = null;
             @Nullable Reply<?> reply = null;
             
+            @Nullable ReplyCache.Key cacheKey = null;
+            @Nullable Signature<Compression<Pack>> signedReply = null;
+            
             try {
                 try {
                     final @Nonnull Pack pack = Pack.loadFrom(getSocket());
@@ -122,32 +235,59 @@ public abstract class Worker implements Runnable {
                     if (type.equals(OpenAccount.TYPE)) { subject = recipient; } else { subject = signedMethod.getSubject(); }
                     final @Nonnull Account account = Account.with(host, subject.resolve());
                     
+                    // The method is recovered (which checks its signature) before the cache is consulted so that a cached reply cannot bypass this check.
                     method = MethodIndex.get(signedMethod, account);
-                    reply = method.executeOnHost();
+                    if (isCacheable(method)) {
+                        cacheKey = ReplyCache.getKey(recipient, host.privateKeyChain.get().getKey(start), signedMethod);
+                        signedReply = ReplyCache.get(cacheKey);
+                    }
                     
-                    Database.commit();
+                    if (signedReply == null) {
+                        // The transaction is rolled back with its end actions if the execution, the logging or the commit fails so that the number of a logged action is released.
+                        boolean committed = false;
+                        try {
+                            reply = method.executeOnHost();
+                            if (method instanceof Action) { ((Action) method).notifyObserver(); }
+                            if (method instanceof InternalAction) {
+                                // The action is logged in the same transaction so that clients can retrieve it incrementally with an audit query.
+                                ActionModule.append(((InternalAction) method).getEntity(), signedMethod.getObject().getObject());
+                            }
+                            Database.commit();
+                            committed = true;
+                        } finally {
+                            if (!committed) { TransactionEnd.rollback(); }
+                        }
+
+                    } else {
+                        Log.debugging("Reusing the cached reply to the method $.", type.getAddress());
+                    }
                 } catch (@Nonnull InternalException exception) {
                     throw RequestExceptionBuilder.withCode(RequestErrorCode.INTERNAL).withMessage("An internal problem occurred.").withCause(exception).build();
                 } catch (@Nonnull ExternalException exception) {
                     throw RequestExceptionBuilder.withCode(RequestErrorCode.EXTERNAL).withMessage("An external problem occurred.").withCause(exception).build();
                 }
             } catch (@Nonnull RequestException exception) {
-                Database.rollback();
+                TransactionEnd.rollback();
+                cacheKey = null;
+                signedReply = null;
                 Log.warning("A request error occurred:", exception);
                 reply = RequestExceptionReplyBuilder.withRequestException(exception.isDecoded() ? RequestExceptionBuilder.withCode(RequestErrorCode.REQUEST).withMessage("Another server responded with a request error.").withCause(exception).build() : exception).build();
             }
             
-            if (reply == null) { reply = EmptyReplyBuilder.build(); }
-            final @Nonnull Compression<Pack> compressedReply = CompressionBuilder.withObject(reply.pack()).build();
-            
-            // The reply.pack() statement maps the semantic type of the reply converter, which results in a concurrent update if the client unpacks the response with the same database. The following commit prevents this. However, it is a suboptimal fix for this problem.
-            try { Database.commit(); } catch (@Nonnull DatabaseException exception) { Database.rollback(); }
-            
-            final @Nonnull Signature<Compression<Pack>> signedReply;
-            if (encryptedMethod != null && signedMethod != null) {
-                signedReply = HostSignatureCreator.sign(compressedReply, CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).about(signedMethod.getSubject()).as(encryptedMethod.getRecipient());
-            } else {
-                signedReply = SignatureBuilder.withObjectConverter(CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).withObject(compressedReply).withSubject(HostIdentifier.DIGITALID).build();
+            if (signedReply == null) {
+                if (reply == null) { reply = EmptyReplyBuilder.build(); }
+                final @Nonnull Compression<Pack> compressedReply = CompressionBuilder.withObject(reply.pack()).build();
+                
+                // The reply.pack() statement maps the semantic type of the reply converter, which results in a concurrent update if the client unpacks the response with the same database. The following commit prevents this. However, it is a suboptimal fix for this problem.
+                try { Database.commit(); } catch (@Nonnull DatabaseException exception) { TransactionEnd.rollback(); }
+                
+                // The two exponentiations of the host signature are computed in parallel by the private key, as nothing else in the response can proceed without the signature.
+                if (encryptedMethod != null && signedMethod != null) {
+                    signedReply = HostSignatureCreator.sign(compressedReply, CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).about(signedMethod.getSubject()).as(encryptedMethod.getRecipient());
+                    if (cacheKey != null) { ReplyCache.put(cacheKey, signedReply); }
+                } else {
+                    signedReply = SignatureBuilder.withObjectConverter(CompressionConverterBuilder.withObjectConverter(PackConverter.INSTANCE).build()).withObject(compressedReply).withSubject(HostIdentifier.DIGITALID).build();
+                }
             }
             
             final @Nonnull Encryption<Signature<Compression<Pack>>> encryptedReply;
@@ -165,6 +305,7 @@ public abstract class Worker implements Runnable {
             Log.warning("Could not send a response.", exception);
         } catch (@Nonnull Throwable throwable) {
             Log.warning("Something went wrong.", throwable);
+            TransactionEnd.rollback();
         } finally {
             try {
                 if (!getSocket().isClosed()) { getSocket().close(); }
@@ -15,33 +15,155 @@
  */
 package net.digitalid.core.synchronizer;
 
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.method.PureWithSideEffects;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.collections.list.ReadOnlyList;
+import net.digitalid.utility.concurrency.map.ConcurrentHashMapBuilder;
+import net.digitalid.utility.concurrency.map.ConcurrentMap;
+import net.digitalid.utility.configuration.Configuration;
 import net.digitalid.utility.contracts.Require;
+import net.digitalid.utility.conversion.converters.Integer64Converter;
 import net.digitalid.utility.conversion.exceptions.RecoveryException;
 import net.digitalid.utility.exceptions.ExternalException;
 import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.validation.annotations.size.NonEmpty;
+import net.digitalid.utility.validation.annotations.type.Immutable;
 import net.digitalid.utility.validation.annotations.type.Utility;
 
 import net.digitalid.database.annotations.transaction.Committing;
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
 import net.digitalid.database.exceptions.DatabaseException;
 import net.digitalid.database.interfaces.Database;
 
+import net.digitalid.core.entity.NonHostEntity;
+import net.digitalid.core.exceptions.request.RequestException;
+import net.digitalid.core.handler.method.Method;
+import net.digitalid.core.handler.method.MethodIndex;
 import net.digitalid.core.handler.method.action.InternalAction;
+import net.digitalid.core.handler.method.action.RecipientQueues;
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.unit.CoreUnit;
 import net.digitalid.core.unit.annotations.OnClient;
 
 /**
  * This class synchronizes {@link InternalAction internal actions}.
+ * Internal actions are executed on the client immediately and stored in a persistent queue per recipient,
+ * from which they are sent asynchronously and in order. An action that follows a pending action which
+ * has not been sent yet is {@link InternalAction#coalesceWith(InternalAction) coalesced} with it if possible.
  */
 @Utility
 public abstract class Synchronizer extends Thread {
     
+    /* -------------------------------------------------- Configuration -------------------------------------------------- */
+    
+    /**
+     * Stores the maximal interval in milliseconds after which the sending to an unreachable recipient is retried.
+     */
+    public static final @Nonnull Configuration<Long> maximalBackoff = Configuration.with(60_000l);
+    
+    /* -------------------------------------------------- Pending Actions -------------------------------------------------- */
+    
+    /**
+     * A pending action consists of its persisted entry and the action itself, which is only recovered when it is sent if the entry was loaded from the database.
+     */
+    @Immutable
+    static final class PendingAction {
+        
+        private final @Nonnull CoreUnit unit;
+        
+        private final @Nonnull PendingActionEntry entry;
+        
+        private final @Nullable InternalAction action;
+        
+        PendingAction(@Nonnull CoreUnit unit, @Nonnull PendingActionEntry entry, @Nullable InternalAction action) {
+            this.unit = unit;
+            this.entry = entry;
+            this.action = action;
+        }
+        
+    }
+    
+    /**
+     * Stores the queues of the actions that are pending for each recipient, which are sent by a bounded pool of senders.
+     * Each queue also serves as the lock for coalescing actions into it.
+     */
+    private static final @Nonnull RecipientQueues<@Nonnull PendingAction> queues = new RecipientQueues<>("Sender", 8, maximalBackoff, Synchronizer::send);
+    
+    /**
+     * Stores the number of the last pending action across all units.
+     */
+    private static final @Nonnull AtomicLong lastNumber = new AtomicLong();
+    
+    /**
+     * Stores the locks that serialize the queueing of actions for the same recipient so that they are queued in the order in which they are committed.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull HostIdentifier, @Nonnull Object> locks = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Returns the lock that serializes the queueing of actions for the given recipient.
+     */
+    @Pure
+    private static @Nonnull Object getLock(@Nonnull HostIdentifier recipient) {
+        @Nullable Object lock = locks.get(recipient);
+        if (lock == null) { lock = locks.putIfAbsentElseReturnPresent(recipient, new Object()); }
+        return lock;
+    }
+    
+    /**
+     * Returns whether a pending action with the given number is queued for the given recipient.
+     */
+    @Pure
+    static boolean isQueued(@Nonnull HostIdentifier recipient, long number) {
+        final @Nonnull Deque<@Nonnull PendingAction> queue = queues.getQueue(recipient);
+        synchronized (queue) { return queue.stream().anyMatch(pendingAction -> pendingAction.entry.getNumber() == number); }
+    }
+    
+    /* -------------------------------------------------- Resumption -------------------------------------------------- */
+    
+    /**
+     * Stores the units whose pending actions have already been loaded.
+     */
+    private static final @Nonnull ConcurrentMap<@Nonnull CoreUnit, @Nonnull Boolean> units = ConcurrentHashMapBuilder.build();
+    
+    /**
+     * Creates the table of pending actions in the given unit and queues the actions that could not be sent before the last shutdown.
+     * This method has no effect if the pending actions of the given unit have already been loaded.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    public static void resume(@Nonnull CoreUnit unit) throws DatabaseException {
+        if (units.putIfAbsent(unit, Boolean.TRUE) != null) { return; }
+        
+        SQL.createTable(PendingActionEntryConverter.INSTANCE, unit);
+        
+        final @Nonnull FreezableList<@Nonnull PendingActionEntry> entries = SQL.selectAll(PendingActionEntryConverter.INSTANCE, null, unit, null);
+        entries.sort((entry1, entry2) -> Long.compare(entry1.getNumber(), entry2.getNumber()));
+        
+        for (@Nonnull PendingActionEntry entry : entries) {
+            lastNumber.accumulateAndGet(entry.getNumber(), Math::max);
+            queues.add(entry.getRecipient(), new PendingAction(unit, entry, null));
+        }
+        Log.debugging("Resumed the sending of $ pending actions of the unit $.", entries.size(), unit);
+    }
+    
+    /* -------------------------------------------------- Execution -------------------------------------------------- */
+    
     /**
      * Executes the given action on the client and queues it for delivery.
-     * In case the given action is not similar to itself, it is executed
-     * only <em>after</em> being sent to the host. If the send method is
-     * overridden by the given action, it is ignored by the synchronizer.
+     * In case the given action is not similar to itself, it is sent to
+     * the host directly instead. If the send method is overridden by the
+     * given action, it is ignored by the synchronizer.
      * 
      * @param action the action which is to be executed and sent to the host.
      * 
@@ -50,23 +172,144 @@ public abstract class Synchronizer extends Thread {
     @Impure
     @Committing
     public static void execute(@Nonnull @OnClient InternalAction action) throws DatabaseException, RecoveryException {
-        Require.that(action.isOnClient()).orThrow("The internal action is on a client.");
-        
-        if (action.isSimilarTo(action)) { // TODO: Change this to something better understandable
-            Log.debugging("Execute and queue on the client the action " + action + ".");
-            action.executeOnClient();
+        executeAll(FreezableArrayList.withElement(action).freeze());
+    }
+    
+    /**
+     * Executes the given actions on the client and queues them for delivery in a single transaction
+     * so that either all or none of the given actions are executed and queued. Actions that are not
+     * similar to themselves are sent to the host directly like in {@link #execute(InternalAction)}.
+     * 
+     * @param actions the actions which are to be executed and sent to the same host.
+     * 
+     * @require actions.matchAll(InternalAction::isOnClient) : "The internal actions are on a client.";
+     * @require actions.map(InternalAction::getRecipient).unique().size() == 1 : "The internal actions have the same recipient.";
+     */
+    @Impure
+    @Committing
+    public static void executeAll(@Nonnull @NonEmpty ReadOnlyList<@Nonnull @OnClient InternalAction> actions) throws DatabaseException, RecoveryException {
+        final @Nonnull HostIdentifier recipient = actions.getFirst().getRecipient();
+        for (@Nonnull InternalAction action : actions) {
+            Require.that(action.isOnClient()).orThrow("The internal action is on a client.");
+            Require.that(action.getRecipient().equals(recipient)).orThrow("The internal actions have to have the same recipient but $ and $ differ.", recipient, action.getRecipient());
         }
         
-        // TODO: Replace the following sending with SynchronizerModule.add(action);
+        // The actions which are replaced by coalesced actions are queued again if the transaction is rolled back.
+        final @Nonnull FreezableList<@Nonnull PendingAction> replacedActions = FreezableArrayList.withNoElements();
+        boolean committed = false;
         try {
-            action.send();
-        } catch (@Nonnull ExternalException exception) {
-            Log.error("Failed to send the action $ due to the following problem:", exception, action);
-            // throw UncheckedExceptionBuilder.withCause(exception).build();
+            final @Nonnull FreezableList<@Nonnull InternalAction> queuableActions = FreezableArrayList.withNoElements();
+            for (@Nonnull InternalAction action : actions) {
+                if (!action.isSimilarTo(action)) { // TODO: Change this to something better understandable
+                    try {
+                        action.send();
+                    } catch (@Nonnull ExternalException exception) {
+                        Log.error("Failed to send the action $ due to the following problem:", exception, action);
+                    }
+                } else {
+                    resume(action.getEntity().getUnit());
+                    Log.debugging("Execute and queue on the client the action $.", action);
+                    action.executeOnClient();
+                    queuableActions.add(action);
+                }
+            }
+            
+            synchronized (getLock(recipient)) {
+                for (@Nonnull InternalAction action : queuableActions) {
+                    final @Nonnull NonHostEntity entity = action.getEntity();
+                    final @Nonnull CoreUnit unit = entity.getUnit();
+                    
+                    // An action with which the given action is coalesced is removed from the queue so that the sender cannot send it while its entry is being replaced.
+                    final @Nonnull Deque<@Nonnull PendingAction> queue = queues.getQueue(recipient);
+                    @Nullable PendingAction replacedAction = null;
+                    @Nullable InternalAction coalescedAction = null;
+                    synchronized (queue) {
+                        final @Nullable PendingAction last = queue.peekLast();
+                        if (last != null && last.action != null && last.unit.equals(unit) && last.entry.getEntity() == entity.getKey()) {
+                            coalescedAction = action.coalesceWith(last.action);
+                            if (coalescedAction != null) { replacedAction = queue.pollLast(); }
+                        }
+                    }
+                    
+                    if (replacedAction != null) {
+                        Log.debugging("Coalesced the action $ with the pending action $.", action, replacedAction.action);
+                        replacedActions.add(replacedAction);
+                    }
+                    final @Nonnull InternalAction queuedAction = coalescedAction != null ? coalescedAction : action;
+                    final long number = replacedAction != null ? replacedAction.entry.getNumber() : lastNumber.incrementAndGet();
+                    final @Nonnull PendingActionEntry entry = PendingActionEntryBuilder.withNumber(number).withEntity(entity.getKey()).withRecipient(recipient).withAction(queuedAction.pack()).build();
+                    store(new PendingAction(unit, entry, queuedAction));
+                }
+                
+                Database.commit();
+                committed = true;
+            }
+        } finally {
+            if (!committed) {
+                Database.rollback();
+                for (@Nonnull PendingAction replacedAction : replacedActions) { queues.add(recipient, replacedAction); }
+            }
         }
-        
-        Database.commit();
-        Thread.yield();
+    }
+    
+    /**
+     * Stores the given pending action in the current transaction and queues it for its recipient once this transaction is committed.
+     * If the transaction is rolled back instead, the action is never visible to the senders.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    static void store(@Nonnull PendingAction pendingAction) throws DatabaseException {
+        SQL.insertOrReplace(PendingActionEntryConverter.INSTANCE, pendingAction.entry, pendingAction.unit);
+        Database.instance.get().runAfterCommit(() -> queues.add(pendingAction.entry.getRecipient(), pendingAction));
+    }
+    
+    /* -------------------------------------------------- Sending -------------------------------------------------- */
+    
+    /**
+     * Returns the recovered action of the given pending action or null if the action can no longer be recovered.
+     * 
+     * @throws RequestException if the converter of the action has not yet been registered, in which case the recovery is retried later.
+     */
+    @Pure
+    @NonCommitting
+    private static @Nullable InternalAction recover(@Nonnull PendingAction pendingAction) throws DatabaseException, RequestException {
+        if (pendingAction.action != null) { return pendingAction.action; }
+        try {
+            final @Nonnull Method<?> method = MethodIndex.get(pendingAction.entry.getAction(), NonHostEntity.with(pendingAction.unit, pendingAction.entry.getEntity()));
+            if (method instanceof InternalAction) { return (InternalAction) method; }
+            Log.error("The pending action $ is not an internal action and is therefore dropped.", pendingAction.entry.getNumber());
+        } catch (@Nonnull RecoveryException exception) {
+            Log.error("The pending action $ could not be recovered and is therefore dropped.", exception, pendingAction.entry.getNumber());
+        }
+        return null;
+    }
+    
+    /**
+     * Sends the given pending action to the given recipient and removes it afterwards.
+     * Actions that are rejected by the recipient are reversed on the client and removed like the actions that were sent.
+     */
+    @NonCommitting
+    @PureWithSideEffects
+    private static void send(@Nonnull HostIdentifier recipient, @Nonnull PendingAction pendingAction) throws ExternalException {
+        final @Nullable InternalAction action = recover(pendingAction);
+        if (action != null) {
+            try {
+                action.send();
+            } catch (@Nonnull RequestException exception) {
+                Log.warning("The action $ was rejected by the host and is therefore reversed on the client.", exception, action);
+                action.reverseOnClient();
+            }
+        }
+        SQL.delete(PendingActionEntryConverter.INSTANCE, pendingAction.unit, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(pendingAction.entry.getNumber()).withPrefix("number").build());
+    }
+    
+    /**
+     * Shuts down the senders after the actions in progress have been sent.
+     * The remaining pending actions stay in the database and are sent again after the next start.
+     */
+    @Impure
+    public static void shutDown() {
+        queues.shutDown();
     }
     
     // TODO:
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.synchronizer;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.conversion.converters.Integer64Converter;
+import net.digitalid.utility.conversion.converters.StringConverter;
+import net.digitalid.utility.exceptions.ExternalException;
+import net.digitalid.utility.exceptions.UncheckedExceptionBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateBuilder;
+import net.digitalid.utility.generator.annotations.generators.GenerateSubclass;
+import net.digitalid.utility.validation.annotations.type.Immutable;
+
+import net.digitalid.database.conversion.SQL;
+import net.digitalid.database.conversion.WhereConditionBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
+
+import net.digitalid.core.identification.identifier.HostIdentifier;
+import net.digitalid.core.identification.identity.SemanticType;
+import net.digitalid.core.identification.identity.SemanticTypeAttributesBuilder;
+import net.digitalid.core.identification.identity.SyntacticType;
+import net.digitalid.core.pack.Pack;
+import net.digitalid.core.testing.CoreTest;
+import net.digitalid.core.unit.CoreUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@Immutable
+@GenerateBuilder
+@GenerateSubclass
+abstract class TestUnit extends CoreUnit {}
+
+public class SynchronizerTest extends CoreTest {
+    
+    private static final @Nonnull TestUnit UNIT;
+    
+    static {
+        try {
+            UNIT = TestUnitBuilder.withName("default").withHost(false).withClient(true).build();
+        } catch (@Nonnull ExternalException exception) {
+            throw UncheckedExceptionBuilder.withCause(exception).build();
+        }
+    }
+    
+    private static final @Nonnull SemanticType TYPE = SemanticType.map("test@core.digitalid.net").load(SemanticTypeAttributesBuilder.withSyntacticBase(SyntacticType.STRING).build());
+    
+    private static final @Nonnull HostIdentifier RECIPIENT = HostIdentifier.with("test.digitalid.net");
+    
+    @BeforeClass
+    public static void resumeUnit() throws DatabaseException {
+        Synchronizer.resume(UNIT);
+        Database.commit();
+    }
+    
+    private static @Nonnull Synchronizer.PendingAction createPendingAction(long number) {
+        final @Nonnull PendingActionEntry entry = PendingActionEntryBuilder.withNumber(number).withEntity(0).withRecipient(RECIPIENT).withAction(Pack.pack(StringConverter.INSTANCE, "Test", TYPE)).build();
+        return new Synchronizer.PendingAction(UNIT, entry, null);
+    }
+    
+    private static boolean isStored(long number) throws DatabaseException {
+        return SQL.selectFirst(PendingActionEntryConverter.INSTANCE, null, UNIT, WhereConditionBuilder.withConverter(Integer64Converter.INSTANCE).withObject(number).withPrefix("number").build()) != null;
+    }
+    
+    @Test
+    public void shouldNotQueueUncommittedActions() throws DatabaseException {
+        try {
+            Synchronizer.store(createPendingAction(1_000_001));
+            assertThat(Synchronizer.isQueued(RECIPIENT, 1_000_001)).isFalse();
+        } finally {
+            Database.rollback();
+        }
+    }
+    
+    @Test
+    public void shouldDiscardRolledBackActions() throws DatabaseException {
+        Synchronizer.store(createPendingAction(1_000_002));
+        Database.rollback();
+        assertThat(Synchronizer.isQueued(RECIPIENT, 1_000_002)).isFalse();
+        assertThat(isStored(1_000_002)).isFalse();
+        Database.commit();
+    }
+    
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.unit;
+
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.type.ThreadSafe;
+import net.digitalid.utility.conversion.interfaces.Converter;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.storage.interfaces.Unit;
+import net.digitalid.utility.validation.annotations.math.NonNegative;
+import net.digitalid.utility.validation.annotations.math.Positive;
+import net.digitalid.utility.validation.annotations.type.Mutable;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.dialect.expression.number.SQLLongLiteralBuilder;
+import net.digitalid.database.dialect.identifier.column.SQLColumnName;
+import net.digitalid.database.dialect.identifier.column.SQLColumnNameBuilder;
+import net.digitalid.database.dialect.statement.select.ordered.SQLOrderedSelectStatement;
+import net.digitalid.database.dialect.statement.select.ordered.SQLOrderedSelectStatementBuilder;
+import net.digitalid.database.dialect.statement.select.ordered.SQLOrderingTermBuilder;
+import net.digitalid.database.dialect.statement.select.unordered.simple.SQLSimpleSelectStatement;
+import net.digitalid.database.dialect.statement.select.unordered.simple.SQLSimpleSelectStatementBuilder;
+import net.digitalid.database.dialect.statement.select.unordered.simple.columns.SQLResultColumnBuilder;
+import net.digitalid.database.dialect.statement.select.unordered.simple.sources.SQLTableSourceBuilder;
+import net.digitalid.database.exceptions.DatabaseException;
+import net.digitalid.database.interfaces.Database;
+import net.digitalid.database.interfaces.SQLDecoder;
+
+/**
+ * A number sequence assigns increasing numbers to the rows that are appended to a table and keeps track of the numbers whose transaction has not yet ended.
+ * Since numbers are assigned before their transactions commit, a row with a lower number can become visible after a row with a higher number.
+ * Readers that only consider the numbers up to the {@link #getVisibleNumber() visible number} therefore never skip a row that is committed later.
+ * <p>
+ * The sequence is kept in memory and continues after the highest number that is stored when it is created.
+ * A table with a number sequence may thus only be appended to by a single process, as different processes would assign the same numbers.
+ */
+@Mutable
+@ThreadSafe
+public class NumberSequence {
+    
+    /* -------------------------------------------------- Fields -------------------------------------------------- */
+    
+    /**
+     * Stores the last number that was assigned.
+     */
+    private long lastNumber;
+    
+    /**
+     * Stores the assigned numbers whose transaction has not yet ended.
+     */
+    private final @Nonnull TreeSet<@Nonnull Long> pendingNumbers = new TreeSet<>();
+    
+    /* -------------------------------------------------- Constructor -------------------------------------------------- */
+    
+    private NumberSequence(@NonNegative long lastNumber) {
+        this.lastNumber = lastNumber;
+    }
+    
+    /**
+     * Returns a new number sequence that continues after the highest number in the given column of the table in which the objects of the given converter are stored in the given unit.
+     * The highest number is selected with a descending order and a limit of one, which the database answers from the index of the column.
+     */
+    @Pure
+    @NonCommitting
+    public static @Nonnull NumberSequence continuing(@Nonnull Converter<?, ?> converter, @Nonnull Unit unit, @Nonnull String column) throws DatabaseException {
+        final @Nonnull SQLColumnName numberColumn = SQLColumnNameBuilder.withString(column).build();
+        final @Nonnull SQLSimpleSelectStatement selectStatement = SQLSimpleSelectStatementBuilder.withColumns(ImmutableList.withElements(SQLResultColumnBuilder.withExpression(numberColumn).build())).withSources(ImmutableList.withElements(SQLTableSourceBuilder.withSource(UnitTables.getQualifiedTable(converter, unit)).build())).build();
+        final @Nonnull SQLOrderedSelectStatement orderedStatement = SQLOrderedSelectStatementBuilder.withStatement(selectStatement).withOrderingTerms(ImmutableList.withElements(SQLOrderingTermBuilder.withExpression(numberColumn).withAscending(false).build())).withLimit(SQLLongLiteralBuilder.withValue(1).build()).build();
+        final @Nonnull SQLDecoder decoder = Database.instance.get().getEncoder(orderedStatement, unit).execute();
+        return new NumberSequence(decoder.moveToNextRow() ? decoder.decodeInteger64() : 0);
+    }
+    
+    /* -------------------------------------------------- Numbers -------------------------------------------------- */
+    
+    /**
+     * Assigns the next number to a row that is appended in the current transaction.
+     * The number is released automatically once the current transaction has ended.
+     */
+    @Impure
+    @NonCommitting
+    public @Positive long next() {
+        final long number;
+        synchronized (this) {
+            number = ++lastNumber;
+            pendingNumbers.add(number);
+        }
+        TransactionEnd.runAfterEnd(() -> release(number));
+        return number;
+    }
+    
+    /**
+     * Releases the given number after the transaction in which it was assigned has been committed or rolled back or after its row could not be appended.
+     * Releasing a number more than once has no effect.
+     */
+    @Impure
+    public synchronized void release(@Positive long number) {
+        pendingNumbers.remove(number);
+    }
+    
+    /**
+     * Returns the largest number up to which all assigned numbers are either committed or rolled back.
+     */
+    @Pure
+    public synchronized @NonNegative long getVisibleNumber() {
+        return pendingNumbers.isEmpty() ? lastNumber : pendingNumbers.first() - 1;
+    }
+    
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.logging.Log;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.annotations.transaction.NonCommitting;
+import net.digitalid.database.interfaces.Database;
+
+/**
+ * This class runs actions once the transaction of the current thread has ended, no matter whether it was committed or rolled back.
+ * The database only notifies about commits, which is why the code that rolls back transactions on threads that are reused for
+ * further transactions (such as the workers and the senders) has to do so with {@link #rollback()} instead of {@link Database#rollback()}.
+ */
+@Utility
+public abstract class TransactionEnd {
+    
+    /* -------------------------------------------------- Actions -------------------------------------------------- */
+    
+    /**
+     * Stores the actions that are run once the transaction of the current thread has ended.
+     */
+    private static final @Nonnull ThreadLocal<@Nonnull List<@Nonnull Runnable>> actions = ThreadLocal.withInitial(ArrayList::new);
+    
+    /**
+     * Runs the given action once the current transaction has been committed or rolled back.
+     * An action that is registered in a transaction that is rolled back without {@link #rollback()} is run after the next commit on the same thread.
+     */
+    @Impure
+    @NonCommitting
+    public static void runAfterEnd(@Nonnull Runnable action) {
+        final @Nonnull List<@Nonnull Runnable> list = actions.get();
+        list.add(action);
+        Database.instance.get().runAfterCommit(() -> run(list));
+    }
+    
+    /**
+     * Runs and removes the given actions.
+     */
+    @Impure
+    private static void run(@Nonnull List<@Nonnull Runnable> list) {
+        while (!list.isEmpty()) {
+            try {
+                list.remove(0).run();
+            } catch (@Nonnull RuntimeException exception) {
+                Log.error("An action after the end of a transaction failed.", exception);
+            }
+        }
+    }
+    
+    /* -------------------------------------------------- Rollback -------------------------------------------------- */
+    
+    /**
+     * Rolls back the current transaction and runs the actions that were registered in it.
+     */
+    @Impure
+    public static void rollback() {
+        Database.rollback();
+        run(actions.get());
+    }
+    
+}
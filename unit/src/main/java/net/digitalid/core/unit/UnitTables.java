@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 Synacts GmbH, Switzerland (info@synacts.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.digitalid.core.unit;
+
+import javax.annotation.Nonnull;
+
+import net.digitalid.utility.annotations.method.Impure;
+import net.digitalid.utility.annotations.method.Pure;
+import net.digitalid.utility.annotations.ownership.NonCaptured;
+import net.digitalid.utility.annotations.parameter.Modified;
+import net.digitalid.utility.collections.list.FreezableArrayList;
+import net.digitalid.utility.collections.list.FreezableList;
+import net.digitalid.utility.conversion.enumerations.Representation;
+import net.digitalid.utility.conversion.interfaces.Converter;
+import net.digitalid.utility.conversion.model.CustomField;
+import net.digitalid.utility.conversion.model.CustomType;
+import net.digitalid.utility.immutable.ImmutableList;
+import net.digitalid.utility.storage.interfaces.Unit;
+import net.digitalid.utility.validation.annotations.type.Utility;
+
+import net.digitalid.database.dialect.identifier.column.SQLColumnNameBuilder;
+import net.digitalid.database.dialect.identifier.schema.SQLSchemaNameBuilder;
+import net.digitalid.database.dialect.identifier.table.SQLExplicitlyQualifiedTableBuilder;
+import net.digitalid.database.dialect.identifier.table.SQLQualifiedTable;
+import net.digitalid.database.dialect.identifier.table.SQLTableNameBuilder;
+import net.digitalid.database.dialect.statement.select.unordered.simple.columns.SQLResultColumn;
+import net.digitalid.database.dialect.statement.select.unordered.simple.columns.SQLResultColumnBuilder;
+
+/**
+ * This class derives the table and the columns in which the objects of a converter are stored in a unit.
+ * It allows statements that the SQL facade does not support to be written without hard-coding the names of the columns.
+ */
+@Utility
+public abstract class UnitTables {
+    
+    /* -------------------------------------------------- Table -------------------------------------------------- */
+    
+    /**
+     * Returns the table in which the objects of the given converter are stored in the given unit.
+     */
+    @Pure
+    public static @Nonnull SQLQualifiedTable getQualifiedTable(@Nonnull Converter<?, ?> converter, @Nonnull Unit unit) {
+        return SQLExplicitlyQualifiedTableBuilder.withTable(SQLTableNameBuilder.withString(converter.getTypeName()).build()).withSchema(SQLSchemaNameBuilder.withString(unit.getName()).build()).build();
+    }
+    
+    /* -------------------------------------------------- Columns -------------------------------------------------- */
+    
+    /**
+     * Adds the names of the columns in which the fields of the given converter are stored with the given prefix to the given list.
+     */
+    @Impure
+    private static void addColumnNames(@Nonnull Converter<?, ?> converter, @Nonnull String prefix, @NonCaptured @Modified @Nonnull FreezableList<@Nonnull String> columnNames) {
+        for (@Nonnull CustomField field : converter.getFields(Representation.INTERNAL)) {
+            final @Nonnull String columnName = prefix + field.getName().toLowerCase();
+            final @Nonnull CustomType customType = field.getCustomType();
+            if (customType instanceof CustomType.TupleType) { addColumnNames(((CustomType.TupleType) customType).getConverter(), columnName + "_", columnNames); }
+            else { columnNames.add(columnName); }
+        }
+    }
+    
+    /**
+     * Returns the names of the columns in which the objects of the given converter are stored in the order in which they are recovered.
+     * The fields of nested converters are stored in columns whose names are prefixed with the name of the field that contains them.
+     */
+    @Pure
+    public static @Nonnull ImmutableList<@Nonnull String> getColumnNames(@Nonnull Converter<?, ?> converter) {
+        final @Nonnull FreezableList<@Nonnull String> columnNames = FreezableArrayList.withNoElements();
+        addColumnNames(converter, "", columnNames);
+        return ImmutableList.withElementsOf(columnNames);
+    }
+    
+    /**
+     * Returns the result columns from which the objects of the given converter can be recovered.
+     */
+    @Pure
+    public static @Nonnull ImmutableList<@Nonnull SQLResultColumn> getResultColumns(@Nonnull Converter<?, ?> converter) {
+        return ImmutableList.withElementsOf(getColumnNames(converter).map(columnName -> SQLResultColumnBuilder.withExpression(SQLColumnNameBuilder.withString(columnName).build()).build()));
+    }
+    
+}